@@ -0,0 +1,542 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.utilities.Tokenizer;
+
+/**
+ * BL program parser that picks a parse engine for each input from cheap
+ * statistics of its tokens, so call sites need no tuning:
+ *
+ * <ul>
+ * <li>{@link Engine#RECURSIVE}: {@code Program1Parse1}, the fastest for the
+ * usual small and shallow programs;</li>
+ * <li>{@link Engine#STACK}: {@code ProgramFeedParser}, whose explicit stack
+ * of open blocks cannot overflow the thread stack however deeply the input
+ * nests;</li>
+ * <li>{@link Engine#PARALLEL}: {@code LazyProgram}, whose bodies are found by
+ * a skim and then parsed in parallel, for large programs with many
+ * instructions.</li>
+ * </ul>
+ *
+ * <p>
+ * Every engine accepts the same programs, builds the same {@code Program}
+ * and reports syntax errors with the same messages. The caller's
+ * {@code ParseOptions} are passed to whichever engine is chosen, and their
+ * limits are enforced by every engine, on the pool threads too. Options only
+ * some engines honour make the parser use {@link Engine#RECURSIVE}, so what
+ * a parse builds and records never depends on the size of the input: a
+ * statement table, a positions table and trusted mode are honoured by
+ * {@link Engine#RECURSIVE} alone, and folding by all but
+ * {@link Engine#STACK}. The parser counts the parses of each engine and
+ * their time, and keeps the reason for the latest choice of each.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class AdaptiveProgramParser implements AutoCloseable {
+
+    /**
+     * Estimated nesting depth above which the recursive parser is not used.
+     */
+    public static final int DEEP = 500;
+
+    /**
+     * Fewest instructions, the main body included, worth parsing in
+     * parallel.
+     */
+    public static final int WIDE_BODIES = 8;
+
+    /**
+     * Fewest tokens worth parsing in parallel.
+     */
+    public static final int WIDE_TOKENS = 20_000;
+
+    /**
+     * The parse engines.
+     */
+    public enum Engine {
+        /**
+         * {@code Program1Parse1}.
+         */
+        RECURSIVE,
+        /**
+         * {@code ProgramFeedParser}.
+         */
+        STACK,
+        /**
+         * {@code LazyProgram} with every body parsed in parallel.
+         */
+        PARALLEL
+    }
+
+    /**
+     * Cheap statistics of the tokens of a program.
+     */
+    public static final class Profile {
+
+        /**
+         * Number of tokens, END_OF_INPUT excluded.
+         */
+        private final int tokens;
+
+        /**
+         * Number of INSTRUCTION keywords.
+         */
+        private final int instructions;
+
+        /**
+         * Number of IF and WHILE statements.
+         */
+        private final int compounds;
+
+        /**
+         * Largest nesting depth of IF and WHILE.
+         */
+        private final int depth;
+
+        /**
+         * Constructor.
+         *
+         * @param tokens
+         *            the number of tokens
+         * @param instructions
+         *            the number of INSTRUCTION keywords
+         * @param compounds
+         *            the number of IF and WHILE statements
+         * @param depth
+         *            the largest nesting depth
+         */
+        Profile(int tokens, int instructions, int compounds, int depth) {
+            this.tokens = tokens;
+            this.instructions = instructions;
+            this.compounds = compounds;
+            this.depth = depth;
+        }
+
+        /**
+         * Profiles {@code tokens} in one pass. The depth counts an IF or
+         * WHILE as opening a level unless it follows END, where it closes
+         * one, so it is exact for a well-formed program and an estimate
+         * otherwise.
+         *
+         * @param tokens
+         *            the tokens
+         * @return the profile
+         */
+        public static Profile of(Queue<String> tokens) {
+            assert tokens != null : "Violation of: tokens is not null";
+
+            int count = 0;
+            int instructions = 0;
+            int compounds = 0;
+            int depth = 0;
+            int maxDepth = 0;
+            String previous = "";
+            for (String token : tokens) {
+                if (token.equals("INSTRUCTION")) {
+                    instructions++;
+                } else if (token.equals("IF") || token.equals("WHILE")) {
+                    if (previous.equals("END")) {
+                        depth--;
+                    } else {
+                        compounds++;
+                        depth++;
+                        maxDepth = Math.max(maxDepth, depth);
+                    }
+                }
+                previous = token;
+                count++;
+            }
+            if (previous.equals(Tokenizer.END_OF_INPUT)) {
+                count--;
+            }
+            return new Profile(count, instructions, compounds, maxDepth);
+        }
+
+        /**
+         * Returns the number of tokens, END_OF_INPUT excluded.
+         *
+         * @return the number of tokens
+         */
+        public int tokens() {
+            return this.tokens;
+        }
+
+        /**
+         * Returns the number of INSTRUCTION keywords.
+         *
+         * @return the number of instructions
+         */
+        public int instructions() {
+            return this.instructions;
+        }
+
+        /**
+         * Returns the number of IF and WHILE statements.
+         *
+         * @return the number of compound statements
+         */
+        public int compounds() {
+            return this.compounds;
+        }
+
+        /**
+         * Returns the estimated largest nesting depth of IF and WHILE.
+         *
+         * @return the depth
+         */
+        public int depth() {
+            return this.depth;
+        }
+
+        @Override
+        public String toString() {
+            return this.tokens + " tokens, " + this.instructions
+                    + " instructions, " + this.compounds
+                    + " IF/WHILE, depth " + this.depth;
+        }
+
+    }
+
+    /**
+     * The pool of the parallel engine, or null if it has one thread.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Number of parses by each engine.
+     */
+    private final LongAdder[] parses = new LongAdder[Engine.values().length];
+
+    /**
+     * Time spent parsing by each engine, in nanoseconds.
+     */
+    private final LongAdder[] nanos = new LongAdder[Engine.values().length];
+
+    /**
+     * Why each engine was last chosen.
+     */
+    private final AtomicReferenceArray<String> reasons =
+            new AtomicReferenceArray<>(Engine.values().length);
+
+    /**
+     * Constructor; {@code threads} is the size of the pool of the parallel
+     * engine, which is never chosen if it is 1.
+     *
+     * @param threads
+     *            the number of threads to parse bodies on
+     * @requires threads > 0
+     */
+    public AdaptiveProgramParser(int threads) {
+        assert threads > 0 : "Violation of: threads > 0";
+
+        if (threads > 1) {
+            this.pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "bl-adaptive");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.pool = null;
+        }
+        for (int i = 0; i < this.parses.length; i++) {
+            this.parses[i] = new LongAdder();
+            this.nanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the engine to parse a program with {@code profile} with.
+     *
+     * @param profile
+     *            the profile
+     * @return the engine
+     */
+    public Engine choose(Profile profile) {
+        assert profile != null : "Violation of: profile is not null";
+
+        Engine engine = Engine.RECURSIVE;
+        if (profile.depth() > DEEP) {
+            engine = Engine.STACK;
+        } else if (this.pool != null
+                && profile.instructions() + 1 >= WIDE_BODIES
+                && profile.tokens() >= WIDE_TOKENS) {
+            engine = Engine.PARALLEL;
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the engine to parse a program with {@code profile} with
+     * {@code options}: {@link #choose(Profile)}, unless that engine does not
+     * honour every option, in which case {@link Engine#RECURSIVE}.
+     *
+     * @param profile
+     *            the profile
+     * @param options
+     *            the options to parse with
+     * @return the engine
+     */
+    public Engine choose(Profile profile, ParseOptions options) {
+        assert profile != null : "Violation of: profile is not null";
+        assert options != null : "Violation of: options is not null";
+
+        Engine engine = this.choose(profile);
+        if (!honours(engine, options)) {
+            engine = Engine.RECURSIVE;
+        }
+        return engine;
+    }
+
+    /**
+     * Reports whether {@code engine} honours every option of
+     * {@code options}.
+     *
+     * @param engine
+     *            the engine
+     * @param options
+     *            the options
+     * @return true iff {@code engine} honours {@code options}
+     */
+    private static boolean honours(Engine engine, ParseOptions options) {
+        boolean honours = true;
+        if (engine != Engine.RECURSIVE) {
+            honours = options.table() == null && options.positions() == null
+                    && !options.trusted()
+                    && (engine != Engine.STACK || !options.fold());
+        }
+        return honours;
+    }
+
+    /**
+     * Returns why {@code engine} was chosen for a program with
+     * {@code profile}.
+     *
+     * @param profile
+     *            the profile
+     * @param engine
+     *            the engine chosen
+     * @return the reason
+     */
+    private static String explain(Profile profile, Engine engine) {
+        String reason;
+        switch (engine) {
+            case STACK:
+                reason = "depth " + profile.depth() + " > " + DEEP;
+                break;
+            case PARALLEL:
+                reason = (profile.instructions() + 1) + " bodies, "
+                        + profile.tokens() + " tokens";
+                break;
+            default:
+                reason = "depth " + profile.depth() + ", "
+                        + profile.tokens() + " tokens";
+                break;
+        }
+        return reason;
+    }
+
+    /**
+     * Parses {@code tokens} with the engine chosen for them.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return the parsed program
+     * @updates this, tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [tokens is a BL program] then
+     *  parse = [the Program corresponding to #tokens]  and  tokens = <>
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public Program parse(Queue<String> tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+
+        return this.parse(tokens, new ParseOptions());
+    }
+
+    /**
+     * Parses {@code tokens} with the engine chosen for them, with
+     * {@code options}.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param options
+     *            the options to parse with
+     * @return the parsed program
+     * @updates this, tokens, options
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * [as parse(tokens), with options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public Program parse(Queue<String> tokens, ParseOptions options) {
+        assert tokens != null : "Violation of: tokens is not null";
+        assert options != null : "Violation of: options is not null";
+
+        long start = System.nanoTime();
+        Profile profile = Profile.of(tokens);
+        Engine preferred = this.choose(profile);
+        Engine engine = this.choose(profile, options);
+        String reason = explain(profile, engine);
+        if (engine != preferred) {
+            reason += ", options not honoured by " + preferred;
+        }
+        this.reasons.set(engine.ordinal(), reason);
+        Program p;
+        try {
+            switch (engine) {
+                case STACK: {
+                    ProgramFeedParser parser = new ProgramFeedParser(options);
+                    String token = tokens.dequeue();
+                    while (!token.equals(Tokenizer.END_OF_INPUT)) {
+                        parser.feedToken(token);
+                        token = tokens.dequeue();
+                    }
+                    p = parser.end();
+                    break;
+                }
+                case PARALLEL: {
+                    LazyProgram lp = LazyProgram.parse(tokens, options);
+                    lp.parseAll(this.pool);
+                    //The bodies are handed over, not copied.
+                    p = lp.toProgram();
+                    break;
+                }
+                default: {
+                    p = new Program1Parse1();
+                    options.parse(p, tokens);
+                    break;
+                }
+            }
+        } finally {
+            this.parses[engine.ordinal()].increment();
+            this.nanos[engine.ordinal()].add(System.nanoTime() - start);
+        }
+        return p;
+    }
+
+    /**
+     * Returns the number of parses by {@code engine}.
+     *
+     * @param engine
+     *            the engine
+     * @return the number of parses
+     */
+    public long parses(Engine engine) {
+        return this.parses[engine.ordinal()].sum();
+    }
+
+    /**
+     * Returns the time spent parsing with {@code engine}, profiling
+     * included.
+     *
+     * @param engine
+     *            the engine
+     * @return the time, in nanoseconds
+     */
+    public long nanos(Engine engine) {
+        return this.nanos[engine.ordinal()].sum();
+    }
+
+    /**
+     * Returns why {@code engine} was last chosen.
+     *
+     * @param engine
+     *            the engine
+     * @return the reason, or null if it has not been chosen
+     */
+    public String reason(Engine engine) {
+        return this.reasons.get(engine.ordinal());
+    }
+
+    /**
+     * Returns a report of the parses, time and latest reason of each engine,
+     * one line each.
+     *
+     * @return the report
+     */
+    public String metrics() {
+        final double nanosPerMicro = 1_000.0;
+
+        StringBuilder report = new StringBuilder();
+        for (Engine engine : Engine.values()) {
+            long count = this.parses(engine);
+            report.append(engine.name().toLowerCase()).append(": ")
+                    .append(count).append(" parses");
+            if (count > 0) {
+                report.append(String.format(", mean %.1f us, last for %s",
+                        this.nanos(engine) / nanosPerMicro / count,
+                        this.reason(engine)));
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Shuts down the pool of the parallel engine.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Parses the BL program files named on the command line, or a small, a
+     * deep and a large generated program, and prints the metrics.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        final int deep = 2_000;
+
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(
+                Runtime.getRuntime().availableProcessors());
+        if (args.length > 0) {
+            for (String fileName : args) {
+                parser.parse(SwarTokenizer
+                        .tokens(Files.readAllBytes(Path.of(fileName))));
+            }
+        } else {
+            parser.parse(SwarTokenizer.tokens(
+                    new BLProgramGenerator(49, 2, 4, 3, 0).next().source()
+                            .getBytes(StandardCharsets.UTF_8)));
+            String open = "IF random THEN ".repeat(deep);
+            String close = "END IF ".repeat(deep);
+            parser.parse(SourceTokenizer.tokens(
+                    "PROGRAM Deep IS BEGIN " + open + close + "END Deep"));
+            parser.parse(SwarTokenizer.tokens(
+                    new BLProgramGenerator(49, 200, 6, 4, 0).next().source()
+                            .getBytes(StandardCharsets.UTF_8)));
+        }
+        SimpleWriter out = new SimpleWriter1L();
+        out.print(parser.metrics());
+        out.close();
+        parser.close();
+    }
+
+}
@@ -0,0 +1,308 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Non-blocking front end for {@code Program1Parse1}: reading and parsing run
+ * on a configurable {@code Executor} and the caller gets a
+ * {@code CompletableFuture} for the parsed program.
+ *
+ * <p>
+ * At most {@code maxPending} parses may be queued or running at once. When
+ * that bound is reached a new submission either fails immediately with a
+ * {@code RejectedExecutionException} ({@link Overflow#REJECT}) or blocks the
+ * submitting thread until a slot frees up ({@link Overflow#WAIT}).
+ *
+ * <p>
+ * Cancelling a returned future cancels the {@code ParseOptions} the parse
+ * runs under; a running parse notices at its next block boundary or statement
+ * in {@code Statement1Parse1.parseBlock} and gives up, and a queued one never
+ * starts. A slot is freed only once its parse has stopped, or, for a parse
+ * cancelled before it started, once the executor dequeues it.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class AsyncProgramParser implements AutoCloseable {
+
+    /**
+     * What to do with a submission when {@code maxPending} parses are already
+     * queued or running.
+     */
+    public enum Overflow {
+        /**
+         * Fail the submission with a {@code RejectedExecutionException}.
+         */
+        REJECT,
+        /**
+         * Block the submitting thread until a slot frees up.
+         */
+        WAIT
+    }
+
+    /**
+     * The executor parses run on.
+     */
+    private final Executor executor;
+
+    /**
+     * The executor to shut down on {@code close}, or {@code null} if the
+     * executor belongs to the client.
+     */
+    private final ExecutorService owned;
+
+    /**
+     * One permit per parse that may be queued or running.
+     */
+    private final Semaphore slots;
+
+    /**
+     * The overflow policy.
+     */
+    private final Overflow overflow;
+
+    /**
+     * A single parse: tokenizes {@code source} and parses the tokens under
+     * {@code options}, which a cancellation of {@code result} cancels. The
+     * task holds one slot of {@code slots} and releases it when it has run.
+     */
+    private static final class ParseTask implements Runnable {
+
+        /**
+         * The future completed by this task.
+         */
+        private final CompletableFuture<Program> result;
+
+        /**
+         * Supplies the tokens to parse.
+         */
+        private final Supplier<Queue<String>> source;
+
+        /**
+         * The options the parse runs under.
+         */
+        private final ParseOptions options = new ParseOptions();
+
+        /**
+         * The slots, one of which this task holds.
+         */
+        private final Semaphore slots;
+
+        /**
+         * Constructor.
+         *
+         * @param result
+         *            the future to complete
+         * @param source
+         *            supplies the tokens to parse
+         * @param slots
+         *            the slots, one of which the task holds
+         */
+        ParseTask(CompletableFuture<Program> result,
+                Supplier<Queue<String>> source, Semaphore slots) {
+            this.result = result;
+            this.source = source;
+            this.slots = slots;
+        }
+
+        /**
+         * Cancels the parse, whether it is queued or running.
+         */
+        void cancel() {
+            this.options.cancel();
+        }
+
+        @Override
+        public void run() {
+            try {
+                //A parse cancelled while queued ends here, when dequeued.
+                if (this.result.isDone()) {
+                    return;
+                }
+                Queue<String> tokens = this.source.get();
+                this.options.checkCancelled();
+                Program p = new Program1Parse1();
+                this.options.parse(p, tokens);
+                this.result.complete(p);
+            } catch (CancellationException e) {
+                this.result.cancel(false);
+            } catch (Throwable e) {
+                /*
+                 * Errors too, such as a StackOverflowError on deeply nested
+                 * input: the future must always complete.
+                 */
+                this.result.completeExceptionally(e);
+            } finally {
+                this.slots.release();
+            }
+        }
+
+    }
+
+    /**
+     * Constructor running parses on {@code executor}, which stays owned by the
+     * client.
+     *
+     * @param executor
+     *            the executor to parse on
+     * @param maxPending
+     *            the maximum number of queued or running parses
+     * @param overflow
+     *            the policy when {@code maxPending} is reached
+     * @requires maxPending > 0
+     */
+    public AsyncProgramParser(Executor executor, int maxPending,
+            Overflow overflow) {
+        this(executor, null, maxPending, overflow);
+    }
+
+    /**
+     * Constructor running parses on a private pool of {@code threads} daemon
+     * threads, shut down by {@code close}.
+     *
+     * @param threads
+     *            the number of parser threads
+     * @param maxPending
+     *            the maximum number of queued or running parses
+     * @param overflow
+     *            the policy when {@code maxPending} is reached
+     * @requires threads > 0 and maxPending > 0
+     */
+    public AsyncProgramParser(int threads, int maxPending, Overflow overflow) {
+        this(null, Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bl-parser");
+            t.setDaemon(true);
+            return t;
+        }), maxPending, overflow);
+    }
+
+    /**
+     * Shared constructor.
+     *
+     * @param executor
+     *            the client executor, or {@code null} to use {@code owned}
+     * @param owned
+     *            the private executor, or {@code null}
+     * @param maxPending
+     *            the maximum number of queued or running parses
+     * @param overflow
+     *            the policy when {@code maxPending} is reached
+     */
+    private AsyncProgramParser(Executor executor, ExecutorService owned,
+            int maxPending, Overflow overflow) {
+        assert executor != null || owned != null : ""
+                + "Violation of: executor is not null";
+        assert maxPending > 0 : "Violation of: maxPending > 0";
+        assert overflow != null : "Violation of: overflow is not null";
+        this.owned = owned;
+        if (executor != null) {
+            this.executor = executor;
+        } else {
+            this.executor = owned;
+        }
+        this.slots = new Semaphore(maxPending);
+        this.overflow = overflow;
+    }
+
+    /**
+     * Parses the tokens supplied by {@code source} into a new
+     * {@code Program1Parse1} on the executor.
+     *
+     * @param source
+     *            supplies the tokens, called on the executor
+     * @return the future parsed program
+     */
+    private CompletableFuture<Program> submit(Supplier<Queue<String>> source) {
+        CompletableFuture<Program> result = new CompletableFuture<>();
+        if (this.overflow == Overflow.WAIT) {
+            try {
+                this.slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(e);
+                return result;
+            }
+        } else if (!this.slots.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    "Too many pending parses."));
+            return result;
+        }
+
+        ParseTask task = new ParseTask(result, source, this.slots);
+        result.whenComplete((p, e) -> {
+            if (result.isCancelled()) {
+                task.cancel();
+            }
+        });
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            //The task will never run, so its slot is free now.
+            this.slots.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Reads and parses the BL program in the file {@code path}.
+     *
+     * @param path
+     *            the file to parse
+     * @return the future parsed program; completes exceptionally with the
+     *         parser's error if the program is invalid
+     */
+    public CompletableFuture<Program> parseAsync(Path path) {
+        assert path != null : "Violation of: path is not null";
+
+        return this.submit(() -> {
+            SimpleReader file = new SimpleReader1L(path.toString());
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            return tokens;
+        });
+    }
+
+    /**
+     * Parses the UTF-8 encoded BL program between the position and the limit
+     * of {@code source}. The buffer must not be modified until the returned
+     * future completes.
+     *
+     * @param source
+     *            the encoded program
+     * @return the future parsed program; completes exceptionally with the
+     *         parser's error if the program is invalid
+     */
+    public CompletableFuture<Program> parseAsync(ByteBuffer source) {
+        assert source != null : "Violation of: source is not null";
+
+        ByteBuffer view = source.duplicate();
+        return this.submit(() -> SwarTokenizer.tokens(view));
+    }
+
+    /**
+     * Shuts down the private pool, if this parser owns one. Parses already
+     * submitted still run to completion.
+     */
+    @Override
+    public void close() {
+        if (this.owned != null) {
+            this.owned.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of random BL programs for round-trip testing and as a load
+ * generator for parser benchmarks. Programs are valid unless an error is
+ * injected; an injected error is always a syntax error the parser must
+ * reject (misspelled keyword, bad condition, mismatched name, primitive used
+ * as an instruction name, or a missing keyword).
+ *
+ * <p>
+ * Two generators built with the same arguments produce the same sequence of
+ * programs.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class BLProgramGenerator {
+
+    /**
+     * The BL conditions.
+     */
+    private static final String[] CONDITIONS = { "next-is-empty",
+            "next-is-not-empty", "next-is-wall", "next-is-not-wall",
+            "next-is-friend", "next-is-not-friend", "next-is-enemy",
+            "next-is-not-enemy", "random", "true" };
+
+    /**
+     * The BL primitive instructions.
+     */
+    private static final String[] PRIMITIVES = { "move", "turnleft",
+            "turnright", "infect", "skip" };
+
+    /**
+     * Number of spaces per indentation level.
+     */
+    private static final int INDENT_SIZE = 2;
+
+    /**
+     * A generated program.
+     */
+    public static final class Sample {
+
+        /**
+         * The source text.
+         */
+        private final String source;
+
+        /**
+         * Whether the source is a valid BL program.
+         */
+        private final boolean valid;
+
+        /**
+         * Constructor.
+         *
+         * @param source
+         *            the source text
+         * @param valid
+         *            whether the source is a valid BL program
+         */
+        Sample(String source, boolean valid) {
+            this.source = source;
+            this.valid = valid;
+        }
+
+        /**
+         * Returns the source text.
+         *
+         * @return the source text
+         */
+        public String source() {
+            return this.source;
+        }
+
+        /**
+         * Reports whether the source is a valid BL program.
+         *
+         * @return true iff no error was injected
+         */
+        public boolean isValid() {
+            return this.valid;
+        }
+
+    }
+
+    /**
+     * The source of randomness.
+     */
+    private final Random random;
+
+    /**
+     * The number of user-defined instructions per program.
+     */
+    private final int instructions;
+
+    /**
+     * The maximum number of statements per block.
+     */
+    private final int blockSize;
+
+    /**
+     * The maximum IF/WHILE nesting depth.
+     */
+    private final int maxDepth;
+
+    /**
+     * The probability that a program gets an injected error.
+     */
+    private final double errorRate;
+
+    /**
+     * The number of programs generated so far.
+     */
+    private int count = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param seed
+     *            the random seed
+     * @param instructions
+     *            the number of user-defined instructions per program
+     * @param blockSize
+     *            the maximum number of statements per block
+     * @param maxDepth
+     *            the maximum IF/WHILE nesting depth
+     * @param errorRate
+     *            the probability that a program gets an injected error
+     * @requires <pre>
+     * instructions >= 0  and  blockSize > 0  and  maxDepth >= 0  and
+     * 0 <= errorRate <= 1
+     * </pre>
+     */
+    public BLProgramGenerator(long seed, int instructions, int blockSize,
+            int maxDepth, double errorRate) {
+        assert instructions >= 0 : "Violation of: instructions >= 0";
+        assert blockSize > 0 : "Violation of: blockSize > 0";
+        assert maxDepth >= 0 : "Violation of: maxDepth >= 0";
+        assert 0 <= errorRate
+                && errorRate <= 1 : "Violation of: 0 <= errorRate <= 1";
+        this.random = new Random(seed);
+        this.instructions = instructions;
+        this.blockSize = blockSize;
+        this.maxDepth = maxDepth;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Generates a block of statements, one line per statement header or
+     * call, and appends the lines to {@code lines}.
+     *
+     * @param lines
+     *            the lines generated so far
+     * @param names
+     *            the instruction names a call may use
+     * @param indent
+     *            the number of spaces to indent
+     * @param depth
+     *            the remaining nesting depth
+     */
+    private void block(List<String> lines, List<String> names, int indent,
+            int depth) {
+        String spaces = " ".repeat(indent);
+        int length = this.random.nextInt(this.blockSize + 1);
+        for (int i = 0; i < length; i++) {
+            int choice;
+            if (depth > 0) {
+                choice = this.random.nextInt(6);
+            } else {
+                choice = 0;
+            }
+            String condition = CONDITIONS[this.random
+                    .nextInt(CONDITIONS.length)];
+            if (choice == 1 || choice == 2) {
+                lines.add(spaces + "IF " + condition + " THEN");
+                this.block(lines, names, indent + INDENT_SIZE, depth - 1);
+                if (choice == 2) {
+                    lines.add(spaces + "ELSE");
+                    this.block(lines, names, indent + INDENT_SIZE, depth - 1);
+                }
+                lines.add(spaces + "END IF");
+            } else if (choice == 3) {
+                lines.add(spaces + "WHILE " + condition + " DO");
+                this.block(lines, names, indent + INDENT_SIZE, depth - 1);
+                lines.add(spaces + "END WHILE");
+            } else {
+                lines.add(spaces + names.get(this.random.nextInt(names.size())));
+            }
+        }
+    }
+
+    /**
+     * Replaces the first whole-word occurrence of {@code word} at or after a
+     * random line in {@code lines} by {@code replacement}.
+     *
+     * @param lines
+     *            the program lines
+     * @param word
+     *            the word to replace
+     * @param replacement
+     *            the replacement
+     * @return true iff a replacement was made
+     */
+    private boolean replace(List<String> lines, String word,
+            String replacement) {
+        int start = this.random.nextInt(lines.size());
+        for (int k = 0; k < lines.size(); k++) {
+            int i = (start + k) % lines.size();
+            String[] words = lines.get(i).trim().split(" ");
+            for (int j = 0; j < words.length; j++) {
+                if (words[j].equals(word)) {
+                    words[j] = replacement;
+                    String line = lines.get(i);
+                    String indent = line.substring(0,
+                            line.length() - line.trim().length());
+                    lines.set(i, indent + String.join(" ", words));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Injects one syntax error into {@code lines}.
+     *
+     * @param lines
+     *            the program lines
+     * @param programName
+     *            the program name
+     * @param instructionNames
+     *            the user-defined instruction names
+     */
+    private void injectError(List<String> lines, String programName,
+            List<String> instructionNames) {
+        boolean injected = false;
+        while (!injected) {
+            switch (this.random.nextInt(6)) {
+                case 0:
+                    injected = this.replace(lines, "THEN", "DO");
+                    break;
+                case 1:
+                    injected = this.replace(lines, "DO", "THEN");
+                    break;
+                case 2:
+                    injected = this.replace(lines,
+                            CONDITIONS[this.random.nextInt(CONDITIONS.length)],
+                            "next-is-maybe");
+                    break;
+                case 3:
+                    //Rename the definition of an instruction to a primitive.
+                    if (!instructionNames.isEmpty()) {
+                        String name = instructionNames.get(
+                                this.random.nextInt(instructionNames.size()));
+                        int i = lines.indexOf("  INSTRUCTION " + name + " IS");
+                        lines.set(i, "  INSTRUCTION move IS");
+                        injected = true;
+                    }
+                    break;
+                case 4:
+                    lines.set(lines.size() - 1, "END " + programName + "x");
+                    injected = true;
+                    break;
+                default:
+                    lines.remove(lines.indexOf("BEGIN"));
+                    injected = true;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Generates the next program.
+     *
+     * @return the generated program
+     */
+    public Sample next() {
+        this.count++;
+        String programName = "Gen" + this.count;
+        List<String> lines = new ArrayList<>();
+        List<String> names = new ArrayList<>(List.of(PRIMITIVES));
+        List<String> instructionNames = new ArrayList<>();
+
+        lines.add("PROGRAM " + programName + " IS");
+        lines.add("");
+        for (int i = 0; i < this.instructions; i++) {
+            String name = "instr-" + i;
+            lines.add("  INSTRUCTION " + name + " IS");
+            this.block(lines, names, 2 * INDENT_SIZE, this.maxDepth);
+            lines.add("  END " + name);
+            lines.add("");
+            names.add(name);
+            instructionNames.add(name);
+        }
+        lines.add("BEGIN");
+        this.block(lines, names, INDENT_SIZE, this.maxDepth);
+        lines.add("END " + programName);
+
+        boolean valid = this.random.nextDouble() >= this.errorRate;
+        if (!valid) {
+            this.injectError(lines, programName, instructionNames);
+        }
+        return new Sample(String.join("\n", lines) + "\n", valid);
+    }
+
+}
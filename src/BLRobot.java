@@ -0,0 +1,49 @@
+import components.statement.Statement;
+
+/**
+ * The robot a BL program controls: the five primitive instructions and the
+ * conditions IF and WHILE test. Execution engines for parsed programs
+ * ({@code ProgramTreeInterpreter}, {@code BLVirtualMachine}) drive a
+ * {@code BLRobot} and leave the world simulation to the implementation.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public interface BLRobot {
+
+    /**
+     * Performs the primitive instruction {@code move}.
+     */
+    void move();
+
+    /**
+     * Performs the primitive instruction {@code turnleft}.
+     */
+    void turnLeft();
+
+    /**
+     * Performs the primitive instruction {@code turnright}.
+     */
+    void turnRight();
+
+    /**
+     * Performs the primitive instruction {@code infect}.
+     */
+    void infect();
+
+    /**
+     * Performs the primitive instruction {@code skip}.
+     */
+    void skip();
+
+    /**
+     * Reports whether condition {@code c} currently holds.
+     *
+     * @param c
+     *            the condition to test
+     * @return true iff {@code c} holds
+     */
+    boolean test(Statement.Condition c);
+
+}
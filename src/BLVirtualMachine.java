@@ -0,0 +1,229 @@
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * Virtual machine for code produced by {@code ProgramCompiler}: a single
+ * switch-dispatch loop over an {@code int} array. The instruction set is
+ *
+ * <pre>
+ * MOVE, TURNLEFT, TURNRIGHT, INFECT, SKIP    perform the primitive
+ * HALT                                       stop
+ * JUMP a                                     continue at a
+ * JUMP_IF_NOT c a                            continue at a unless condition
+ *                                            with ordinal c holds
+ * </pre>
+ *
+ * <p>
+ * Steps are counted as in {@code ProgramTreeInterpreter}: one per primitive
+ * instruction and one per condition test.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class BLVirtualMachine {
+
+    /**
+     * Opcode of the primitive {@code move}.
+     */
+    public static final int MOVE = 0;
+
+    /**
+     * Opcode of the primitive {@code turnleft}.
+     */
+    public static final int TURNLEFT = 1;
+
+    /**
+     * Opcode of the primitive {@code turnright}.
+     */
+    public static final int TURNRIGHT = 2;
+
+    /**
+     * Opcode of the primitive {@code infect}.
+     */
+    public static final int INFECT = 3;
+
+    /**
+     * Opcode of the primitive {@code skip}.
+     */
+    public static final int SKIP = 4;
+
+    /**
+     * Opcode that stops the program.
+     */
+    public static final int HALT = 5;
+
+    /**
+     * Opcode of an unconditional jump; one operand, the target address.
+     */
+    public static final int JUMP = 6;
+
+    /**
+     * Opcode of a conditional jump; two operands, the ordinal of the
+     * condition and the address to jump to when it does not hold.
+     */
+    public static final int JUMP_IF_NOT = 7;
+
+    /**
+     * The conditions, indexed by ordinal.
+     */
+    private static final Statement.Condition[] CONDITIONS = Statement.Condition
+            .values();
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private BLVirtualMachine() {
+    }
+
+    /**
+     * Runs {@code code} on {@code robot} until it halts or {@code maxSteps}
+     * steps have been taken.
+     *
+     * @param code
+     *            the compiled program
+     * @param robot
+     *            the robot to drive
+     * @param maxSteps
+     *            the step budget
+     * @return the number of steps taken
+     * @requires <pre>
+     * [code was produced by ProgramCompiler.compile]  and  maxSteps >= 0
+     * </pre>
+     * @ensures <pre>
+     * run = [number of primitive instructions and condition tests performed]
+     *  and  run <= maxSteps
+     * </pre>
+     */
+    public static long run(int[] code, BLRobot robot, long maxSteps) {
+        assert code != null : "Violation of: code is not null";
+        assert robot != null : "Violation of: robot is not null";
+        assert maxSteps >= 0 : "Violation of: maxSteps >= 0";
+
+        long steps = 0;
+        int pc = 0;
+        while (steps < maxSteps) {
+            switch (code[pc]) {
+                case MOVE:
+                    robot.move();
+                    steps++;
+                    pc++;
+                    break;
+                case TURNLEFT:
+                    robot.turnLeft();
+                    steps++;
+                    pc++;
+                    break;
+                case TURNRIGHT:
+                    robot.turnRight();
+                    steps++;
+                    pc++;
+                    break;
+                case INFECT:
+                    robot.infect();
+                    steps++;
+                    pc++;
+                    break;
+                case SKIP:
+                    robot.skip();
+                    steps++;
+                    pc++;
+                    break;
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case JUMP_IF_NOT:
+                    steps++;
+                    if (robot.test(CONDITIONS[code[pc + 1]])) {
+                        pc += 3;
+                    } else {
+                        pc = code[pc + 2];
+                    }
+                    break;
+                default:
+                    //HALT
+                    return steps;
+            }
+        }
+        return steps;
+    }
+
+    /*
+     * Main benchmark method --------------------------------------------------
+     */
+
+    /**
+     * Compares tree-walking execution of a BL program with running it on the
+     * virtual machine and as JVM bytecode from {@code ProgramJit}. Usage:
+     * {@code java BLVirtualMachine [file [steps [rounds]]]}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final long defaultSteps = 10_000_000L;
+        final int defaultRounds = 5;
+        final long seed = 42;
+
+        String fileName = "test/program1.bl";
+        long maxSteps = defaultSteps;
+        int rounds = defaultRounds;
+        if (args.length > 0) {
+            fileName = args[0];
+        }
+        if (args.length > 1) {
+            maxSteps = Long.parseLong(args[1]);
+        }
+        if (args.length > 2) {
+            rounds = Integer.parseInt(args[2]);
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        Program p = new Program1Parse1();
+        SimpleReader file = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        p.parse(tokens);
+        int[] code = ProgramCompiler.compile(p);
+        ProgramJit.Compiled jit = ProgramJit.compile(p);
+        out.println("*** " + fileName + ": " + code.length
+                + " words of code ***");
+
+        for (int round = 1; round <= rounds; round++) {
+            SimulatedRobot treeRobot = new SimulatedRobot(seed);
+            long start = System.nanoTime();
+            long treeSteps = ProgramTreeInterpreter.run(p, treeRobot,
+                    maxSteps);
+            long treeNanos = System.nanoTime() - start;
+
+            SimulatedRobot vmRobot = new SimulatedRobot(seed);
+            start = System.nanoTime();
+            long vmSteps = run(code, vmRobot, maxSteps);
+            long vmNanos = System.nanoTime() - start;
+
+            SimulatedRobot jitRobot = new SimulatedRobot(seed);
+            start = System.nanoTime();
+            long jitSteps = ProgramJit.run(jit, jitRobot, maxSteps);
+            long jitNanos = System.nanoTime() - start;
+
+            boolean same = treeSteps == vmSteps && treeSteps == jitSteps
+                    && treeRobot.trace() == vmRobot.trace()
+                    && treeRobot.trace() == jitRobot.trace();
+            out.println(String.format(
+                    "round %d: tree %.1f ns/step, vm %.1f ns/step, "
+                            + "jit %.1f ns/step, %d steps%s",
+                    round, (double) treeNanos / Math.max(1, treeSteps),
+                    (double) vmNanos / Math.max(1, vmSteps),
+                    (double) jitNanos / Math.max(1, jitSteps), vmSteps,
+                    same ? "" : " (TRACES DIFFER)"));
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Regression runner for the parsers' error behavior over a corpus of BL
+ * files. Every {@code .bl} file under a directory is parsed, in parallel and
+ * without stopping at the first syntax error, and summarized by a compact
+ * signature: {@code OK}, or {@code ERROR}, the number of tokens the parser
+ * had consumed when it gave up, and the check that failed. The signatures,
+ * by file, form an index that can be saved and compared with a baseline, so
+ * a change in which check fires, or where, shows up as a one-line
+ * difference.
+ *
+ * <p>
+ * Files whose names start with {@code statement} are parsed as blocks with
+ * {@code Statement1Parse1}; all others as programs with
+ * {@code Program1Parse1}, as in {@code data}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class CorpusRunner {
+
+    /**
+     * Prefix of the parsers' error messages, left out of signatures.
+     */
+    private static final String VIOLATION = "Violation of: ";
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private CorpusRunner() {
+    }
+
+    /**
+     * Parses {@code source} and returns its signature.
+     *
+     * @param block
+     *            whether the source is a block rather than a program
+     * @param source
+     *            the UTF-8 encoded source
+     * @return {@code OK}, or {@code ERROR}, the number of tokens consumed and
+     *         the failed check, or {@code StackOverflowError}, separated by
+     *         spaces
+     */
+    public static String signature(boolean block, byte[] source) {
+        assert source != null : "Violation of: source is not null";
+
+        Queue<String> tokens = SwarTokenizer.tokens(source);
+        int length = tokens.length();
+        String signature = "OK";
+        try {
+            if (block) {
+                Statement s = new Statement1Parse1();
+                s.parseBlock(tokens);
+                Reporter.assertElseFatalError(
+                        tokens.dequeue().equals(Tokenizer.END_OF_INPUT),
+                        "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+            } else {
+                Program p = new Program1Parse1();
+                p.parse(tokens);
+            }
+        } catch (RuntimeException | StackOverflowError e) {
+            //A file nested too deeply for the parser fails only itself.
+            String check = e.getMessage();
+            if (check == null) {
+                check = e.getClass().getSimpleName();
+            }
+            int violation = check.indexOf(VIOLATION);
+            if (violation >= 0) {
+                check = check.substring(violation + VIOLATION.length());
+            }
+            signature = "ERROR " + (length - tokens.length()) + " "
+                    + check.replace('\t', ' ').replace('\n', ' ').trim();
+        }
+        return signature;
+    }
+
+    /**
+     * Parses every {@code .bl} file under {@code directory} on
+     * {@code threads} threads and returns the index of their signatures.
+     *
+     * @param directory
+     *            the corpus directory
+     * @param threads
+     *            the number of parser threads
+     * @return the signature of each file, by its path relative to
+     *         {@code directory} with {@code /} separators
+     * @throws IOException
+     *             if the directory or a file cannot be read
+     * @requires threads > 0
+     */
+    public static SortedMap<String, String> run(Path directory, int threads)
+            throws IOException {
+        assert directory != null : "Violation of: directory is not null";
+        assert threads > 0 : "Violation of: threads > 0";
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk
+                    .filter(file -> Files.isRegularFile(file)
+                            && file.getFileName().toString().endsWith(".bl"))
+                    .collect(Collectors.toList());
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "bl-corpus");
+            t.setDaemon(true);
+            return t;
+        });
+        SortedMap<String, String> index = new TreeMap<>();
+        try {
+            List<Future<String>> signatures = new ArrayList<>();
+            for (Path file : files) {
+                boolean block = file.getFileName().toString()
+                        .startsWith("statement");
+                signatures.add(pool.submit(
+                        () -> signature(block, Files.readAllBytes(file))));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                String name = directory.relativize(files.get(i)).toString()
+                        .replace(files.get(i).getFileSystem().getSeparator(),
+                                "/");
+                index.put(name, signatures.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        return index;
+    }
+
+    /**
+     * Writes {@code index} to {@code file}, one tab-separated path and
+     * signature per line, in path order.
+     *
+     * @param index
+     *            the index
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void save(SortedMap<String, String> index, Path file)
+            throws IOException {
+        assert index != null : "Violation of: index is not null";
+        assert file != null : "Violation of: file is not null";
+
+        List<String> lines = new ArrayList<>();
+        for (java.util.Map.Entry<String, String> entry : index.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue());
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an index written by {@link #save(SortedMap, Path)}.
+     *
+     * @param file
+     *            the file to read
+     * @return the index
+     * @throws IOException
+     *             if the file cannot be read or is malformed
+     */
+    public static SortedMap<String, String> load(Path file)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        SortedMap<String, String> index = new TreeMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException("Malformed index line: " + line);
+                }
+                index.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the differences between {@code baseline} and {@code current},
+     * in path order: {@code + path signature} for a file only in
+     * {@code current}, {@code - path signature} for a file only in
+     * {@code baseline}, and {@code ~ path old -> new} for a file whose
+     * signature changed.
+     *
+     * @param baseline
+     *            the baseline index
+     * @param current
+     *            the current index
+     * @return the differences, empty if the indexes are equal
+     */
+    public static List<String> diff(SortedMap<String, String> baseline,
+            SortedMap<String, String> current) {
+        assert baseline != null : "Violation of: baseline is not null";
+        assert current != null : "Violation of: current is not null";
+
+        TreeSet<String> paths = new TreeSet<>(baseline.keySet());
+        paths.addAll(current.keySet());
+        List<String> differences = new ArrayList<>();
+        for (String path : paths) {
+            String before = baseline.get(path);
+            String after = current.get(path);
+            if (before == null) {
+                differences.add("+ " + path + " " + after);
+            } else if (after == null) {
+                differences.add("- " + path + " " + before);
+            } else if (!before.equals(after)) {
+                differences.add("~ " + path + " " + before + " -> " + after);
+            }
+        }
+        return differences;
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Main method. Usage: {@code java CorpusRunner DIRECTORY [BASELINE]}.
+     * Without a baseline, prints the index; with a baseline file that does
+     * not exist yet, writes the index to it; with one that exists, prints the
+     * differences and exits with status 1 if there are any.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        final long nanosPerMilli = 1_000_000L;
+
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: java CorpusRunner DIRECTORY [BASELINE]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        SortedMap<String, String> index = run(Paths.get(args[0]),
+                Runtime.getRuntime().availableProcessors());
+        long elapsed = (System.nanoTime() - start) / nanosPerMilli;
+        long errors = index.values().stream()
+                .filter(signature -> !signature.equals("OK")).count();
+
+        SimpleWriter out = new SimpleWriter1L();
+        List<String> differences = new ArrayList<>();
+        if (args.length == 1) {
+            for (java.util.Map.Entry<String, String> entry : index
+                    .entrySet()) {
+                out.println(entry.getKey() + "\t" + entry.getValue());
+            }
+        } else {
+            Path baseline = Paths.get(args[1]);
+            if (Files.exists(baseline)) {
+                differences = diff(load(baseline), index);
+                for (String difference : differences) {
+                    out.println(difference);
+                }
+            } else {
+                save(index, baseline);
+                out.println("Wrote baseline " + baseline);
+            }
+        }
+        out.println(index.size() + " files, " + errors + " with errors, "
+                + differences.size() + " differences, " + elapsed + " ms");
+        out.close();
+        if (!differences.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+}
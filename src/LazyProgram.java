@@ -0,0 +1,568 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * A BL program whose instruction bodies and main body are parsed only when
+ * first asked for. {@link #parse(Queue)} checks the program header, every
+ * instruction header and the program footer, but only skims the bodies: it
+ * matches IF and WHILE with their END to find where each body ends and
+ * remembers its tokens. Syntax errors inside a body are reported when that
+ * body is parsed, with the same messages as {@code Program1Parse1}.
+ *
+ * <p>
+ * The context of a {@code Program} cannot parse its values on demand, so the
+ * lazy program is a separate object; {@link #toProgram()} parses whatever is
+ * left and builds the equivalent {@code Program}.
+ *
+ * <p>
+ * Every body is parsed under the options the program was skimmed with,
+ * whichever thread parses it; their tables are not used.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class LazyProgram {
+
+    /**
+     * All tokens of the program, END_OF_INPUT excluded.
+     */
+    private final String[] tokens;
+
+    /**
+     * The program name.
+     */
+    private final String name;
+
+    /**
+     * The instruction names, in the order defined.
+     */
+    private final List<String> instructionNames = new ArrayList<>();
+
+    /**
+     * Start of the tokens of each instruction body, by name.
+     */
+    private final java.util.Map<String, Integer> starts = new HashMap<>();
+
+    /**
+     * End (exclusive) of the tokens of each instruction body, by name.
+     */
+    private final java.util.Map<String, Integer> ends = new HashMap<>();
+
+    /**
+     * The instruction bodies parsed so far, by name.
+     */
+    private final java.util.Map<String, Statement> parsed = new HashMap<>();
+
+    /**
+     * Start of the tokens of the main body.
+     */
+    private final int bodyStart;
+
+    /**
+     * End (exclusive) of the tokens of the main body.
+     */
+    private final int bodyEnd;
+
+    /**
+     * The main body, or null if not parsed yet.
+     */
+    private Statement body = null;
+
+    /**
+     * The options the program was skimmed with.
+     */
+    private final ParseOptions options;
+
+    /**
+     * Constructor; skims the program.
+     *
+     * @param tokens
+     *            the program tokens, END_OF_INPUT excluded
+     * @param options
+     *            the options to skim and parse with
+     */
+    private LazyProgram(String[] tokens, ParseOptions options) {
+        this.tokens = tokens;
+        this.options = options;
+        int i = 0;
+        Reporter.assertElseFatalError(this.token(i).equals("PROGRAM"),
+                "Violation of: <\"PROGRAM\"> is proper prefix of tokens");
+        i++;
+        this.name = this.token(i);
+        options.checkIdentifier(this.name);
+        Reporter.assertElseFatalError(TokenClassifier.isIdentifier(this.name),
+                "Violation of: <\"Program name\"> is a proper Identifier");
+        i++;
+        Reporter.assertElseFatalError(this.token(i).equals("IS"),
+                "Violation of: Identifier" + " should be followed by <\"IS\">");
+        i++;
+
+        while (this.token(i).equals("INSTRUCTION")) {
+            options.checkInstructions(this.instructionNames.size() + 1);
+            i++;
+            String identifier = this.token(i);
+            options.checkIdentifier(identifier);
+            TokenClassifier.Kind kind = TokenClassifier.classify(identifier);
+            Reporter.assertElseFatalError(
+                    kind == TokenClassifier.Kind.IDENTIFIER
+                            || kind == TokenClassifier.Kind.PRIMITIVE,
+                    "Violation of: <\"User-defined instruction\"> is a proper Identifier");
+            Reporter.assertElseFatalError(kind != TokenClassifier.Kind.PRIMITIVE,
+                    "Violation of: <\"user-defined instruction\"> can not be the name"
+                            + " of the primitive instructions.");
+            i++;
+            Reporter.assertElseFatalError(this.token(i).equals("IS"),
+                    "Violation of: Identifier"
+                            + " should be followed by <\"IS\">");
+            i++;
+            int start = i;
+            i = this.skim(i);
+            Reporter.assertElseFatalError(
+                    identifier.equals(this.token(i + 1)),
+                    "Violation of: <\"Identifer\"> at the end of new instruction "
+                            + "definition must be the same as the identifier at the "
+                            + "beginning of the definition.");
+            Reporter.assertElseFatalError(
+                    !this.starts.containsKey(identifier),
+                    "Violation of: User defined instructions names should be unique.");
+            this.instructionNames.add(identifier);
+            this.starts.put(identifier, start);
+            this.ends.put(identifier, i);
+            i += 2;
+        }
+
+        Reporter.assertElseFatalError(this.token(i).equals("BEGIN"),
+                "Violation of: the main program should start with BEGIN.");
+        i++;
+        this.bodyStart = i;
+        i = this.skim(i);
+        this.bodyEnd = i;
+        Reporter.assertElseFatalError(this.name.equals(this.token(i + 1)),
+                "Violation of: <\"Identifer\"> at the end of program must be the"
+                        + " same as the identifier at the beginning of the program.");
+        Reporter.assertElseFatalError(i + 2 == tokens.length,
+                "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+    }
+
+    /**
+     * Returns token {@code i}, or END_OF_INPUT past the last token.
+     *
+     * @param i
+     *            the position of the token
+     * @return the token
+     */
+    private String token(int i) {
+        String token = Tokenizer.END_OF_INPUT;
+        if (i < this.tokens.length) {
+            token = this.tokens[i];
+        }
+        return token;
+    }
+
+    /**
+     * Skims a body starting at token {@code start}, counting each IF and
+     * WHILE as opening and each END as closing, and returns the position of
+     * the END that closes the body itself.
+     *
+     * @param start
+     *            the position of the first token of the body
+     * @return the position of the closing END
+     */
+    private int skim(int start) {
+        int depth = 0;
+        int i = start;
+        while (true) {
+            String token = this.token(i);
+            Reporter.assertElseFatalError(
+                    !token.equals(Tokenizer.END_OF_INPUT),
+                    "Violation of: <\"END\">" + " present in front of Identifier.");
+            if (token.equals("END")) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+                //Skip the IF or WHILE after END.
+                i++;
+            } else if (token.equals("IF") || token.equals("WHILE")) {
+                depth++;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Parses the block of tokens from {@code start} to {@code end} with
+     * {@code options}.
+     *
+     * @param start
+     *            the position of the first token
+     * @param end
+     *            the position after the last token
+     * @param options
+     *            the options forked from this program's options
+     * @return the parsed block
+     */
+    private Statement parseBlock(int start, int end, ParseOptions options) {
+        Queue<String> block = new Queue1L<>();
+        for (int i = start; i < end; i++) {
+            block.enqueue(this.tokens[i]);
+        }
+        block.enqueue(Tokenizer.END_OF_INPUT);
+        Statement s = new Statement1Parse1();
+        options.parseBody(s, block);
+        /*
+         * The skim found the END that closes this block; stopping anywhere
+         * else means an ELSE or a misplaced END.
+         */
+        Reporter.assertElseFatalError(
+                block.front().equals(Tokenizer.END_OF_INPUT),
+                "Violation of: <\"END\">" + " present in front of Identifier.");
+        return s;
+    }
+
+    /**
+     * Skims a program from {@code tokens}.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return the lazily parsed program
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [the header, instruction headers and footer of a program are
+     *     correct, and tokens end with the program] then
+     *  [parse = a program whose bodies are parsed on first use]  and
+     *  tokens = <>
+     * else
+     *  [reports an appropriate error message to the console and terminates client]
+     * </pre>
+     */
+    public static LazyProgram parse(Queue<String> tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+        assert tokens.length() > 0 : ""
+                + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
+
+        return skim(tokens, ParseOptions.current());
+    }
+
+    /**
+     * Skims a program from {@code tokens} with {@code options}, under which
+     * its bodies are parsed later. The time limit runs from the skim.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param options
+     *            the options
+     * @return the lazily parsed program
+     * @updates tokens, options
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * [as parse(tokens), with options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public static LazyProgram parse(Queue<String> tokens,
+            ParseOptions options) {
+        assert tokens != null : "Violation of: tokens is not null";
+        assert options != null : "Violation of: options is not null";
+        assert tokens.length() > 0 : ""
+                + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
+
+        options.begin(tokens);
+        return skim(tokens, options);
+    }
+
+    /**
+     * Skims a program from {@code tokens} with {@code options}.
+     *
+     * @param tokens
+     *            the input tokens
+     * @param options
+     *            the options
+     * @return the lazily parsed program
+     * @updates tokens
+     */
+    private static LazyProgram skim(Queue<String> tokens,
+            ParseOptions options) {
+        String[] array = new String[tokens.length() - 1];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = tokens.dequeue();
+        }
+        Reporter.assertElseFatalError(
+                tokens.dequeue().equals(Tokenizer.END_OF_INPUT),
+                "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+        return new LazyProgram(array, options);
+    }
+
+    /**
+     * Returns the program name.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the instruction names, in the order defined.
+     *
+     * @return the instruction names
+     */
+    public List<String> instructionNames() {
+        return Collections.unmodifiableList(this.instructionNames);
+    }
+
+    /**
+     * Reports whether the program defines instruction {@code name}.
+     *
+     * @param name
+     *            the instruction name
+     * @return true iff {@code name} is defined
+     */
+    public boolean hasInstruction(String name) {
+        return this.starts.containsKey(name);
+    }
+
+    /**
+     * Returns the body of instruction {@code name}, parsing it on first use.
+     *
+     * @param name
+     *            the instruction name
+     * @return the body
+     * @aliases reference returned by instruction
+     * @requires hasInstruction(name)
+     */
+    public Statement instruction(String name) {
+        assert this.hasInstruction(name) : ""
+                + "Violation of: hasInstruction(name)";
+
+        Statement s = this.parsed.get(name);
+        if (s == null) {
+            ParseOptions fork = this.options.fork();
+            s = this.parseBlock(this.starts.get(name), this.ends.get(name),
+                    fork);
+            this.options.merge(fork);
+            this.parsed.put(name, s);
+        }
+        return s;
+    }
+
+    /**
+     * Returns the main body, parsing it on first use.
+     *
+     * @return the body
+     * @aliases reference returned by body
+     */
+    public Statement body() {
+        if (this.body == null) {
+            ParseOptions fork = this.options.fork();
+            this.body = this.parseBlock(this.bodyStart, this.bodyEnd, fork);
+            this.options.merge(fork);
+        }
+        return this.body;
+    }
+
+    /**
+     * Returns the number of bodies, the main body included, parsed so far.
+     *
+     * @return the number of parsed bodies
+     */
+    public int parsedBodies() {
+        int count = this.parsed.size();
+        if (this.body != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Waits for {@code body} and returns it, rethrowing what stopped its
+     * parse.
+     *
+     * @param body
+     *            the future body
+     * @return the body
+     */
+    private static Statement join(CompletableFuture<Statement> body) {
+        try {
+            return body.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses every body not parsed yet on {@code executor}, each body as a
+     * separate task, and waits for them. The bodies are independent token
+     * ranges, so they parse in parallel, each task under its own fork of
+     * this program's options; if any has a syntax error, the error of the
+     * first in source order is reported.
+     *
+     * @param executor
+     *            the executor to parse on
+     * @updates this
+     * @ensures <pre>
+     * if [every body is a BL block] then
+     *  parsedBodies = |instructionNames| + 1
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public void parseAll(Executor executor) {
+        assert executor != null : "Violation of: executor is not null";
+
+        java.util.Map<String, CompletableFuture<Statement>> pending =
+                new HashMap<>();
+        java.util.Map<String, ParseOptions> forks = new HashMap<>();
+        for (String instruction : this.instructionNames) {
+            if (!this.parsed.containsKey(instruction)) {
+                int start = this.starts.get(instruction);
+                int end = this.ends.get(instruction);
+                ParseOptions fork = this.options.fork();
+                forks.put(instruction, fork);
+                pending.put(instruction, CompletableFuture.supplyAsync(
+                        () -> this.parseBlock(start, end, fork), executor));
+            }
+        }
+        CompletableFuture<Statement> main = null;
+        ParseOptions mainFork = this.options.fork();
+        if (this.body == null) {
+            main = CompletableFuture.supplyAsync(() -> this
+                    .parseBlock(this.bodyStart, this.bodyEnd, mainFork),
+                    executor);
+        }
+        /*
+         * Collect on this thread, in source order, so the maps and the
+         * options stay private.
+         */
+        for (String instruction : this.instructionNames) {
+            CompletableFuture<Statement> body = pending.get(instruction);
+            if (body != null) {
+                this.parsed.put(instruction, join(body));
+                this.options.merge(forks.get(instruction));
+            }
+        }
+        if (main != null) {
+            this.body = join(main);
+            this.options.merge(mainFork);
+        }
+    }
+
+    /**
+     * Parses every body not parsed yet and returns the program. The parsed
+     * bodies are handed over to the program, not copied, and this program
+     * forgets them; bodies returned earlier by {@link #instruction(String)}
+     * are aliases into the program, and the one returned earlier by
+     * {@link #body()} is left empty.
+     *
+     * @return the program
+     * @updates this
+     * @ensures <pre>
+     * toProgram = [the program Program1Parse1 parses from the tokens]  and
+     *  parsedBodies = 0
+     * </pre>
+     */
+    public Program toProgram() {
+        Program p = new Program1Parse1();
+        p.setName(this.name);
+        Map<String, Statement> context = p.newContext();
+        for (String instruction : this.instructionNames) {
+            context.add(instruction, this.instruction(instruction));
+        }
+        p.swapContext(context);
+        Statement s = this.body();
+        p.swapBody(s);
+        this.parsed.clear();
+        this.body = null;
+        return p;
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Compares the time to list the instruction names of a BL program with
+     * {@code Program1Parse1} and with a lazy parse. Usage:
+     * {@code java LazyProgram [file]}; without a file, a large generated
+     * program is used.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final int rounds = 20;
+        final long nanosPerMilli = 1_000_000L;
+        final int instructions = 2_000;
+        final int blockSize = 6;
+        final int depth = 4;
+
+        String source;
+        if (args.length > 0) {
+            SimpleReader file = new SimpleReader1L(args[0]);
+            StringBuilder b = new StringBuilder();
+            while (!file.atEOS()) {
+                b.append(file.nextLine()).append('\n');
+            }
+            file.close();
+            source = b.toString();
+        } else {
+            source = new BLProgramGenerator(1, instructions, blockSize, depth,
+                    0).next().source();
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        long eager = Long.MAX_VALUE;
+        long lazy = Long.MAX_VALUE;
+        int names = 0;
+        for (int r = 0; r < rounds; r++) {
+            Queue<String> tokens = SourceTokenizer.tokens(source);
+            long start = System.nanoTime();
+            Program p = new Program1Parse1();
+            p.parse(tokens);
+            Map<String, Statement> context = p.newContext();
+            p.swapContext(context);
+            names = context.size();
+            p.swapContext(context);
+            eager = Math.min(eager, System.nanoTime() - start);
+
+            tokens = SourceTokenizer.tokens(source);
+            start = System.nanoTime();
+            LazyProgram lp = parse(tokens);
+            names = lp.instructionNames().size();
+            lazy = Math.min(lazy, System.nanoTime() - start);
+        }
+        out.println(names + " instructions: eager parse "
+                + String.format("%.2f", (double) eager / nanosPerMilli)
+                + " ms, lazy skim "
+                + String.format("%.2f", (double) lazy / nanosPerMilli)
+                + " ms");
+        out.close();
+    }
+
+}
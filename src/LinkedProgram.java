@@ -0,0 +1,653 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * A parsed BL program with every call resolved ahead of time. Linking gives
+ * each user-defined instruction a dense slot, from 0 in alphabetical order,
+ * and each call site a code: the primitives have the fixed codes of the
+ * {@code BLVirtualMachine} opcodes {@code MOVE} to {@code SKIP}, and a call
+ * to the instruction in slot {@code k} has code {@code USER + k}. Undefined
+ * instructions are reported when linking instead of when they are first
+ * called.
+ *
+ * <p>
+ * A CALL node of {@code Statement} holds only a name, so the linked bodies
+ * are kept in a separate node pool of {@code int} arrays, in pre-order with
+ * the children of each node stored together, and {@link #run} executes them
+ * with array indexing where {@code ProgramTreeInterpreter} looks each call up
+ * by name. Calls are not expanded in place, so unlike
+ * {@code ProgramCompiler} a recursive program can be linked.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class LinkedProgram {
+
+    /**
+     * Code of a call to the user-defined instruction in slot 0.
+     */
+    public static final int USER = BLVirtualMachine.SKIP + 1;
+
+    /**
+     * Initial capacity of the node pool.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The kinds of nodes, indexed by ordinal.
+     */
+    private static final Statement.Kind[] KINDS = Statement.Kind.values();
+
+    /**
+     * The conditions, indexed by ordinal.
+     */
+    private static final Statement.Condition[] CONDITIONS = Statement.Condition
+            .values();
+
+    /**
+     * The program name.
+     */
+    private final String name;
+
+    /**
+     * The user-defined instruction names, by slot.
+     */
+    private final String[] names;
+
+    /**
+     * The slot of each user-defined instruction, by name.
+     */
+    private final java.util.Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The root node of the body of each instruction, by slot.
+     */
+    private final int[] roots;
+
+    /**
+     * The root node of the main body.
+     */
+    private int bodyRoot;
+
+    /**
+     * Kind ordinal of each node.
+     */
+    private int[] kinds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Condition ordinal of each IF, IF_ELSE and WHILE node, and call code of
+     * each CALL node.
+     */
+    private int[] operands = new int[INITIAL_CAPACITY];
+
+    /**
+     * Position in {@code children} of the first child of each node.
+     */
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of children of each node.
+     */
+    private int[] childCount = new int[INITIAL_CAPACITY];
+
+    /**
+     * Node numbers of the children of all nodes.
+     */
+    private int[] children = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of nodes in the pool.
+     */
+    private int nodeCount = 0;
+
+    /**
+     * Number of entries used in {@code children}.
+     */
+    private int childTotal = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            the program name
+     * @param names
+     *            the user-defined instruction names, by slot
+     */
+    private LinkedProgram(String name, String[] names) {
+        this.name = name;
+        this.names = names;
+        this.roots = new int[names.length];
+        for (int slot = 0; slot < names.length; slot++) {
+            this.slots.put(names[slot], slot);
+        }
+    }
+
+    /**
+     * Returns {@code a}, grown to hold index {@code i}.
+     *
+     * @param a
+     *            the array
+     * @param i
+     *            the index to hold
+     * @return {@code a} or a larger copy of it
+     */
+    private static int[] ensure(int[] a, int i) {
+        int[] result = a;
+        if (i >= a.length) {
+            result = Arrays.copyOf(a, Math.max(2 * a.length, i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Adds a node with {@code count} children to the pool, reserving room for
+     * its children.
+     *
+     * @param kind
+     *            the kind of the node
+     * @param operand
+     *            the condition ordinal or call code
+     * @param count
+     *            the number of children
+     * @return the number of the node
+     */
+    private int addNode(Statement.Kind kind, int operand, int count) {
+        int id = this.nodeCount;
+        this.kinds = ensure(this.kinds, id);
+        this.operands = ensure(this.operands, id);
+        this.firstChild = ensure(this.firstChild, id);
+        this.childCount = ensure(this.childCount, id);
+        this.kinds[id] = kind.ordinal();
+        this.operands[id] = operand;
+        this.firstChild[id] = this.childTotal;
+        this.childCount[id] = count;
+        this.nodeCount++;
+        this.childTotal += count;
+        this.children = ensure(this.children, this.childTotal);
+        return id;
+    }
+
+    /**
+     * Links {@code s} into the pool.
+     *
+     * @param s
+     *            the statement to link
+     * @return the number of its node
+     */
+    private int link(Statement s) {
+        int id = 0;
+        switch (s.kind()) {
+            case BLOCK: {
+                int length = s.lengthOfBlock();
+                id = this.addNode(Statement.Kind.BLOCK, 0, length);
+                for (int i = 0; i < length; i++) {
+                    Statement child = s.removeFromBlock(i);
+                    int childId = this.link(child);
+                    this.children[this.firstChild[id] + i] = childId;
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                id = this.addNode(Statement.Kind.IF, c.ordinal(), 1);
+                int blockId = this.link(block);
+                this.children[this.firstChild[id]] = blockId;
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                id = this.addNode(Statement.Kind.IF_ELSE, c.ordinal(), 2);
+                int thenId = this.link(thenBlock);
+                int elseId = this.link(elseBlock);
+                this.children[this.firstChild[id]] = thenId;
+                this.children[this.firstChild[id] + 1] = elseId;
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                id = this.addNode(Statement.Kind.WHILE, c.ordinal(), 1);
+                int blockId = this.link(block);
+                this.children[this.firstChild[id]] = blockId;
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String instruction = s.disassembleCall();
+                int code = this.code(instruction);
+                Reporter.assertElseFatalError(code >= 0,
+                        "Violation of: instruction " + instruction
+                                + " is defined");
+                id = this.addNode(Statement.Kind.CALL, code, 0);
+                s.assembleCall(instruction);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Links {@code p}.
+     *
+     * @param p
+     *            the program to link
+     * @return the linked program
+     * @ensures <pre>
+     * if [every instruction called in p is primitive or in the context of p]
+     *  then
+     *  [link is p with every call resolved to its code]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static LinkedProgram link(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        try {
+            List<String> names = new ArrayList<>();
+            for (Map.Pair<String, Statement> instruction : context) {
+                names.add(instruction.key());
+            }
+            Collections.sort(names);
+            LinkedProgram linked = new LinkedProgram(p.name(),
+                    names.toArray(new String[names.size()]));
+            for (int slot = 0; slot < linked.names.length; slot++) {
+                linked.roots[slot] = linked
+                        .link(context.value(linked.names[slot]));
+            }
+            linked.bodyRoot = linked.link(body);
+            return linked;
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+    }
+
+    /**
+     * Returns the program name.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the number of user-defined instructions, which are in slots
+     * {@code 0} to {@code instructions() - 1}.
+     *
+     * @return the number of instructions
+     */
+    public int instructions() {
+        return this.names.length;
+    }
+
+    /**
+     * Returns the name of the instruction in slot {@code slot}.
+     *
+     * @param slot
+     *            the slot
+     * @return the instruction name
+     * @requires 0 <= slot < instructions()
+     */
+    public String instructionName(int slot) {
+        assert 0 <= slot && slot < this.names.length : ""
+                + "Violation of: 0 <= slot < instructions()";
+        return this.names[slot];
+    }
+
+    /**
+     * Returns the slot of user-defined instruction {@code instruction}, or -1
+     * if there is no such instruction.
+     *
+     * @param instruction
+     *            the instruction name
+     * @return the slot, or -1
+     */
+    public int slot(String instruction) {
+        Integer slot = this.slots.get(instruction);
+        int result = -1;
+        if (slot != null) {
+            result = slot;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the code of a call to {@code instruction}, or -1 if it is
+     * neither primitive nor defined.
+     *
+     * @param instruction
+     *            the instruction name
+     * @return the call code, or -1
+     */
+    public int code(String instruction) {
+        int code;
+        switch (instruction) {
+            case "move":
+                code = BLVirtualMachine.MOVE;
+                break;
+            case "turnleft":
+                code = BLVirtualMachine.TURNLEFT;
+                break;
+            case "turnright":
+                code = BLVirtualMachine.TURNRIGHT;
+                break;
+            case "infect":
+                code = BLVirtualMachine.INFECT;
+                break;
+            case "skip":
+                code = BLVirtualMachine.SKIP;
+                break;
+            default:
+                code = this.slot(instruction);
+                if (code >= 0) {
+                    code += USER;
+                }
+                break;
+        }
+        return code;
+    }
+
+    /**
+     * Returns the number of nodes in the linked bodies, the main body
+     * included.
+     *
+     * @return the number of nodes
+     */
+    public int nodes() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the call codes of the main body, or of the instruction in slot
+     * {@code slot} if {@code slot >= 0}, in the order the calls appear.
+     *
+     * @param slot
+     *            the slot, or -1 for the main body
+     * @return the call codes
+     * @requires -1 <= slot < instructions()
+     */
+    public int[] callCodes(int slot) {
+        assert -1 <= slot && slot < this.names.length : ""
+                + "Violation of: -1 <= slot < instructions()";
+        int root = this.bodyRoot;
+        if (slot >= 0) {
+            root = this.roots[slot];
+        }
+        /*
+         * The nodes of a body are numbered consecutively in pre-order, and
+         * the next body starts right after it.
+         */
+        int end = this.nodeCount;
+        for (int r : this.roots) {
+            if (r > root && r < end) {
+                end = r;
+            }
+        }
+        if (this.bodyRoot > root && this.bodyRoot < end) {
+            end = this.bodyRoot;
+        }
+        int count = 0;
+        int[] codes = new int[end - root];
+        for (int id = root; id < end; id++) {
+            if (KINDS[this.kinds[id]] == Statement.Kind.CALL) {
+                codes[count] = this.operands[id];
+                count++;
+            }
+        }
+        return Arrays.copyOf(codes, count);
+    }
+
+    /**
+     * Executor of the linked bodies, bounded by a step budget as in
+     * {@code ProgramTreeInterpreter}.
+     */
+    private final class Run {
+
+        /**
+         * The robot being driven.
+         */
+        private final BLRobot robot;
+
+        /**
+         * The number of steps left in the budget.
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param robot
+         *            the robot to drive
+         * @param maxSteps
+         *            the step budget
+         */
+        Run(BLRobot robot, long maxSteps) {
+            this.robot = robot;
+            this.remaining = maxSteps;
+        }
+
+        /**
+         * Tests the condition with ordinal {@code c}, using up one step.
+         *
+         * @param c
+         *            the condition ordinal
+         * @return true iff the condition holds
+         */
+        private boolean test(int c) {
+            this.remaining--;
+            return this.robot.test(CONDITIONS[c]);
+        }
+
+        /**
+         * Executes node {@code id} until it finishes or the budget runs out.
+         *
+         * @param id
+         *            the node number
+         */
+        void execute(int id) {
+            int first = LinkedProgram.this.firstChild[id];
+            int[] kids = LinkedProgram.this.children;
+            switch (KINDS[LinkedProgram.this.kinds[id]]) {
+                case BLOCK: {
+                    int count = LinkedProgram.this.childCount[id];
+                    for (int i = 0; i < count && this.remaining > 0; i++) {
+                        this.execute(kids[first + i]);
+                    }
+                    break;
+                }
+                case IF: {
+                    if (this.remaining > 0
+                            && this.test(LinkedProgram.this.operands[id])) {
+                        this.execute(kids[first]);
+                    }
+                    break;
+                }
+                case IF_ELSE: {
+                    if (this.remaining > 0) {
+                        if (this.test(LinkedProgram.this.operands[id])) {
+                            this.execute(kids[first]);
+                        } else {
+                            this.execute(kids[first + 1]);
+                        }
+                    }
+                    break;
+                }
+                case WHILE: {
+                    while (this.remaining > 0
+                            && this.test(LinkedProgram.this.operands[id])) {
+                        this.execute(kids[first]);
+                    }
+                    break;
+                }
+                case CALL: {
+                    if (this.remaining > 0) {
+                        this.call(LinkedProgram.this.operands[id]);
+                    }
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Executes the instruction with call code {@code code}.
+         *
+         * @param code
+         *            the call code
+         */
+        private void call(int code) {
+            switch (code) {
+                case BLVirtualMachine.MOVE:
+                    this.remaining--;
+                    this.robot.move();
+                    break;
+                case BLVirtualMachine.TURNLEFT:
+                    this.remaining--;
+                    this.robot.turnLeft();
+                    break;
+                case BLVirtualMachine.TURNRIGHT:
+                    this.remaining--;
+                    this.robot.turnRight();
+                    break;
+                case BLVirtualMachine.INFECT:
+                    this.remaining--;
+                    this.robot.infect();
+                    break;
+                case BLVirtualMachine.SKIP:
+                    this.remaining--;
+                    this.robot.skip();
+                    break;
+                default:
+                    this.execute(LinkedProgram.this.roots[code - USER]);
+                    break;
+            }
+        }
+
+    }
+
+    /**
+     * Runs the main body on {@code robot} until it finishes or
+     * {@code maxSteps} steps have been taken.
+     *
+     * @param robot
+     *            the robot to drive
+     * @param maxSteps
+     *            the step budget
+     * @return the number of steps taken
+     * @requires <pre>
+     * maxSteps >= 0  and
+     * [calls nest no deeper than the Java stack allows]
+     * </pre>
+     * @ensures <pre>
+     * run = [number of primitive instructions and condition tests performed]
+     *  and  run <= maxSteps
+     * </pre>
+     */
+    public long run(BLRobot robot, long maxSteps) {
+        assert robot != null : "Violation of: robot is not null";
+        assert maxSteps >= 0 : "Violation of: maxSteps >= 0";
+
+        Run run = new Run(robot, maxSteps);
+        run.execute(this.bodyRoot);
+        return maxSteps - run.remaining;
+    }
+
+    /*
+     * Main benchmark method --------------------------------------------------
+     */
+
+    /**
+     * Compares running a BL program with {@code ProgramTreeInterpreter} and
+     * after linking. Usage: {@code java LinkedProgram [file [steps [rounds]]]}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final long defaultSteps = 10_000_000L;
+        final int defaultRounds = 5;
+        final long seed = 42;
+
+        String fileName = "test/program1.bl";
+        long maxSteps = defaultSteps;
+        int rounds = defaultRounds;
+        if (args.length > 0) {
+            fileName = args[0];
+        }
+        if (args.length > 1) {
+            maxSteps = Long.parseLong(args[1]);
+        }
+        if (args.length > 2) {
+            rounds = Integer.parseInt(args[2]);
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        Program1Parse1 p = new Program1Parse1();
+        SimpleReader file = new SimpleReader1L(fileName);
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        p.parse(tokens);
+        LinkedProgram linked = p.link();
+        out.println("*** " + fileName + ": " + linked.instructions()
+                + " instructions, " + linked.nodes() + " nodes ***");
+
+        for (int round = 1; round <= rounds; round++) {
+            SimulatedRobot treeRobot = new SimulatedRobot(seed);
+            long start = System.nanoTime();
+            long treeSteps = ProgramTreeInterpreter.run(p, treeRobot,
+                    maxSteps);
+            long treeNanos = System.nanoTime() - start;
+
+            SimulatedRobot linkedRobot = new SimulatedRobot(seed);
+            start = System.nanoTime();
+            long linkedSteps = linked.run(linkedRobot, maxSteps);
+            long linkedNanos = System.nanoTime() - start;
+
+            boolean same = treeSteps == linkedSteps
+                    && treeRobot.trace() == linkedRobot.trace();
+            out.println(String.format(
+                    "round %d: tree %.1f ns/step, linked %.1f ns/step, "
+                            + "%d steps%s",
+                    round, (double) treeNanos / Math.max(1, treeSteps),
+                    (double) linkedNanos / Math.max(1, linkedSteps),
+                    linkedSteps, same ? "" : " (TRACES DIFFER)"));
+        }
+        out.close();
+    }
+
+}
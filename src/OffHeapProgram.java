@@ -0,0 +1,773 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+
+/**
+ * A parsed BL program stored outside the Java heap, in a direct
+ * {@code ByteBuffer}, with a read-only view of its statements. The garbage
+ * collector sees one small buffer object per program instead of the
+ * {@code Statement} object graph of every body, which matters when thousands
+ * of programs are kept in memory.
+ *
+ * <p>
+ * The buffer holds, in this order:
+ *
+ * <pre>
+ * header         int instructions, int names, int body
+ * instructions   (int name, int root) for each instruction, in the order
+ *                of the context
+ * names          (int offset, int length) for each name
+ *                the characters of all names, one byte each
+ * nodes          tag byte = kind ordinal | condition ordinal << 3
+ *                CALL: int name
+ *                otherwise: int n, then n int offsets of the children
+ * </pre>
+ *
+ * where {@code body}, {@code root} and the child offsets are offsets of
+ * nodes in the buffer, and the names are CALL names and instruction names.
+ * BL identifiers are ASCII, so a name takes one byte per character.
+ *
+ * <p>
+ * {@link #close()} drops the buffer; a direct buffer cannot be freed on
+ * demand before Java has {@code MemorySegment}, so the memory is returned
+ * when the buffer object is next collected, and the program cannot be used
+ * after it is closed.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class OffHeapProgram implements AutoCloseable {
+
+    /**
+     * Bytes in an {@code int}.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Offset of the number of instructions.
+     */
+    private static final int INSTRUCTIONS = 0;
+
+    /**
+     * Offset of the number of names.
+     */
+    private static final int NAMES = INSTRUCTIONS + INT_BYTES;
+
+    /**
+     * Offset of the offset of the main body.
+     */
+    private static final int BODY = NAMES + INT_BYTES;
+
+    /**
+     * Offset of the instruction table.
+     */
+    private static final int TABLE = BODY + INT_BYTES;
+
+    /**
+     * Shift of the condition ordinal in a tag.
+     */
+    private static final int CONDITION_SHIFT = 3;
+
+    /**
+     * Mask of the kind ordinal in a tag.
+     */
+    private static final int KIND_MASK = (1 << CONDITION_SHIFT) - 1;
+
+    /**
+     * Initial capacity of the node area while storing.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The kinds of statements, indexed by ordinal.
+     */
+    private static final Statement.Kind[] KINDS = Statement.Kind.values();
+
+    /**
+     * The conditions, indexed by ordinal.
+     */
+    private static final Statement.Condition[] CONDITIONS = Statement.Condition
+            .values();
+
+    /**
+     * The program name.
+     */
+    private final String name;
+
+    /**
+     * The stored program, or null once closed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Constructor.
+     *
+     * @param name
+     *            the program name
+     * @param buffer
+     *            the stored program
+     */
+    private OffHeapProgram(String name, ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read-only view of one stored statement. A view is only a position in
+     * the buffer of its program, so it is cheap to make and is not valid
+     * after the program is closed.
+     */
+    public static final class Node {
+
+        /**
+         * The program the statement is stored in.
+         */
+        private final OffHeapProgram program;
+
+        /**
+         * The offset of the statement in the buffer.
+         */
+        private final int offset;
+
+        /**
+         * Constructor.
+         *
+         * @param program
+         *            the program the statement is stored in
+         * @param offset
+         *            the offset of the statement
+         */
+        private Node(OffHeapProgram program, int offset) {
+            this.program = program;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns the tag of the statement.
+         *
+         * @return the tag
+         */
+        private int tag() {
+            return this.program.open().get(this.offset) & 0xFF;
+        }
+
+        /**
+         * Returns the kind of statement.
+         *
+         * @return the kind
+         */
+        public Statement.Kind kind() {
+            return KINDS[this.tag() & KIND_MASK];
+        }
+
+        /**
+         * Returns the condition of an IF, IF_ELSE or WHILE.
+         *
+         * @return the condition
+         * @requires [this is an IF, IF_ELSE or WHILE]
+         */
+        public Statement.Condition condition() {
+            Statement.Kind kind = this.kind();
+            assert kind == Statement.Kind.IF || kind == Statement.Kind.IF_ELSE
+                    || kind == Statement.Kind.WHILE : ""
+                            + "Violation of: this is an IF, IF_ELSE or WHILE";
+            return CONDITIONS[this.tag() >>> CONDITION_SHIFT];
+        }
+
+        /**
+         * Returns the instruction name of a CALL.
+         *
+         * @return the name
+         * @requires [this is a CALL]
+         */
+        public String name() {
+            assert this.kind() == Statement.Kind.CALL : ""
+                    + "Violation of: this is a CALL";
+            return this.program
+                    .nameAt(this.program.open().getInt(this.offset + 1));
+        }
+
+        /**
+         * Returns the number of children: the statements of a BLOCK, one for
+         * an IF or WHILE, two for an IF_ELSE and none for a CALL.
+         *
+         * @return the number of children
+         */
+        public int numberOfChildren() {
+            int count = 0;
+            if (this.kind() != Statement.Kind.CALL) {
+                count = this.program.open().getInt(this.offset + 1);
+            }
+            return count;
+        }
+
+        /**
+         * Returns child {@code i}.
+         *
+         * @param i
+         *            the position of the child
+         * @return the child
+         * @requires 0 <= i < numberOfChildren()
+         */
+        public Node child(int i) {
+            assert 0 <= i && i < this.numberOfChildren() : ""
+                    + "Violation of: 0 <= i < numberOfChildren()";
+            return new Node(this.program, this.program.open()
+                    .getInt(this.offset + 1 + INT_BYTES * (i + 1)));
+        }
+
+        /**
+         * Replaces {@code s} by the statement this node stands for.
+         *
+         * @param s
+         *            the statement to build
+         * @replaces s
+         */
+        public void build(Statement s) {
+            assert s != null : "Violation of: s is not null";
+
+            switch (this.kind()) {
+                case BLOCK: {
+                    s.clear();
+                    int length = this.numberOfChildren();
+                    for (int i = 0; i < length; i++) {
+                        Statement child = s.newInstance();
+                        this.child(i).build(child);
+                        s.addToBlock(i, child);
+                    }
+                    break;
+                }
+                case IF: {
+                    Statement block = s.newInstance();
+                    this.child(0).build(block);
+                    s.assembleIf(this.condition(), block);
+                    break;
+                }
+                case IF_ELSE: {
+                    Statement thenBlock = s.newInstance();
+                    Statement elseBlock = s.newInstance();
+                    this.child(0).build(thenBlock);
+                    this.child(1).build(elseBlock);
+                    s.assembleIfElse(this.condition(), thenBlock, elseBlock);
+                    break;
+                }
+                case WHILE: {
+                    Statement block = s.newInstance();
+                    this.child(0).build(block);
+                    s.assembleWhile(this.condition(), block);
+                    break;
+                }
+                default: {
+                    //CALL
+                    s.assembleCall(this.name());
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Writer of the nodes of a program into an on-heap buffer that grows as
+     * needed, collecting the names used.
+     */
+    private static final class Writer {
+
+        /**
+         * The nodes written so far.
+         */
+        private ByteBuffer nodes = ByteBuffer.allocate(INITIAL_CAPACITY)
+                .order(ByteOrder.nativeOrder());
+
+        /**
+         * The names used so far, in order of first use.
+         */
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * The index of each name used so far.
+         */
+        private final java.util.Map<String, Integer> nameIndex = new HashMap<>();
+
+        /**
+         * Makes room for {@code bytes} more bytes.
+         *
+         * @param bytes
+         *            the number of bytes
+         */
+        private void ensure(int bytes) {
+            if (this.nodes.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer
+                        .allocate(Math.max(2 * this.nodes.capacity(),
+                                this.nodes.position() + bytes))
+                        .order(ByteOrder.nativeOrder());
+                this.nodes.flip();
+                grown.put(this.nodes);
+                this.nodes = grown;
+            }
+        }
+
+        /**
+         * Returns the index of {@code name}, adding it if it is new.
+         *
+         * @param name
+         *            the name
+         * @return its index
+         */
+        int name(String name) {
+            Integer index = this.nameIndex.get(name);
+            if (index == null) {
+                index = this.names.size();
+                this.names.add(name);
+                this.nameIndex.put(name, index);
+            }
+            return index;
+        }
+
+        /**
+         * Writes {@code s} and returns its offset in the node area.
+         *
+         * @param s
+         *            the statement to write
+         * @return the offset of its node
+         */
+        int write(Statement s) {
+            int offset = this.nodes.position();
+            switch (s.kind()) {
+                case BLOCK: {
+                    int length = s.lengthOfBlock();
+                    int[] children = new int[length];
+                    this.reserve(Statement.Kind.BLOCK, null, length);
+                    for (int i = 0; i < length; i++) {
+                        Statement child = s.removeFromBlock(i);
+                        children[i] = this.write(child);
+                        s.addToBlock(i, child);
+                    }
+                    this.fill(offset, children);
+                    break;
+                }
+                case IF: {
+                    Statement block = s.newInstance();
+                    Statement.Condition c = s.disassembleIf(block);
+                    this.reserve(Statement.Kind.IF, c, 1);
+                    this.fill(offset, new int[] { this.write(block) });
+                    s.assembleIf(c, block);
+                    break;
+                }
+                case IF_ELSE: {
+                    Statement thenBlock = s.newInstance();
+                    Statement elseBlock = s.newInstance();
+                    Statement.Condition c = s.disassembleIfElse(thenBlock,
+                            elseBlock);
+                    this.reserve(Statement.Kind.IF_ELSE, c, 2);
+                    int thenOffset = this.write(thenBlock);
+                    int elseOffset = this.write(elseBlock);
+                    this.fill(offset, new int[] { thenOffset, elseOffset });
+                    s.assembleIfElse(c, thenBlock, elseBlock);
+                    break;
+                }
+                case WHILE: {
+                    Statement block = s.newInstance();
+                    Statement.Condition c = s.disassembleWhile(block);
+                    this.reserve(Statement.Kind.WHILE, c, 1);
+                    this.fill(offset, new int[] { this.write(block) });
+                    s.assembleWhile(c, block);
+                    break;
+                }
+                case CALL: {
+                    String call = s.disassembleCall();
+                    this.ensure(1 + INT_BYTES);
+                    this.nodes.put((byte) Statement.Kind.CALL.ordinal());
+                    this.nodes.putInt(this.name(call));
+                    s.assembleCall(call);
+                    break;
+                }
+                default: {
+                    // this will never happen...
+                    break;
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * Writes the tag and child count of a node, leaving room for the
+         * offsets of its children.
+         *
+         * @param kind
+         *            the kind of statement
+         * @param c
+         *            the condition, or null
+         * @param count
+         *            the number of children
+         */
+        private void reserve(Statement.Kind kind, Statement.Condition c,
+                int count) {
+            int tag = kind.ordinal();
+            if (c != null) {
+                tag |= c.ordinal() << CONDITION_SHIFT;
+            }
+            this.ensure(1 + INT_BYTES * (count + 1));
+            this.nodes.put((byte) tag);
+            this.nodes.putInt(count);
+            this.nodes.position(this.nodes.position() + INT_BYTES * count);
+        }
+
+        /**
+         * Fills in the offsets of the children of the node at {@code offset}.
+         *
+         * @param offset
+         *            the offset of the node
+         * @param children
+         *            the offsets of its children in the node area
+         */
+        private void fill(int offset, int[] children) {
+            for (int i = 0; i < children.length; i++) {
+                this.nodes.putInt(offset + 1 + INT_BYTES * (i + 1),
+                        children[i]);
+            }
+        }
+
+    }
+
+    /**
+     * Adds {@code base} to every offset stored in the nodes of {@code nodes},
+     * which start at position 0 and end at its limit.
+     *
+     * @param nodes
+     *            the node area
+     * @param base
+     *            the offset of the node area in the buffer
+     */
+    private static void relocate(ByteBuffer nodes, int base) {
+        int i = 0;
+        while (i < nodes.limit()) {
+            int kind = nodes.get(i) & KIND_MASK;
+            if (KINDS[kind] == Statement.Kind.CALL) {
+                i += 1 + INT_BYTES;
+            } else {
+                int count = nodes.getInt(i + 1);
+                for (int k = 1; k <= count; k++) {
+                    int at = i + 1 + INT_BYTES * k;
+                    nodes.putInt(at, nodes.getInt(at) + base);
+                }
+                i += 1 + INT_BYTES * (count + 1);
+            }
+        }
+    }
+
+    /**
+     * Stores {@code p} off the heap.
+     *
+     * @param p
+     *            the program to store
+     * @return the stored program
+     * @ensures store = [p, stored off the heap]
+     */
+    public static OffHeapProgram store(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        Writer writer = new Writer();
+        int[] instructionNames = new int[context.size()];
+        int[] roots = new int[context.size()];
+        int bodyRoot;
+        try {
+            int k = 0;
+            for (Map.Pair<String, Statement> instruction : context) {
+                instructionNames[k] = writer.name(instruction.key());
+                roots[k] = writer.write(instruction.value());
+                k++;
+            }
+            bodyRoot = writer.write(body);
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+
+        List<String> names = writer.names;
+        int nameBytes = 0;
+        for (String n : names) {
+            nameBytes += n.length();
+        }
+        int nameTable = TABLE + 2 * INT_BYTES * roots.length;
+        int nameChars = nameTable + 2 * INT_BYTES * names.size();
+        int base = nameChars + nameBytes;
+        ByteBuffer nodes = writer.nodes;
+        nodes.flip();
+        relocate(nodes, base);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(base + nodes.limit())
+                .order(ByteOrder.nativeOrder());
+        buffer.putInt(INSTRUCTIONS, roots.length);
+        buffer.putInt(NAMES, names.size());
+        buffer.putInt(BODY, base + bodyRoot);
+        for (int k = 0; k < roots.length; k++) {
+            buffer.putInt(TABLE + 2 * INT_BYTES * k, instructionNames[k]);
+            buffer.putInt(TABLE + 2 * INT_BYTES * k + INT_BYTES,
+                    base + roots[k]);
+        }
+        int at = nameChars;
+        for (int k = 0; k < names.size(); k++) {
+            byte[] chars = names.get(k).getBytes(StandardCharsets.US_ASCII);
+            buffer.putInt(nameTable + 2 * INT_BYTES * k, at);
+            buffer.putInt(nameTable + 2 * INT_BYTES * k + INT_BYTES,
+                    chars.length);
+            buffer.position(at);
+            buffer.put(chars);
+            at += chars.length;
+        }
+        buffer.position(base);
+        buffer.put(nodes);
+        buffer.clear();
+        return new OffHeapProgram(p.name(), buffer);
+    }
+
+    /**
+     * Parses a program from {@code tokens} with {@code Program1Parse1} and
+     * stores it off the heap, so the parsed {@code Statement} trees can be
+     * collected right away.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return the stored program
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * if [there is a program at the front of tokens] then
+     *  parse = [the program, stored off the heap]  and
+     *  tokens = [the tokens after the program]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static OffHeapProgram parse(Queue<String> tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+
+        Program p = new Program1Parse1();
+        p.parse(tokens);
+        return store(p);
+    }
+
+    /**
+     * Returns the buffer.
+     *
+     * @return the buffer
+     * @requires isOpen()
+     */
+    private ByteBuffer open() {
+        assert this.buffer != null : "Violation of: isOpen()";
+        return this.buffer;
+    }
+
+    /**
+     * Returns name {@code index} of the name table.
+     *
+     * @param index
+     *            the index of the name
+     * @return the name
+     */
+    private String nameAt(int index) {
+        ByteBuffer b = this.open();
+        int entry = TABLE + 2 * INT_BYTES * b.getInt(INSTRUCTIONS)
+                + 2 * INT_BYTES * index;
+        int at = b.getInt(entry);
+        byte[] chars = new byte[b.getInt(entry + INT_BYTES)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = b.get(at + i);
+        }
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reports whether this program is still open.
+     *
+     * @return true iff {@link #close()} has not been called
+     */
+    public boolean isOpen() {
+        return this.buffer != null;
+    }
+
+    /**
+     * Returns the number of bytes stored off the heap.
+     *
+     * @return the number of bytes
+     * @requires isOpen()
+     */
+    public int bytes() {
+        return this.open().capacity();
+    }
+
+    /**
+     * Returns the program name.
+     *
+     * @return the name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the number of user-defined instructions.
+     *
+     * @return the number of instructions
+     * @requires isOpen()
+     */
+    public int instructions() {
+        return this.open().getInt(INSTRUCTIONS);
+    }
+
+    /**
+     * Returns the name of instruction {@code k}, in the order of the context
+     * of the program stored.
+     *
+     * @param k
+     *            the position of the instruction
+     * @return the instruction name
+     * @requires isOpen()  and  0 <= k < instructions()
+     */
+    public String instructionName(int k) {
+        assert 0 <= k && k < this.instructions() : ""
+                + "Violation of: 0 <= k < instructions()";
+        return this.nameAt(this.open().getInt(TABLE + 2 * INT_BYTES * k));
+    }
+
+    /**
+     * Returns the body of instruction {@code k}, in the order of the context
+     * of the program stored.
+     *
+     * @param k
+     *            the position of the instruction
+     * @return a view of the body
+     * @requires isOpen()  and  0 <= k < instructions()
+     */
+    public Node instruction(int k) {
+        assert 0 <= k && k < this.instructions() : ""
+                + "Violation of: 0 <= k < instructions()";
+        return new Node(this,
+                this.open().getInt(TABLE + 2 * INT_BYTES * k + INT_BYTES));
+    }
+
+    /**
+     * Returns the main body.
+     *
+     * @return a view of the body
+     * @requires isOpen()
+     */
+    public Node body() {
+        return new Node(this, this.open().getInt(BODY));
+    }
+
+    /**
+     * Builds the stored program on the heap.
+     *
+     * @return the program
+     * @requires isOpen()
+     * @ensures toProgram = [the program stored]
+     */
+    public Program toProgram() {
+        Program p = new Program1Parse1();
+        p.setName(this.name);
+        Map<String, Statement> context = p.newContext();
+        for (int k = 0; k < this.instructions(); k++) {
+            Statement s = new Statement1Parse1();
+            this.instruction(k).build(s);
+            context.add(this.instructionName(k), s);
+        }
+        p.swapContext(context);
+        Statement s = new Statement1Parse1();
+        this.body().build(s);
+        p.swapBody(s);
+        return p;
+    }
+
+    /**
+     * Drops the stored program; its memory is returned when the buffer
+     * object is collected. Closing a closed program does nothing.
+     *
+     * @ensures not isOpen()
+     */
+    @Override
+    public void close() {
+        this.buffer = null;
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Reports the heap used by many generated programs kept as
+     * {@code Program} objects and kept off the heap. Usage:
+     * {@code java OffHeapProgram [programs]}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final int defaultPrograms = 2_000;
+        final long bytesPerKilobyte = 1024;
+        final long seed = 7;
+        final int instructions = 10;
+        final int blockSize = 5;
+        final int depth = 4;
+
+        int count = defaultPrograms;
+        if (args.length > 0) {
+            count = Integer.parseInt(args[0]);
+        }
+        String[] sources = new String[count];
+        BLProgramGenerator generator = new BLProgramGenerator(seed,
+                instructions, blockSize, depth, 0);
+        for (int i = 0; i < count; i++) {
+            sources[i] = generator.next().source();
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Program[] programs = new Program[count];
+        for (int i = 0; i < count; i++) {
+            programs[i] = new Program1Parse1();
+            programs[i].parse(SourceTokenizer.tokens(sources[i]));
+        }
+        System.gc();
+        long onHeap = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        OffHeapProgram[] stored = new OffHeapProgram[count];
+        long offHeap = 0;
+        for (int i = 0; i < count; i++) {
+            stored[i] = store(programs[i]);
+            offHeap += stored[i].bytes();
+        }
+        Arrays.fill(programs, null);
+        System.gc();
+        long heapLeft = runtime.totalMemory() - runtime.freeMemory() - before;
+
+        out.println(count + " programs: " + onHeap / bytesPerKilobyte
+                + " KB as Program objects; " + offHeap / bytesPerKilobyte
+                + " KB off the heap plus " + heapLeft / bytesPerKilobyte
+                + " KB on it");
+        for (OffHeapProgram p : stored) {
+            p.close();
+        }
+        out.close();
+    }
+
+}
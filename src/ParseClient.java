@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client of a {@code ParseServer}, either over its Unix socket or, for tests
+ * and benchmarks, in the same JVM with no socket at all. Either way a source
+ * is submitted with {@link #parse(String)} and the answer arrives as a future,
+ * in the server's format; several requests may be in flight at once.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParseClient implements AutoCloseable {
+
+    /**
+     * The server, for a loopback client, or null.
+     */
+    private final ParseServer server;
+
+    /**
+     * The connection, for a socket client, or null.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The requests sent and not yet answered, by id.
+     */
+    private final Map<Integer, CompletableFuture<String>> pending =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The thread reading answers, for a socket client, or null.
+     */
+    private final Thread reader;
+
+    /**
+     * Id of the next request.
+     */
+    private int next = 0;
+
+    /**
+     * Why the connection ended, once the reader thread has stopped, or null.
+     * Guarded by this client, like {@link #parse(String)}, so no request is
+     * added to {@link #pending} after the reader has failed it.
+     */
+    private IOException closed = null;
+
+    /**
+     * Constructor.
+     *
+     * @param server
+     *            the server, or null
+     * @param channel
+     *            the connection, or null
+     */
+    private ParseClient(ParseServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+        if (channel == null) {
+            this.reader = null;
+        } else {
+            this.reader = new Thread(this::readAnswers, "bl-client");
+            this.reader.setDaemon(true);
+            this.reader.start();
+        }
+    }
+
+    /**
+     * Returns a client that submits directly to {@code server}.
+     *
+     * @param server
+     *            the server
+     * @return the client
+     */
+    public static ParseClient loopback(ParseServer server) {
+        assert server != null : "Violation of: server is not null";
+
+        return new ParseClient(server, null);
+    }
+
+    /**
+     * Returns a client connected to the server listening on the Unix socket
+     * {@code socket}.
+     *
+     * @param socket
+     *            the socket file
+     * @return the client
+     * @throws IOException
+     *             if the connection fails
+     */
+    public static ParseClient connect(Path socket) throws IOException {
+        assert socket != null : "Violation of: socket is not null";
+
+        return new ParseClient(null,
+                SocketChannel.open(UnixDomainSocketAddress.of(socket)));
+    }
+
+    /**
+     * Body of the reader thread: completes each pending request with its
+     * answer, and fails whatever is still pending when the connection ends,
+     * and every request submitted after that.
+     */
+    private void readAnswers() {
+        IOException failure = null;
+        try {
+            ParseServer.Frame answer = ParseServer.Frame.read(this.channel);
+            while (answer != null && failure == null) {
+                if (answer.id() == ParseServer.CONNECTION_ID) {
+                    //The server refused the connection.
+                    failure = new IOException(answer.text().trim());
+                } else {
+                    CompletableFuture<String> request = this.pending
+                            .remove(answer.id());
+                    if (request != null) {
+                        request.complete(answer.text());
+                    }
+                    answer = ParseServer.Frame.read(this.channel);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (failure == null) {
+            failure = new IOException("Connection closed.");
+        }
+        synchronized (this) {
+            this.closed = failure;
+            for (CompletableFuture<String> request : this.pending.values()) {
+                request.completeExceptionally(failure);
+            }
+            this.pending.clear();
+        }
+    }
+
+    /**
+     * Submits the BL program {@code source} to the server.
+     *
+     * @param source
+     *            the source
+     * @return the future answer: {@code OK} and the pretty print, or
+     *         {@code ERROR} and the diagnostics; fails with an
+     *         {@code IOException} once the connection has ended
+     */
+    public synchronized CompletableFuture<String> parse(String source) {
+        assert source != null : "Violation of: source is not null";
+
+        CompletableFuture<String> answer;
+        if (this.server != null) {
+            answer = this.server.submit(source);
+        } else if (this.closed != null) {
+            answer = new CompletableFuture<>();
+            answer.completeExceptionally(this.closed);
+        } else {
+            answer = new CompletableFuture<>();
+            int id = this.next;
+            this.next++;
+            this.pending.put(id, answer);
+            try {
+                new ParseServer.Frame(id, source).write(this.channel);
+            } catch (IOException e) {
+                this.pending.remove(id);
+                answer.completeExceptionally(e);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Waits for the answers to every request sent, then disconnects. A
+     * loopback client has nothing to close.
+     *
+     * @throws IOException
+     *             if the connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            if (this.channel.isOpen()) {
+                this.channel.shutdownOutput();
+            }
+            boolean interrupted = false;
+            while (this.reader.isAlive()) {
+                try {
+                    this.reader.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            this.channel.close();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Thrown when a parse exceeds one of the limits set in its
+ * {@code ParseOptions}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParseLimitExceededException extends RuntimeException {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limits a parse can exceed.
+     */
+    public enum Limit {
+        /**
+         * Number of tokens in the input.
+         */
+        TOKENS,
+
+        /**
+         * Nesting depth of blocks.
+         */
+        DEPTH,
+
+        /**
+         * Number of user-defined instructions.
+         */
+        INSTRUCTIONS,
+
+        /**
+         * Length of an identifier.
+         */
+        IDENTIFIER_LENGTH,
+
+        /**
+         * Wall-clock time.
+         */
+        TIME
+    }
+
+    /**
+     * The limit exceeded.
+     */
+    private final Limit limit;
+
+    /**
+     * The value of the limit.
+     */
+    private final long maximum;
+
+    /**
+     * Constructor.
+     *
+     * @param limit
+     *            the limit exceeded
+     * @param maximum
+     *            the value of the limit
+     */
+    public ParseLimitExceededException(Limit limit, long maximum) {
+        super("Parse limit exceeded: " + limit + " > " + maximum);
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns the limit exceeded.
+     *
+     * @return the limit
+     */
+    public Limit limit() {
+        return this.limit;
+    }
+
+    /**
+     * Returns the value of the limit exceeded.
+     *
+     * @return the value of the limit
+     */
+    public long maximum() {
+        return this.maximum;
+    }
+
+}
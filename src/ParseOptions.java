@@ -0,0 +1,1031 @@
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.statement.Statement;
+
+/**
+ * Options for {@code Statement1Parse1} and {@code Program1Parse1}, and what
+ * the parse reported under them.
+ *
+ * <p>
+ * The parsers are instantiated through {@code newInstance}, so options cannot
+ * be passed to their constructors; instead each thread has current options,
+ * which {@link #parse(Program, Queue)} installs for the duration of one
+ * parse. With no options installed {@link #current()} returns a shared
+ * default with every option off, which cannot be changed, and the parsers
+ * behave exactly as before.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParseOptions {
+
+    /**
+     * The options of each thread.
+     */
+    private static final ThreadLocal<ParseOptions> CURRENT = ThreadLocal
+            .withInitial(() -> ParseOptions.DEFAULT);
+
+    /**
+     * The options of a thread with no options installed: every option off.
+     */
+    private static final ParseOptions DEFAULT = new ParseOptions(true);
+
+    /**
+     * Whether these are the default options, which cannot be changed.
+     */
+    private final boolean frozen;
+
+    /**
+     * Whether constant conditions and empty blocks are folded while parsing.
+     */
+    private boolean fold = false;
+
+    /**
+     * Number of rewrites made by folding.
+     */
+    private int folded = 0;
+
+    /**
+     * Warnings reported while parsing.
+     */
+    private final List<String> warnings = new ArrayList<>();
+
+    /**
+     * The table parsed bodies are interned in, or null.
+     */
+    private StatementTable table = null;
+
+    /**
+     * The interned body of the last program or block parsed, or null.
+     */
+    private StatementNode body = null;
+
+    /**
+     * The interned instruction bodies of the last program parsed.
+     */
+    private final java.util.Map<String, StatementNode> instructions =
+            new HashMap<>();
+
+    /**
+     * The interned nodes of the statements the parse has finished but not
+     * yet put in a finished block, innermost last.
+     */
+    private final List<StatementNode> built = new ArrayList<>();
+
+    /**
+     * The names of the bodies the parse has started, null for the main body,
+     * in order.
+     */
+    private final List<String> roots = new ArrayList<>();
+
+    /**
+     * Largest number of tokens accepted, END_OF_INPUT excluded.
+     */
+    private int maxTokens = Integer.MAX_VALUE;
+
+    /**
+     * Largest nesting depth of blocks accepted.
+     */
+    private int maxDepth = Integer.MAX_VALUE;
+
+    /**
+     * Largest number of user-defined instructions accepted.
+     */
+    private int maxInstructions = Integer.MAX_VALUE;
+
+    /**
+     * Largest identifier length accepted.
+     */
+    private int maxIdentifierLength = Integer.MAX_VALUE;
+
+    /**
+     * Longest time a parse may take, in nanoseconds, or 0 for no limit.
+     */
+    private long timeLimit = 0;
+
+    /**
+     * When the current parse must be done by, in {@code System.nanoTime}
+     * terms; meaningful only if {@code timeLimit} is not 0.
+     */
+    private long deadline = 0;
+
+    /**
+     * Nesting depth of the block being parsed.
+     */
+    private int depth = 0;
+
+    /**
+     * The table node positions are recorded in, or null.
+     */
+    private SourcePositions positions = null;
+
+    /**
+     * Number of tokens, END_OF_INPUT included, when the parse started.
+     */
+    private int tokenCount = 0;
+
+    /**
+     * Whether input is trusted to be well formed.
+     */
+    private boolean trusted = false;
+
+    /**
+     * Whether the current or last parse skips the closing-keyword checks.
+     */
+    private boolean skipChecks = false;
+
+    /**
+     * Whether the parse under these options was cancelled; set from another
+     * thread.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * No-argument constructor, with every option off.
+     */
+    public ParseOptions() {
+        this(false);
+    }
+
+    /**
+     * Constructor, with every option off.
+     *
+     * @param frozen
+     *            whether the options are the unchangeable default
+     */
+    private ParseOptions(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    /**
+     * Checks that these options may be changed, that is, that they are not
+     * the default.
+     *
+     * @throws UnsupportedOperationException
+     *             if these are the default options
+     */
+    private void checkMutable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException(
+                    "The default options cannot be changed.");
+        }
+    }
+
+    /**
+     * Returns the options of the current thread: those installed by the
+     * parse running on it, or else the default, which cannot be changed.
+     *
+     * @return the current options
+     */
+    public static ParseOptions current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Turns folding on or off. When on, {@code IF true} and
+     * {@code IF_ELSE true} collapse to their THEN block, an IF with an empty
+     * block is dropped, an IF_ELSE with an empty ELSE block becomes an IF, an
+     * IF_ELSE with an empty THEN block becomes an IF on the negated condition
+     * (except for {@code random}, which has no negation), and a
+     * {@code WHILE true} loop whose body never calls an instruction is
+     * reported as a warning.
+     *
+     * @param fold
+     *            whether to fold
+     * @return this
+     * @updates this
+     */
+    public ParseOptions setFold(boolean fold) {
+        this.checkMutable();
+        this.fold = fold;
+        return this;
+    }
+
+    /**
+     * Reports whether folding is on.
+     *
+     * @return true iff folding is on
+     */
+    public boolean fold() {
+        return this.fold;
+    }
+
+    /**
+     * Returns the number of rewrites made by folding in the last parse; a
+     * statement simplified and then dropped counts twice.
+     *
+     * @return the number of folding rewrites
+     */
+    public int folded() {
+        return this.folded;
+    }
+
+    /**
+     * Sets the table parsed bodies are interned in, or turns interning off
+     * if {@code table} is null. With a table, every parse through these
+     * options interns the bodies it parsed, which {@link #body()} and
+     * {@link #instructions()} then return; structurally equal bodies, from
+     * this parse or an earlier one with the same table, share their nodes.
+     * Each node is interned as the parser builds its statement, so the parse
+     * walks the tree only once.
+     *
+     * @param table
+     *            the table, or null
+     * @return this
+     * @updates this
+     */
+    public ParseOptions setTable(StatementTable table) {
+        this.checkMutable();
+        this.table = table;
+        return this;
+    }
+
+    /**
+     * Returns the table parsed bodies are interned in, or null.
+     *
+     * @return the table
+     */
+    public StatementTable table() {
+        return this.table;
+    }
+
+    /**
+     * Returns the interned body of the last program or block parsed.
+     *
+     * @return the interned body
+     * @requires [a table is set and a program or block has been parsed]
+     */
+    public StatementNode body() {
+        assert this.body != null : ""
+                + "Violation of: a table is set and a program or block has been parsed";
+        return this.body;
+    }
+
+    /**
+     * Returns the interned instruction bodies of the last program parsed, by
+     * name.
+     *
+     * @return the interned instruction bodies
+     */
+    public java.util.Map<String, StatementNode> instructions() {
+        return Collections.unmodifiableMap(this.instructions);
+    }
+
+    /**
+     * Sets the table the token range of every parsed node is recorded in, or
+     * stops recording if {@code positions} is null. Recording needs folding
+     * off, since folding changes the tree after its nodes are numbered.
+     *
+     * @param positions
+     *            the table, or null
+     * @return this
+     * @updates this
+     */
+    public ParseOptions setPositions(SourcePositions positions) {
+        this.checkMutable();
+        this.positions = positions;
+        return this;
+    }
+
+    /**
+     * Returns the table the token range of every parsed node is recorded in,
+     * or null.
+     *
+     * @return the table
+     */
+    public SourcePositions positions() {
+        return this.positions;
+    }
+
+    /**
+     * Sets the largest number of tokens, END_OF_INPUT excluded, a parse
+     * accepts.
+     *
+     * @param maxTokens
+     *            the limit
+     * @return this
+     * @updates this
+     * @requires maxTokens >= 0
+     */
+    public ParseOptions setMaxTokens(int maxTokens) {
+        this.checkMutable();
+        assert maxTokens >= 0 : "Violation of: maxTokens >= 0";
+        this.maxTokens = maxTokens;
+        return this;
+    }
+
+    /**
+     * Sets the largest nesting depth of blocks a parse accepts; the body of
+     * a program or instruction is at depth 1. This also bounds the recursion
+     * depth of the parser.
+     *
+     * @param maxDepth
+     *            the limit
+     * @return this
+     * @updates this
+     * @requires maxDepth >= 1
+     */
+    public ParseOptions setMaxDepth(int maxDepth) {
+        this.checkMutable();
+        assert maxDepth >= 1 : "Violation of: maxDepth >= 1";
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Sets the largest number of user-defined instructions a parse accepts.
+     *
+     * @param maxInstructions
+     *            the limit
+     * @return this
+     * @updates this
+     * @requires maxInstructions >= 0
+     */
+    public ParseOptions setMaxInstructions(int maxInstructions) {
+        this.checkMutable();
+        assert maxInstructions >= 0 : "Violation of: maxInstructions >= 0";
+        this.maxInstructions = maxInstructions;
+        return this;
+    }
+
+    /**
+     * Sets the largest length of a program, instruction or call name a parse
+     * accepts.
+     *
+     * @param maxIdentifierLength
+     *            the limit
+     * @return this
+     * @updates this
+     * @requires maxIdentifierLength >= 1
+     */
+    public ParseOptions setMaxIdentifierLength(int maxIdentifierLength) {
+        this.checkMutable();
+        assert maxIdentifierLength >= 1 : ""
+                + "Violation of: maxIdentifierLength >= 1";
+        this.maxIdentifierLength = maxIdentifierLength;
+        return this;
+    }
+
+    /**
+     * Sets the longest wall-clock time a parse may take, or removes the limit
+     * if {@code timeLimit} is null.
+     *
+     * @param timeLimit
+     *            the limit, or null
+     * @return this
+     * @updates this
+     * @requires timeLimit is null or positive
+     */
+    public ParseOptions setTimeLimit(Duration timeLimit) {
+        this.checkMutable();
+        assert timeLimit == null || !timeLimit.isNegative()
+                && !timeLimit.isZero() : ""
+                        + "Violation of: timeLimit is null or positive";
+        if (timeLimit == null) {
+            this.timeLimit = 0;
+        } else {
+            this.timeLimit = timeLimit.toNanos();
+        }
+        return this;
+    }
+
+    /**
+     * Turns trusted mode on or off. In trusted mode a program parse first
+     * checks, in one pass over the tokens, that every IF, WHILE, INSTRUCTION
+     * and PROGRAM is closed by the matching END, that every ELSE is inside an
+     * IF, and that THEN, DO and IS follow where they must. If so, the parsers
+     * skip checking those keywords and the instruction and program names
+     * after END, which the pass has already checked; otherwise the program
+     * is parsed with every check, so a bad program is still reported. Only
+     * {@link #parse(Program, Queue)} uses trusted mode.
+     *
+     * @param trusted
+     *            whether input is trusted
+     * @return this
+     * @updates this
+     */
+    public ParseOptions setTrusted(boolean trusted) {
+        this.checkMutable();
+        this.trusted = trusted;
+        return this;
+    }
+
+    /**
+     * Reports whether input is trusted to be well formed.
+     *
+     * @return true iff trusted mode is on
+     */
+    public boolean trusted() {
+        return this.trusted;
+    }
+
+    /**
+     * Reports whether the last parse passed the up-front check of trusted
+     * mode and skipped the closing-keyword checks.
+     *
+     * @return true iff the last parse skipped the closing-keyword checks
+     */
+    public boolean skippedChecks() {
+        return this.skipChecks;
+    }
+
+    /**
+     * Returns the warnings reported by the last parse, in order.
+     *
+     * @return the warnings
+     */
+    public List<String> warnings() {
+        return Collections.unmodifiableList(this.warnings);
+    }
+
+    /**
+     * Reports whether the parsers may skip checking closing keywords, THEN,
+     * DO and IS, which the current parse has already checked.
+     *
+     * @return true iff the closing-keyword checks are skipped
+     */
+    boolean skipChecks() {
+        return this.skipChecks;
+    }
+
+    /**
+     * Checks that the keywords the parsers skip in trusted mode are where
+     * they must be in {@code tokens}: every IF, WHILE, INSTRUCTION and
+     * PROGRAM is closed by END and IF, WHILE or its name, every ELSE is in an
+     * IF without one, and THEN, DO and IS come two tokens after IF, WHILE and
+     * INSTRUCTION or PROGRAM. The tokens after an opening keyword, and the
+     * one after END, are passed over, exactly as the parsers consume them.
+     *
+     * @param tokens
+     *            the input tokens
+     * @return true iff the keywords are where they must be
+     */
+    private static boolean balanced(Queue<String> tokens) {
+        String[] array = new String[tokens.length()];
+        int n = 0;
+        for (String token : tokens) {
+            array[n] = token;
+            n++;
+        }
+        //The expected token after each open END, innermost last.
+        List<String> closers = new ArrayList<>();
+        int i = 0;
+        while (i < n) {
+            switch (array[i]) {
+                case "IF":
+                    if (i + 2 >= n || !array[i + 2].equals("THEN")) {
+                        return false;
+                    }
+                    closers.add("IF");
+                    i += 2;
+                    break;
+                case "WHILE":
+                    if (i + 2 >= n || !array[i + 2].equals("DO")) {
+                        return false;
+                    }
+                    closers.add("WHILE");
+                    i += 2;
+                    break;
+                case "INSTRUCTION":
+                case "PROGRAM":
+                    if (i + 2 >= n || !array[i + 2].equals("IS")) {
+                        return false;
+                    }
+                    closers.add(array[i + 1]);
+                    i += 2;
+                    break;
+                case "ELSE":
+                    //An IF with an ELSE is closed by END IF too.
+                    if (closers.isEmpty()
+                            || !closers.get(closers.size() - 1).equals("IF")) {
+                        return false;
+                    }
+                    closers.set(closers.size() - 1, "IF ELSE");
+                    break;
+                case "END":
+                    if (closers.isEmpty() || i + 1 >= n) {
+                        return false;
+                    }
+                    String closer = closers.remove(closers.size() - 1);
+                    if (closer.equals("IF ELSE")) {
+                        closer = "IF";
+                    }
+                    if (!array[i + 1].equals(closer)) {
+                        return false;
+                    }
+                    i++;
+                    break;
+                default:
+                    break;
+            }
+            i++;
+        }
+        return closers.isEmpty();
+    }
+
+    /**
+     * Records a rewrite made by folding.
+     */
+    void countFolded() {
+        this.folded++;
+    }
+
+    /**
+     * Starts a parse of {@code tokens}: forgets what the last parse reported,
+     * checks the number of tokens and starts the clock.
+     *
+     * @param tokens
+     *            the input tokens
+     */
+    void begin(Queue<String> tokens) {
+        assert this.positions == null || !this.fold : ""
+                + "Violation of: positions are recorded with folding off";
+        this.begin();
+        this.tokenCount = tokens.length();
+        if (this.positions != null) {
+            this.positions.clearNodes();
+        }
+        this.checkTokens(tokens.length() - 1);
+    }
+
+    /**
+     * Starts a parse whose tokens arrive as it goes: forgets what the last
+     * parse reported and starts the clock. The parser checks the number of
+     * tokens with {@link #checkTokens(int)}.
+     */
+    void begin() {
+        this.checkMutable();
+        this.depth = 0;
+        this.folded = 0;
+        this.warnings.clear();
+        this.built.clear();
+        this.roots.clear();
+        if (this.timeLimit != 0) {
+            this.deadline = System.nanoTime() + this.timeLimit;
+        }
+    }
+
+    /**
+     * Checks that {@code count} tokens, END_OF_INPUT excluded, are allowed.
+     *
+     * @param count
+     *            the number of tokens
+     */
+    void checkTokens(int count) {
+        if (count > this.maxTokens) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.TOKENS, this.maxTokens);
+        }
+    }
+
+    /**
+     * Checks the depth and the time, and records that the parser entered a
+     * block; if a check fails, the depth is left as it was.
+     */
+    void enterBlock() {
+        //The default has no limits, and is shared by every thread.
+        if (!this.frozen) {
+            if (this.depth == this.maxDepth) {
+                throw new ParseLimitExceededException(
+                        ParseLimitExceededException.Limit.DEPTH,
+                        this.maxDepth);
+            }
+            this.checkTime();
+            this.depth++;
+        }
+    }
+
+    /**
+     * Records that the parser left a block.
+     */
+    void exitBlock() {
+        if (!this.frozen) {
+            this.depth--;
+        }
+    }
+
+    /**
+     * Checks that the parse has not run out of time.
+     */
+    void checkTime() {
+        if (this.timeLimit != 0 && System.nanoTime() - this.deadline > 0) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.TIME,
+                    Duration.ofNanos(this.timeLimit).toMillis());
+        }
+    }
+
+    /**
+     * Cancels the parse under these options, which gives up at its next block
+     * boundary or statement. Safe to call from any thread.
+     */
+    void cancel() {
+        this.checkMutable();
+        this.cancelled = true;
+    }
+
+    /**
+     * Checks that the parse under these options has not been cancelled.
+     *
+     * @throws CancellationException
+     *             if {@link #cancel()} was called
+     */
+    void checkCancelled() {
+        if (this.cancelled) {
+            throw new CancellationException("Parse cancelled.");
+        }
+    }
+
+    /**
+     * Checks that {@code count} user-defined instructions are allowed.
+     *
+     * @param count
+     *            the number of instructions
+     */
+    void checkInstructions(int count) {
+        if (count > this.maxInstructions) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.INSTRUCTIONS,
+                    this.maxInstructions);
+        }
+    }
+
+    /**
+     * Checks that {@code identifier} is not too long.
+     *
+     * @param identifier
+     *            the identifier
+     */
+    void checkIdentifier(String identifier) {
+        if (identifier.length() > this.maxIdentifierLength) {
+            throw new ParseLimitExceededException(
+                    ParseLimitExceededException.Limit.IDENTIFIER_LENGTH,
+                    this.maxIdentifierLength);
+        }
+    }
+
+    /**
+     * Records that the parser starts a node at the front of {@code tokens}.
+     *
+     * @param tokens
+     *            the remaining tokens
+     * @return the number of the node, or -1 if positions are not recorded
+     */
+    int startNode(Queue<String> tokens) {
+        int id = -1;
+        if (this.positions != null) {
+            id = this.positions.startNode(this.tokenCount - tokens.length());
+        }
+        return id;
+    }
+
+    /**
+     * Records that the parser finished node {@code id} just before the front
+     * of {@code tokens}.
+     *
+     * @param id
+     *            the number of the node, or -1
+     * @param tokens
+     *            the remaining tokens
+     */
+    void endNode(int id, Queue<String> tokens) {
+        if (id >= 0) {
+            this.positions.endNode(id, this.tokenCount - tokens.length());
+        }
+    }
+
+    /**
+     * Records that the next node is the body of instruction {@code name}, or
+     * the main body if {@code name} is null.
+     *
+     * @param name
+     *            the instruction name, or null
+     */
+    void markRoot(String name) {
+        if (this.positions != null) {
+            this.positions.markRoot(name);
+        }
+        if (this.table != null) {
+            this.roots.add(name);
+        }
+    }
+
+    /**
+     * Returns the mark to pass to {@link #buildBlock(int)} when the block
+     * the parser is starting is finished.
+     *
+     * @return the number of nodes built and not yet in a block
+     */
+    int blockMark() {
+        return this.built.size();
+    }
+
+    /**
+     * Interns the node of a block whose statements were built since
+     * {@code mark}, if a table is set.
+     *
+     * @param mark
+     *            the mark returned when the block was started
+     */
+    void buildBlock(int mark) {
+        if (this.table != null) {
+            List<StatementNode> statements = this.built.subList(mark,
+                    this.built.size());
+            StatementNode node = this.table.node(Statement.Kind.BLOCK, null,
+                    null, statements.toArray(new StatementNode[0]));
+            statements.clear();
+            this.built.add(node);
+        }
+    }
+
+    /**
+     * Interns the node of a call of {@code name}, if a table is set.
+     *
+     * @param name
+     *            the instruction name
+     */
+    void buildCall(String name) {
+        if (this.table != null) {
+            this.built.add(this.table.node(Statement.Kind.CALL, null, name,
+                    new StatementNode[0]));
+        }
+    }
+
+    /**
+     * Interns the node of an IF, IF_ELSE or WHILE statement on {@code c}
+     * whose blocks are the last nodes built, if a table is set.
+     *
+     * @param kind
+     *            the kind of statement
+     * @param c
+     *            the condition
+     */
+    void buildCompound(Statement.Kind kind, Statement.Condition c) {
+        if (this.table != null) {
+            int blocks = 1;
+            if (kind == Statement.Kind.IF_ELSE) {
+                blocks = 2;
+            }
+            List<StatementNode> children = this.built
+                    .subList(this.built.size() - blocks, this.built.size());
+            StatementNode node = this.table.node(kind, c, null,
+                    children.toArray(new StatementNode[0]));
+            children.clear();
+            this.built.add(node);
+        }
+    }
+
+    /**
+     * Drops the node built {@code below} nodes before the last, if a table is
+     * set; folding calls this for a block it leaves out.
+     *
+     * @param below
+     *            how far below the last node the node is
+     */
+    void dropBuilt(int below) {
+        if (this.table != null) {
+            this.built.remove(this.built.size() - 1 - below);
+        }
+    }
+
+    /**
+     * Replaces the last node built, an IF or IF_ELSE, with the statements of
+     * its first block, if a table is set; folding calls this when it
+     * collapses the statement.
+     */
+    void spliceBuilt() {
+        if (this.table != null) {
+            StatementNode node = this.built.remove(this.built.size() - 1);
+            StatementNode block = node.child(0);
+            for (int i = 0; i < block.numberOfChildren(); i++) {
+                this.built.add(block.child(i));
+            }
+        }
+    }
+
+    /**
+     * Records the warning {@code message}.
+     *
+     * @param message
+     *            the warning
+     */
+    void warn(String message) {
+        this.warnings.add(message);
+    }
+
+    /**
+     * Returns options for parsing one body of the current parse on its own,
+     * possibly on another thread: the same folding and limits, the same
+     * deadline, and no tables, since those are not thread-safe. What the
+     * body parse reports is added back with {@link #merge(ParseOptions)}.
+     *
+     * @return the options for the body
+     */
+    ParseOptions fork() {
+        ParseOptions fork = new ParseOptions();
+        fork.fold = this.fold;
+        fork.maxTokens = this.maxTokens;
+        fork.maxDepth = this.maxDepth;
+        fork.maxInstructions = this.maxInstructions;
+        fork.maxIdentifierLength = this.maxIdentifierLength;
+        fork.timeLimit = this.timeLimit;
+        fork.deadline = this.deadline;
+        return fork;
+    }
+
+    /**
+     * Adds what a body parse under {@code fork} reported to what this parse
+     * reported.
+     *
+     * @param fork
+     *            the options returned by {@link #fork()}
+     * @updates this
+     */
+    void merge(ParseOptions fork) {
+        if (!this.frozen) {
+            this.folded += fork.folded;
+            this.warnings.addAll(fork.warnings);
+        }
+    }
+
+    /**
+     * Parses {@code tokens} into the block {@code s} with these options, as
+     * part of a parse already begun: the deadline and what was reported so
+     * far are kept.
+     *
+     * @param s
+     *            the statement to parse into
+     * @param tokens
+     *            the input tokens
+     * @replaces s
+     * @updates tokens
+     */
+    void parseBody(Statement s, Queue<String> tokens) {
+        ParseOptions previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            s.parseBlock(tokens);
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Returns the tokens of the BL source {@code source}, recording their
+     * positions in the positions table if one is set. Tokenizing stops as
+     * soon as the token limit is exceeded, so oversized input is never
+     * tokenized in full.
+     *
+     * @param source
+     *            the source text
+     * @return the tokens of {@code source}
+     * @throws ParseLimitExceededException
+     *             if {@code source} has too many tokens
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public Queue<String> tokens(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        return SourceTokenizer.tokens(source, this.positions, this.maxTokens);
+    }
+
+    /**
+     * Appends the tokens of the BL source {@code source} to {@code tokens}
+     * as {@link #tokens(CharSequence)} returns them, making the string of
+     * each with {@code factory}.
+     *
+     * @param source
+     *            the source text
+     * @param factory
+     *            makes the string of each token
+     * @param tokens
+     *            the queue to append the tokens to
+     * @throws ParseLimitExceededException
+     *             if {@code source} has too many tokens
+     * @updates tokens
+     */
+    void tokens(CharSequence source, SourceTokenizer.TokenFactory factory,
+            Queue<String> tokens) {
+        SourceTokenizer.tokenize(source, this.positions, this.maxTokens,
+                factory, tokens);
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source {@code source},
+     * recording their positions in the decoded text in the positions table
+     * if one is set. Tokenizing stops as soon as the token limit is
+     * exceeded, so oversized input is never tokenized in full.
+     *
+     * @param source
+     *            the encoded source
+     * @return the tokens of {@code source}
+     * @throws ParseLimitExceededException
+     *             if {@code source} has too many tokens
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public Queue<String> tokens(byte[] source) {
+        assert source != null : "Violation of: source is not null";
+
+        Queue<String> tokens;
+        if (this.positions != null) {
+            //Positions are offsets into the decoded text.
+            tokens = this.tokens(new String(source, StandardCharsets.UTF_8));
+        } else {
+            tokens = SwarTokenizer.tokens(source, 0, source.length,
+                    this.maxTokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Parses {@code tokens} into {@code p} with these options.
+     *
+     * @param p
+     *            the program to parse into
+     * @param tokens
+     *            the input tokens
+     * @replaces p
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * [as p.parse(tokens), with these options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public void parse(Program p, Queue<String> tokens) {
+        assert p != null : "Violation of: p is not null";
+        assert tokens != null : "Violation of: tokens is not null";
+
+        this.begin(tokens);
+        this.skipChecks = this.trusted && balanced(tokens);
+        ParseOptions previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            p.parse(tokens);
+        } finally {
+            CURRENT.set(previous);
+        }
+        if (this.table != null) {
+            //The bodies were interned as they were parsed, in this order.
+            this.instructions.clear();
+            for (int i = 0; i < this.roots.size(); i++) {
+                String name = this.roots.get(i);
+                if (name == null) {
+                    this.body = this.built.get(i);
+                } else {
+                    this.instructions.put(name, this.built.get(i));
+                }
+            }
+            this.built.clear();
+        }
+    }
+
+    /**
+     * Parses {@code tokens} into the block {@code s} with these options.
+     *
+     * @param s
+     *            the statement to parse into
+     * @param tokens
+     *            the input tokens
+     * @replaces s
+     * @updates tokens
+     * @requires [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * @ensures <pre>
+     * [as s.parseBlock(tokens), with these options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public void parseBlock(Statement s, Queue<String> tokens) {
+        assert s != null : "Violation of: s is not null";
+        assert tokens != null : "Violation of: tokens is not null";
+
+        this.begin(tokens);
+        this.skipChecks = false;
+        ParseOptions previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            s.parseBlock(tokens);
+        } finally {
+            CURRENT.set(previous);
+        }
+        if (this.table != null) {
+            this.body = this.built.remove(this.built.size() - 1);
+        }
+    }
+
+}
@@ -0,0 +1,847 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import components.program.Program;
+
+/**
+ * Long-lived BL parse server. Sources are submitted directly, by a
+ * {@code ParseClient} in the same JVM, or as frames on a Unix socket; a fixed
+ * set of worker threads parses them with {@code Program1Parse1} and answers
+ * each with either the serialized program or a list of diagnostics.
+ *
+ * <p>
+ * Submissions wait in one queue. A worker that wakes up takes every waiting
+ * submission, up to the batch size, and parses them back to back, so a burst
+ * of small requests costs one hand-off rather than one each. The workers live
+ * as long as the server, so the parser stays compiled by the JIT between
+ * requests. The server keeps the latency, from submission to answer, of its
+ * most recent requests and reports the median and 99th percentile with the
+ * queue depth.
+ *
+ * <p>
+ * An answer is {@code OK}, a newline and the pretty print of the program, or
+ * {@code ERROR}, a newline and the diagnostics, one per line, each starting
+ * {@code error: }. The parser stops at the first error, so there is one.
+ * Sources are untrusted: each is parsed under the limits of
+ * {@link #requestOptions()}, and any failure of its parse, an error such as
+ * a stack overflow included, is answered with {@code ERROR} and leaves the
+ * worker running.
+ *
+ * <p>
+ * On the socket, every message in either direction is a frame: a 4-byte
+ * request id, a 4-byte length and that many bytes of UTF-8 text, integers in
+ * big-endian order. Answers carry the id of their request and may arrive out
+ * of order. The server answers every request of a connection before closing
+ * it, once the client has shut down its output.
+ *
+ * <p>
+ * Each connection is read by one thread and answered by another, so the
+ * workers never wait on a client. A connection has at most
+ * {@link #MAX_IN_FLIGHT} requests parsed or waiting to be written; the server
+ * reads no further request until one is written, and drops a connection whose
+ * client leaves its answers unread for {@link #IO_TIMEOUT_MILLIS}. At most
+ * {@link #MAX_CONNECTIONS} connections are served and {@link #MAX_QUEUE}
+ * submissions wait at once: a connection beyond that is refused with an
+ * {@code ERROR} frame whose id is {@link #CONNECTION_ID}, and a submission is
+ * answered with {@code ERROR} at once.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParseServer implements AutoCloseable {
+
+    /**
+     * Default number of submissions a worker parses per hand-off.
+     */
+    public static final int DEFAULT_BATCH = 32;
+
+    /**
+     * Number of recent latencies the percentiles are computed over.
+     */
+    private static final int LATENCY_WINDOW = 4096;
+
+    /**
+     * Longest frame accepted, in bytes.
+     */
+    private static final int MAX_FRAME = 1 << 26;
+
+    /**
+     * Initial size of the buffer of a frame body, which grows as the body
+     * arrives.
+     */
+    private static final int FRAME_CHUNK = 1 << 16;
+
+    /**
+     * Largest number of requests of one connection parsed or waiting to be
+     * written at once.
+     */
+    public static final int MAX_IN_FLIGHT = 64;
+
+    /**
+     * Largest number of connections served at once.
+     */
+    public static final int MAX_CONNECTIONS = 256;
+
+    /**
+     * Largest number of submissions waiting for a worker.
+     */
+    public static final int MAX_QUEUE = 1 << 14;
+
+    /**
+     * Longest time a client may take to read an answer, in milliseconds.
+     */
+    public static final long IO_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Request id of a frame about the whole connection rather than one
+     * request, such as its refusal.
+     */
+    static final int CONNECTION_ID = -1;
+
+    /**
+     * Largest number of tokens in a source.
+     */
+    private static final int MAX_TOKENS = 1 << 22;
+
+    /**
+     * Largest nesting depth of blocks in a source, well within the stack of
+     * the parser and the pretty printer.
+     */
+    private static final int MAX_DEPTH = 500;
+
+    /**
+     * Longest time a source may take to parse.
+     */
+    private static final Duration TIME_LIMIT = Duration.ofSeconds(10);
+
+    /**
+     * A submitted source waiting to be parsed.
+     */
+    private static final class Request {
+
+        /**
+         * The source.
+         */
+        private final String source;
+
+        /**
+         * The future answer.
+         */
+        private final CompletableFuture<String> answer =
+                new CompletableFuture<>();
+
+        /**
+         * When the source was submitted, in {@code System.nanoTime} terms.
+         */
+        private final long submitted = System.nanoTime();
+
+        /**
+         * Constructor.
+         *
+         * @param source
+         *            the source
+         */
+        Request(String source) {
+            this.source = source;
+        }
+
+    }
+
+    /**
+     * A message on the socket: a request id and UTF-8 text.
+     */
+    static final class Frame {
+
+        /**
+         * The request id.
+         */
+        private final int id;
+
+        /**
+         * The text.
+         */
+        private final String text;
+
+        /**
+         * Constructor.
+         *
+         * @param id
+         *            the request id
+         * @param text
+         *            the text
+         */
+        Frame(int id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+
+        /**
+         * Returns the request id.
+         *
+         * @return the id
+         */
+        int id() {
+            return this.id;
+        }
+
+        /**
+         * Returns the text.
+         *
+         * @return the text
+         */
+        String text() {
+            return this.text;
+        }
+
+        /**
+         * Fills {@code buffer} from {@code channel}.
+         *
+         * @param channel
+         *            the connection
+         * @param buffer
+         *            the buffer to fill
+         * @return false iff the input ended before the first byte
+         * @throws IOException
+         *             if the connection fails or the input ends part way
+         */
+        private static boolean fill(SocketChannel channel, ByteBuffer buffer)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    if (buffer.position() > 0) {
+                        throw new EOFException("Truncated frame.");
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads the next frame from {@code channel}.
+         *
+         * @param channel
+         *            the connection
+         * @return the frame, or null if the input has ended
+         * @throws IOException
+         *             if the connection fails or the frame is malformed
+         */
+        static Frame read(SocketChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+            if (!fill(channel, header)) {
+                return null;
+            }
+            header.flip();
+            int id = header.getInt();
+            int length = header.getInt();
+            if (length < 0 || length > MAX_FRAME) {
+                throw new IOException("Bad frame length " + length + ".");
+            }
+            //The buffer grows only as the body actually arrives.
+            ByteBuffer body = ByteBuffer
+                    .allocate(Math.min(length, FRAME_CHUNK));
+            while (body.position() < length) {
+                if (!body.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocate(
+                            (int) Math.min(length, 2L * body.capacity()));
+                    body.flip();
+                    larger.put(body);
+                    body = larger;
+                }
+                if (channel.read(body) < 0) {
+                    throw new EOFException("Truncated frame.");
+                }
+            }
+            return new Frame(id, new String(body.array(), 0, length,
+                    StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes this frame to {@code channel}, whole. Only one thread at a
+         * time may write to a connection.
+         *
+         * @param channel
+         *            the connection
+         * @throws IOException
+         *             if the connection fails
+         */
+        void write(SocketChannel channel) throws IOException {
+            byte[] bytes = this.text.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer frame = ByteBuffer
+                    .allocate(2 * Integer.BYTES + bytes.length);
+            frame.putInt(this.id).putInt(bytes.length).put(bytes).flip();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+
+    }
+
+    /**
+     * Body of the thread answering one connection: writes each answer as it
+     * is handed over, and gives back its in-flight permit once written.
+     */
+    private static final class Writer implements Runnable {
+
+        /**
+         * The connection.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The answers to write.
+         */
+        private final BlockingQueue<Frame> answers =
+                new LinkedBlockingQueue<>();
+
+        /**
+         * One permit per request the connection may still have in flight.
+         */
+        private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+        /**
+         * When the write in progress started, in {@code System.nanoTime}
+         * terms, or 0 if none is.
+         */
+        private volatile long writing = 0;
+
+        /**
+         * Whether a write failed.
+         */
+        private volatile boolean failed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param channel
+         *            the connection
+         */
+        Writer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Hands the answer {@code text} to request {@code id} over for
+         * writing; never blocks.
+         *
+         * @param id
+         *            the request id
+         * @param text
+         *            the answer
+         */
+        void answer(int id, String text) {
+            this.answers.add(new Frame(id, text));
+        }
+
+        /**
+         * Waits until {@code permits} more requests may be in flight, and
+         * takes them.
+         *
+         * @param permits
+         *            the number of requests
+         * @throws IOException
+         *             if a write failed or the client left an answer unread
+         *             for {@link #IO_TIMEOUT_MILLIS}
+         * @throws InterruptedException
+         *             if interrupted while waiting
+         */
+        void await(int permits) throws IOException, InterruptedException {
+            final long checkMillis = 100;
+            final long nanosPerMilli = 1_000_000L;
+
+            while (!this.inFlight.tryAcquire(permits, checkMillis,
+                    TimeUnit.MILLISECONDS)) {
+                long started = this.writing;
+                if (this.failed || (started != 0 && System.nanoTime()
+                        - started > IO_TIMEOUT_MILLIS * nanosPerMilli)) {
+                    throw new IOException("Client did not read its answers.");
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Frame answer = this.answers.take();
+                    this.writing = System.nanoTime();
+                    answer.write(this.channel);
+                    this.writing = 0;
+                    this.inFlight.release();
+                }
+            } catch (InterruptedException e) {
+                //The connection is done.
+            } catch (IOException e) {
+                //The client went away; the reading thread gives up too.
+                this.failed = true;
+            }
+        }
+
+    }
+
+    /**
+     * Submissions waiting for a worker.
+     */
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>(
+            MAX_QUEUE);
+
+    /**
+     * One permit per connection that may still be served.
+     */
+    private final Semaphore connections = new Semaphore(MAX_CONNECTIONS);
+
+    /**
+     * Largest number of submissions a worker parses per hand-off.
+     */
+    private final int batch;
+
+    /**
+     * The worker threads.
+     */
+    private final Thread[] workers;
+
+    /**
+     * The most recent latencies, in nanoseconds, as a ring.
+     */
+    private final long[] latencies = new long[LATENCY_WINDOW];
+
+    /**
+     * Number of submissions answered.
+     */
+    private long answered = 0;
+
+    /**
+     * Number of hand-offs, each of one or more submissions.
+     */
+    private long batches = 0;
+
+    /**
+     * The socket being served, or null.
+     */
+    private volatile ServerSocketChannel server = null;
+
+    /**
+     * Whether the server has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor; starts {@code workers} daemon worker threads.
+     *
+     * @param workers
+     *            the number of worker threads
+     * @param batch
+     *            the largest number of submissions a worker parses per
+     *            hand-off
+     * @requires workers > 0  and  batch > 0
+     */
+    public ParseServer(int workers, int batch) {
+        assert workers > 0 : "Violation of: workers > 0";
+        assert batch > 0 : "Violation of: batch > 0";
+
+        this.batch = batch;
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(this::work, "bl-server-" + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Returns the options each source is parsed with: limits on the tokens,
+     * the nesting depth and the time, since the sources are untrusted.
+     *
+     * @return the request options
+     */
+    public static ParseOptions requestOptions() {
+        return new ParseOptions().setMaxTokens(MAX_TOKENS)
+                .setMaxDepth(MAX_DEPTH).setTimeLimit(TIME_LIMIT);
+    }
+
+    /**
+     * Parses {@code source} and returns the answer; never throws.
+     *
+     * @param source
+     *            the source
+     * @return {@code OK} and the pretty print, or {@code ERROR} and the
+     *         diagnostics
+     */
+    private static String answer(String source) {
+        String answer;
+        try {
+            ParseOptions options = requestOptions();
+            Program p = new Program1Parse1();
+            options.parse(p, options.tokens(source));
+            answer = "OK\n" + new ProgramPrettyPrinter().toString(p);
+        } catch (Throwable e) {
+            //One bad source must not cost the worker or its other requests.
+            String message = e.getMessage();
+            if (message == null) {
+                message = e.getClass().getSimpleName();
+            }
+            answer = "ERROR\nerror: " + message + "\n";
+        }
+        return answer;
+    }
+
+    /**
+     * Body of a worker thread: takes batches of submissions and answers them
+     * until the server is closed.
+     */
+    private void work() {
+        List<Request> taken = new ArrayList<>(this.batch);
+        try {
+            while (!this.closed) {
+                taken.add(this.queue.take());
+                this.queue.drainTo(taken, this.batch - 1);
+                for (Request request : taken) {
+                    String answer = answer(request.source);
+                    this.record(System.nanoTime() - request.submitted);
+                    request.answer.complete(answer);
+                }
+                synchronized (this.latencies) {
+                    this.batches++;
+                }
+                taken.clear();
+            }
+        } catch (InterruptedException e) {
+            //Closed while waiting; what was taken is failed by close.
+            for (Request request : taken) {
+                request.answer.completeExceptionally(
+                        new IllegalStateException("Server closed."));
+            }
+        }
+    }
+
+    /**
+     * Records the latency of one answered submission.
+     *
+     * @param nanos
+     *            the latency, in nanoseconds
+     */
+    private void record(long nanos) {
+        synchronized (this.latencies) {
+            this.latencies[(int) (this.answered % LATENCY_WINDOW)] = nanos;
+            this.answered++;
+        }
+    }
+
+    /**
+     * Submits {@code source} for parsing.
+     *
+     * @param source
+     *            the BL program source
+     * @return the future answer
+     * @requires this is not closed
+     */
+    public CompletableFuture<String> submit(String source) {
+        assert source != null : "Violation of: source is not null";
+
+        Request request = new Request(source);
+        if (this.closed) {
+            request.answer.completeExceptionally(
+                    new IllegalStateException("Server closed."));
+        } else if (!this.queue.offer(request)) {
+            request.answer.complete("ERROR\nerror: server busy, " + MAX_QUEUE
+                    + " submissions waiting\n");
+        }
+        return request.answer;
+    }
+
+    /**
+     * Returns the number of submissions waiting for a worker.
+     *
+     * @return the queue depth
+     */
+    public int queueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * Returns the number of submissions answered.
+     *
+     * @return the number answered
+     */
+    public long answered() {
+        synchronized (this.latencies) {
+            return this.answered;
+        }
+    }
+
+    /**
+     * Returns the mean number of submissions parsed per hand-off.
+     *
+     * @return the mean batch size, or 0 if nothing has been answered
+     */
+    public double meanBatch() {
+        synchronized (this.latencies) {
+            double mean = 0;
+            if (this.batches > 0) {
+                mean = (double) this.answered / this.batches;
+            }
+            return mean;
+        }
+    }
+
+    /**
+     * Returns the latency below which {@code percentile} percent of the most
+     * recent submissions were answered.
+     *
+     * @param percentile
+     *            the percentile
+     * @return the latency, in nanoseconds, or 0 if nothing has been answered
+     * @requires 0 < percentile <= 100
+     */
+    public long latency(double percentile) {
+        assert 0 < percentile && percentile <= 100 : ""
+                + "Violation of: 0 < percentile <= 100";
+
+        long[] window;
+        synchronized (this.latencies) {
+            window = Arrays.copyOf(this.latencies,
+                    (int) Math.min(this.answered, LATENCY_WINDOW));
+        }
+        long latency = 0;
+        if (window.length > 0) {
+            Arrays.sort(window);
+            int rank = (int) Math.ceil(percentile / 100 * window.length);
+            latency = window[Math.max(rank, 1) - 1];
+        }
+        return latency;
+    }
+
+    /**
+     * Returns a one-line report of the queue depth, throughput and latency.
+     *
+     * @return the report
+     */
+    public String stats() {
+        final double nanosPerMicro = 1_000.0;
+        final int median = 50;
+        final int tail = 99;
+
+        return String.format(
+                "answered %d, queue depth %d, mean batch %.1f, "
+                        + "p50 %.0f us, p99 %.0f us",
+                this.answered(), this.queueDepth(), this.meanBatch(),
+                this.latency(median) / nanosPerMicro,
+                this.latency(tail) / nanosPerMicro);
+    }
+
+    /**
+     * Answers the frames of one connection until its input ends, then waits
+     * for the answers still being parsed and closes it. The answers are
+     * written by a thread of the connection's own.
+     *
+     * @param channel
+     *            the connection
+     */
+    private void connection(SocketChannel channel) {
+        Writer writer = new Writer(channel);
+        Thread writing = new Thread(writer, "bl-connection-writer");
+        writing.setDaemon(true);
+        try {
+            writing.start();
+            Frame request = Frame.read(channel);
+            while (request != null) {
+                writer.await(1);
+                int id = request.id();
+                this.submit(request.text()).whenComplete((answer, e) -> {
+                    String text = answer;
+                    if (e != null) {
+                        text = "ERROR\nerror: " + e.getMessage() + "\n";
+                    }
+                    writer.answer(id, text);
+                });
+                request = Frame.read(channel);
+            }
+            writer.await(MAX_IN_FLIGHT);
+        } catch (Throwable e) {
+            //Out of memory included: the server outlives the connection.
+            if (!this.closed) {
+                System.err.println("ParseServer: " + e);
+            }
+        } finally {
+            writing.interrupt();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Nothing left to tell the client.
+            }
+            this.connections.release();
+        }
+    }
+
+    /**
+     * Refuses the connection {@code channel} with an {@code ERROR} frame, as
+     * the server is serving as many connections as it may.
+     *
+     * @param channel
+     *            the connection
+     */
+    private static void refuse(SocketChannel channel) {
+        try {
+            new Frame(CONNECTION_ID, "ERROR\nerror: server busy, "
+                    + MAX_CONNECTIONS + " connections open\n").write(channel);
+        } catch (IOException e) {
+            //The client is gone already.
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Nothing left to tell the client.
+            }
+        }
+    }
+
+    /**
+     * Serves frames on the Unix socket {@code socket}, with a reading and a
+     * writing thread per connection, until the server is closed. A stale
+     * socket file is replaced, and the socket file is removed on return.
+     *
+     * @param socket
+     *            the socket file
+     * @throws IOException
+     *             if the socket cannot be bound
+     * @requires this is not closed and is not serving
+     */
+    public void serve(Path socket) throws IOException {
+        assert socket != null : "Violation of: socket is not null";
+        assert this.server == null : "Violation of: this is not serving";
+
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel channel = ServerSocketChannel
+                .open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            this.server = channel;
+            while (!this.closed) {
+                SocketChannel connection = channel.accept();
+                if (!this.connections.tryAcquire()) {
+                    refuse(connection);
+                } else {
+                    Thread thread = new Thread(
+                            () -> this.connection(connection),
+                            "bl-connection");
+                    thread.setDaemon(true);
+                    try {
+                        thread.start();
+                    } catch (OutOfMemoryError e) {
+                        //No thread to spare: this connection only is lost.
+                        this.connections.release();
+                        refuse(connection);
+                    }
+                }
+            }
+        } catch (ClosedChannelException e) {
+            //Closed by close while waiting for a connection.
+        } finally {
+            this.server = null;
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Stops serving and stops the workers. Submissions not yet answered fail
+     * with an {@code IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        ServerSocketChannel channel = this.server;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //Already unusable.
+            }
+        }
+        for (Thread worker : this.workers) {
+            worker.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread worker : this.workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Request request = this.queue.poll();
+        while (request != null) {
+            request.answer.completeExceptionally(
+                    new IllegalStateException("Server closed."));
+            request = this.queue.poll();
+        }
+    }
+
+    /**
+     * Main method: warms the parser up, then serves until killed, printing
+     * the statistics every few seconds. Usage:
+     * {@code java ParseServer SOCKET [workers [batch]]}.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the socket cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        final long reportMillis = 10_000L;
+
+        if (args.length < 1 || args.length > 3) {
+            System.err.println(
+                    "usage: java ParseServer SOCKET [workers [batch]]");
+            System.exit(2);
+        }
+        int workers = Runtime.getRuntime().availableProcessors();
+        int batch = DEFAULT_BATCH;
+        if (args.length > 1) {
+            workers = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            batch = Integer.parseInt(args[2]);
+        }
+        ParserCli.train();
+        ParseServer server = new ParseServer(workers, batch);
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(reportMillis);
+                    System.err.println("ParseServer: " + server.stats());
+                }
+            } catch (InterruptedException e) {
+                //Stop reporting.
+            }
+        }, "bl-server-stats");
+        reporter.setDaemon(true);
+        reporter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.serve(Paths.get(args[0]));
+    }
+
+}
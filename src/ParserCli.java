@@ -0,0 +1,737 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Non-interactive command line front end for {@code Program1Parse1} and
+ * {@code Statement1Parse1}, for running the parsers many times from scripts.
+ *
+ * <pre>
+ * java ParserCli program FILE...     parse and pretty print BL programs
+ * java ParserCli statement FILE...   parse and pretty print BL blocks
+ * java ParserCli --train             parse a fixed workload, for a
+ *                                    class-data-sharing archive
+ * java ParserCli --daemon SOCKET     serve parse requests on a Unix socket
+ * </pre>
+ *
+ * <p>
+ * Most of the time of a short run is JVM startup and class loading, which
+ * two modes avoid. {@code --train} loads and exercises every class a parse
+ * needs, so running it with {@code -XX:ArchiveClassesAtExit} writes an
+ * archive that later runs load with {@code -XX:SharedArchiveFile}.
+ * {@code --daemon} keeps one JVM running: each connection sends
+ * {@code program} or {@code statement} on the first line and then the
+ * source, shuts down its output, and reads back {@code OK} and the pretty
+ * print, or {@code ERROR} and the message. A request {@code shutdown} stops
+ * the daemon. See the README for the commands.
+ *
+ * <p>
+ * The daemon serves many connections at once, so a client that stalls holds
+ * up only itself. Daemon requests are untrusted: each is parsed under the
+ * limits of {@code ParseServer.requestOptions()}, and a request that is too
+ * large or does not arrive in time is answered with {@code ERROR}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParserCli {
+
+    /**
+     * Exit status when a file could not be parsed.
+     */
+    private static final int EXIT_ERROR = 1;
+
+    /**
+     * Exit status for bad arguments.
+     */
+    private static final int EXIT_USAGE = 2;
+
+    /**
+     * Size of the buffer requests are read into.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest daemon request read, in bytes.
+     */
+    public static final int MAX_REQUEST = 1 << 24;
+
+    /**
+     * Longest time a daemon client may take to send its request, or to read
+     * the response, in milliseconds.
+     */
+    public static final long IO_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Largest number of daemon connections open at once.
+     */
+    public static final int MAX_CONNECTIONS = 64;
+
+    /**
+     * Number of daemon parser threads.
+     */
+    private static final int PARSERS = Runtime.getRuntime()
+            .availableProcessors();
+
+    /**
+     * Longest time the daemon waits before checking the deadlines of its
+     * connections, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 1_000;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private ParserCli() {
+    }
+
+    /**
+     * Parses the BL program {@code source} and returns its pretty print.
+     *
+     * @param source
+     *            the program source
+     * @return the pretty print
+     * @ensures <pre>
+     * if [source is a BL program] then
+     *  program = [the pretty print of the program]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static String program(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        return program(source, new ParseOptions());
+    }
+
+    /**
+     * Parses the BL program {@code source} with {@code options} and returns
+     * its pretty print.
+     *
+     * @param source
+     *            the program source
+     * @param options
+     *            the options to parse with
+     * @return the pretty print
+     * @ensures <pre>
+     * [as program(source), with options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public static String program(CharSequence source, ParseOptions options) {
+        assert source != null : "Violation of: source is not null";
+        assert options != null : "Violation of: options is not null";
+
+        Program p = new Program1Parse1();
+        options.parse(p, options.tokens(source));
+        return new ProgramPrettyPrinter().toString(p);
+    }
+
+    /**
+     * Parses the BL block {@code source} and returns its pretty print.
+     *
+     * @param source
+     *            the block source
+     * @return the pretty print
+     * @ensures <pre>
+     * if [source is a BL block] then
+     *  statement = [the pretty print of the block]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static String statement(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        return statement(source, new ParseOptions());
+    }
+
+    /**
+     * Parses the BL block {@code source} with {@code options} and returns
+     * its pretty print.
+     *
+     * @param source
+     *            the block source
+     * @param options
+     *            the options to parse with
+     * @return the pretty print
+     * @ensures <pre>
+     * [as statement(source), with options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public static String statement(CharSequence source,
+            ParseOptions options) {
+        assert source != null : "Violation of: source is not null";
+        assert options != null : "Violation of: options is not null";
+
+        Queue<String> tokens = options.tokens(source);
+        Statement s = new Statement1Parse1();
+        options.parseBlock(s, tokens);
+        Reporter.assertElseFatalError(
+                tokens.front().equals(Tokenizer.END_OF_INPUT),
+                "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+        return new ProgramPrettyPrinter().toString(s, 0);
+    }
+
+    /**
+     * Answers one request: {@code program} or {@code statement} on the first
+     * line, then the source.
+     *
+     * @param request
+     *            the request
+     * @return {@code OK} and the pretty print, or {@code ERROR} and the
+     *         message, each on its own line
+     */
+    public static String respond(String request) {
+        assert request != null : "Violation of: request is not null";
+
+        return respond(request, new ParseOptions());
+    }
+
+    /**
+     * Answers one request, parsing with {@code options}. Every failure of
+     * the parse, an error such as a stack overflow included, is answered
+     * with {@code ERROR}.
+     *
+     * @param request
+     *            the request
+     * @param options
+     *            the options to parse with
+     * @return {@code OK} and the pretty print, or {@code ERROR} and the
+     *         message, each on its own line
+     */
+    public static String respond(String request, ParseOptions options) {
+        assert request != null : "Violation of: request is not null";
+        assert options != null : "Violation of: options is not null";
+
+        int newline = request.indexOf('\n');
+        if (newline < 0) {
+            newline = request.length();
+        }
+        String kind = request.substring(0, newline).trim();
+        String source = request.substring(newline);
+        String response;
+        try {
+            if (kind.equals("program")) {
+                response = "OK\n" + program(source, options);
+            } else if (kind.equals("statement")) {
+                response = "OK\n" + statement(source, options);
+            } else {
+                response = "ERROR unknown request " + kind + "\n";
+            }
+        } catch (Throwable e) {
+            //One request, however deep, must not take the daemon down.
+            String message = e.getMessage();
+            if (message == null) {
+                message = e.getClass().getSimpleName();
+            }
+            response = "ERROR " + message + "\n";
+        }
+        return response;
+    }
+
+    /**
+     * Parses and pretty prints a fixed workload: the example programs and
+     * blocks in {@code data}, if present, and generated programs, valid and
+     * not, through {@link #respond(String)}.
+     *
+     * @return the number of requests answered
+     * @throws IOException
+     *             if an example file cannot be read
+     */
+    public static int train() throws IOException {
+        final int generated = 200;
+        final long seed = 45;
+        final int instructions = 6;
+        final int blockSize = 5;
+        final int depth = 4;
+        final double errorRate = 0.2;
+
+        int count = 0;
+        Path data = Paths.get("data");
+        if (Files.isDirectory(data)) {
+            try (DirectoryStream<Path> files = Files
+                    .newDirectoryStream(data, "*.bl")) {
+                for (Path file : files) {
+                    String source = new String(Files.readAllBytes(file),
+                            StandardCharsets.UTF_8);
+                    String kind = "program";
+                    if (file.getFileName().toString()
+                            .startsWith("statement")) {
+                        kind = "statement";
+                    }
+                    respond(kind + "\n" + source);
+                    count++;
+                }
+            }
+        }
+        BLProgramGenerator generator = new BLProgramGenerator(seed,
+                instructions, blockSize, depth, errorRate);
+        for (int i = 0; i < generated; i++) {
+            respond("program\n" + generator.next().source());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The state of one daemon connection.
+     */
+    private static final class Connection {
+
+        /**
+         * The key of the connection.
+         */
+        private final SelectionKey key;
+
+        /**
+         * The request read so far.
+         */
+        private final ByteArrayOutputStream request =
+                new ByteArrayOutputStream();
+
+        /**
+         * The answer, set by the parser thread.
+         */
+        private String answer = null;
+
+        /**
+         * The response still to write, or null while the request is read or
+         * parsed.
+         */
+        private ByteBuffer response = null;
+
+        /**
+         * When the client must have sent its request or read the response, in
+         * {@code System.nanoTime} terms; meaningless while the request is
+         * parsed.
+         */
+        private long deadline;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key of the connection
+         */
+        Connection(SelectionKey key) {
+            this.key = key;
+            this.deadline = System.nanoTime()
+                    + IO_TIMEOUT_MILLIS * NANOS_PER_MILLI;
+        }
+
+        /**
+         * Reports whether the request is being parsed.
+         *
+         * @return true iff the request is being parsed
+         */
+        boolean parsing() {
+            return this.key.interestOps() == 0;
+        }
+
+    }
+
+    /**
+     * The daemon: one selector thread that reads every request and writes
+     * every response without blocking, and a pool of parser threads. A
+     * client that stalls holds only its own connection, until its deadline.
+     */
+    private static final class Daemon {
+
+        /**
+         * The listening socket.
+         */
+        private final ServerSocketChannel server;
+
+        /**
+         * The selector of the listening socket and of every connection.
+         */
+        private final Selector selector;
+
+        /**
+         * The key of the listening socket.
+         */
+        private final SelectionKey accepting;
+
+        /**
+         * The parser threads.
+         */
+        private final ExecutorService parsers;
+
+        /**
+         * The connections whose answers are ready to write.
+         */
+        private final ConcurrentLinkedQueue<Connection> answered =
+                new ConcurrentLinkedQueue<>();
+
+        /**
+         * The buffer every read goes through.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * Number of open connections.
+         */
+        private int open = 0;
+
+        /**
+         * Whether the daemon still accepts connections.
+         */
+        private boolean running = true;
+
+        /**
+         * Constructor.
+         *
+         * @param server
+         *            the bound listening socket
+         * @throws IOException
+         *             if the selector cannot be opened
+         */
+        Daemon(ServerSocketChannel server) throws IOException {
+            this.server = server;
+            this.selector = Selector.open();
+            server.configureBlocking(false);
+            this.accepting = server.register(this.selector,
+                    SelectionKey.OP_ACCEPT);
+            this.parsers = Executors.newFixedThreadPool(PARSERS, r -> {
+                Thread t = new Thread(r, "bl-daemon");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        /**
+         * Serves connections until a {@code shutdown} request has been
+         * answered and every open connection is done.
+         *
+         * @throws IOException
+         *             if the selector fails
+         */
+        void run() throws IOException {
+            try {
+                while (this.running || this.open > 0) {
+                    this.selector.select(TICK_MILLIS);
+                    for (SelectionKey key : this.selector.selectedKeys()) {
+                        this.ready(key);
+                    }
+                    this.selector.selectedKeys().clear();
+                    Connection c = this.answered.poll();
+                    while (c != null) {
+                        if (c.key.isValid()) {
+                            this.reply(c, c.answer);
+                        }
+                        c = this.answered.poll();
+                    }
+                    this.expire();
+                    //Stop accepting while the daemon is full.
+                    if (this.accepting.isValid()) {
+                        if (!this.running) {
+                            this.accepting.cancel();
+                        } else if (this.open < MAX_CONNECTIONS) {
+                            this.accepting.interestOps(SelectionKey.OP_ACCEPT);
+                        } else {
+                            this.accepting.interestOps(0);
+                        }
+                    }
+                }
+            } finally {
+                this.parsers.shutdownNow();
+                for (SelectionKey key : this.selector.keys()) {
+                    key.channel().close();
+                }
+                this.selector.close();
+            }
+        }
+
+        /**
+         * Handles the ready key {@code key}. A failure of a connection only
+         * closes that connection.
+         *
+         * @param key
+         *            the key
+         */
+        private void ready(SelectionKey key) {
+            if (key == this.accepting) {
+                this.accept();
+            } else if (key.isValid()) {
+                try {
+                    if (key.isReadable()) {
+                        this.read((Connection) key.attachment());
+                    } else if (key.isWritable()) {
+                        this.write((Connection) key.attachment());
+                    }
+                } catch (IOException e) {
+                    //A client that goes away only loses its own request.
+                    System.err.println("ParserCli: " + e.getMessage());
+                    this.close(key);
+                }
+            }
+        }
+
+        /**
+         * Accepts a waiting connection, if there is one. A connection that
+         * cannot be set up is dropped.
+         */
+        private void accept() {
+            SocketChannel channel = null;
+            try {
+                channel = this.server.accept();
+                if (channel != null) {
+                    channel.configureBlocking(false);
+                    SelectionKey key = channel.register(this.selector,
+                            SelectionKey.OP_READ);
+                    key.attach(new Connection(key));
+                    this.open++;
+                }
+            } catch (IOException e) {
+                System.err.println("ParserCli: " + e.getMessage());
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException f) {
+                        System.err.println("ParserCli: " + f.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads what has arrived of the request of {@code c}, and hands the
+         * request to a parser thread once its end has arrived.
+         *
+         * @param c
+         *            the connection
+         * @throws IOException
+         *             if the connection fails
+         */
+        private void read(Connection c) throws IOException {
+            this.buffer.clear();
+            int n = ((SocketChannel) c.key.channel()).read(this.buffer);
+            if (n > 0) {
+                c.request.write(this.buffer.array(), 0, n);
+                if (c.request.size() > MAX_REQUEST) {
+                    this.reply(c, "ERROR request larger than " + MAX_REQUEST
+                            + " bytes\n");
+                }
+            } else if (n < 0) {
+                String request = new String(c.request.toByteArray(),
+                        StandardCharsets.UTF_8);
+                if (request.trim().equals("shutdown")) {
+                    this.running = false;
+                    this.reply(c, "OK\n");
+                } else {
+                    c.key.interestOps(0);
+                    this.parsers.execute(() -> {
+                        c.answer = respond(request,
+                                ParseServer.requestOptions());
+                        this.answered.add(c);
+                        this.selector.wakeup();
+                    });
+                }
+            }
+        }
+
+        /**
+         * Starts writing {@code response} to {@code c}.
+         *
+         * @param c
+         *            the connection
+         * @param response
+         *            the response
+         */
+        private void reply(Connection c, String response) {
+            c.response = ByteBuffer
+                    .wrap(response.getBytes(StandardCharsets.UTF_8));
+            c.deadline = System.nanoTime()
+                    + IO_TIMEOUT_MILLIS * NANOS_PER_MILLI;
+            c.key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Writes what the client of {@code c} takes of its response, and
+         * closes the connection once all of it is written.
+         *
+         * @param c
+         *            the connection
+         * @throws IOException
+         *             if the connection fails
+         */
+        private void write(Connection c) throws IOException {
+            ((SocketChannel) c.key.channel()).write(c.response);
+            if (!c.response.hasRemaining()) {
+                this.close(c.key);
+            }
+        }
+
+        /**
+         * Answers every request not sent in time with {@code ERROR}, and
+         * closes every connection whose client did not read its response in
+         * time.
+         */
+        private void expire() {
+            long now = System.nanoTime();
+            List<Connection> late = new ArrayList<>();
+            for (SelectionKey key : this.selector.keys()) {
+                Connection c = (Connection) key.attachment();
+                if (c != null && key.isValid() && !c.parsing()
+                        && now - c.deadline > 0) {
+                    late.add(c);
+                }
+            }
+            for (Connection c : late) {
+                if (c.response == null) {
+                    this.reply(c, "ERROR request not sent within "
+                            + IO_TIMEOUT_MILLIS + " ms\n");
+                } else {
+                    System.err.println(
+                            "ParserCli: client did not read the response.");
+                    this.close(c.key);
+                }
+            }
+        }
+
+        /**
+         * Closes the connection of {@code key}.
+         *
+         * @param key
+         *            the key
+         */
+        private void close(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                System.err.println("ParserCli: " + e.getMessage());
+            }
+            this.open--;
+        }
+
+    }
+
+    /**
+     * Serves requests on the Unix socket {@code socket} until a
+     * {@code shutdown} request arrives. Connections are served concurrently:
+     * one thread reads requests and writes responses for all of them without
+     * blocking, and parser threads parse each request under
+     * {@code ParseServer.requestOptions()}. At most
+     * {@link #MAX_CONNECTIONS} connections are open at once; later clients
+     * wait to be accepted. A stale socket file is replaced, and the socket
+     * file is removed on return.
+     *
+     * @param socket
+     *            the socket file
+     * @throws IOException
+     *             if the socket cannot be bound
+     */
+    public static void serve(Path socket) throws IOException {
+        assert socket != null : "Violation of: socket is not null";
+
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel
+                .open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            new Daemon(server).run();
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Prints the usage to the error stream and exits.
+     */
+    private static void usage() {
+        System.err.println("usage: java ParserCli program|statement FILE...");
+        System.err.println("       java ParserCli --train");
+        System.err.println("       java ParserCli --daemon SOCKET");
+        System.exit(EXIT_USAGE);
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if a file or the socket cannot be used
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+        }
+        int status = 0;
+        SimpleWriter out = new SimpleWriter1L();
+        switch (args[0]) {
+            case "--train": {
+                int count = train();
+                out.println("ParserCli: trained on " + count + " requests");
+                break;
+            }
+            case "--daemon": {
+                if (args.length != 2) {
+                    usage();
+                }
+                serve(Paths.get(args[1]));
+                break;
+            }
+            case "program":
+            case "statement": {
+                if (args.length < 2) {
+                    usage();
+                }
+                for (int i = 1; i < args.length; i++) {
+                    String source = new String(
+                            Files.readAllBytes(Paths.get(args[i])),
+                            StandardCharsets.UTF_8);
+                    String response = respond(args[0] + "\n" + source);
+                    if (response.startsWith("OK\n")) {
+                        out.print(response.substring("OK\n".length()));
+                    } else {
+                        System.err.print(args[i] + ": " + response);
+                        status = EXIT_ERROR;
+                    }
+                }
+                break;
+            }
+            default: {
+                usage();
+                break;
+            }
+        }
+        out.close();
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+}
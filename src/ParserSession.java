@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Reusable parsing state for parsing many small BL programs or blocks on one
+ * thread. A session keeps one token queue, one program and one block that
+ * every parse reuses, and a table of the token strings seen so far, so that a
+ * repeated keyword, condition or name is not copied out of the source again.
+ * Between parses only the token queue needs resetting, which is constant
+ * time. Sources are tokenized by {@code SourceTokenizer} under the token
+ * limit of the options parsed with.
+ *
+ * <p>
+ * The program or block returned by a parse belongs to the session and is
+ * replaced by the next parse; a client that keeps it copies it first. A
+ * session is not thread-safe: each thread uses its own, from
+ * {@link #forThread()}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ParserSession {
+
+    /**
+     * The session of each thread.
+     */
+    private static final ThreadLocal<ParserSession> SESSIONS = ThreadLocal
+            .withInitial(ParserSession::new);
+
+    /**
+     * Number of slots in the token table; a power of two.
+     */
+    private static final int TABLE_SIZE = 8192;
+
+    /**
+     * Most distinct token strings kept before the table starts over.
+     */
+    private static final int MAX_INTERNED = TABLE_SIZE / 2;
+
+    /**
+     * The token queue every parse reuses.
+     */
+    private final Queue<String> tokens = new Queue1L<>();
+
+    /**
+     * The program every program parse reuses.
+     */
+    private final Program program = new Program1Parse1();
+
+    /**
+     * The block every block parse reuses.
+     */
+    private final Statement block = new Statement1Parse1();
+
+    /**
+     * The token strings seen so far, by hash, with linear probing.
+     */
+    private final String[] table = new String[TABLE_SIZE];
+
+    /**
+     * Number of strings in the table.
+     */
+    private int interned = 0;
+
+    /**
+     * Makes each token string from the table.
+     */
+    private final SourceTokenizer.TokenFactory interner = this::token;
+
+    /**
+     * No-argument constructor.
+     */
+    public ParserSession() {
+    }
+
+    /**
+     * Returns the session of the current thread.
+     *
+     * @return the current thread's session
+     */
+    public static ParserSession forThread() {
+        return SESSIONS.get();
+    }
+
+    /**
+     * Returns the token {@code text[start, end)}, from the table if it has
+     * been seen before.
+     *
+     * @param text
+     *            the source text
+     * @param start
+     *            the start of the token
+     * @param end
+     *            the end of the token
+     * @return the token
+     * @updates this
+     */
+    private String token(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        final int mask = TABLE_SIZE - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String seen = this.table[slot];
+        while (seen != null) {
+            if (seen.length() == end - start && seen.hashCode() == hash) {
+                int i = 0;
+                while (i < seen.length()
+                        && seen.charAt(i) == text.charAt(start + i)) {
+                    i++;
+                }
+                if (i == seen.length()) {
+                    return seen;
+                }
+            }
+            slot = (slot + 1) & mask;
+            seen = this.table[slot];
+        }
+        String token = text.subSequence(start, end).toString();
+        if (this.interned == MAX_INTERNED) {
+            //A source with this many distinct tokens is not the usual case.
+            Arrays.fill(this.table, null);
+            this.interned = 0;
+            slot = (hash ^ (hash >>> 16)) & mask;
+        }
+        this.table[slot] = token;
+        this.interned++;
+        return token;
+    }
+
+    /**
+     * Resets the token queue and fills it with the tokens of {@code text},
+     * under the token limit of {@code options}.
+     *
+     * @param text
+     *            the source text
+     * @param options
+     *            the options whose token limit applies
+     * @throws ParseLimitExceededException
+     *             if {@code text} has too many tokens
+     * @updates this
+     */
+    private void tokenize(CharSequence text, ParseOptions options) {
+        this.reset();
+        options.tokens(text, this.interner, this.tokens);
+    }
+
+    /**
+     * Drops whatever a failed parse left in the token queue. Parses call
+     * this themselves.
+     *
+     * @updates this
+     */
+    public void reset() {
+        if (this.tokens.length() > 0) {
+            this.tokens.clear();
+        }
+    }
+
+    /**
+     * Parses the BL program {@code source}.
+     *
+     * @param source
+     *            the program source
+     * @return the parsed program, which belongs to this session
+     * @updates this
+     * @aliases reference returned by parse
+     * @ensures <pre>
+     * if [source is a BL program] then
+     *  parse = [the Program corresponding to source]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public Program parse(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        this.tokenize(source, ParseOptions.current());
+        this.program.parse(this.tokens);
+        return this.program;
+    }
+
+    /**
+     * Parses the BL program {@code source} with {@code options}.
+     *
+     * @param source
+     *            the program source
+     * @param options
+     *            the options to parse with
+     * @return the parsed program, which belongs to this session
+     * @updates this, options
+     * @aliases reference returned by parse
+     * @ensures <pre>
+     * [as parse(source), with options]  and
+     *  [throws ParseLimitExceededException if a limit is exceeded]
+     * </pre>
+     */
+    public Program parse(CharSequence source, ParseOptions options) {
+        assert source != null : "Violation of: source is not null";
+        assert options != null : "Violation of: options is not null";
+
+        this.tokenize(source, options);
+        options.parse(this.program, this.tokens);
+        return this.program;
+    }
+
+    /**
+     * Parses the BL block {@code source}.
+     *
+     * @param source
+     *            the block source
+     * @return the parsed block, which belongs to this session
+     * @updates this
+     * @aliases reference returned by parseBlock
+     * @ensures <pre>
+     * if [source is a BL block] then
+     *  parseBlock = [the BLOCK Statement corresponding to source]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public Statement parseBlock(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        this.tokenize(source, ParseOptions.current());
+        this.block.parseBlock(this.tokens);
+        Reporter.assertElseFatalError(
+                this.tokens.dequeue().equals(Tokenizer.END_OF_INPUT),
+                "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+        return this.block;
+    }
+
+    /**
+     * Returns the number of distinct token strings this session holds.
+     *
+     * @return the number of token strings
+     */
+    public int interned() {
+        return this.interned;
+    }
+
+    /*
+     * Main benchmark method --------------------------------------------------
+     */
+
+    /**
+     * Compares parsing a small BL program file many times with a new
+     * tokenizer queue and program each time and with one session. Usage:
+     * {@code java ParserSession [file [parses]]}; the default file is
+     * {@code test/program1.bl}.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        final int rounds = 5;
+
+        String fileName = "test/program1.bl";
+        int parses = 200_000;
+        if (args.length > 0) {
+            fileName = args[0];
+        }
+        if (args.length > 1) {
+            parses = Integer.parseInt(args[1]);
+        }
+        String source = new String(Files.readAllBytes(Paths.get(fileName)),
+                StandardCharsets.UTF_8);
+
+        SimpleWriter out = new SimpleWriter1L();
+        ParserSession session = forThread();
+        Program reference = new Program1Parse1();
+        reference.parse(SourceTokenizer.tokens(source));
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < parses; i++) {
+                Program p = new Program1Parse1();
+                p.parse(SourceTokenizer.tokens(source));
+            }
+            long fresh = System.nanoTime();
+            for (int i = 0; i < parses; i++) {
+                session.parse(source);
+            }
+            long reused = System.nanoTime();
+            String line = String.format(
+                    "round %d: fresh %.0f ns/parse, session %.0f ns/parse",
+                    round, (double) (fresh - start) / parses,
+                    (double) (reused - fresh) / parses);
+            if (!session.parse(source).equals(reference)) {
+                line += " (PROGRAMS DIFFER)";
+            }
+            out.println(line);
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Two-stage BL program parser: a lexer thread reads the source and puts its
+ * tokens into a {@code TokenRing} while the calling thread takes them out
+ * and feeds them to a {@code ProgramFeedParser}. Lexing and parsing overlap,
+ * so on a large file the time taken approaches the larger of the two rather
+ * than their sum.
+ *
+ * <p>
+ * The tokens are the same as {@code Tokenizer.tokens}, and syntax errors are
+ * reported on the calling thread with the messages of the recursive parser;
+ * the lexer thread is stopped before the error reaches the caller.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class PipelinedProgramParser {
+
+    /**
+     * Default number of slots in the ring.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Default number of tokens per publication.
+     */
+    public static final int DEFAULT_BATCH = 256;
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private PipelinedProgramParser() {
+    }
+
+    /**
+     * The lexer stage: reads lines from a {@code SimpleReader} and puts their
+     * tokens into the ring, then {@code Tokenizer.END_OF_INPUT}.
+     */
+    private static final class Lexer implements Runnable {
+
+        /**
+         * The source.
+         */
+        private final SimpleReader in;
+
+        /**
+         * The ring to put tokens into.
+         */
+        private final TokenRing ring;
+
+        /**
+         * What stopped the lexer, or null.
+         */
+        private volatile RuntimeException failure = null;
+
+        /**
+         * Constructor.
+         *
+         * @param in
+         *            the source
+         * @param ring
+         *            the ring to put tokens into
+         */
+        Lexer(SimpleReader in, TokenRing ring) {
+            this.in = in;
+            this.ring = ring;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean open = true;
+                while (open && !this.in.atEOS()) {
+                    String line = this.in.nextLine();
+                    int length = line.length();
+                    int i = 0;
+                    while (open && i < length) {
+                        while (i < length
+                                && Character.isWhitespace(line.charAt(i))) {
+                            i++;
+                        }
+                        int start = i;
+                        while (i < length
+                                && !Character.isWhitespace(line.charAt(i))) {
+                            i++;
+                        }
+                        if (i > start) {
+                            open = this.ring.put(line.substring(start, i));
+                        }
+                    }
+                }
+                if (open) {
+                    this.ring.put(Tokenizer.END_OF_INPUT);
+                    this.ring.flush();
+                }
+            } catch (RuntimeException e) {
+                this.failure = e;
+            } finally {
+                this.ring.close();
+            }
+        }
+
+    }
+
+    /**
+     * Parses the program read from {@code in}, with the default ring size and
+     * batch size.
+     *
+     * @param in
+     *            the source
+     * @param wait
+     *            the wait strategy of both stages
+     * @return the parsed program
+     * @updates in
+     * @requires in.is_open
+     * @ensures <pre>
+     * if [the source read from #in is a BL program] then
+     *  parse = [the Program corresponding to the source]  and
+     *  in.is_open  and  in.ext_name = #in.ext_name  and  in.content = <>
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static Program parse(SimpleReader in, TokenRing.Wait wait) {
+        return parse(in, wait, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /**
+     * Parses the program read from {@code in}.
+     *
+     * @param in
+     *            the source
+     * @param wait
+     *            the wait strategy of both stages
+     * @param capacity
+     *            the number of slots in the ring
+     * @param batch
+     *            the number of tokens per publication
+     * @return the parsed program
+     * @updates in
+     * @requires in.is_open  and  1 <= batch <= capacity
+     * @ensures <pre>
+     * if [the source read from #in is a BL program] then
+     *  parse = [the Program corresponding to the source]  and
+     *  in.is_open  and  in.ext_name = #in.ext_name  and  in.content = <>
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static Program parse(SimpleReader in, TokenRing.Wait wait,
+            int capacity, int batch) {
+        assert in != null : "Violation of: in is not null";
+        assert in.isOpen() : "Violation of: in.is_open";
+        assert wait != null : "Violation of: wait is not null";
+
+        TokenRing ring = new TokenRing(capacity, batch, wait);
+        Lexer lexer = new Lexer(in, ring);
+        Thread thread = new Thread(lexer, "BL lexer");
+        thread.setDaemon(true);
+        thread.start();
+        ProgramFeedParser parser = new ProgramFeedParser();
+        try {
+            String token = ring.take();
+            while (token != null && !token.equals(Tokenizer.END_OF_INPUT)) {
+                parser.feedToken(token);
+                token = ring.take();
+            }
+            if (token == null) {
+                //The lexer stopped without reaching the end of the source.
+                RuntimeException failure = lexer.failure;
+                if (failure == null) {
+                    failure = new IllegalStateException("Lexer stopped.");
+                }
+                throw failure;
+            }
+        } finally {
+            //Stop the lexer, if a syntax error left it running, and wait.
+            ring.close();
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return parser.end();
+    }
+
+    /*
+     * Main benchmark method --------------------------------------------------
+     */
+
+    /**
+     * Compares tokenizing and then parsing a BL program file with the
+     * pipeline. Usage: {@code java PipelinedProgramParser [file]}; without a
+     * file, a large generated program is used.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the generated program cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        final int rounds = 5;
+        final long nanosPerMilli = 1_000_000L;
+        final int instructions = 5_000;
+        final int blockSize = 6;
+        final int depth = 4;
+
+        String fileName;
+        Path generated = null;
+        if (args.length > 0) {
+            fileName = args[0];
+        } else {
+            generated = Files.createTempFile("pipeline", ".bl");
+            Files.write(generated,
+                    new BLProgramGenerator(1, instructions, blockSize, depth,
+                            0).next().source()
+                                    .getBytes(StandardCharsets.UTF_8));
+            fileName = generated.toString();
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            SimpleReader file = new SimpleReader1L(fileName);
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            long lexed = System.nanoTime();
+            Program p = new Program1Parse1();
+            p.parse(tokens);
+            long sequential = System.nanoTime();
+
+            StringBuilder line = new StringBuilder();
+            line.append("round ").append(round).append(": lex ")
+                    .append((lexed - start) / nanosPerMilli)
+                    .append(" ms + parse ")
+                    .append((sequential - lexed) / nanosPerMilli)
+                    .append(" ms");
+            for (TokenRing.Wait wait : TokenRing.Wait.values()) {
+                start = System.nanoTime();
+                file = new SimpleReader1L(fileName);
+                Program pipelined = parse(file, wait);
+                file.close();
+                line.append(", ").append(wait.name().toLowerCase())
+                        .append(" pipeline ")
+                        .append((System.nanoTime() - start) / nanosPerMilli)
+                        .append(" ms");
+                if (!pipelined.equals(p)) {
+                    line.append(" (PROGRAMS DIFFER)");
+                }
+            }
+            out.println(line.toString());
+        }
+        out.close();
+        if (generated != null) {
+            Files.delete(generated);
+        }
+    }
+
+}
@@ -67,39 +67,44 @@ public final class Program1Parse1 extends Program1 {
          * error checking needed).
          */
         String identifier = tokens.dequeue();
+        ParseOptions options = ParseOptions.current();
+        options.checkIdentifier(identifier);
+        //In trusted mode IS and the END line have already been checked.
+        boolean skip = options.skipChecks();
         /*
          * Check if the identifier is a valid identifier.
          */
-        Reporter.assertElseFatalError(Tokenizer.isIdentifier(identifier),
+        TokenClassifier.Kind kind = TokenClassifier.classify(identifier);
+        Reporter.assertElseFatalError(
+                kind == TokenClassifier.Kind.IDENTIFIER
+                        || kind == TokenClassifier.Kind.PRIMITIVE,
                 "Violation of: <\"User-defined instruction\"> is a proper Identifier");
         // Check if the identifier does not match primitive instructions.
-        Reporter.assertElseFatalError(
-                !identifier.equals("move") && !identifier.equals("turnleft")
-                        && !identifier.equals("turnright")
-                        && !identifier.equals("infect")
-                        && !identifier.equals("skip"),
+        Reporter.assertElseFatalError(kind != TokenClassifier.Kind.PRIMITIVE,
                 "Violation of: <\"user-defined instruction\"> can not be the name"
                         + " of the primitive instructions.");
 
         //Next token should be "IS". (Syntax error check needed).
         String is = tokens.dequeue();
         //Check if the is is actually "IS".
-        Reporter.assertElseFatalError(is.equals("IS"),
+        Reporter.assertElseFatalError(skip || is.equals("IS"),
                 "Violation of: Identifier" + " should be followed by <\"IS\">");
 
         //Parse the block into the body.
+        options.markRoot(identifier);
         body.parseBlock(tokens);
 
         //Next token should be "END". (Syntax error check needed).
         String end = tokens.dequeue();
         //Check if the end is actually "END".
-        Reporter.assertElseFatalError(end.equals("END"),
+        Reporter.assertElseFatalError(skip || end.equals("END"),
                 "Violation of: <\"END\">" + " present in front of Identifier.");
 
         //Next token should also be identifier.
         String endIdentifier = tokens.dequeue();
         //Check if the endIdentifier matches the beginning identifier.
-        Reporter.assertElseFatalError(identifier.equals(endIdentifier),
+        Reporter.assertElseFatalError(
+                skip || identifier.equals(endIdentifier),
                 "Violation of: <\"Identifer\"> at the end of new instruction "
                         + "definition must be the same as the identifier at the "
                         + "beginning of the definition.");
@@ -148,8 +153,12 @@ public final class Program1Parse1 extends Program1 {
 
         //Next token should be a valid identifier. (Syntax error check needed).
         String identifier = tokens.dequeue();
+        ParseOptions options = ParseOptions.current();
+        options.checkIdentifier(identifier);
+        //In trusted mode IS and the END line have already been checked.
+        boolean skip = options.skipChecks();
         //Check if the identifier is a valid identifier.
-        Reporter.assertElseFatalError(Tokenizer.isIdentifier(identifier),
+        Reporter.assertElseFatalError(TokenClassifier.isIdentifier(identifier),
                 "Violation of: <\"Program name\"> is a proper Identifier");
         //Assign the name to the program.
         this.setName(identifier);
@@ -157,7 +166,7 @@ public final class Program1Parse1 extends Program1 {
         //Next token should be "IS". (Syntax error check needed).
         String is = tokens.dequeue();
         //Check if the is is actually "IS".
-        Reporter.assertElseFatalError(is.equals("IS"),
+        Reporter.assertElseFatalError(skip || is.equals("IS"),
                 "Violation of: Identifier" + " should be followed by <\"IS\">");
 
         /*
@@ -169,7 +178,8 @@ public final class Program1Parse1 extends Program1 {
          * instructions to parse.
          */
         while (tokens.front().equals("INSTRUCTION")) {
-            Statement userStatement = this.newBody();
+            options.checkInstructions(context.size() + 1);
+            Statement userStatement = new Statement1Parse1();
             String userInstrName = parseInstruction(tokens, userStatement);
             //Check if the user defined instructions are unique.
             Reporter.assertElseFatalError(!context.hasKey(userInstrName),
@@ -188,7 +198,8 @@ public final class Program1Parse1 extends Program1 {
                 "Violation of: the main program should start with BEGIN.");
 
         //Parse tokens of body of program.
-        Statement body = this.newBody();
+        Statement body = new Statement1Parse1();
+        options.markRoot(null);
         body.parseBlock(tokens);
         this.swapBody(body);
 
@@ -198,13 +209,14 @@ public final class Program1Parse1 extends Program1 {
         //Next token should be "END". (Syntax error check needed).
         String end = tokens.dequeue();
         //Check if the end is actually "END".
-        Reporter.assertElseFatalError(end.equals("END"),
+        Reporter.assertElseFatalError(skip || end.equals("END"),
                 "Violation of: <\"END\">" + " present in front of Identifier.");
 
         //Next token should also be identifier.
         String endIdentifier = tokens.dequeue();
         //Check if the endIdentifier matches the beginning identifier.
-        Reporter.assertElseFatalError(identifier.equals(endIdentifier),
+        Reporter.assertElseFatalError(
+                skip || identifier.equals(endIdentifier),
                 "Violation of: <\"Identifer\"> at the end of program must be the"
                         + " same as the identifier at the beginning of the program.");
 
@@ -215,12 +227,31 @@ public final class Program1Parse1 extends Program1 {
 
     }
 
+    /**
+     * Links this program: gives each user-defined instruction a slot and
+     * resolves every call to a primitive code or a slot, so that it can be run
+     * without looking instructions up by name.
+     *
+     * @return the linked program
+     * @ensures <pre>
+     * if [every instruction called in this is primitive or in the context of
+     *     this] then
+     *  link = [this with every call resolved to its code]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public LinkedProgram link() {
+        return LinkedProgram.link(this);
+    }
+
     /*
      * Main test method -------------------------------------------------------
      */
 
     /**
-     * Main method.
+     * Main method. Usage: {@code java Program1Parse1 [file]}; without a file, the
+     * file name is read from the console.
      *
      * @param args
      *            the command line arguments
@@ -229,10 +260,15 @@ public final class Program1Parse1 extends Program1 {
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
         /*
-         * Get input file name
+         * Get input file name, from the command line if given
          */
-        out.print("Enter valid BL program file name: ");
-        String fileName = in.nextLine();
+        String fileName;
+        if (args.length > 0) {
+            fileName = args[0];
+        } else {
+            out.print("Enter valid BL program file name: ");
+            fileName = in.nextLine();
+        }
         /*
          * Parse input file
          */
@@ -246,7 +282,7 @@ public final class Program1Parse1 extends Program1 {
          * Pretty print the program
          */
         out.println("*** Pretty print of parsed program ***");
-        p.prettyPrint(out);
+        out.print(new ProgramPrettyPrinter().toString(p));
 
         in.close();
         out.close();
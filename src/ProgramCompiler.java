@@ -0,0 +1,223 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+import components.utilities.Reporter;
+
+/**
+ * Compiler from a parsed {@code Program} to the instruction array run by
+ * {@code BLVirtualMachine}. Following the classic BL compiler design, calls
+ * to user-defined instructions are expanded in place, so the generated code
+ * consists only of primitive instructions, {@code JUMP} and
+ * {@code JUMP_IF_NOT}, and ends with {@code HALT}.
+ *
+ * <pre>
+ * IF c THEN b END IF             JUMP_IF_NOT c L1; b; L1:
+ * IF c THEN b1 ELSE b2 END IF    JUMP_IF_NOT c L1; b1; JUMP L2; L1: b2; L2:
+ * WHILE c DO b END WHILE         L1: JUMP_IF_NOT c L2; b; JUMP L1; L2:
+ * </pre>
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramCompiler {
+
+    /**
+     * Initial capacity of the code array.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The instructions of the program being compiled.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * The names of the user-defined instructions being expanded, used to
+     * reject recursion.
+     */
+    private final Set<String> expanding = new HashSet<>();
+
+    /**
+     * The code generated so far.
+     */
+    private int[] code = new int[INITIAL_CAPACITY];
+
+    /**
+     * The length of the code generated so far.
+     */
+    private int length = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            the instructions of the program
+     */
+    private ProgramCompiler(Map<String, Statement> context) {
+        this.context = context;
+    }
+
+    /**
+     * Appends {@code word} to the code.
+     *
+     * @param word
+     *            the opcode or operand
+     */
+    private void emit(int word) {
+        if (this.length == this.code.length) {
+            this.code = Arrays.copyOf(this.code, 2 * this.length);
+        }
+        this.code[this.length] = word;
+        this.length++;
+    }
+
+    /**
+     * Appends a call to the instruction called {@code name}.
+     *
+     * @param name
+     *            the instruction name
+     */
+    private void call(String name) {
+        switch (name) {
+            case "move":
+                this.emit(BLVirtualMachine.MOVE);
+                break;
+            case "turnleft":
+                this.emit(BLVirtualMachine.TURNLEFT);
+                break;
+            case "turnright":
+                this.emit(BLVirtualMachine.TURNRIGHT);
+                break;
+            case "infect":
+                this.emit(BLVirtualMachine.INFECT);
+                break;
+            case "skip":
+                this.emit(BLVirtualMachine.SKIP);
+                break;
+            default:
+                Reporter.assertElseFatalError(this.context.hasKey(name),
+                        "Violation of: instruction " + name + " is defined");
+                Reporter.assertElseFatalError(!this.expanding.contains(name),
+                        "Violation of: instruction " + name
+                                + " does not call itself");
+                this.expanding.add(name);
+                this.compile(this.context.value(name));
+                this.expanding.remove(name);
+                break;
+        }
+    }
+
+    /**
+     * Appends the code for {@code s}.
+     *
+     * @param s
+     *            the statement to compile
+     */
+    private void compile(Statement s) {
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    this.compile(child);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                this.emit(BLVirtualMachine.JUMP_IF_NOT);
+                this.emit(c.ordinal());
+                int skip = this.length;
+                this.emit(0);
+                this.compile(block);
+                this.code[skip] = this.length;
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                this.emit(BLVirtualMachine.JUMP_IF_NOT);
+                this.emit(c.ordinal());
+                int toElse = this.length;
+                this.emit(0);
+                this.compile(thenBlock);
+                this.emit(BLVirtualMachine.JUMP);
+                int toEnd = this.length;
+                this.emit(0);
+                this.code[toElse] = this.length;
+                this.compile(elseBlock);
+                this.code[toEnd] = this.length;
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                int top = this.length;
+                this.emit(BLVirtualMachine.JUMP_IF_NOT);
+                this.emit(c.ordinal());
+                int exit = this.length;
+                this.emit(0);
+                this.compile(block);
+                this.emit(BLVirtualMachine.JUMP);
+                this.emit(top);
+                this.code[exit] = this.length;
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String name = s.disassembleCall();
+                this.call(name);
+                s.assembleCall(name);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compiles {@code p} into {@code BLVirtualMachine} code.
+     *
+     * @param p
+     *            the program to compile
+     * @return the compiled code
+     * @ensures <pre>
+     * if [every instruction called in p is primitive or in the context of p]
+     *    and  [no instruction of p calls itself, directly or indirectly] then
+     *  [compile is code that drives a robot exactly as the body of p does,
+     *   followed by HALT]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static int[] compile(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        ProgramCompiler compiler = new ProgramCompiler(context);
+        try {
+            compiler.compile(body);
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+        compiler.emit(BLVirtualMachine.HALT);
+        return Arrays.copyOf(compiler.code, compiler.length);
+    }
+
+}
@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+
+/**
+ * Structural comparison of two {@code Program}s. Both programs are interned
+ * into one {@code StatementTable}, so equal subtrees are the same node and the
+ * comparison skips them at once; only the path to a difference is walked.
+ * Everything is linear in the size of the programs and nothing is rendered to
+ * text except the description of the differing nodes.
+ *
+ * <p>
+ * A path names the body or an instruction and then, for each level, the
+ * position in the block and which block of an IF_ELSE it goes into, as in
+ * {@code BEGIN[2].else[0]} or {@code INSTRUCTION go[1]}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramDiff {
+
+    /**
+     * Whether the program names differ.
+     */
+    private final boolean nameChanged;
+
+    /**
+     * Instructions of the second program only, sorted.
+     */
+    private final List<String> added = new ArrayList<>();
+
+    /**
+     * Instructions of the first program only, sorted.
+     */
+    private final List<String> removed = new ArrayList<>();
+
+    /**
+     * Instructions of both programs whose bodies differ, sorted.
+     */
+    private final List<String> changed = new ArrayList<>();
+
+    /**
+     * The first difference in each changed instruction, by name.
+     */
+    private final java.util.Map<String, String> instructionDifferences =
+            new HashMap<>();
+
+    /**
+     * The first difference in the body, or null.
+     */
+    private final String bodyDifference;
+
+    /**
+     * The first difference overall, or null.
+     */
+    private final String firstDifference;
+
+    /**
+     * Constructor.
+     *
+     * @param p1
+     *            the first program
+     * @param p2
+     *            the second program
+     */
+    private ProgramDiff(Program p1, Program p2) {
+        StatementTable table = new StatementTable();
+        java.util.Map<String, StatementNode> instructions1 = new HashMap<>();
+        java.util.Map<String, StatementNode> instructions2 = new HashMap<>();
+        StatementNode body1 = intern(p1, table, instructions1);
+        StatementNode body2 = intern(p2, table, instructions2);
+
+        this.nameChanged = !p1.name().equals(p2.name());
+        for (java.util.Map.Entry<String, StatementNode> e : instructions1
+                .entrySet()) {
+            StatementNode other = instructions2.get(e.getKey());
+            if (other == null) {
+                this.removed.add(e.getKey());
+            } else if (other != e.getValue()) {
+                this.changed.add(e.getKey());
+                StringBuilder path = new StringBuilder("INSTRUCTION ")
+                        .append(e.getKey());
+                this.instructionDifferences.put(e.getKey(),
+                        difference(e.getValue(), other, path));
+            }
+        }
+        for (String name : instructions2.keySet()) {
+            if (!instructions1.containsKey(name)) {
+                this.added.add(name);
+            }
+        }
+        Collections.sort(this.added);
+        Collections.sort(this.removed);
+        Collections.sort(this.changed);
+
+        if (body1 == body2) {
+            this.bodyDifference = null;
+        } else {
+            this.bodyDifference = difference(body1, body2,
+                    new StringBuilder("BEGIN"));
+        }
+
+        if (this.nameChanged) {
+            this.firstDifference = "PROGRAM: " + p1.name() + " vs "
+                    + p2.name();
+        } else if (!this.removed.isEmpty()) {
+            this.firstDifference = "INSTRUCTION " + this.removed.get(0)
+                    + ": removed";
+        } else if (!this.added.isEmpty()) {
+            this.firstDifference = "INSTRUCTION " + this.added.get(0)
+                    + ": added";
+        } else if (!this.changed.isEmpty()) {
+            this.firstDifference = this.instructionDifferences
+                    .get(this.changed.get(0));
+        } else {
+            this.firstDifference = this.bodyDifference;
+        }
+    }
+
+    /**
+     * Interns the instructions and body of {@code p} into {@code table}.
+     *
+     * @param p
+     *            the program
+     * @param table
+     *            the table to intern into
+     * @param instructions
+     *            the interned instruction bodies, by name
+     * @return the interned body
+     * @updates table, instructions
+     */
+    private static StatementNode intern(Program p, StatementTable table,
+            java.util.Map<String, StatementNode> instructions) {
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        for (Map.Pair<String, Statement> instruction : context) {
+            instructions.put(instruction.key(),
+                    table.intern(instruction.value()));
+        }
+        StatementNode node = table.intern(body);
+        p.swapContext(context);
+        p.swapBody(body);
+        return node;
+    }
+
+    /**
+     * Returns a short description of the node {@code n}, without its
+     * children.
+     *
+     * @param n
+     *            the node
+     * @return the description
+     */
+    private static String describe(StatementNode n) {
+        String description;
+        switch (n.kind()) {
+            case BLOCK:
+                description = "BLOCK of " + n.numberOfChildren();
+                break;
+            case CALL:
+                description = n.name();
+                break;
+            default:
+                description = n.kind() + " " + n.condition().name()
+                        .toLowerCase().replace('_', '-');
+                break;
+        }
+        return description;
+    }
+
+    /**
+     * Returns the path to the first difference between {@code n1} and
+     * {@code n2}, with what differs there.
+     *
+     * @param n1
+     *            the node of the first program
+     * @param n2
+     *            the node of the second program
+     * @param path
+     *            the path to {@code n1} and {@code n2}
+     * @return the first difference
+     * @requires n1 /= n2 and [n1 and n2 are interned in the same table]
+     */
+    private static String difference(StatementNode n1, StatementNode n2,
+            StringBuilder path) {
+        StatementNode a = n1;
+        StatementNode b = n2;
+        while (true) {
+            if (a.kind() != b.kind() || a.kind() == Statement.Kind.CALL
+                    || (a.kind() != Statement.Kind.BLOCK
+                            && a.condition() != b.condition())) {
+                return path.append(": ").append(describe(a)).append(" vs ")
+                        .append(describe(b)).toString();
+            }
+            if (a.kind() == Statement.Kind.BLOCK) {
+                int i = 0;
+                while (i < a.numberOfChildren() && i < b.numberOfChildren()
+                        && a.child(i) == b.child(i)) {
+                    i++;
+                }
+                path.append('[').append(i).append(']');
+                if (i == b.numberOfChildren()) {
+                    return path.append(": removed ")
+                            .append(describe(a.child(i))).toString();
+                }
+                if (i == a.numberOfChildren()) {
+                    return path.append(": added ")
+                            .append(describe(b.child(i))).toString();
+                }
+                a = a.child(i);
+                b = b.child(i);
+            } else if (a.kind() == Statement.Kind.IF_ELSE
+                    && a.child(0) == b.child(0)) {
+                path.append(".else");
+                a = a.child(1);
+                b = b.child(1);
+            } else {
+                if (a.kind() == Statement.Kind.IF_ELSE) {
+                    path.append(".then");
+                }
+                a = a.child(0);
+                b = b.child(0);
+            }
+        }
+    }
+
+    /**
+     * Compares {@code p1} with {@code p2}.
+     *
+     * @param p1
+     *            the first program
+     * @param p2
+     *            the second program
+     * @return the differences from {@code p1} to {@code p2}
+     */
+    public static ProgramDiff compare(Program p1, Program p2) {
+        assert p1 != null : "Violation of: p1 is not null";
+        assert p2 != null : "Violation of: p2 is not null";
+
+        return new ProgramDiff(p1, p2);
+    }
+
+    /**
+     * Reports whether the programs are equal.
+     *
+     * @return true iff the programs are equal
+     */
+    public boolean isEqual() {
+        return this.firstDifference == null;
+    }
+
+    /**
+     * Reports whether the program names differ.
+     *
+     * @return true iff the names differ
+     */
+    public boolean nameChanged() {
+        return this.nameChanged;
+    }
+
+    /**
+     * Returns the instructions only the second program defines, sorted.
+     *
+     * @return the added instructions
+     */
+    public List<String> addedInstructions() {
+        return Collections.unmodifiableList(this.added);
+    }
+
+    /**
+     * Returns the instructions only the first program defines, sorted.
+     *
+     * @return the removed instructions
+     */
+    public List<String> removedInstructions() {
+        return Collections.unmodifiableList(this.removed);
+    }
+
+    /**
+     * Returns the instructions both programs define differently, sorted.
+     *
+     * @return the changed instructions
+     */
+    public List<String> changedInstructions() {
+        return Collections.unmodifiableList(this.changed);
+    }
+
+    /**
+     * Returns the first difference in the body of instruction {@code name}.
+     *
+     * @param name
+     *            the instruction
+     * @return the path to the first difference, with what differs there
+     * @requires name is in changedInstructions()
+     */
+    public String instructionDifference(String name) {
+        assert this.instructionDifferences.containsKey(name) : ""
+                + "Violation of: name is in changedInstructions()";
+        return this.instructionDifferences.get(name);
+    }
+
+    /**
+     * Returns the first difference in the body, or null if the bodies are
+     * equal.
+     *
+     * @return the path to the first difference, with what differs there
+     */
+    public String bodyDifference() {
+        return this.bodyDifference;
+    }
+
+    /**
+     * Returns the first difference: in the name, then the sets of
+     * instructions, then the instruction bodies by name, then the body; null
+     * if the programs are equal.
+     *
+     * @return the first difference, or null
+     */
+    public String firstDifference() {
+        return this.firstDifference;
+    }
+
+    @Override
+    public String toString() {
+        String result = "equal";
+        if (!this.isEqual()) {
+            result = this.firstDifference;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,565 @@
+import java.nio.CharBuffer;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Push-model parser for BL programs whose source arrives in fragments. Each
+ * call to {@code feed} lexes the fragment (a token may straddle two
+ * fragments) and advances the parse by every complete token, so by the time
+ * {@code end} is called only the last token remains to be handled.
+ *
+ * <p>
+ * The grammar is the one {@code Program1Parse1} and {@code Statement1Parse1}
+ * implement, but the recursion is replaced by an explicit stack of open
+ * blocks so that parsing can stop after any token and resume with the next
+ * fragment. Syntax errors are reported as soon as the offending token arrives
+ * with the same messages the recursive parser uses; after an error the parser
+ * must not be used again.
+ *
+ * <p>
+ * A parser made with {@link #ProgramFeedParser(ParseOptions)} enforces the
+ * limits of its options on the tokens, the nesting depth, the instructions,
+ * the identifiers and the time. Their folding and tables are not used.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramFeedParser {
+
+    /**
+     * What the parser expects as the next token.
+     */
+    private enum Expect {
+        /**
+         * The "PROGRAM" keyword.
+         */
+        PROGRAM,
+        /**
+         * The program name.
+         */
+        PROGRAM_NAME,
+        /**
+         * The "IS" after the program name.
+         */
+        PROGRAM_IS,
+        /**
+         * Another "INSTRUCTION" or the "BEGIN" of the main body.
+         */
+        INSTRUCTION_OR_BEGIN,
+        /**
+         * The name of a user-defined instruction.
+         */
+        INSTRUCTION_NAME,
+        /**
+         * The "IS" after an instruction name.
+         */
+        INSTRUCTION_IS,
+        /**
+         * A statement or the end of the innermost open block.
+         */
+        STATEMENT,
+        /**
+         * The condition of an IF or WHILE.
+         */
+        CONDITION,
+        /**
+         * The "THEN" of an IF.
+         */
+        THEN,
+        /**
+         * The "DO" of a WHILE.
+         */
+        DO,
+        /**
+         * The "IF" or "WHILE" after the "END" of a statement.
+         */
+        END_KIND,
+        /**
+         * The name after the "END" of an instruction.
+         */
+        INSTRUCTION_END_NAME,
+        /**
+         * The name after the "END" of the program.
+         */
+        PROGRAM_END_NAME,
+        /**
+         * {@code Tokenizer.END_OF_INPUT}.
+         */
+        END_OF_INPUT,
+        /**
+         * Nothing: the program is complete.
+         */
+        DONE
+    }
+
+    /**
+     * What an open block belongs to.
+     */
+    private enum Owner {
+        /**
+         * The body of a user-defined instruction.
+         */
+        INSTRUCTION,
+        /**
+         * The main body of the program.
+         */
+        MAIN,
+        /**
+         * The block of an IF, before any ELSE.
+         */
+        IF,
+        /**
+         * The ELSE block of an IF_ELSE.
+         */
+        ELSE,
+        /**
+         * The block of a WHILE.
+         */
+        WHILE
+    }
+
+    /**
+     * A block that has been opened but not yet closed.
+     */
+    private static final class Frame {
+
+        /**
+         * What the block belongs to.
+         */
+        private final Owner owner;
+
+        /**
+         * The condition of the enclosing IF or WHILE, if any.
+         */
+        private final Statement.Condition condition;
+
+        /**
+         * The statements of the block parsed so far.
+         */
+        private final Statement block;
+
+        /**
+         * The finished THEN block, for an ELSE frame.
+         */
+        private final Statement thenBlock;
+
+        /**
+         * Constructor.
+         *
+         * @param owner
+         *            what the block belongs to
+         * @param condition
+         *            the condition of the enclosing statement, or null
+         * @param block
+         *            the empty block
+         * @param thenBlock
+         *            the finished THEN block, or null
+         */
+        Frame(Owner owner, Statement.Condition condition, Statement block,
+                Statement thenBlock) {
+            this.owner = owner;
+            this.condition = condition;
+            this.block = block;
+            this.thenBlock = thenBlock;
+        }
+
+    }
+
+    /**
+     * The program being built.
+     */
+    private final Program program;
+
+    /**
+     * The options whose limits are enforced.
+     */
+    private final ParseOptions options;
+
+    /**
+     * Number of tokens parsed, END_OF_INPUT excluded.
+     */
+    private int tokens = 0;
+
+    /**
+     * The instructions parsed so far.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * The open blocks, innermost last.
+     */
+    private Frame[] frames = new Frame[16];
+
+    /**
+     * The number of open blocks.
+     */
+    private int depth = 0;
+
+    /**
+     * The next token the parser expects.
+     */
+    private Expect expect = Expect.PROGRAM;
+
+    /**
+     * The name of the program.
+     */
+    private String programName;
+
+    /**
+     * The name of the instruction being parsed.
+     */
+    private String instructionName;
+
+    /**
+     * The keyword ("IF" or "WHILE") of the statement whose header is being
+     * parsed, or whose "END" was just seen.
+     */
+    private String pendingKeyword;
+
+    /**
+     * The condition of the statement whose header is being parsed.
+     */
+    private Statement.Condition pendingCondition;
+
+    /**
+     * The frame closed by the last "END" inside a block.
+     */
+    private Frame closed;
+
+    /**
+     * The characters of a token that continues into the next fragment.
+     */
+    private final StringBuilder partial = new StringBuilder();
+
+    /**
+     * No-argument constructor, with no limits.
+     */
+    public ProgramFeedParser() {
+        this(new ParseOptions());
+    }
+
+    /**
+     * Constructor; the parse is limited by {@code options}, whose clock
+     * starts now.
+     *
+     * @param options
+     *            the options
+     */
+    public ProgramFeedParser(ParseOptions options) {
+        assert options != null : "Violation of: options is not null";
+
+        this.program = new Program1Parse1();
+        this.context = this.program.newContext();
+        this.options = options;
+        options.begin();
+    }
+
+    /**
+     * Lexes {@code chunk} and parses every token it completes. The characters
+     * of {@code chunk} are consumed.
+     *
+     * @param chunk
+     *            the next fragment of source
+     * @updates chunk
+     * @ensures <pre>
+     * chunk.remaining() = 0  and
+     * [the complete tokens fed so far have been parsed, or an appropriate
+     *  error message has been reported]
+     * </pre>
+     */
+    public void feed(CharBuffer chunk) {
+        assert chunk != null : "Violation of: chunk is not null";
+
+        while (chunk.hasRemaining()) {
+            char c = chunk.get();
+            if (Character.isWhitespace(c)) {
+                if (this.partial.length() > 0) {
+                    this.feedToken(this.partial.toString());
+                    this.partial.setLength(0);
+                }
+            } else {
+                this.partial.append(c);
+            }
+        }
+    }
+
+    /**
+     * Ends the input and returns the parsed program.
+     *
+     * @return the parsed program
+     * @ensures <pre>
+     * if [the source fed so far is a BL program] then
+     *  end = [the Program corresponding to the source]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public Program end() {
+        if (this.partial.length() > 0) {
+            this.feedToken(this.partial.toString());
+            this.partial.setLength(0);
+        }
+        this.feedToken(Tokenizer.END_OF_INPUT);
+        return this.program;
+    }
+
+    /**
+     * Parses the single token {@code token}. {@code Tokenizer.END_OF_INPUT}
+     * ends the input; {@code end} should be used to retrieve the program.
+     *
+     * @param token
+     *            the next token
+     * @ensures [token has been parsed, or an appropriate error message has
+     *          been reported]
+     */
+    public void feedToken(String token) {
+        assert token != null : "Violation of: token is not null";
+
+        if (!token.equals(Tokenizer.END_OF_INPUT)) {
+            this.tokens++;
+            this.options.checkTokens(this.tokens);
+        }
+        switch (this.expect) {
+            case PROGRAM:
+                Reporter.assertElseFatalError(token.equals("PROGRAM"),
+                        "Violation of: <\"PROGRAM\"> is proper prefix of tokens");
+                this.expect = Expect.PROGRAM_NAME;
+                break;
+            case PROGRAM_NAME:
+                this.options.checkIdentifier(token);
+                Reporter.assertElseFatalError(
+                        TokenClassifier.isIdentifier(token),
+                        "Violation of: <\"Program name\"> is a proper Identifier");
+                this.programName = token;
+                this.expect = Expect.PROGRAM_IS;
+                break;
+            case PROGRAM_IS:
+            case INSTRUCTION_IS:
+                Reporter.assertElseFatalError(token.equals("IS"),
+                        "Violation of: Identifier"
+                                + " should be followed by <\"IS\">");
+                if (this.expect == Expect.PROGRAM_IS) {
+                    this.expect = Expect.INSTRUCTION_OR_BEGIN;
+                } else {
+                    this.open(Owner.INSTRUCTION, null, null);
+                }
+                break;
+            case INSTRUCTION_OR_BEGIN:
+                if (token.equals("INSTRUCTION")) {
+                    this.options.checkInstructions(this.context.size() + 1);
+                    this.expect = Expect.INSTRUCTION_NAME;
+                } else {
+                    Reporter.assertElseFatalError(token.equals("BEGIN"),
+                            "Violation of: the main program should start with BEGIN.");
+                    this.open(Owner.MAIN, null, null);
+                }
+                break;
+            case INSTRUCTION_NAME:
+                this.options.checkIdentifier(token);
+                TokenClassifier.Kind kind = TokenClassifier.classify(token);
+                Reporter.assertElseFatalError(
+                        kind == TokenClassifier.Kind.IDENTIFIER
+                                || kind == TokenClassifier.Kind.PRIMITIVE,
+                        "Violation of: <\"User-defined instruction\"> is a proper Identifier");
+                Reporter.assertElseFatalError(
+                        kind != TokenClassifier.Kind.PRIMITIVE,
+                        "Violation of: <\"user-defined instruction\"> can not be the name"
+                                + " of the primitive instructions.");
+                this.instructionName = token;
+                this.expect = Expect.INSTRUCTION_IS;
+                break;
+            case STATEMENT:
+                this.statement(token);
+                break;
+            case CONDITION:
+                this.pendingCondition = TokenClassifier.condition(token);
+                Reporter.assertElseFatalError(this.pendingCondition != null,
+                        "Violation of: " + token + " is valid condition");
+                if (this.pendingKeyword.equals("IF")) {
+                    this.expect = Expect.THEN;
+                } else {
+                    this.expect = Expect.DO;
+                }
+                break;
+            case THEN:
+                Reporter.assertElseFatalError(token.equals("THEN"),
+                        "Violation of: THEN should be present after the if condition.");
+                this.open(Owner.IF, this.pendingCondition, null);
+                break;
+            case DO:
+                Reporter.assertElseFatalError(token.equals("DO"),
+                        "Violation of: DO should be present after the while condition.");
+                this.open(Owner.WHILE, this.pendingCondition, null);
+                break;
+            case END_KIND:
+                this.closeStatement(token);
+                break;
+            case INSTRUCTION_END_NAME:
+                Reporter.assertElseFatalError(
+                        token.equals(this.instructionName),
+                        "Violation of: <\"Identifer\"> at the end of new instruction "
+                                + "definition must be the same as the identifier at the "
+                                + "beginning of the definition.");
+                Reporter.assertElseFatalError(
+                        !this.context.hasKey(this.instructionName),
+                        "Violation of: User defined instructions names should be unique.");
+                this.context.add(this.instructionName, this.closed.block);
+                this.closed = null;
+                this.expect = Expect.INSTRUCTION_OR_BEGIN;
+                break;
+            case PROGRAM_END_NAME:
+                Reporter.assertElseFatalError(token.equals(this.programName),
+                        "Violation of: <\"Identifer\"> at the end of program must be the"
+                                + " same as the identifier at the beginning of the program.");
+                this.program.setName(this.programName);
+                this.program.swapContext(this.context);
+                this.program.swapBody(this.closed.block);
+                this.closed = null;
+                this.expect = Expect.END_OF_INPUT;
+                break;
+            case END_OF_INPUT:
+                Reporter.assertElseFatalError(
+                        token.equals(Tokenizer.END_OF_INPUT),
+                        "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+                this.expect = Expect.DONE;
+                break;
+            default:
+                Reporter.assertElseFatalError(false,
+                        "Violation of: <Tokenizer.END_OF_INPUT> is a suffix of tokens.");
+                break;
+        }
+    }
+
+    /**
+     * Opens a new block for {@code owner} and expects its first statement.
+     *
+     * @param owner
+     *            what the block belongs to
+     * @param condition
+     *            the condition of the enclosing IF or WHILE, or null
+     * @param thenBlock
+     *            the finished THEN block for an ELSE, or null
+     */
+    private void open(Owner owner, Statement.Condition condition,
+            Statement thenBlock) {
+        this.options.enterBlock();
+        if (this.depth == this.frames.length) {
+            Frame[] grown = new Frame[2 * this.depth];
+            System.arraycopy(this.frames, 0, grown, 0, this.depth);
+            this.frames = grown;
+        }
+        this.frames[this.depth] = new Frame(owner, condition,
+                this.program.newBody(), thenBlock);
+        this.depth++;
+        this.expect = Expect.STATEMENT;
+    }
+
+    /**
+     * Handles {@code token} at the start of a statement: either it starts an
+     * IF, WHILE or CALL, or it ends the innermost open block.
+     *
+     * @param token
+     *            the token
+     */
+    private void statement(String token) {
+        Frame top = this.frames[this.depth - 1];
+        if (token.equals("IF") || token.equals("WHILE")) {
+            this.pendingKeyword = token;
+            this.expect = Expect.CONDITION;
+        } else if (token.equals("ELSE")) {
+            Reporter.assertElseFatalError(top.owner == Owner.IF,
+                    endMessage(top.owner));
+            this.depth--;
+            this.options.exitBlock();
+            this.open(Owner.ELSE, top.condition, top.block);
+        } else if (token.equals("END")) {
+            this.depth--;
+            this.options.exitBlock();
+            this.frames[this.depth] = null;
+            this.closed = top;
+            switch (top.owner) {
+                case INSTRUCTION:
+                    this.expect = Expect.INSTRUCTION_END_NAME;
+                    break;
+                case MAIN:
+                    this.expect = Expect.PROGRAM_END_NAME;
+                    break;
+                default:
+                    this.expect = Expect.END_KIND;
+                    break;
+            }
+        } else {
+            Reporter.assertElseFatalError(
+                    !token.equals(Tokenizer.END_OF_INPUT),
+                    endMessage(top.owner));
+            Reporter.assertElseFatalError(TokenClassifier.isIdentifier(token),
+                    "Violation of: " + token + " is a valid identifier");
+            this.options.checkIdentifier(token);
+            this.options.checkTime();
+            Statement call = top.block.newInstance();
+            call.assembleCall(token);
+            top.block.addToBlock(top.block.lengthOfBlock(), call);
+        }
+    }
+
+    /**
+     * Handles {@code token} after the "END" that closed an IF, ELSE or WHILE
+     * block, and adds the finished statement to the enclosing block.
+     *
+     * @param token
+     *            the token
+     */
+    private void closeStatement(String token) {
+        Frame f = this.closed;
+        Statement s = f.block.newInstance();
+        if (f.owner == Owner.WHILE) {
+            Reporter.assertElseFatalError(token.equals("WHILE"),
+                    "Violation of: WHILE should be present at the end of while block.");
+            s.assembleWhile(f.condition, f.block);
+        } else {
+            Reporter.assertElseFatalError(token.equals("IF"),
+                    "Violation of: IF should be present at the end of if block.");
+            if (f.owner == Owner.IF) {
+                s.assembleIf(f.condition, f.block);
+            } else {
+                s.assembleIfElse(f.condition, f.thenBlock, f.block);
+            }
+        }
+        this.closed = null;
+        Statement parent = this.frames[this.depth - 1].block;
+        parent.addToBlock(parent.lengthOfBlock(), s);
+        this.expect = Expect.STATEMENT;
+    }
+
+    /**
+     * Returns the message reported when a block owned by {@code owner} is not
+     * followed by its "END".
+     *
+     * @param owner
+     *            what the block belongs to
+     * @return the error message
+     */
+    private static String endMessage(Owner owner) {
+        String message;
+        switch (owner) {
+            case WHILE:
+                message = "Violation of: END should be present at the end of while block.";
+                break;
+            case IF:
+            case ELSE:
+                message = "Violation of: END should be present at the end of if block.";
+                break;
+            default:
+                message = "Violation of: <\"END\">"
+                        + " present in front of Identifier.";
+                break;
+        }
+        return message;
+    }
+
+}
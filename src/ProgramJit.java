@@ -0,0 +1,880 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+import components.utilities.Reporter;
+
+/**
+ * Optional execution engine that compiles a parsed {@code Program} to JVM
+ * bytecode. Every user-defined instruction becomes a static method of a
+ * generated class, the body becomes one more, and IF/WHILE become native
+ * branches on {@code BLRobot.test}. The class is loaded with
+ * {@code MethodHandles.Lookup.defineHiddenClass}, so it can be unloaded with
+ * the {@code Compiled} object and HotSpot is free to inline hot BL loops into
+ * the robot's code.
+ *
+ * <p>
+ * The class file is written by hand (major version 49, which needs no stack
+ * map frames). A method body is limited to 32K bytes of bytecode by the
+ * 16-bit branch offsets; {@code compile} refuses larger instructions, and
+ * {@code BLVirtualMachine} should be used for them.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramJit {
+
+    /**
+     * A program compiled to JVM bytecode.
+     */
+    public interface Compiled {
+
+        /**
+         * Runs the program body on {@code robot} until it finishes. Use
+         * {@code ProgramJit.run} to bound the number of steps.
+         *
+         * @param robot
+         *            the robot to drive
+         */
+        void run(BLRobot robot);
+
+    }
+
+    /**
+     * Thrown through the generated code when the step budget runs out.
+     */
+    private static final class BudgetExhausted extends RuntimeException {
+
+        /**
+         * Serial version number.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor; no message, cause or stack trace.
+         */
+        BudgetExhausted() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    /**
+     * Robot wrapper that counts steps and stops the program when the budget
+     * runs out.
+     */
+    private static final class Budget implements BLRobot {
+
+        /**
+         * The robot being driven.
+         */
+        private final BLRobot robot;
+
+        /**
+         * The number of steps left.
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param robot
+         *            the robot to drive
+         * @param maxSteps
+         *            the step budget
+         */
+        Budget(BLRobot robot, long maxSteps) {
+            this.robot = robot;
+            this.remaining = maxSteps;
+        }
+
+        /**
+         * Uses up one step, stopping the program if there is none left.
+         */
+        private void step() {
+            if (this.remaining == 0) {
+                throw new BudgetExhausted();
+            }
+            this.remaining--;
+        }
+
+        @Override
+        public void move() {
+            this.step();
+            this.robot.move();
+        }
+
+        @Override
+        public void turnLeft() {
+            this.step();
+            this.robot.turnLeft();
+        }
+
+        @Override
+        public void turnRight() {
+            this.step();
+            this.robot.turnRight();
+        }
+
+        @Override
+        public void infect() {
+            this.step();
+            this.robot.infect();
+        }
+
+        @Override
+        public void skip() {
+            this.step();
+            this.robot.skip();
+        }
+
+        @Override
+        public boolean test(Statement.Condition c) {
+            this.step();
+            return this.robot.test(c);
+        }
+
+    }
+
+    /*
+     * Class file constants ---------------------------------------------------
+     */
+
+    /**
+     * Class file magic number.
+     */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * Class file major version (Java 5: no stack map frames required).
+     */
+    private static final int MAJOR_VERSION = 49;
+
+    /**
+     * Access flags of the generated class: public final super.
+     */
+    private static final int CLASS_FLAGS = 0x0031;
+
+    /**
+     * Access flags of the constructor and {@code run}: public.
+     */
+    private static final int PUBLIC = 0x0001;
+
+    /**
+     * Access flags of the generated instruction methods: private static.
+     */
+    private static final int PRIVATE_STATIC = 0x000A;
+
+    /**
+     * Constant pool tag of a UTF-8 string.
+     */
+    private static final int CONSTANT_UTF8 = 1;
+
+    /**
+     * Constant pool tag of a class.
+     */
+    private static final int CONSTANT_CLASS = 7;
+
+    /**
+     * Constant pool tag of a method reference.
+     */
+    private static final int CONSTANT_METHODREF = 10;
+
+    /**
+     * Constant pool tag of an interface method reference.
+     */
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
+    /**
+     * Constant pool tag of a name and type.
+     */
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * Opcode {@code iconst_0}.
+     */
+    private static final int ICONST_0 = 0x03;
+
+    /**
+     * Opcode {@code bipush}.
+     */
+    private static final int BIPUSH = 0x10;
+
+    /**
+     * Opcode {@code aload_0}.
+     */
+    private static final int ALOAD_0 = 0x2A;
+
+    /**
+     * Opcode {@code aload_1}.
+     */
+    private static final int ALOAD_1 = 0x2B;
+
+    /**
+     * Opcode {@code ifeq}.
+     */
+    private static final int IFEQ = 0x99;
+
+    /**
+     * Opcode {@code goto}.
+     */
+    private static final int GOTO = 0xA7;
+
+    /**
+     * Opcode {@code return}.
+     */
+    private static final int RETURN = 0xB1;
+
+    /**
+     * Opcode {@code invokespecial}.
+     */
+    private static final int INVOKESPECIAL = 0xB7;
+
+    /**
+     * Opcode {@code invokestatic}.
+     */
+    private static final int INVOKESTATIC = 0xB8;
+
+    /**
+     * Opcode {@code invokeinterface}.
+     */
+    private static final int INVOKEINTERFACE = 0xB9;
+
+    /**
+     * Largest method body whose branches all fit in 16-bit offsets.
+     */
+    private static final int MAX_METHOD_CODE = Short.MAX_VALUE;
+
+    /**
+     * Largest constant pool count a class file can hold; the pool entries are
+     * numbered 1 to one less than this.
+     */
+    private static final int MAX_POOL_SIZE = 0xFFFF;
+
+    /**
+     * Name of the generated class.
+     */
+    private static final String CLASS_NAME = "ProgramJitCompiled";
+
+    /**
+     * Descriptor of the generated instruction methods.
+     */
+    private static final String ROBOT_METHOD = "(LBLRobot;)V";
+
+    /**
+     * The conditions, indexed by ordinal.
+     */
+    private static final Statement.Condition[] CONDITIONS = Statement.Condition
+            .values();
+
+    /*
+     * Generator state --------------------------------------------------------
+     */
+
+    /**
+     * The constant pool entries written so far.
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * Index of every constant pool entry written so far, by content.
+     */
+    private final java.util.Map<String, Integer> poolIndex = new HashMap<>();
+
+    /**
+     * The next free constant pool index.
+     */
+    private int poolSize = 1;
+
+    /**
+     * The instructions of the program being compiled.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * The generated method name of each user-defined instruction.
+     */
+    private final java.util.Map<String, String> methodNames = new HashMap<>();
+
+    /**
+     * The bytecode of the method being generated.
+     */
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            the instructions of the program
+     */
+    private ProgramJit(Map<String, Statement> context) {
+        this.context = context;
+    }
+
+    /**
+     * Tests the condition with ordinal {@code c}; called from generated code.
+     *
+     * @param robot
+     *            the robot
+     * @param c
+     *            the condition ordinal
+     * @return true iff the condition holds
+     */
+    static boolean test(BLRobot robot, int c) {
+        return robot.test(CONDITIONS[c]);
+    }
+
+    /*
+     * Constant pool ----------------------------------------------------------
+     */
+
+    /**
+     * Returns the constant pool index of an entry, adding it if new.
+     *
+     * @param key
+     *            the content of the entry, unique per entry
+     * @param tag
+     *            the entry tag
+     * @param u2s
+     *            the two-byte fields of the entry (ignored for UTF-8)
+     * @param utf
+     *            the string of a UTF-8 entry, or null
+     * @return the constant pool index
+     */
+    private int constant(String key, int tag, int[] u2s, String utf) {
+        Integer index = this.poolIndex.get(key);
+        if (index == null) {
+            Reporter.assertElseFatalError(this.poolSize < MAX_POOL_SIZE,
+                    "Violation of: the program's names and calls fit in a "
+                            + "JVM constant pool");
+            DataOutputStream out = new DataOutputStream(this.pool);
+            try {
+                out.writeByte(tag);
+                if (utf != null) {
+                    out.writeUTF(utf);
+                } else {
+                    for (int u2 : u2s) {
+                        out.writeShort(u2);
+                    }
+                }
+            } catch (IOException e) {
+                // cannot happen: writing to memory
+                throw new AssertionError(e);
+            }
+            index = this.poolSize;
+            this.poolSize++;
+            this.poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of UTF-8 constant {@code s}.
+     *
+     * @param s
+     *            the string
+     * @return the constant pool index
+     */
+    private int utf8(String s) {
+        return this.constant("U" + s, CONSTANT_UTF8, null, s);
+    }
+
+    /**
+     * Returns the index of class constant {@code name}.
+     *
+     * @param name
+     *            the internal class name
+     * @return the constant pool index
+     */
+    private int classRef(String name) {
+        return this.constant("C" + name, CONSTANT_CLASS,
+                new int[] { this.utf8(name) }, null);
+    }
+
+    /**
+     * Returns the index of a method reference constant.
+     *
+     * @param owner
+     *            the internal name of the owning class
+     * @param name
+     *            the method name
+     * @param descriptor
+     *            the method descriptor
+     * @param isInterface
+     *            whether the owner is an interface
+     * @return the constant pool index
+     */
+    private int methodRef(String owner, String name, String descriptor,
+            boolean isInterface) {
+        int nameAndType = this.constant("N" + name + descriptor,
+                CONSTANT_NAME_AND_TYPE,
+                new int[] { this.utf8(name), this.utf8(descriptor) }, null);
+        int tag;
+        if (isInterface) {
+            tag = CONSTANT_INTERFACE_METHODREF;
+        } else {
+            tag = CONSTANT_METHODREF;
+        }
+        return this.constant("M" + owner + "." + name + descriptor, tag,
+                new int[] { this.classRef(owner), nameAndType }, null);
+    }
+
+    /*
+     * Code generation --------------------------------------------------------
+     */
+
+    /**
+     * Appends one byte of bytecode.
+     *
+     * @param b
+     *            the byte
+     */
+    private void op(int b) {
+        this.code.write(b);
+    }
+
+    /**
+     * Appends a two-byte operand.
+     *
+     * @param u2
+     *            the operand
+     */
+    private void u2(int u2) {
+        this.code.write(u2 >>> Byte.SIZE);
+        this.code.write(u2);
+    }
+
+    /**
+     * Appends a branch with a placeholder offset and returns its position.
+     *
+     * @param opcode
+     *            the branch opcode
+     * @return the position of the branch instruction
+     */
+    private int branch(int opcode) {
+        int at = this.code.size();
+        this.op(opcode);
+        this.u2(0);
+        return at;
+    }
+
+    /**
+     * Points the branch at {@code from} in {@code bytes} to {@code to}.
+     *
+     * @param bytes
+     *            the method bytecode
+     * @param from
+     *            the position of the branch instruction
+     * @param to
+     *            the branch target
+     */
+    private static void patch(byte[] bytes, int from, int to) {
+        int offset = to - from;
+        bytes[from + 1] = (byte) (offset >>> Byte.SIZE);
+        bytes[from + 2] = (byte) offset;
+    }
+
+    /**
+     * Appends a primitive robot call.
+     *
+     * @param method
+     *            the {@code BLRobot} method
+     */
+    private void primitive(String method) {
+        this.op(ALOAD_0);
+        this.op(INVOKEINTERFACE);
+        this.u2(this.methodRef("BLRobot", method, "()V", true));
+        this.op(1);
+        this.op(0);
+    }
+
+    /**
+     * Appends a test of {@code c}, leaving a boolean on the stack.
+     *
+     * @param c
+     *            the condition
+     */
+    private void emitTest(Statement.Condition c) {
+        this.op(ALOAD_0);
+        if (c.ordinal() <= 5) {
+            this.op(ICONST_0 + c.ordinal());
+        } else {
+            this.op(BIPUSH);
+            this.op(c.ordinal());
+        }
+        this.op(INVOKESTATIC);
+        this.u2(this.methodRef("ProgramJit", "test", "(LBLRobot;I)Z", false));
+    }
+
+    /**
+     * Appends the bytecode for {@code s}. Branch offsets are recorded in
+     * {@code patches} as (from, to) pairs since the code array is only
+     * available once the method is complete.
+     *
+     * @param s
+     *            the statement to compile
+     * @param patches
+     *            the pending branch patches
+     */
+    private void generate(Statement s, List<int[]> patches) {
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    this.generate(child, patches);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                this.emitTest(c);
+                int skip = this.branch(IFEQ);
+                this.generate(block, patches);
+                patches.add(new int[] { skip, this.code.size() });
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                this.emitTest(c);
+                int toElse = this.branch(IFEQ);
+                this.generate(thenBlock, patches);
+                int toEnd = this.branch(GOTO);
+                patches.add(new int[] { toElse, this.code.size() });
+                this.generate(elseBlock, patches);
+                patches.add(new int[] { toEnd, this.code.size() });
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                int top = this.code.size();
+                this.emitTest(c);
+                int exit = this.branch(IFEQ);
+                this.generate(block, patches);
+                int back = this.branch(GOTO);
+                patches.add(new int[] { back, top });
+                patches.add(new int[] { exit, this.code.size() });
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String name = s.disassembleCall();
+                this.call(name);
+                s.assembleCall(name);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+    }
+
+    /**
+     * Appends a call to the instruction called {@code name}.
+     *
+     * @param name
+     *            the instruction name
+     */
+    private void call(String name) {
+        switch (name) {
+            case "move":
+                this.primitive("move");
+                break;
+            case "turnleft":
+                this.primitive("turnLeft");
+                break;
+            case "turnright":
+                this.primitive("turnRight");
+                break;
+            case "infect":
+                this.primitive("infect");
+                break;
+            case "skip":
+                this.primitive("skip");
+                break;
+            default:
+                Reporter.assertElseFatalError(this.methodNames.containsKey(name),
+                        "Violation of: instruction " + name + " is defined");
+                this.op(ALOAD_0);
+                this.op(INVOKESTATIC);
+                this.u2(this.methodRef(CLASS_NAME, this.methodNames.get(name),
+                        ROBOT_METHOD, false));
+                break;
+        }
+    }
+
+    /**
+     * Writes a method with the given code to {@code out}.
+     *
+     * @param out
+     *            the class file being written
+     * @param access
+     *            the access flags
+     * @param name
+     *            the method name
+     * @param descriptor
+     *            the method descriptor
+     * @param maxLocals
+     *            the number of local variable slots
+     * @param bytes
+     *            the bytecode
+     * @throws IOException
+     *             never: writing to memory
+     */
+    private void method(DataOutputStream out, int access, String name,
+            String descriptor, int maxLocals, byte[] bytes)
+            throws IOException {
+        final int codeHeader = 12;
+        out.writeShort(access);
+        out.writeShort(this.utf8(name));
+        out.writeShort(this.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(this.utf8("Code"));
+        out.writeInt(codeHeader + bytes.length);
+        out.writeShort(2);
+        out.writeShort(maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Generates the static method for {@code s} and returns its bytecode.
+     *
+     * @param s
+     *            the instruction body
+     * @param name
+     *            the BL name, for error messages
+     * @return the bytecode
+     */
+    private byte[] staticMethod(Statement s, String name) {
+        this.code.reset();
+        List<int[]> patches = new ArrayList<>();
+        this.generate(s, patches);
+        this.op(RETURN);
+        byte[] bytes = this.code.toByteArray();
+        Reporter.assertElseFatalError(bytes.length <= MAX_METHOD_CODE,
+                "Violation of: instruction " + name
+                        + " fits in a JVM method");
+        for (int[] p : patches) {
+            patch(bytes, p[0], p[1]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks that no instruction reachable from {@code name} calls back into
+     * an instruction on {@code path}.
+     *
+     * @param name
+     *            the instruction
+     * @param path
+     *            the instructions being checked, outermost first
+     * @param done
+     *            the instructions already known to be non-recursive
+     */
+    private void checkNotRecursive(String name, Set<String> path,
+            Set<String> done) {
+        if (done.contains(name) || !this.context.hasKey(name)) {
+            return;
+        }
+        Reporter.assertElseFatalError(!path.contains(name),
+                "Violation of: instruction " + name + " does not call itself");
+        path.add(name);
+        List<String> calls = new ArrayList<>();
+        Statements.collectCalls(this.context.value(name), calls);
+        for (String callee : calls) {
+            this.checkNotRecursive(callee, path, done);
+        }
+        path.remove(name);
+        done.add(name);
+    }
+
+    /**
+     * Generates the class file for the program with the given body.
+     *
+     * @param body
+     *            the program body
+     * @return the class file
+     */
+    private byte[] classFile(Statement body) {
+        //Name the instruction methods and reject recursion up front.
+        int count = 0;
+        for (Map.Pair<String, Statement> instruction : this.context) {
+            this.methodNames.put(instruction.key(), "i" + count);
+            count++;
+        }
+        Set<String> done = new HashSet<>();
+        for (String name : this.methodNames.keySet()) {
+            this.checkNotRecursive(name, new HashSet<>(), done);
+        }
+
+        //Method bodies first: they fill the constant pool.
+        List<String> names = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+        for (Map.Pair<String, Statement> instruction : this.context) {
+            names.add(this.methodNames.get(instruction.key()));
+            bodies.add(this.staticMethod(instruction.value(),
+                    instruction.key()));
+        }
+        names.add("body");
+        bodies.add(this.staticMethod(body, "BEGIN"));
+
+        this.code.reset();
+        this.op(ALOAD_0);
+        this.op(INVOKESPECIAL);
+        this.u2(this.methodRef("java/lang/Object", "<init>", "()V", false));
+        this.op(RETURN);
+        byte[] init = this.code.toByteArray();
+
+        this.code.reset();
+        this.op(ALOAD_1);
+        this.op(INVOKESTATIC);
+        this.u2(this.methodRef(CLASS_NAME, "body", ROBOT_METHOD, false));
+        this.op(RETURN);
+        byte[] run = this.code.toByteArray();
+
+        int thisClass = this.classRef(CLASS_NAME);
+        int superClass = this.classRef("java/lang/Object");
+        int compiled = this.classRef("ProgramJit$Compiled");
+        //Intern every name used below before the pool is written out.
+        this.utf8("Code");
+        this.utf8("<init>");
+        this.utf8("()V");
+        this.utf8("run");
+        this.utf8(ROBOT_METHOD);
+        for (String name : names) {
+            this.utf8(name);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(this.poolSize);
+            this.pool.writeTo(out);
+            out.writeShort(CLASS_FLAGS);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(compiled);
+            out.writeShort(0);
+            out.writeShort(names.size() + 2);
+            this.method(out, PUBLIC, "<init>", "()V", 1, init);
+            this.method(out, PUBLIC, "run", ROBOT_METHOD, 2, run);
+            for (int i = 0; i < names.size(); i++) {
+                this.method(out, PRIVATE_STATIC, names.get(i), ROBOT_METHOD,
+                        1, bodies.get(i));
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            // cannot happen: writing to memory
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Compiles {@code p} to a hidden JVM class.
+     *
+     * @param p
+     *            the program to compile
+     * @return the compiled program
+     * @ensures <pre>
+     * if [every instruction called in p is primitive or in the context of p]
+     *    and  [no instruction of p calls itself, directly or indirectly]
+     *    and  [the code of each instruction fits in a JVM method]
+     *    and  [the names and calls of p fit in a JVM constant pool] then
+     *  [compile drives a robot exactly as the body of p does]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public static Compiled compile(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        byte[] classFile;
+        try {
+            classFile = new ProgramJit(context).classFile(body);
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(classFile, true);
+            return (Compiled) lookup
+                    .findConstructor(lookup.lookupClass(),
+                            MethodType.methodType(void.class))
+                    .invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs {@code program} on {@code robot} until it finishes or
+     * {@code maxSteps} steps have been taken. Steps are counted as in
+     * {@code ProgramTreeInterpreter}.
+     *
+     * @param program
+     *            the compiled program
+     * @param robot
+     *            the robot to drive
+     * @param maxSteps
+     *            the step budget
+     * @return the number of steps taken
+     * @requires maxSteps >= 0
+     * @ensures <pre>
+     * run = [number of primitive instructions and condition tests performed]
+     *  and  run <= maxSteps
+     * </pre>
+     */
+    public static long run(Compiled program, BLRobot robot, long maxSteps) {
+        assert program != null : "Violation of: program is not null";
+        assert robot != null : "Violation of: robot is not null";
+        assert maxSteps >= 0 : "Violation of: maxSteps >= 0";
+
+        Budget budget = new Budget(robot, maxSteps);
+        try {
+            program.run(budget);
+        } catch (BudgetExhausted e) {
+            // the program ran out of steps
+        }
+        return maxSteps - budget.remaining;
+    }
+
+}
@@ -0,0 +1,617 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * Optimization pass over a parsed {@code Program}. It
+ * <ul>
+ * <li>inlines calls to small instructions that do not call themselves,
+ * directly or indirectly;</li>
+ * <li>folds {@code IF true} and {@code IF_ELSE true} to their THEN block,
+ * drops IFs whose blocks are empty, and turns an IF_ELSE with an empty THEN
+ * block into an IF on the negated condition;</li>
+ * <li>drops an IF or WHILE on condition {@code c} that directly follows
+ * {@code WHILE c} (with no action in between, {@code c} is known to be
+ * false), and drops every statement after {@code WHILE true} in its block;
+ * </li>
+ * <li>removes instructions the body can no longer reach.</li>
+ * </ul>
+ * Conditions in BugsWorld only change when the creature acts, so none of
+ * these changes what the program does; they only save steps.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramOptimizer {
+
+    /**
+     * Default largest instruction body, in nodes, that is inlined.
+     */
+    public static final int DEFAULT_INLINE_LIMIT = 8;
+
+    /**
+     * What an optimization did.
+     */
+    public static final class Report {
+
+        /**
+         * Number of nodes in the body and instructions before.
+         */
+        private int sizeBefore;
+
+        /**
+         * Number of nodes in the body and instructions after.
+         */
+        private int sizeAfter;
+
+        /**
+         * Number of instructions before.
+         */
+        private int instructionsBefore;
+
+        /**
+         * Number of instructions after.
+         */
+        private int instructionsAfter;
+
+        /**
+         * Number of calls inlined.
+         */
+        private int inlined;
+
+        /**
+         * Number of IF and WHILE statements folded or dropped.
+         */
+        private int folded;
+
+        /**
+         * Number of unreachable statements dropped.
+         */
+        private int unreachable;
+
+        /**
+         * Returns the number of nodes in the body and instructions before.
+         *
+         * @return the size before
+         */
+        public int sizeBefore() {
+            return this.sizeBefore;
+        }
+
+        /**
+         * Returns the number of nodes in the body and instructions after.
+         *
+         * @return the size after
+         */
+        public int sizeAfter() {
+            return this.sizeAfter;
+        }
+
+        /**
+         * Returns the number of instructions before.
+         *
+         * @return the instruction count before
+         */
+        public int instructionsBefore() {
+            return this.instructionsBefore;
+        }
+
+        /**
+         * Returns the number of instructions after.
+         *
+         * @return the instruction count after
+         */
+        public int instructionsAfter() {
+            return this.instructionsAfter;
+        }
+
+        /**
+         * Returns the number of calls inlined.
+         *
+         * @return the number of inlined calls
+         */
+        public int inlined() {
+            return this.inlined;
+        }
+
+        /**
+         * Returns the number of IF and WHILE statements folded or dropped.
+         *
+         * @return the number of folded statements
+         */
+        public int folded() {
+            return this.folded;
+        }
+
+        /**
+         * Returns the number of unreachable statements dropped.
+         *
+         * @return the number of unreachable statements
+         */
+        public int unreachable() {
+            return this.unreachable;
+        }
+
+        @Override
+        public String toString() {
+            return "size " + this.sizeBefore + " -> " + this.sizeAfter
+                    + ", instructions " + this.instructionsBefore + " -> "
+                    + this.instructionsAfter + ", inlined " + this.inlined
+                    + ", folded " + this.folded + ", unreachable "
+                    + this.unreachable;
+        }
+
+    }
+
+    /**
+     * A block being rebuilt, with what is known at its end.
+     */
+    private final class Builder {
+
+        /**
+         * The statements kept so far.
+         */
+        private final Statement block;
+
+        /**
+         * A condition known to be false at the end of the block, or null.
+         */
+        private Statement.Condition knownFalse = null;
+
+        /**
+         * Whether the end of the block can no longer be reached.
+         */
+        private boolean dead = false;
+
+        /**
+         * Constructor.
+         *
+         * @param block
+         *            an empty block to fill
+         */
+        Builder(Statement block) {
+            this.block = block;
+        }
+
+        /**
+         * Adds the statements of {@code from} to the end of the block.
+         *
+         * @param from
+         *            the block whose statements to add
+         * @clears from
+         */
+        void addAll(Statement from) {
+            while (from.lengthOfBlock() > 0) {
+                this.add(from.removeFromBlock(0));
+            }
+        }
+
+        /**
+         * Adds {@code s} to the end of the block, unless what is known at the
+         * end of the block makes it unnecessary.
+         *
+         * @param s
+         *            the statement to add
+         * @clears s
+         */
+        void add(Statement s) {
+            if (this.dead) {
+                ProgramOptimizer.this.report.unreachable++;
+                s.clear();
+                return;
+            }
+
+            Statement.Condition c = null;
+            Statement thenBlock = s.newInstance();
+            Statement elseBlock = s.newInstance();
+            switch (s.kind()) {
+                case IF:
+                    c = s.disassembleIf(thenBlock);
+                    if (c == this.knownFalse) {
+                        ProgramOptimizer.this.report.folded++;
+                        return;
+                    }
+                    s.assembleIf(c, thenBlock);
+                    break;
+                case IF_ELSE:
+                    c = s.disassembleIfElse(thenBlock, elseBlock);
+                    if (c == this.knownFalse) {
+                        ProgramOptimizer.this.report.folded++;
+                        this.addAll(elseBlock);
+                        return;
+                    }
+                    s.assembleIfElse(c, thenBlock, elseBlock);
+                    break;
+                case WHILE:
+                    c = s.disassembleWhile(thenBlock);
+                    if (c == this.knownFalse) {
+                        ProgramOptimizer.this.report.folded++;
+                        return;
+                    }
+                    s.assembleWhile(c, thenBlock);
+                    break;
+                default:
+                    break;
+            }
+
+            if (s.kind() == Statement.Kind.WHILE) {
+                if (c == Statement.Condition.TRUE) {
+                    this.dead = true;
+                    this.knownFalse = null;
+                } else if (c == Statement.Condition.RANDOM) {
+                    this.knownFalse = null;
+                } else {
+                    this.knownFalse = c;
+                }
+            } else {
+                this.knownFalse = null;
+            }
+            this.block.addToBlock(this.block.lengthOfBlock(), s);
+        }
+
+    }
+
+    /**
+     * The instructions of the program being optimized.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * The largest instruction body, in nodes, that is inlined.
+     */
+    private final int inlineLimit;
+
+    /**
+     * Instructions already optimized that are small and not recursive.
+     */
+    private final Set<String> inlinable = new HashSet<>();
+
+    /**
+     * The report being filled in.
+     */
+    private final Report report = new Report();
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            the instructions of the program
+     * @param inlineLimit
+     *            the largest instruction body that is inlined
+     */
+    private ProgramOptimizer(Map<String, Statement> context,
+            int inlineLimit) {
+        this.context = context;
+        this.inlineLimit = inlineLimit;
+    }
+
+    /**
+     * Returns the names of the instructions {@code name} calls.
+     *
+     * @param name
+     *            the instruction
+     * @return the instructions called, primitives excluded
+     */
+    private List<String> callees(String name) {
+        List<String> calls = new ArrayList<>();
+        Statements.collectCalls(this.context.value(name), calls);
+        List<String> callees = new ArrayList<>();
+        for (String call : calls) {
+            if (this.context.hasKey(call)) {
+                callees.add(call);
+            }
+        }
+        return callees;
+    }
+
+    /**
+     * Reports whether instruction {@code name} can call itself, directly or
+     * indirectly.
+     *
+     * @param name
+     *            the instruction
+     * @return true iff {@code name} is recursive
+     */
+    private boolean isRecursive(String name) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(this.callees(name));
+        while (!pending.isEmpty()) {
+            String next = pending.pop();
+            if (next.equals(name)) {
+                return true;
+            }
+            if (seen.add(next)) {
+                pending.addAll(this.callees(next));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Optimizes instruction {@code name} after the instructions it calls.
+     *
+     * @param name
+     *            the instruction
+     * @param visited
+     *            the instructions already visited
+     */
+    private void optimizeInstruction(String name, Set<String> visited) {
+        if (!visited.add(name)) {
+            return;
+        }
+        for (String callee : this.callees(name)) {
+            this.optimizeInstruction(callee, visited);
+        }
+        Statement body = this.context.value(name);
+        this.optimizeBlock(body);
+        if (Statements.size(body) <= this.inlineLimit
+                && !this.isRecursive(name)) {
+            this.inlinable.add(name);
+        }
+    }
+
+    /**
+     * Optimizes the block {@code block}.
+     *
+     * @param block
+     *            the block
+     * @updates block
+     */
+    private void optimizeBlock(Statement block) {
+        Builder builder = new Builder(block.newInstance());
+        while (block.lengthOfBlock() > 0) {
+            this.optimize(block.removeFromBlock(0), builder);
+        }
+        block.transferFrom(builder.block);
+    }
+
+    /**
+     * Optimizes the non-BLOCK statement {@code s} and adds the result, which
+     * may be several statements or none, to {@code builder}.
+     *
+     * @param s
+     *            the statement
+     * @param builder
+     *            the block being rebuilt
+     * @clears s
+     */
+    private void optimize(Statement s, Builder builder) {
+        switch (s.kind()) {
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                this.optimizeBlock(block);
+                if (c == Statement.Condition.TRUE) {
+                    this.report.folded++;
+                    builder.addAll(block);
+                } else if (block.lengthOfBlock() == 0) {
+                    this.report.folded++;
+                } else {
+                    s.assembleIf(c, block);
+                    builder.add(s);
+                }
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                this.optimizeBlock(thenBlock);
+                this.optimizeBlock(elseBlock);
+                Statement.Condition negation = Statements.negation(c);
+                if (c == Statement.Condition.TRUE) {
+                    this.report.folded++;
+                    builder.addAll(thenBlock);
+                } else if (thenBlock.lengthOfBlock() == 0
+                        && elseBlock.lengthOfBlock() == 0) {
+                    this.report.folded++;
+                } else if (elseBlock.lengthOfBlock() == 0) {
+                    this.report.folded++;
+                    s.assembleIf(c, thenBlock);
+                    builder.add(s);
+                } else if (thenBlock.lengthOfBlock() == 0
+                        && negation != null) {
+                    this.report.folded++;
+                    s.assembleIf(negation, elseBlock);
+                    builder.add(s);
+                } else {
+                    s.assembleIfElse(c, thenBlock, elseBlock);
+                    builder.add(s);
+                }
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                this.optimizeBlock(block);
+                s.assembleWhile(c, block);
+                builder.add(s);
+                break;
+            }
+            default: {
+                //CALL
+                String name = s.disassembleCall();
+                if (this.inlinable.contains(name)) {
+                    this.report.inlined++;
+                    builder.addAll(Statements.copy(this.context.value(name)));
+                } else {
+                    s.assembleCall(name);
+                    builder.add(s);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes every instruction that {@code body} cannot reach.
+     *
+     * @param body
+     *            the program body
+     */
+    private void removeUnreachable(Statement body) {
+        List<String> calls = new ArrayList<>();
+        Statements.collectCalls(body, calls);
+        Set<String> reached = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(calls);
+        while (!pending.isEmpty()) {
+            String next = pending.pop();
+            if (this.context.hasKey(next) && reached.add(next)) {
+                pending.addAll(this.callees(next));
+            }
+        }
+        Map<String, Statement> kept = this.context.newInstance();
+        while (this.context.size() > 0) {
+            Map.Pair<String, Statement> instruction = this.context.removeAny();
+            if (reached.contains(instruction.key())) {
+                kept.add(instruction.key(), instruction.value());
+            }
+        }
+        this.context.transferFrom(kept);
+    }
+
+    /**
+     * Returns the number of nodes in {@code body} and all instructions.
+     *
+     * @param body
+     *            the program body
+     * @return the total size
+     */
+    private int size(Statement body) {
+        int size = Statements.size(body);
+        for (Map.Pair<String, Statement> instruction : this.context) {
+            size += Statements.size(instruction.value());
+        }
+        return size;
+    }
+
+    /**
+     * Optimizes {@code p}, inlining instructions of up to
+     * {@link #DEFAULT_INLINE_LIMIT} nodes.
+     *
+     * @param p
+     *            the program to optimize
+     * @return what the optimization did
+     * @updates p
+     * @ensures [p drives a robot exactly as #p does, in at most as many steps]
+     */
+    public static Report optimize(Program p) {
+        return optimize(p, DEFAULT_INLINE_LIMIT);
+    }
+
+    /**
+     * Optimizes {@code p}, inlining instructions of up to
+     * {@code inlineLimit} nodes.
+     *
+     * @param p
+     *            the program to optimize
+     * @param inlineLimit
+     *            the largest instruction body, in nodes, that is inlined
+     * @return what the optimization did
+     * @updates p
+     * @requires inlineLimit >= 0
+     * @ensures [p drives a robot exactly as #p does, in at most as many steps]
+     */
+    public static Report optimize(Program p, int inlineLimit) {
+        assert p != null : "Violation of: p is not null";
+        assert inlineLimit >= 0 : "Violation of: inlineLimit >= 0";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        ProgramOptimizer optimizer = new ProgramOptimizer(context,
+                inlineLimit);
+        Report report = optimizer.report;
+        try {
+            report.sizeBefore = optimizer.size(body);
+            report.instructionsBefore = context.size();
+
+            List<String> names = new ArrayList<>();
+            for (Map.Pair<String, Statement> instruction : context) {
+                names.add(instruction.key());
+            }
+            Set<String> visited = new HashSet<>();
+            for (String name : names) {
+                optimizer.optimizeInstruction(name, visited);
+            }
+            optimizer.optimizeBlock(body);
+            optimizer.removeUnreachable(body);
+
+            report.sizeAfter = optimizer.size(body);
+            report.instructionsAfter = context.size();
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+        return report;
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Optimizes a BL program and reports size and execution-step metrics
+     * before and after. Usage: {@code java ProgramOptimizer [file [steps]]}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final long defaultSteps = 1_000_000L;
+        final long seed = 42;
+
+        String fileName = "data/programValid1.bl";
+        long maxSteps = defaultSteps;
+        if (args.length > 0) {
+            fileName = args[0];
+        }
+        if (args.length > 1) {
+            maxSteps = Long.parseLong(args[1]);
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        Program before = new Program1Parse1();
+        Program after = new Program1Parse1();
+        for (Program p : new Program[] { before, after }) {
+            SimpleReader file = new SimpleReader1L(fileName);
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            p.parse(tokens);
+        }
+
+        Report report = optimize(after);
+        out.println("*** " + fileName + ": " + report + " ***");
+
+        SimulatedRobot robot = new SimulatedRobot(seed);
+        long steps = ProgramTreeInterpreter.run(before, robot, maxSteps);
+        out.println(String.format("before: %d steps, %d actions, "
+                + "%.3f steps/action", steps, robot.actions(),
+                (double) steps / Math.max(1, robot.actions())));
+        robot = new SimulatedRobot(seed);
+        steps = ProgramTreeInterpreter.run(after, robot, maxSteps);
+        out.println(String.format("after:  %d steps, %d actions, "
+                + "%.3f steps/action", steps, robot.actions(),
+                (double) steps / Math.max(1, robot.actions())));
+        out.println("*** Optimized program ***");
+        out.print(new ProgramPrettyPrinter().toString(after));
+        out.close();
+    }
+
+}
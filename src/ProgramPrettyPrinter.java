@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+
+/**
+ * High-throughput pretty-printer for {@code Program} and {@code Statement}.
+ * Produces exactly the text of {@code prettyPrint}, but builds it in one
+ * reusable {@code StringBuilder} with cached indentation strings and hands it
+ * to a {@code Writer} or {@code FileChannel} in large chunks instead of one
+ * {@code SimpleWriter} call per token.
+ *
+ * <p>
+ * A printer is not thread-safe; use one per thread and reuse it across
+ * programs.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramPrettyPrinter {
+
+    /**
+     * Number of spaces per indentation level, as in {@code prettyPrint}.
+     */
+    private static final int INDENT_SIZE = 4;
+
+    /**
+     * Default number of buffered characters that triggers a flush.
+     */
+    private static final int DEFAULT_CHUNK = 1 << 16;
+
+    /**
+     * The line separator {@code SimpleWriter.println} writes.
+     */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * Text not yet flushed.
+     */
+    private final StringBuilder buffer;
+
+    /**
+     * Number of buffered characters that triggers a flush.
+     */
+    private final int chunk;
+
+    /**
+     * Indentation strings, indexed by number of spaces.
+     */
+    private String[] indents = new String[0];
+
+    /**
+     * Destination writer during a print, or null.
+     */
+    private Writer writer;
+
+    /**
+     * Destination channel during a print, or null.
+     */
+    private FileChannel channel;
+
+    /**
+     * Encoder for channel output.
+     */
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8
+            .newEncoder();
+
+    /**
+     * Byte buffer for channel output.
+     */
+    private ByteBuffer bytes;
+
+    /**
+     * No-argument constructor.
+     */
+    public ProgramPrettyPrinter() {
+        this(DEFAULT_CHUNK);
+    }
+
+    /**
+     * Constructor flushing every {@code chunk} characters.
+     *
+     * @param chunk
+     *            the number of buffered characters that triggers a flush
+     * @requires chunk > 0
+     */
+    public ProgramPrettyPrinter(int chunk) {
+        assert chunk > 0 : "Violation of: chunk > 0";
+        this.chunk = chunk;
+        this.buffer = new StringBuilder(chunk + chunk / 2);
+    }
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Returns a string of {@code n} spaces.
+     *
+     * @param n
+     *            the number of spaces
+     * @return the indentation string
+     */
+    private String indent(int n) {
+        if (n >= this.indents.length) {
+            String[] grown = new String[Math.max(n + 1,
+                    2 * this.indents.length)];
+            for (int i = 0; i < grown.length; i++) {
+                grown[i] = " ".repeat(i);
+            }
+            this.indents = grown;
+        }
+        return this.indents[n];
+    }
+
+    /**
+     * Ends the current line and flushes if enough text is buffered.
+     *
+     * @throws IOException
+     *             if the destination fails
+     */
+    private void newLine() throws IOException {
+        this.buffer.append(NEWLINE);
+        if (this.buffer.length() >= this.chunk
+                && (this.writer != null || this.channel != null)) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Hands all buffered text to the destination.
+     *
+     * @throws IOException
+     *             if the destination fails
+     */
+    private void flush() throws IOException {
+        if (this.writer != null) {
+            this.writer.append(this.buffer);
+        } else if (this.channel != null) {
+            if (this.bytes == null) {
+                this.bytes = ByteBuffer.allocateDirect(
+                        (int) (this.chunk * 2 * this.encoder.maxBytesPerChar()));
+            }
+            CharBuffer chars = CharBuffer.wrap(this.buffer);
+            CoderResult result;
+            do {
+                result = this.encoder.encode(chars, this.bytes, true);
+                this.bytes.flip();
+                while (this.bytes.hasRemaining()) {
+                    this.channel.write(this.bytes);
+                }
+                this.bytes.clear();
+            } while (result.isOverflow());
+            this.encoder.reset();
+        }
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * Appends the text of {@code s.prettyPrint(out, offset)}.
+     *
+     * @param s
+     *            the statement to print
+     * @param offset
+     *            the number of spaces to indent
+     * @throws IOException
+     *             if the destination fails
+     */
+    private void append(Statement s, int offset) throws IOException {
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    this.append(child, offset);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                this.buffer.append(this.indent(offset)).append("IF ")
+                        .append(conditionText(c)).append(" THEN");
+                this.newLine();
+                this.append(block, offset + INDENT_SIZE);
+                this.buffer.append(this.indent(offset)).append("END IF");
+                this.newLine();
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                this.buffer.append(this.indent(offset)).append("IF ")
+                        .append(conditionText(c)).append(" THEN");
+                this.newLine();
+                this.append(thenBlock, offset + INDENT_SIZE);
+                this.buffer.append(this.indent(offset)).append("ELSE");
+                this.newLine();
+                this.append(elseBlock, offset + INDENT_SIZE);
+                this.buffer.append(this.indent(offset)).append("END IF");
+                this.newLine();
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                this.buffer.append(this.indent(offset)).append("WHILE ")
+                        .append(conditionText(c)).append(" DO");
+                this.newLine();
+                this.append(block, offset + INDENT_SIZE);
+                this.buffer.append(this.indent(offset)).append("END WHILE");
+                this.newLine();
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String call = s.disassembleCall();
+                this.buffer.append(this.indent(offset)).append(call);
+                this.newLine();
+                s.assembleCall(call);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+    }
+
+    /**
+     * Appends the text of {@code p.prettyPrint(out)}.
+     *
+     * @param p
+     *            the program to print
+     * @throws IOException
+     *             if the destination fails
+     */
+    private void append(Program p) throws IOException {
+        this.buffer.append("PROGRAM ").append(p.name()).append(" IS");
+        this.newLine();
+        this.newLine();
+        Map<String, Statement> context = p.newContext();
+        p.swapContext(context);
+        for (Map.Pair<String, Statement> instruction : context) {
+            this.buffer.append(this.indent(INDENT_SIZE)).append("INSTRUCTION ")
+                    .append(instruction.key()).append(" IS");
+            this.newLine();
+            this.append(instruction.value(), 2 * INDENT_SIZE);
+            this.buffer.append(this.indent(INDENT_SIZE)).append("END ")
+                    .append(instruction.key());
+            this.newLine();
+            this.newLine();
+        }
+        p.swapContext(context);
+        this.buffer.append("BEGIN");
+        this.newLine();
+        Statement body = p.newBody();
+        p.swapBody(body);
+        this.append(body, INDENT_SIZE);
+        p.swapBody(body);
+        this.buffer.append("END ").append(p.name());
+        this.newLine();
+    }
+
+    /**
+     * Returns the BL text of condition {@code c}.
+     *
+     * @param c
+     *            the condition
+     * @return the BL text of {@code c}
+     */
+    private static String conditionText(Statement.Condition c) {
+        return c.name().toLowerCase().replace('_', '-');
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Writes the pretty print of {@code p} to {@code out}.
+     *
+     * @param p
+     *            the program to print
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if {@code out} fails
+     * @ensures [out receives the same text as p.prettyPrint]
+     */
+    public void print(Program p, Writer out) throws IOException {
+        assert p != null : "Violation of: p is not null";
+        assert out != null : "Violation of: out is not null";
+
+        this.writer = out;
+        try {
+            this.append(p);
+            this.flush();
+        } finally {
+            this.writer = null;
+            this.buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoded pretty print of {@code p} to {@code out}.
+     *
+     * @param p
+     *            the program to print
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if {@code out} fails
+     * @ensures [out receives the same text as p.prettyPrint]
+     */
+    public void print(Program p, FileChannel out) throws IOException {
+        assert p != null : "Violation of: p is not null";
+        assert out != null : "Violation of: out is not null";
+
+        this.channel = out;
+        try {
+            this.append(p);
+            this.flush();
+        } finally {
+            this.channel = null;
+            this.buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the pretty print of {@code s} indented by {@code offset} spaces
+     * to {@code out}.
+     *
+     * @param s
+     *            the statement to print
+     * @param offset
+     *            the number of spaces to indent
+     * @param out
+     *            the destination
+     * @throws IOException
+     *             if {@code out} fails
+     * @requires offset >= 0
+     * @ensures [out receives the same text as s.prettyPrint(out, offset)]
+     */
+    public void print(Statement s, int offset, Writer out) throws IOException {
+        assert s != null : "Violation of: s is not null";
+        assert offset >= 0 : "Violation of: offset >= 0";
+        assert out != null : "Violation of: out is not null";
+
+        this.writer = out;
+        try {
+            this.append(s, offset);
+            this.flush();
+        } finally {
+            this.writer = null;
+            this.buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Returns the pretty print of {@code p} as a string.
+     *
+     * @param p
+     *            the program to print
+     * @return the text {@code p.prettyPrint} would write
+     */
+    public String toString(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        try {
+            this.append(p);
+        } catch (IOException e) {
+            // cannot happen: nothing is flushed without a destination
+            throw new AssertionError(e);
+        }
+        String text = this.buffer.toString();
+        this.buffer.setLength(0);
+        return text;
+    }
+
+    /**
+     * Returns the pretty print of {@code s} indented by {@code offset}
+     * spaces as a string.
+     *
+     * @param s
+     *            the statement to print
+     * @param offset
+     *            the number of spaces to indent
+     * @return the text {@code s.prettyPrint(out, offset)} would write
+     * @requires offset >= 0
+     */
+    public String toString(Statement s, int offset) {
+        assert s != null : "Violation of: s is not null";
+        assert offset >= 0 : "Violation of: offset >= 0";
+
+        try {
+            this.append(s, offset);
+        } catch (IOException e) {
+            // cannot happen: nothing is flushed without a destination
+            throw new AssertionError(e);
+        }
+        String text = this.buffer.toString();
+        this.buffer.setLength(0);
+        return text;
+    }
+
+}
@@ -0,0 +1,330 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import components.map.Map;
+import components.program.Program;
+import components.queue.Queue;
+import components.statement.Statement;
+
+/**
+ * Registry of parsed BL programs, by id, in which identical instruction
+ * bodies are stored once however many programs define them. Programs are
+ * parsed with {@code Program1Parse1}; each instruction body is then turned
+ * into immutable {@code StatementNode}s and looked up by content, so two
+ * programs that define the same helper instruction, under any name, refer to
+ * the same body. Each stored body counts the registered instructions that
+ * refer to it and is dropped when the last of them is unregistered, so the
+ * memory used grows with the distinct instruction bodies rather than with
+ * the programs registered.
+ *
+ * <p>
+ * Within one program, identical subtrees are shared as by
+ * {@code StatementTable}; main bodies are kept per program. All methods are
+ * synchronized, so one registry can serve several threads.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramRegistry {
+
+    /**
+     * A stored instruction body with the number of instructions that refer
+     * to it.
+     */
+    private static final class Shared {
+
+        /**
+         * The body.
+         */
+        private final StatementNode body;
+
+        /**
+         * The number of registered instructions with this body.
+         */
+        private int references = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param body
+         *            the body
+         */
+        Shared(StatementNode body) {
+            this.body = body;
+        }
+
+    }
+
+    /**
+     * A registered program.
+     */
+    private static final class Entry {
+
+        /**
+         * The program name.
+         */
+        private final String name;
+
+        /**
+         * The shared body of each instruction, by name, in the order of the
+         * context of the program parsed.
+         */
+        private final java.util.Map<String, StatementNode> instructions =
+                new LinkedHashMap<>();
+
+        /**
+         * The main body.
+         */
+        private final StatementNode body;
+
+        /**
+         * Constructor.
+         *
+         * @param name
+         *            the program name
+         * @param body
+         *            the main body
+         */
+        Entry(String name, StatementNode body) {
+            this.name = name;
+            this.body = body;
+        }
+
+    }
+
+    /**
+     * The registered programs, by id.
+     */
+    private final java.util.Map<String, Entry> programs = new HashMap<>();
+
+    /**
+     * The content-addressed store of instruction bodies, each body mapped to
+     * its entry.
+     */
+    private final java.util.Map<StatementNode, Shared> bodies = new HashMap<>();
+
+    /**
+     * Number of instructions registered, duplicates included.
+     */
+    private long instructions = 0;
+
+    /**
+     * No-argument constructor.
+     */
+    public ProgramRegistry() {
+    }
+
+    /**
+     * Parses a program from {@code tokens} and registers it as {@code id}.
+     *
+     * @param id
+     *            the id to register the program as
+     * @param tokens
+     *            the input tokens
+     * @updates this, tokens
+     * @requires <pre>
+     * not hasProgram(id)  and
+     * [<Tokenizer.END_OF_INPUT> is a suffix of tokens]
+     * </pre>
+     * @ensures <pre>
+     * if [there is a program at the front of tokens] then
+     *  [the program is registered as id]  and
+     *  tokens = [the tokens after the program]
+     * else
+     *  [report an appropriate error message to the console and terminate client]
+     * </pre>
+     */
+    public void register(String id, Queue<String> tokens) {
+        assert id != null : "Violation of: id is not null";
+        assert tokens != null : "Violation of: tokens is not null";
+
+        Program p = new Program1Parse1();
+        p.parse(tokens);
+        this.register(id, p);
+    }
+
+    /**
+     * Registers {@code p} as {@code id}.
+     *
+     * @param id
+     *            the id to register the program as
+     * @param p
+     *            the program
+     * @updates this
+     * @requires not hasProgram(id)
+     * @ensures [p is registered as id]
+     */
+    public synchronized void register(String id, Program p) {
+        assert id != null : "Violation of: id is not null";
+        assert p != null : "Violation of: p is not null";
+        assert !this.programs.containsKey(id) : ""
+                + "Violation of: not hasProgram(id)";
+
+        StatementTable table = new StatementTable();
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        Entry entry;
+        try {
+            entry = new Entry(p.name(), table.intern(body));
+            for (Map.Pair<String, Statement> instruction : context) {
+                StatementNode node = table.intern(instruction.value());
+                Shared shared = this.bodies.get(node);
+                if (shared == null) {
+                    shared = new Shared(node);
+                    this.bodies.put(node, shared);
+                }
+                shared.references++;
+                this.instructions++;
+                entry.instructions.put(instruction.key(), shared.body);
+            }
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+        this.programs.put(id, entry);
+    }
+
+    /**
+     * Unregisters the program registered as {@code id}, dropping every
+     * instruction body no other program refers to.
+     *
+     * @param id
+     *            the id of the program
+     * @updates this
+     * @requires hasProgram(id)
+     * @ensures not hasProgram(id)
+     */
+    public synchronized void unregister(String id) {
+        assert this.programs.containsKey(id) : "Violation of: hasProgram(id)";
+
+        Entry entry = this.programs.remove(id);
+        for (StatementNode node : entry.instructions.values()) {
+            Shared shared = this.bodies.get(node);
+            shared.references--;
+            this.instructions--;
+            if (shared.references == 0) {
+                this.bodies.remove(node);
+            }
+        }
+    }
+
+    /**
+     * Reports whether a program is registered as {@code id}.
+     *
+     * @param id
+     *            the id
+     * @return true iff a program is registered as {@code id}
+     */
+    public synchronized boolean hasProgram(String id) {
+        return this.programs.containsKey(id);
+    }
+
+    /**
+     * Returns the number of programs registered.
+     *
+     * @return the number of programs
+     */
+    public synchronized int programs() {
+        return this.programs.size();
+    }
+
+    /**
+     * Returns the number of instructions of the programs registered,
+     * duplicates included.
+     *
+     * @return the number of instructions
+     */
+    public synchronized long instructions() {
+        return this.instructions;
+    }
+
+    /**
+     * Returns the number of distinct instruction bodies stored.
+     *
+     * @return the number of distinct bodies
+     */
+    public synchronized int uniqueBodies() {
+        return this.bodies.size();
+    }
+
+    /**
+     * Returns the number of registered instructions whose body is equal to
+     * {@code body}.
+     *
+     * @param body
+     *            the body
+     * @return the number of references to it
+     */
+    public synchronized int references(StatementNode body) {
+        Shared shared = this.bodies.get(body);
+        int count = 0;
+        if (shared != null) {
+            count = shared.references;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the shared body of instruction {@code name} of the program
+     * registered as {@code id}.
+     *
+     * @param id
+     *            the id of the program
+     * @param name
+     *            the instruction name
+     * @return the body
+     * @requires hasProgram(id)  and  [name is an instruction of it]
+     */
+    public synchronized StatementNode instruction(String id, String name) {
+        assert this.programs.containsKey(id) : "Violation of: hasProgram(id)";
+        StatementNode node = this.programs.get(id).instructions.get(name);
+        assert node != null : "Violation of: [name is an instruction of it]";
+        return node;
+    }
+
+    /**
+     * Returns the main body of the program registered as {@code id}.
+     *
+     * @param id
+     *            the id of the program
+     * @return the body
+     * @requires hasProgram(id)
+     */
+    public synchronized StatementNode body(String id) {
+        assert this.programs.containsKey(id) : "Violation of: hasProgram(id)";
+        return this.programs.get(id).body;
+    }
+
+    /**
+     * Builds the program registered as {@code id}.
+     *
+     * @param id
+     *            the id of the program
+     * @return the program
+     * @requires hasProgram(id)
+     * @ensures program = [the program registered as id]
+     */
+    public synchronized Program program(String id) {
+        assert this.programs.containsKey(id) : "Violation of: hasProgram(id)";
+
+        Entry entry = this.programs.get(id);
+        Program p = new Program1Parse1();
+        p.setName(entry.name);
+        Map<String, Statement> context = p.newContext();
+        for (java.util.Map.Entry<String, StatementNode> instruction : entry.instructions
+                .entrySet()) {
+            Statement s = new Statement1Parse1();
+            instruction.getValue().build(s);
+            context.add(instruction.getKey(), s);
+        }
+        p.swapContext(context);
+        Statement s = new Statement1Parse1();
+        entry.body.build(s);
+        p.swapBody(s);
+        return p;
+    }
+
+}
@@ -0,0 +1,206 @@
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+
+/**
+ * Tree-walking interpreter for a parsed {@code Program}: executes the body
+ * statement by statement, looking each user-defined instruction up by name in
+ * the context. This is the reference semantics the compiled engines are
+ * checked against.
+ *
+ * <p>
+ * Execution is bounded by a step budget, where a step is one primitive
+ * instruction or one condition test, so that programs that never halt (most
+ * BL programs) can still be run.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramTreeInterpreter {
+
+    /**
+     * The instructions of the program being run.
+     */
+    private final Map<String, Statement> context;
+
+    /**
+     * The robot being driven.
+     */
+    private final BLRobot robot;
+
+    /**
+     * The number of steps left in the budget.
+     */
+    private long remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param context
+     *            the instructions of the program
+     * @param robot
+     *            the robot to drive
+     * @param maxSteps
+     *            the step budget
+     */
+    private ProgramTreeInterpreter(Map<String, Statement> context,
+            BLRobot robot, long maxSteps) {
+        this.context = context;
+        this.robot = robot;
+        this.remaining = maxSteps;
+    }
+
+    /**
+     * Tests condition {@code c}, using up one step.
+     *
+     * @param c
+     *            the condition
+     * @return true iff {@code c} holds
+     */
+    private boolean test(Statement.Condition c) {
+        this.remaining--;
+        return this.robot.test(c);
+    }
+
+    /**
+     * Executes the instruction called {@code name}.
+     *
+     * @param name
+     *            the instruction name
+     */
+    private void call(String name) {
+        switch (name) {
+            case "move":
+                this.remaining--;
+                this.robot.move();
+                break;
+            case "turnleft":
+                this.remaining--;
+                this.robot.turnLeft();
+                break;
+            case "turnright":
+                this.remaining--;
+                this.robot.turnRight();
+                break;
+            case "infect":
+                this.remaining--;
+                this.robot.infect();
+                break;
+            case "skip":
+                this.remaining--;
+                this.robot.skip();
+                break;
+            default:
+                this.execute(this.context.value(name));
+                break;
+        }
+    }
+
+    /**
+     * Executes {@code s} until it finishes or the budget runs out.
+     *
+     * @param s
+     *            the statement to execute
+     */
+    private void execute(Statement s) {
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock()
+                        && this.remaining > 0; i++) {
+                    Statement child = s.removeFromBlock(i);
+                    this.execute(child);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                if (this.remaining > 0 && this.test(c)) {
+                    this.execute(block);
+                }
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                if (this.remaining > 0) {
+                    if (this.test(c)) {
+                        this.execute(thenBlock);
+                    } else {
+                        this.execute(elseBlock);
+                    }
+                }
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                while (this.remaining > 0 && this.test(c)) {
+                    this.execute(block);
+                }
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String name = s.disassembleCall();
+                if (this.remaining > 0) {
+                    this.call(name);
+                }
+                s.assembleCall(name);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs the body of {@code p} on {@code robot} until it finishes or
+     * {@code maxSteps} steps have been taken.
+     *
+     * @param p
+     *            the program to run
+     * @param robot
+     *            the robot to drive
+     * @param maxSteps
+     *            the step budget
+     * @return the number of steps taken
+     * @requires <pre>
+     * maxSteps >= 0  and
+     * [every instruction called in p is primitive or in the context of p]  and
+     * [no instruction of p calls itself, directly or indirectly]
+     * </pre>
+     * @ensures <pre>
+     * run = [number of primitive instructions and condition tests performed]
+     *  and  run <= maxSteps
+     * </pre>
+     */
+    public static long run(Program p, BLRobot robot, long maxSteps) {
+        assert p != null : "Violation of: p is not null";
+        assert robot != null : "Violation of: robot is not null";
+        assert maxSteps >= 0 : "Violation of: maxSteps >= 0";
+
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        ProgramTreeInterpreter interpreter = new ProgramTreeInterpreter(
+                context, robot, maxSteps);
+        try {
+            interpreter.execute(body);
+        } finally {
+            p.swapContext(context);
+            p.swapBody(body);
+        }
+        return maxSteps - interpreter.remaining;
+    }
+
+}
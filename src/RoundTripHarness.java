@@ -0,0 +1,247 @@
+import components.program.Program;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Round-trip fuzz and throughput harness for {@code Program1Parse1}. Runs
+ * {@code parse -> prettyPrint -> parse} on programs from a
+ * {@code BLProgramGenerator} and checks that the two parses are equal, that
+ * programs with an injected error are rejected, and how fast it all goes.
+ *
+ * <p>
+ * Usage:
+ * {@code java RoundTripHarness [seed [count [instructions [blockSize [maxDepth [errorRate]]]]]]}
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class RoundTripHarness {
+
+    /**
+     * The outcome of a run.
+     */
+    public static final class Result {
+
+        /**
+         * Number of programs generated.
+         */
+        private int programs;
+
+        /**
+         * Number of programs that did not behave as expected.
+         */
+        private int failures;
+
+        /**
+         * Number of tokens parsed on the first parse.
+         */
+        private long tokens;
+
+        /**
+         * Number of source characters parsed on the first parse.
+         */
+        private long characters;
+
+        /**
+         * Nanoseconds spent in the first parse.
+         */
+        private long parseNanos;
+
+        /**
+         * Description of the first failure, or null.
+         */
+        private String firstFailure;
+
+        /**
+         * Returns the number of programs generated.
+         *
+         * @return the number of programs
+         */
+        public int programs() {
+            return this.programs;
+        }
+
+        /**
+         * Returns the number of programs that did not behave as expected.
+         *
+         * @return the number of failures
+         */
+        public int failures() {
+            return this.failures;
+        }
+
+        /**
+         * Returns a description of the first failure, or null if there was
+         * none.
+         *
+         * @return the first failure
+         */
+        public String firstFailure() {
+            return this.firstFailure;
+        }
+
+        /**
+         * Returns the parse throughput in tokens per second.
+         *
+         * @return tokens per second
+         */
+        public double tokensPerSecond() {
+            return this.tokens * 1e9 / Math.max(1, this.parseNanos);
+        }
+
+        /**
+         * Returns the parse throughput in source characters per second.
+         *
+         * @return characters per second
+         */
+        public double charactersPerSecond() {
+            return this.characters * 1e9 / Math.max(1, this.parseNanos);
+        }
+
+        /**
+         * Records a failure.
+         *
+         * @param index
+         *            the index of the failing program
+         * @param what
+         *            what went wrong
+         */
+        void fail(int index, String what) {
+            this.failures++;
+            if (this.firstFailure == null) {
+                this.firstFailure = "program " + index + ": " + what;
+            }
+        }
+
+    }
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private RoundTripHarness() {
+    }
+
+    /**
+     * Parses {@code source} into a new {@code Program1Parse1}.
+     *
+     * @param source
+     *            the source text
+     * @return the parsed program
+     */
+    private static Program parse(String source) {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens(source));
+        return p;
+    }
+
+    /**
+     * Runs the round trip on {@code count} programs from {@code generator}.
+     *
+     * @param generator
+     *            the program source
+     * @param count
+     *            the number of programs
+     * @return the outcome of the run
+     * @requires count >= 0
+     */
+    public static Result run(BLProgramGenerator generator, int count) {
+        assert generator != null : "Violation of: generator is not null";
+        assert count >= 0 : "Violation of: count >= 0";
+
+        Result result = new Result();
+        ProgramPrettyPrinter printer = new ProgramPrettyPrinter();
+        for (int i = 0; i < count; i++) {
+            BLProgramGenerator.Sample sample = generator.next();
+            result.programs++;
+            Queue<String> tokens = SourceTokenizer.tokens(sample.source());
+            result.tokens += tokens.length();
+            result.characters += sample.source().length();
+
+            Program first = new Program1Parse1();
+            boolean accepted;
+            long start = System.nanoTime();
+            try {
+                first.parse(tokens);
+                accepted = true;
+            } catch (RuntimeException e) {
+                accepted = false;
+            }
+            result.parseNanos += System.nanoTime() - start;
+
+            if (accepted != sample.isValid()) {
+                if (accepted) {
+                    result.fail(i, "injected error was accepted");
+                } else {
+                    result.fail(i, "valid program was rejected");
+                }
+            } else if (accepted) {
+                try {
+                    Program second = parse(printer.toString(first));
+                    if (!second.equals(first)) {
+                        result.fail(i, "reparse of pretty print differs");
+                    }
+                } catch (RuntimeException e) {
+                    result.fail(i, "pretty print does not parse");
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final int defaultCount = 1000;
+        final int defaultInstructions = 8;
+        final int defaultBlockSize = 6;
+        final int defaultDepth = 4;
+        final double defaultErrorRate = 0.1;
+
+        long seed = 0;
+        int count = defaultCount;
+        int instructions = defaultInstructions;
+        int blockSize = defaultBlockSize;
+        int maxDepth = defaultDepth;
+        double errorRate = defaultErrorRate;
+        if (args.length > 0) {
+            seed = Long.parseLong(args[0]);
+        }
+        if (args.length > 1) {
+            count = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            instructions = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            blockSize = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            maxDepth = Integer.parseInt(args[4]);
+        }
+        if (args.length > 5) {
+            errorRate = Double.parseDouble(args[5]);
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        Result result = run(new BLProgramGenerator(seed, instructions,
+                blockSize, maxDepth, errorRate), count);
+        out.println("programs:   " + result.programs());
+        out.println("failures:   " + result.failures());
+        if (result.firstFailure() != null) {
+            out.println("first:      " + result.firstFailure()
+                    + " (seed " + seed + ")");
+        }
+        out.println(String.format("tokens/s:   %.0f",
+                result.tokensPerSecond()));
+        out.println(String.format("chars/s:    %.0f",
+                result.charactersPerSecond()));
+        out.close();
+    }
+
+}
@@ -0,0 +1,210 @@
+import components.statement.Statement;
+
+/**
+ * Deterministic stand-in for a BugsWorld creature, for tests and benchmarks
+ * of the execution engines.
+ *
+ * <p>
+ * The simulated world changes only when the robot acts: between two
+ * primitive instructions every condition keeps its value, and
+ * {@code next-is-not-x} is always the negation of {@code next-is-x}, as in
+ * BugsWorld. Which conditions hold after each action is decided by a seeded
+ * hash; {@code random} draws from a separate seeded sequence and {@code true}
+ * always holds. Every action is folded into a trace hash, and the first
+ * actions can be recorded, so two engines (or a program and its optimized
+ * version) can be checked to have driven the robot identically.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class SimulatedRobot implements BLRobot {
+
+    /**
+     * Multiplier of the linear congruential generator (Knuth's MMIX).
+     */
+    private static final long LCG_MULTIPLIER = 6364136223846793005L;
+
+    /**
+     * Increment of the linear congruential generator (Knuth's MMIX).
+     */
+    private static final long LCG_INCREMENT = 1442695040888963407L;
+
+    /**
+     * Multiplier for folding an action into the trace hash.
+     */
+    private static final int TRACE_MULTIPLIER = 31;
+
+    /**
+     * State of the world, changed by every action.
+     */
+    private long world;
+
+    /**
+     * State of the sequence {@code random} draws from.
+     */
+    private long random;
+
+    /**
+     * Hash of every action so far.
+     */
+    private int trace = 1;
+
+    /**
+     * Number of primitive instructions performed.
+     */
+    private long actions = 0;
+
+    /**
+     * Number of conditions tested.
+     */
+    private long tests = 0;
+
+    /**
+     * The first actions performed, one character each.
+     */
+    private final StringBuilder history;
+
+    /**
+     * The number of actions to record in {@code history}.
+     */
+    private final int historyLength;
+
+    /**
+     * Constructor.
+     *
+     * @param seed
+     *            the seed of the simulated world
+     */
+    public SimulatedRobot(long seed) {
+        this(seed, 0);
+    }
+
+    /**
+     * Constructor recording the first {@code historyLength} actions.
+     *
+     * @param seed
+     *            the seed of the simulated world
+     * @param historyLength
+     *            the number of actions to record
+     * @requires historyLength >= 0
+     */
+    public SimulatedRobot(long seed, int historyLength) {
+        assert historyLength >= 0 : "Violation of: historyLength >= 0";
+        this.world = seed;
+        this.random = ~seed;
+        this.historyLength = historyLength;
+        this.history = new StringBuilder(historyLength);
+    }
+
+    /**
+     * Returns the next value of the generator after {@code x}.
+     *
+     * @param x
+     *            the generator state
+     * @return the next state
+     */
+    private static long next(long x) {
+        return LCG_MULTIPLIER * x + LCG_INCREMENT;
+    }
+
+    /**
+     * Records the primitive action {@code code} and changes the world.
+     *
+     * @param code
+     *            the action code
+     */
+    private void act(char code) {
+        this.actions++;
+        this.trace = TRACE_MULTIPLIER * this.trace + code;
+        this.world = next(this.world + code);
+        if (this.history.length() < this.historyLength) {
+            this.history.append(code);
+        }
+    }
+
+    @Override
+    public void move() {
+        this.act('m');
+    }
+
+    @Override
+    public void turnLeft() {
+        this.act('l');
+    }
+
+    @Override
+    public void turnRight() {
+        this.act('r');
+    }
+
+    @Override
+    public void infect() {
+        this.act('i');
+    }
+
+    @Override
+    public void skip() {
+        this.act('s');
+    }
+
+    @Override
+    public boolean test(Statement.Condition c) {
+        this.tests++;
+        boolean holds;
+        if (c == Statement.Condition.TRUE) {
+            holds = true;
+        } else if (c == Statement.Condition.RANDOM) {
+            this.random = next(this.random);
+            holds = this.random < 0;
+        } else {
+            Statement.Condition positive = c;
+            boolean negated = c.name().contains("_NOT_");
+            if (negated) {
+                positive = Statements.negation(c);
+            }
+            long bits = next(this.world ^ positive.ordinal());
+            holds = (bits < 0) != negated;
+        }
+        return holds;
+    }
+
+    /**
+     * Returns the hash of every action performed so far.
+     *
+     * @return the trace hash
+     */
+    public int trace() {
+        return this.trace;
+    }
+
+    /**
+     * Returns the first actions performed, one character each ('m'ove,
+     * turn'l'eft, turn'r'ight, 'i'nfect, 's'kip), up to the history length
+     * given at construction.
+     *
+     * @return the recorded actions
+     */
+    public String history() {
+        return this.history.toString();
+    }
+
+    /**
+     * Returns the number of primitive instructions performed.
+     *
+     * @return the number of actions
+     */
+    public long actions() {
+        return this.actions;
+    }
+
+    /**
+     * Returns the number of conditions tested.
+     *
+     * @return the number of tests
+     */
+    public long tests() {
+        return this.tests;
+    }
+
+}
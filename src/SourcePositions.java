@@ -0,0 +1,383 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Side table mapping the nodes of parsed BL statements back to the source
+ * text, in primitive arrays.
+ *
+ * <p>
+ * {@code SourceTokenizer.tokens(CharSequence, SourcePositions)} records where
+ * each token and each line starts; parsing through {@code ParseOptions} with
+ * {@link ParseOptions#setPositions(SourcePositions)} then records, for each
+ * node, the first and last token it was parsed from. Nodes are numbered in
+ * pre-order, counting BLOCK nodes, from 0: for a program the body of each
+ * instruction in the order defined, then the main body. A node's children are
+ * the statements of a BLOCK, the block of an IF or WHILE, and the THEN and
+ * ELSE blocks of an IF_ELSE, as for {@code StatementNode}, so a walk over the
+ * parsed {@code Statement} in the same order finds each node's number.
+ *
+ * <p>
+ * Folding changes the tree after the nodes are numbered, so positions are
+ * only recorded with folding off.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class SourcePositions {
+
+    /**
+     * Initial capacity of the arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Offset of the first character of each token.
+     */
+    private int[] tokenStarts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Offset after the last character of each token.
+     */
+    private int[] tokenEnds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of tokens recorded.
+     */
+    private int tokenCount = 0;
+
+    /**
+     * Offset of the first character of each line.
+     */
+    private int[] lineStarts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of lines recorded.
+     */
+    private int lineCount = 0;
+
+    /**
+     * Index of the first token of each node.
+     */
+    private int[] nodeStarts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Index after the last token of each node.
+     */
+    private int[] nodeEnds = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of the last node in the subtree of each node.
+     */
+    private int[] nodeLasts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of nodes recorded.
+     */
+    private int nodeCount = 0;
+
+    /**
+     * Number of the body node of each instruction, by name.
+     */
+    private final java.util.Map<String, Integer> roots = new HashMap<>();
+
+    /**
+     * Number of the main body node, or -1.
+     */
+    private int bodyRoot = -1;
+
+    /**
+     * No-argument constructor.
+     */
+    public SourcePositions() {
+    }
+
+    /**
+     * Returns {@code a}, grown to hold index {@code i}.
+     *
+     * @param a
+     *            the array
+     * @param i
+     *            the index to hold
+     * @return {@code a} or a larger copy of it
+     */
+    private static int[] ensure(int[] a, int i) {
+        int[] result = a;
+        if (i >= a.length) {
+            result = Arrays.copyOf(a, Math.max(2 * a.length, i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the tokens and lines recorded.
+     */
+    void clearTokens() {
+        this.tokenCount = 0;
+        this.lineCount = 1;
+        this.lineStarts[0] = 0;
+    }
+
+    /**
+     * Records a token.
+     *
+     * @param start
+     *            the offset of its first character
+     * @param end
+     *            the offset after its last character
+     */
+    void addToken(int start, int end) {
+        this.tokenStarts = ensure(this.tokenStarts, this.tokenCount);
+        this.tokenEnds = ensure(this.tokenEnds, this.tokenCount);
+        this.tokenStarts[this.tokenCount] = start;
+        this.tokenEnds[this.tokenCount] = end;
+        this.tokenCount++;
+    }
+
+    /**
+     * Records the start of a line after the first.
+     *
+     * @param start
+     *            the offset of its first character
+     */
+    void addLine(int start) {
+        this.lineStarts = ensure(this.lineStarts, this.lineCount);
+        this.lineStarts[this.lineCount] = start;
+        this.lineCount++;
+    }
+
+    /**
+     * Forgets the nodes recorded.
+     */
+    void clearNodes() {
+        this.nodeCount = 0;
+        this.roots.clear();
+        this.bodyRoot = -1;
+    }
+
+    /**
+     * Records that the next node is the body of instruction {@code name}, or
+     * the main body if {@code name} is null.
+     *
+     * @param name
+     *            the instruction name, or null
+     */
+    void markRoot(String name) {
+        if (name == null) {
+            this.bodyRoot = this.nodeCount;
+        } else {
+            this.roots.put(name, this.nodeCount);
+        }
+    }
+
+    /**
+     * Records the start of a node.
+     *
+     * @param token
+     *            the index of its first token
+     * @return the number of the node
+     */
+    int startNode(int token) {
+        int id = this.nodeCount;
+        this.nodeStarts = ensure(this.nodeStarts, id);
+        this.nodeEnds = ensure(this.nodeEnds, id);
+        this.nodeLasts = ensure(this.nodeLasts, id);
+        this.nodeStarts[id] = token;
+        this.nodeCount++;
+        return id;
+    }
+
+    /**
+     * Records the end of node {@code id}.
+     *
+     * @param id
+     *            the number of the node
+     * @param token
+     *            the index after its last token
+     */
+    void endNode(int id, int token) {
+        this.nodeEnds[id] = token;
+        this.nodeLasts[id] = this.nodeCount - 1;
+    }
+
+    /**
+     * Returns the number of nodes recorded.
+     *
+     * @return the number of nodes
+     */
+    public int nodes() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the number of the body node of instruction {@code name}.
+     *
+     * @param name
+     *            the instruction name
+     * @return the node number
+     * @requires [name is an instruction of the program parsed]
+     */
+    public int root(String name) {
+        assert this.roots.containsKey(name) : ""
+                + "Violation of: name is an instruction of the program parsed";
+        return this.roots.get(name);
+    }
+
+    /**
+     * Returns the number of the main body node of the program parsed.
+     *
+     * @return the node number
+     * @requires [a program was parsed]
+     */
+    public int bodyRoot() {
+        assert this.bodyRoot >= 0 : "Violation of: a program was parsed";
+        return this.bodyRoot;
+    }
+
+    /**
+     * Returns the number of child {@code i} of node {@code id}.
+     *
+     * @param id
+     *            the node number
+     * @param i
+     *            the position of the child
+     * @return the child's node number
+     * @requires [node id has a child at position i]
+     */
+    public int child(int id, int i) {
+        assert 0 <= id && id < this.nodeCount : ""
+                + "Violation of: 0 <= id < nodes()";
+        int child = id + 1;
+        for (int k = 0; k < i; k++) {
+            child = this.nodeLasts[child] + 1;
+        }
+        assert i >= 0 && child <= this.nodeLasts[id] : ""
+                + "Violation of: [node id has a child at position i]";
+        return child;
+    }
+
+    /**
+     * Returns the number of nodes in the subtree of node {@code id}.
+     *
+     * @param id
+     *            the node number
+     * @return the subtree size
+     */
+    public int size(int id) {
+        return this.nodeLasts[id] - id + 1;
+    }
+
+    /**
+     * Returns the index of the first token of node {@code id}.
+     *
+     * @param id
+     *            the node number
+     * @return the token index
+     */
+    public int startToken(int id) {
+        return this.nodeStarts[id];
+    }
+
+    /**
+     * Returns the index after the last token of node {@code id}; equal to
+     * {@code startToken(id)} for an empty BLOCK.
+     *
+     * @param id
+     *            the node number
+     * @return the token index
+     */
+    public int endToken(int id) {
+        return this.nodeEnds[id];
+    }
+
+    /**
+     * Returns the offset in the source of the first character of node
+     * {@code id}.
+     *
+     * @param id
+     *            the node number
+     * @return the offset
+     * @requires [the tokens were recorded by SourceTokenizer]
+     */
+    public int start(int id) {
+        int token = this.nodeStarts[id];
+        assert token <= this.tokenCount : ""
+                + "Violation of: [the tokens were recorded by SourceTokenizer]";
+        int offset;
+        if (token < this.tokenCount) {
+            offset = this.tokenStarts[token];
+        } else if (this.tokenCount > 0) {
+            offset = this.tokenEnds[this.tokenCount - 1];
+        } else {
+            offset = 0;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset in the source after the last character of node
+     * {@code id}.
+     *
+     * @param id
+     *            the node number
+     * @return the offset
+     * @requires [the tokens were recorded by SourceTokenizer]
+     */
+    public int end(int id) {
+        int offset;
+        if (this.nodeEnds[id] > this.nodeStarts[id]) {
+            int token = this.nodeEnds[id] - 1;
+            assert token < this.tokenCount : ""
+                    + "Violation of: [the tokens were recorded by SourceTokenizer]";
+            offset = this.tokenEnds[token];
+        } else {
+            offset = this.start(id);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the line, from 1, of the source offset {@code offset}.
+     *
+     * @param offset
+     *            the offset
+     * @return the line number
+     * @requires offset >= 0
+     */
+    public int line(int offset) {
+        assert offset >= 0 : "Violation of: offset >= 0";
+        int index = Arrays.binarySearch(this.lineStarts, 0,
+                Math.max(1, this.lineCount), offset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Returns the column, from 1, of the source offset {@code offset}.
+     *
+     * @param offset
+     *            the offset
+     * @return the column number
+     * @requires offset >= 0
+     */
+    public int column(int offset) {
+        return offset - this.lineStarts[this.line(offset) - 1] + 1;
+    }
+
+    /**
+     * Returns "line:column-line:column" for node {@code id}, for messages.
+     *
+     * @param id
+     *            the node number
+     * @return the span of the node
+     */
+    public String span(int id) {
+        int start = this.start(id);
+        int end = this.end(id);
+        return this.line(start) + ":" + this.column(start) + "-"
+                + this.line(end) + ":" + this.column(end);
+    }
+
+}
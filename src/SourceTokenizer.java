@@ -0,0 +1,226 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Tokenizer for BL source text that is already in memory (a
+ * {@code CharSequence} or a UTF-8 encoded {@code ByteBuffer}) rather than
+ * behind a {@code SimpleReader}. Produces the same tokens as
+ * {@code Tokenizer.tokens}: the maximal runs of non-whitespace characters in
+ * order, followed by {@code Tokenizer.END_OF_INPUT}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class SourceTokenizer {
+
+    /**
+     * Makes the string of each token, so that a client can share the strings
+     * of repeated tokens instead of copying each one out of the source.
+     */
+    public interface TokenFactory {
+
+        /**
+         * Returns the token {@code text[start, end)}.
+         *
+         * @param text
+         *            the source text
+         * @param start
+         *            the start of the token
+         * @param end
+         *            the end of the token
+         * @return the token
+         * @requires 0 <= start < end <= |text|
+         * @ensures token = text[start, end)
+         */
+        String token(CharSequence text, int start, int end);
+
+    }
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private SourceTokenizer() {
+    }
+
+    /**
+     * Returns a copy of the token {@code text[start, end)}.
+     *
+     * @param text
+     *            the source text
+     * @param start
+     *            the start of the token
+     * @param end
+     *            the end of the token
+     * @return the token
+     */
+    private static String copy(CharSequence text, int start, int end) {
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Returns the tokens of the BL source {@code text}.
+     *
+     * @param text
+     *            the source text
+     * @return the tokens of {@code text}
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in text] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(CharSequence text) {
+        assert text != null : "Violation of: text is not null";
+
+        return tokens(text, null);
+    }
+
+    /**
+     * Returns the tokens of the BL source {@code text}, recording where each
+     * token and each line starts in {@code positions} if it is not null.
+     * Lines end with '\n'.
+     *
+     * @param text
+     *            the source text
+     * @param positions
+     *            the table to record token and line positions in, or null
+     * @return the tokens of {@code text}
+     * @updates positions
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in text] *
+     *          <Tokenizer.END_OF_INPUT>  and
+     * [positions holds the offsets of those tokens and of the lines of text]
+     * </pre>
+     */
+    public static Queue<String> tokens(CharSequence text,
+            SourcePositions positions) {
+        assert text != null : "Violation of: text is not null";
+
+        return tokens(text, positions, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the tokens of the BL source {@code text}, recording where each
+     * token and each line starts in {@code positions} if it is not null, and
+     * giving up as soon as more than {@code maxTokens} tokens are found.
+     *
+     * @param text
+     *            the source text
+     * @param positions
+     *            the table to record token and line positions in, or null
+     * @param maxTokens
+     *            the largest number of tokens accepted, END_OF_INPUT excluded
+     * @return the tokens of {@code text}
+     * @throws ParseLimitExceededException
+     *             if {@code text} has more than {@code maxTokens} tokens
+     * @updates positions
+     * @requires maxTokens >= 0
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in text] *
+     *          <Tokenizer.END_OF_INPUT>  and
+     * [positions holds the offsets of those tokens and of the lines of text]
+     * </pre>
+     */
+    public static Queue<String> tokens(CharSequence text,
+            SourcePositions positions, int maxTokens) {
+        assert text != null : "Violation of: text is not null";
+        assert maxTokens >= 0 : "Violation of: maxTokens >= 0";
+
+        Queue<String> tokens = new Queue1L<>();
+        tokenize(text, positions, maxTokens, SourceTokenizer::copy, tokens);
+        return tokens;
+    }
+
+    /**
+     * Appends the tokens of the BL source {@code text} to {@code tokens},
+     * making the string of each with {@code factory}, recording where each
+     * token and each line starts in {@code positions} if it is not null, and
+     * giving up as soon as more than {@code maxTokens} tokens are found.
+     *
+     * @param text
+     *            the source text
+     * @param positions
+     *            the table to record token and line positions in, or null
+     * @param maxTokens
+     *            the largest number of tokens accepted, END_OF_INPUT excluded
+     * @param factory
+     *            makes the string of each token
+     * @param tokens
+     *            the queue to append the tokens to
+     * @throws ParseLimitExceededException
+     *             if {@code text} has more than {@code maxTokens} tokens
+     * @updates positions, tokens
+     * @requires maxTokens >= 0
+     * @ensures <pre>
+     * tokens = #tokens * [the non-whitespace tokens in text] *
+     *          <Tokenizer.END_OF_INPUT>  and
+     * [positions holds the offsets of those tokens and of the lines of text]
+     * </pre>
+     */
+    public static void tokenize(CharSequence text, SourcePositions positions,
+            int maxTokens, TokenFactory factory, Queue<String> tokens) {
+        assert text != null : "Violation of: text is not null";
+        assert maxTokens >= 0 : "Violation of: maxTokens >= 0";
+        assert factory != null : "Violation of: factory is not null";
+        assert tokens != null : "Violation of: tokens is not null";
+
+        if (positions != null) {
+            positions.clearTokens();
+        }
+        int count = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            //Skip the whitespace in front of the next token.
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                if (positions != null && text.charAt(i) == '\n') {
+                    positions.addLine(i + 1);
+                }
+                i++;
+            }
+            //The token runs up to the next whitespace character.
+            int start = i;
+            while (i < length && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                //Give up before tokenizing the rest of oversized input.
+                count++;
+                if (count > maxTokens) {
+                    throw new ParseLimitExceededException(
+                            ParseLimitExceededException.Limit.TOKENS,
+                            maxTokens);
+                }
+                tokens.enqueue(factory.token(text, start, i));
+                if (positions != null) {
+                    positions.addToken(start, i);
+                }
+            }
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source between the position
+     * and the limit of {@code source}. The position of {@code source} is not
+     * changed.
+     *
+     * @param source
+     *            the encoded source
+     * @return the tokens of {@code source}
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(ByteBuffer source) {
+        assert source != null : "Violation of: source is not null";
+
+        return tokens(StandardCharsets.UTF_8.decode(source.duplicate()));
+    }
+
+}
@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 import components.queue.Queue;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
@@ -23,19 +26,31 @@ public final class Statement1Parse1 extends Statement1 {
      */
 
     /**
-     * Converts {@code c} into the corresponding {@code Condition}.
+     * Dequeues the keyword {@code keyword} from the front of {@code tokens},
+     * reporting {@code message} if the front is something else, unless
+     * {@code skip}.
      *
-     * @param c
-     *            the condition to convert
-     * @return the {@code Condition} corresponding to {@code c}
-     * @requires [c is a condition string]
-     * @ensures parseCondition = [Condition corresponding to c]
+     * @param tokens
+     *            the input tokens
+     * @param keyword
+     *            the keyword expected
+     * @param skip
+     *            whether the keyword has already been checked
+     * @param message
+     *            the error message
+     * @updates tokens
+     * @requires |tokens| > 0
+     * @ensures <pre>
+     * if skip  or  [keyword is a prefix of #tokens] then
+     *  #tokens = [front of #tokens] * tokens
+     * else
+     *  [reports message to the console and terminates client]
+     * </pre>
      */
-    private static Condition parseCondition(String c) {
-        assert c != null : "Violation of: c is not null";
-        assert Tokenizer
-                .isCondition(c) : "Violation of: c is a condition string";
-        return Condition.valueOf(c.replace('-', '_').toUpperCase());
+    private static void dequeueKeyword(Queue<String> tokens, String keyword,
+            boolean skip, String message) {
+        String token = tokens.dequeue();
+        Reporter.assertElseFatalError(skip || token.equals(keyword), message);
     }
 
     /**
@@ -73,15 +88,17 @@ public final class Statement1Parse1 extends Statement1 {
         tokens.dequeue();
         //Next token should be condition. (Syntax error check needed).
         String condition = tokens.dequeue();
+        //Parse the string into condition, null if it is not valid.
+        Condition c = TokenClassifier.condition(condition);
         //Check if the condition is a valid condition.
-        Reporter.assertElseFatalError(Tokenizer.isCondition(condition),
+        Reporter.assertElseFatalError(c != null,
                 "Violation of: " + condition + " is valid condition");
-        //Parse the string into condition.
-        Condition c = parseCondition(condition);
+        //In trusted mode the closing keywords have already been checked.
+        boolean skip = ParseOptions.current().skipChecks();
         //Next token should be "THEN". (Syntax error check needed).
         String then = tokens.dequeue();
         //Check if the then is actually "THEN".
-        Reporter.assertElseFatalError(then.equals("THEN"),
+        Reporter.assertElseFatalError(skip || then.equals("THEN"),
                 "Violation of: THEN should be present after the if condition.");
 
         //Process if block part.
@@ -91,27 +108,46 @@ public final class Statement1Parse1 extends Statement1 {
         //If there is no else block. we check if there is END IF at the end.
         if (!tokens.front().equals("ELSE")) {
             //Check if next tokens is "END".
-            Reporter.assertElseFatalError(tokens.dequeue().equals("END"),
+            dequeueKeyword(tokens, "END", skip,
                     "Violation of: END should be present at the end of if block.");
             //Check if next tokens is "IF".
-            Reporter.assertElseFatalError(tokens.dequeue().equals("IF"),
+            dequeueKeyword(tokens, "IF", skip,
                     "Violation of: IF should be present at the end of if block.");
             //Assemble the if condition and block to the statement.
             s.assembleIf(c, nsIf);
+            ParseOptions.current().buildCompound(Kind.IF, c);
         } else {
-            Reporter.assertElseFatalError(tokens.dequeue().equals("ELSE"),
+            dequeueKeyword(tokens, "ELSE", skip,
                     "Violation of: ELSE should be present at the start of else block.");
             //If there is a ELSE block, start to process it.
             Statement nsElse = s.newInstance();
             nsElse.parseBlock(tokens);
             //Check if next tokens is "END".
-            Reporter.assertElseFatalError(tokens.dequeue().equals("END"),
+            dequeueKeyword(tokens, "END", skip,
                     "Violation of: END should be present at the end of if block.");
             //Check if next tokens is "IF".
-            Reporter.assertElseFatalError(tokens.dequeue().equals("IF"),
+            dequeueKeyword(tokens, "IF", skip,
                     "Violation of: IF should be present at the end of if block.");
             //Assemble the if condition and if && else block to the statement.
-            s.assembleIfElse(c, nsIf, nsElse);
+            ParseOptions options = ParseOptions.current();
+            Condition negation = Statements.negation(c);
+            if (options.fold() && nsElse.lengthOfBlock() == 0) {
+                //An empty else block is the same as none.
+                options.countFolded();
+                s.assembleIf(c, nsIf);
+                options.dropBuilt(0);
+                options.buildCompound(Kind.IF, c);
+            } else if (options.fold() && nsIf.lengthOfBlock() == 0
+                    && negation != null) {
+                //An empty if block: run the else block on the negation.
+                options.countFolded();
+                s.assembleIf(negation, nsElse);
+                options.dropBuilt(1);
+                options.buildCompound(Kind.IF, negation);
+            } else {
+                s.assembleIfElse(c, nsIf, nsElse);
+                options.buildCompound(Kind.IF_ELSE, c);
+            }
         }
 
     }
@@ -151,13 +187,15 @@ public final class Statement1Parse1 extends Statement1 {
         tokens.dequeue();
         //Next token should be condition. (Syntax error check needed).
         String condition = tokens.dequeue();
+        //Parse the string into condition, null if it is not valid.
+        Condition c = TokenClassifier.condition(condition);
         //Check if the condition is a valid condition.
-        Reporter.assertElseFatalError(Tokenizer.isCondition(condition),
+        Reporter.assertElseFatalError(c != null,
                 "Violation of: " + condition + " is valid condition");
-        //Parse the string into condition.
-        Condition c = parseCondition(condition);
+        //In trusted mode the closing keywords have already been checked.
+        boolean skip = ParseOptions.current().skipChecks();
         //Next tokens should be "DO", check if that is the case.
-        Reporter.assertElseFatalError(tokens.dequeue().equals("DO"),
+        dequeueKeyword(tokens, "DO", skip,
                 "Violation of: DO should be present after the while condition.");
 
         //Process while block part.
@@ -166,14 +204,25 @@ public final class Statement1Parse1 extends Statement1 {
 
         //Check the "END" and "WHILE" at the end of the while statement.
         //Check if next tokens is "END".
-        Reporter.assertElseFatalError(tokens.dequeue().equals("END"),
+        dequeueKeyword(tokens, "END", skip,
                 "Violation of: END should be present at the end of while block.");
         //Check if next tokens is "IF".
-        Reporter.assertElseFatalError(tokens.dequeue().equals("WHILE"),
+        dequeueKeyword(tokens, "WHILE", skip,
                 "Violation of: WHILE should be present at the end of while block.");
 
+        //A while true loop that never calls anything never acts either.
+        ParseOptions options = ParseOptions.current();
+        if (options.fold() && c == Condition.TRUE) {
+            List<String> calls = new ArrayList<>();
+            Statements.collectCalls(ns, calls);
+            if (calls.isEmpty()) {
+                options.warn("WHILE true loop never calls an instruction.");
+            }
+        }
+
         //Assemble the while condition and block to the statement.
         s.assembleWhile(c, ns);
+        options.buildCompound(Kind.WHILE, c);
 
     }
 
@@ -197,15 +246,76 @@ public final class Statement1Parse1 extends Statement1 {
         assert tokens != null : "Violation of: tokens is not null";
         assert s != null : "Violation of: s is not null";
         assert tokens.length() > 0
-                && Tokenizer.isIdentifier(tokens.front()) : ""
+                && TokenClassifier.isIdentifier(tokens.front()) : ""
                         + "Violation of: identifier string is proper prefix of tokens";
 
         String inst = tokens.dequeue();
+        ParseOptions options = ParseOptions.current();
+        options.checkIdentifier(inst);
         //Assemble the call to the statement.
         s.assembleCall(inst);
+        options.buildCall(inst);
 
     }
 
+    /**
+     * Adds {@code s} to {@code block} at {@code position}, collapsing an IF
+     * on condition true to its block and dropping an IF with an empty block.
+     *
+     * @param block
+     *            the block being parsed
+     * @param position
+     *            where to add {@code s}
+     * @param s
+     *            the statement to add
+     * @param options
+     *            the options to record folding in
+     * @return the position after what was added
+     * @updates block, options
+     * @clears s
+     * @requires 0 <= position <= |block|
+     */
+    private static int addFolded(Statement block, int position, Statement s,
+            ParseOptions options) {
+        assert block != null : "Violation of: block is not null";
+        assert s != null : "Violation of: s is not null";
+        assert options != null : "Violation of: options is not null";
+
+        int next = position;
+        if (s.kind() == Kind.IF || s.kind() == Kind.IF_ELSE) {
+            Statement nsIf = s.newInstance();
+            Statement nsElse = s.newInstance();
+            Condition c;
+            if (s.kind() == Kind.IF) {
+                c = s.disassembleIf(nsIf);
+            } else {
+                c = s.disassembleIfElse(nsIf, nsElse);
+            }
+            if (c == Condition.TRUE || (nsIf.lengthOfBlock() == 0
+                    && nsElse.lengthOfBlock() == 0)) {
+                //The if block always runs, or nothing ever runs.
+                options.countFolded();
+                options.spliceBuilt();
+                while (nsIf.lengthOfBlock() > 0) {
+                    block.addToBlock(next, nsIf.removeFromBlock(0));
+                    next++;
+                }
+            } else {
+                if (nsElse.lengthOfBlock() == 0) {
+                    s.assembleIf(c, nsIf);
+                } else {
+                    s.assembleIfElse(c, nsIf, nsElse);
+                }
+                block.addToBlock(next, s);
+                next++;
+            }
+        } else {
+            block.addToBlock(next, s);
+            next++;
+        }
+        return next;
+    }
+
     /*
      * Constructors -----------------------------------------------------------
      */
@@ -227,6 +337,8 @@ public final class Statement1Parse1 extends Statement1 {
         assert tokens.length() > 0 : ""
                 + "Violation of: Tokenizer.END_OF_INPUT is a suffix of tokens";
 
+        ParseOptions options = ParseOptions.current();
+        int id = options.startNode(tokens);
         //There are three situations: IF or IF_ELSE, WHILE, and call.
         if (tokens.front().equals("IF")) {
             parseIf(tokens, this);
@@ -234,8 +346,13 @@ public final class Statement1Parse1 extends Statement1 {
             parseWhile(tokens, this);
         } else {
             //It is a call
+            Reporter.assertElseFatalError(
+                    TokenClassifier.isIdentifier(tokens.front()),
+                    "Violation of: " + tokens.front()
+                            + " is a valid identifier");
             parseCall(tokens, this);
         }
+        options.endNode(id, tokens);
 
     }
 
@@ -249,13 +366,37 @@ public final class Statement1Parse1 extends Statement1 {
          * The end of a block can either be "ELSE", "END", or
          * Tokenizer.END_OF_INPUT. Use a while loop until we reach one of this.
          */
-        Statement ns = this.newInstance();
-        int position = 0;
-        while (!(tokens.front().equals("ELSE") || tokens.front().equals("END")
-                || tokens.front().equals(Tokenizer.END_OF_INPUT))) {
-            ns.parse(tokens);
-            this.addToBlock(position, ns);
-            position++;
+        //A reused statement may still hold an earlier parse.
+        if (this.kind() != Kind.BLOCK || this.lengthOfBlock() > 0) {
+            this.clear();
+        }
+        ParseOptions options = ParseOptions.current();
+        options.enterBlock();
+        try {
+            //A parse running for AsyncProgramParser may have been cancelled.
+            options.checkCancelled();
+            int mark = options.blockMark();
+            int id = options.startNode(tokens);
+            Statement ns = this.newInstance();
+            int position = 0;
+            while (!(tokens.front().equals("ELSE")
+                    || tokens.front().equals("END")
+                    || tokens.front().equals(Tokenizer.END_OF_INPUT))) {
+                options.checkTime();
+                options.checkCancelled();
+                ns.parse(tokens);
+                if (options.fold()) {
+                    position = addFolded(this, position, ns, options);
+                } else {
+                    this.addToBlock(position, ns);
+                    position++;
+                }
+            }
+            options.endNode(id, tokens);
+            options.buildBlock(mark);
+        } finally {
+            //A syntax error must not leave the depth of reused options raised.
+            options.exitBlock();
         }
 
     }
@@ -265,7 +406,8 @@ public final class Statement1Parse1 extends Statement1 {
      */
 
     /**
-     * Main method.
+     * Main method. Usage: {@code java Statement1Parse1 [file]}; without a file, the
+     * file name is read from the console.
      *
      * @param args
      *            the command line arguments
@@ -274,10 +416,15 @@ public final class Statement1Parse1 extends Statement1 {
         SimpleReader in = new SimpleReader1L();
         SimpleWriter out = new SimpleWriter1L();
         /*
-         * Get input file name
+         * Get input file name, from the command line if given
          */
-        out.print("Enter valid BL statement(s) file name: ");
-        String fileName = in.nextLine();
+        String fileName;
+        if (args.length > 0) {
+            fileName = args[0];
+        } else {
+            out.print("Enter valid BL statement(s) file name: ");
+            fileName = in.nextLine();
+        }
         /*
          * Parse input file
          */
@@ -291,7 +438,7 @@ public final class Statement1Parse1 extends Statement1 {
          * Pretty print the statement(s)
          */
         out.println("*** Pretty print of parsed statement(s) ***");
-        s.prettyPrint(out, 0);
+        out.print(new ProgramPrettyPrinter().toString(s, 0));
 
         in.close();
         out.close();
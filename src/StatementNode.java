@@ -0,0 +1,242 @@
+import java.util.Arrays;
+
+import components.statement.Statement;
+
+/**
+ * Immutable node of a BL statement tree, made only by a
+ * {@code StatementTable}, which gives structurally equal trees the same node.
+ * The structural hash and the size are computed once, bottom-up, when the
+ * node is made.
+ *
+ * <p>
+ * Two nodes from the same table are equal iff they are the same object, and
+ * {@code equals} checks that first; nodes from different tables are compared
+ * structurally.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class StatementNode {
+
+    /**
+     * Multiplier for combining hashes.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The kind of statement.
+     */
+    private final Statement.Kind kind;
+
+    /**
+     * The condition of an IF, IF_ELSE or WHILE; null otherwise.
+     */
+    private final Statement.Condition condition;
+
+    /**
+     * The instruction name of a CALL; null otherwise.
+     */
+    private final String name;
+
+    /**
+     * The statements of a BLOCK, the block of an IF or WHILE, or the THEN
+     * and ELSE blocks of an IF_ELSE.
+     */
+    private final StatementNode[] children;
+
+    /**
+     * The structural hash.
+     */
+    private final int hash;
+
+    /**
+     * The number of nodes in the tree rooted here.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param kind
+     *            the kind of statement
+     * @param condition
+     *            the condition, or null
+     * @param name
+     *            the instruction name, or null
+     * @param children
+     *            the children, which the node takes over
+     */
+    StatementNode(Statement.Kind kind, Statement.Condition condition,
+            String name, StatementNode[] children) {
+        this.kind = kind;
+        this.condition = condition;
+        this.name = name;
+        this.children = children;
+        int h = kind.ordinal();
+        int n = 1;
+        if (condition != null) {
+            h = HASH_MULTIPLIER * h + condition.ordinal();
+        }
+        if (name != null) {
+            h = HASH_MULTIPLIER * h + name.hashCode();
+        }
+        for (StatementNode child : children) {
+            h = HASH_MULTIPLIER * h + child.hash;
+            n += child.size;
+        }
+        this.hash = h;
+        this.size = n;
+    }
+
+    /**
+     * Returns the kind of statement.
+     *
+     * @return the kind
+     */
+    public Statement.Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the condition of an IF, IF_ELSE or WHILE.
+     *
+     * @return the condition
+     * @requires [this is an IF, IF_ELSE or WHILE]
+     */
+    public Statement.Condition condition() {
+        assert this.condition != null : ""
+                + "Violation of: this is an IF, IF_ELSE or WHILE";
+        return this.condition;
+    }
+
+    /**
+     * Returns the instruction name of a CALL.
+     *
+     * @return the name
+     * @requires [this is a CALL]
+     */
+    public String name() {
+        assert this.name != null : "Violation of: this is a CALL";
+        return this.name;
+    }
+
+    /**
+     * Returns the number of children: the statements of a BLOCK, one for an
+     * IF or WHILE, two for an IF_ELSE and none for a CALL.
+     *
+     * @return the number of children
+     */
+    public int numberOfChildren() {
+        return this.children.length;
+    }
+
+    /**
+     * Returns child {@code i}.
+     *
+     * @param i
+     *            the position of the child
+     * @return the child
+     * @requires 0 <= i < numberOfChildren()
+     */
+    public StatementNode child(int i) {
+        assert 0 <= i && i < this.children.length : ""
+                + "Violation of: 0 <= i < numberOfChildren()";
+        return this.children[i];
+    }
+
+    /**
+     * Returns the number of nodes in the tree rooted here, counting BLOCK
+     * nodes as {@code Statements.size} does.
+     *
+     * @return the size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Replaces {@code s} by the statement this node stands for.
+     *
+     * @param s
+     *            the statement to build
+     * @replaces s
+     */
+    public void build(Statement s) {
+        assert s != null : "Violation of: s is not null";
+
+        switch (this.kind) {
+            case BLOCK: {
+                s.clear();
+                for (int i = 0; i < this.children.length; i++) {
+                    Statement child = s.newInstance();
+                    this.children[i].build(child);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                this.children[0].build(block);
+                s.assembleIf(this.condition, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                this.children[0].build(thenBlock);
+                this.children[1].build(elseBlock);
+                s.assembleIfElse(this.condition, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                this.children[0].build(block);
+                s.assembleWhile(this.condition, block);
+                break;
+            }
+            default: {
+                //CALL
+                s.assembleCall(this.name);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof StatementNode)) {
+            return false;
+        }
+        StatementNode other = (StatementNode) obj;
+        if (this.hash != other.hash || this.kind != other.kind
+                || this.condition != other.condition
+                || this.children.length != other.children.length) {
+            return false;
+        }
+        if (this.name != null && !this.name.equals(other.name)) {
+            return false;
+        }
+        /*
+         * Children from the same table are identical when equal, so this
+         * stops at the first level; only nodes from different tables recurse.
+         */
+        return Arrays.equals(this.children, other.children);
+    }
+
+    @Override
+    public String toString() {
+        Statement s = new Statement1Parse1();
+        this.build(s);
+        return new ProgramPrettyPrinter().toString(s, 0);
+    }
+
+}
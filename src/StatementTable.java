@@ -0,0 +1,222 @@
+import java.util.HashMap;
+import java.util.Map;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+
+/**
+ * Hash-consing table for BL statement trees: interning a {@code Statement}
+ * returns a tree of immutable {@code StatementNode}s in which every distinct
+ * subtree exists once, however often it occurs in the statements interned so
+ * far. Identical subtrees of a large program, such as the same
+ * {@code WHILE next-is-empty DO move END WHILE} repeated in many places, are
+ * then stored once, and two interned trees are structurally equal iff they
+ * are the same node.
+ *
+ * <p>
+ * {@code Statement} itself cannot share subtrees, since assembling a
+ * statement takes its blocks over; the nodes are the shared representation,
+ * and {@link StatementNode#build(Statement)} turns one back into a
+ * {@code Statement} when one is needed.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class StatementTable {
+
+    /**
+     * No children, shared by every CALL and empty BLOCK.
+     */
+    private static final StatementNode[] NO_CHILDREN = {};
+
+    /**
+     * Every distinct node interned so far, mapped to itself.
+     */
+    private final Map<StatementNode, StatementNode> nodes = new HashMap<>();
+
+    /**
+     * Number of nodes interned, duplicates included.
+     */
+    private long interned = 0;
+
+    /**
+     * No-argument constructor.
+     */
+    public StatementTable() {
+    }
+
+    /**
+     * Returns the node equal to {@code node} already in the table, adding
+     * {@code node} if there is none.
+     *
+     * @param node
+     *            the node, whose children are already interned
+     * @return the interned node
+     */
+    private StatementNode unique(StatementNode node) {
+        this.interned++;
+        StatementNode existing = this.nodes.putIfAbsent(node, node);
+        if (existing == null) {
+            existing = node;
+        }
+        return existing;
+    }
+
+    /**
+     * Returns the node with {@code kind}, {@code condition}, {@code name}
+     * and {@code children} in this table, adding it if there is none. The
+     * parsers intern each statement this way as they build it.
+     *
+     * @param kind
+     *            the kind of statement
+     * @param condition
+     *            the condition, or null
+     * @param name
+     *            the instruction name, or null
+     * @param children
+     *            the interned children, which the node may take over
+     * @return the interned node
+     */
+    StatementNode node(Statement.Kind kind, Statement.Condition condition,
+            String name, StatementNode[] children) {
+        StatementNode[] nodes = children;
+        if (nodes.length == 0) {
+            nodes = NO_CHILDREN;
+        }
+        return this.unique(new StatementNode(kind, condition, name, nodes));
+    }
+
+    /**
+     * Returns the interned tree for {@code s}, bottom-up.
+     *
+     * @param s
+     *            the statement
+     * @return the node for {@code s}
+     * @ensures intern = [the node in this table equal to s]
+     */
+    public StatementNode intern(Statement s) {
+        assert s != null : "Violation of: s is not null";
+
+        StatementNode node;
+        switch (s.kind()) {
+            case BLOCK: {
+                int length = s.lengthOfBlock();
+                StatementNode[] children = NO_CHILDREN;
+                if (length > 0) {
+                    children = new StatementNode[length];
+                }
+                for (int i = 0; i < length; i++) {
+                    Statement child = s.removeFromBlock(i);
+                    children[i] = this.intern(child);
+                    s.addToBlock(i, child);
+                }
+                node = new StatementNode(Statement.Kind.BLOCK, null, null,
+                        children);
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                node = new StatementNode(Statement.Kind.IF, c, null,
+                        new StatementNode[] { this.intern(block) });
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                node = new StatementNode(Statement.Kind.IF_ELSE, c, null,
+                        new StatementNode[] { this.intern(thenBlock),
+                                this.intern(elseBlock) });
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                node = new StatementNode(Statement.Kind.WHILE, c, null,
+                        new StatementNode[] { this.intern(block) });
+                s.assembleWhile(c, block);
+                break;
+            }
+            default: {
+                //CALL
+                String name = s.disassembleCall();
+                node = new StatementNode(Statement.Kind.CALL, null, name,
+                        NO_CHILDREN);
+                s.assembleCall(name);
+                break;
+            }
+        }
+        return this.unique(node);
+    }
+
+    /**
+     * Returns the number of distinct nodes in the table.
+     *
+     * @return the number of distinct nodes
+     */
+    public int size() {
+        return this.nodes.size();
+    }
+
+    /**
+     * Returns the number of nodes interned, duplicates included: the number
+     * of nodes the interned statements would take without sharing.
+     *
+     * @return the number of nodes interned
+     */
+    public long interned() {
+        return this.interned;
+    }
+
+    /**
+     * Empties the table. Nodes interned before are no longer shared with
+     * nodes interned after, though they still compare equal structurally.
+     *
+     * @clears this
+     */
+    public void clear() {
+        this.nodes.clear();
+        this.interned = 0;
+    }
+
+    /*
+     * Main method ------------------------------------------------------------
+     */
+
+    /**
+     * Interns the bodies of generated programs and reports how many nodes
+     * they share. Usage:
+     * {@code java StatementTable [seed count instructions blockSize maxDepth]}.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        final int argCount = 5;
+        long[] values = { 1, 1000, 20, 6, 4 };
+        for (int i = 0; i < args.length && i < argCount; i++) {
+            values[i] = Long.parseLong(args[i]);
+        }
+        BLProgramGenerator generator = new BLProgramGenerator(values[0],
+                (int) values[2], (int) values[3], (int) values[4], 0);
+        StatementTable table = new StatementTable();
+        ParseOptions options = new ParseOptions().setTable(table);
+        for (long i = 0; i < values[1]; i++) {
+            options.parse(new Program1Parse1(),
+                    SourceTokenizer.tokens(generator.next().source()));
+        }
+        SimpleWriter out = new SimpleWriter1L();
+        out.println(table.interned() + " nodes parsed, " + table.size()
+                + " distinct, sharing factor "
+                + String.format("%.2f", (double) table.interned()
+                        / Math.max(1, table.size())));
+        out.close();
+    }
+
+}
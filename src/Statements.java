@@ -0,0 +1,251 @@
+import java.util.List;
+
+import components.statement.Statement;
+
+/**
+ * Utility methods over {@code Statement} trees shared by the passes and
+ * engines that work on parsed programs. Every method restores the statements
+ * it is given before returning.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class Statements {
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private Statements() {
+    }
+
+    /**
+     * Reports whether {@code name} is the name of a BL primitive instruction.
+     *
+     * @param name
+     *            the instruction name
+     * @return true iff {@code name} is a primitive instruction
+     */
+    public static boolean isPrimitive(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        return TokenClassifier
+                .classify(name) == TokenClassifier.Kind.PRIMITIVE;
+    }
+
+    /**
+     * Returns the number of nodes in {@code s}, counting BLOCK nodes.
+     *
+     * @param s
+     *            the statement
+     * @return the size of {@code s}
+     * @ensures size = [number of nodes in s]
+     */
+    public static int size(Statement s) {
+        assert s != null : "Violation of: s is not null";
+
+        int size = 1;
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    size += size(child);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                size += size(block);
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                size += size(thenBlock) + size(elseBlock);
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                size += size(block);
+                s.assembleWhile(c, block);
+                break;
+            }
+            default: {
+                // a CALL is a single node
+                break;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns a copy of {@code s}.
+     *
+     * @param s
+     *            the statement to copy
+     * @return a new statement equal to {@code s}
+     * @ensures copy = s
+     */
+    public static Statement copy(Statement s) {
+        assert s != null : "Violation of: s is not null";
+
+        Statement copy = s.newInstance();
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    copy.addToBlock(i, copy(child));
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                copy.assembleIf(c, copy(block));
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                copy.assembleIfElse(c, copy(thenBlock), copy(elseBlock));
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                copy.assembleWhile(c, copy(block));
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String name = s.disassembleCall();
+                copy.assembleCall(name);
+                s.assembleCall(name);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Adds the name of every CALL in {@code s}, in program order, to
+     * {@code calls}.
+     *
+     * @param s
+     *            the statement
+     * @param calls
+     *            the names found so far
+     * @updates calls
+     * @ensures calls = #calls * [names of the CALLs in s, in order]
+     */
+    public static void collectCalls(Statement s, List<String> calls) {
+        assert s != null : "Violation of: s is not null";
+        assert calls != null : "Violation of: calls is not null";
+
+        switch (s.kind()) {
+            case BLOCK: {
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    collectCalls(child, calls);
+                    s.addToBlock(i, child);
+                }
+                break;
+            }
+            case IF: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleIf(block);
+                collectCalls(block, calls);
+                s.assembleIf(c, block);
+                break;
+            }
+            case IF_ELSE: {
+                Statement thenBlock = s.newInstance();
+                Statement elseBlock = s.newInstance();
+                Statement.Condition c = s.disassembleIfElse(thenBlock,
+                        elseBlock);
+                collectCalls(thenBlock, calls);
+                collectCalls(elseBlock, calls);
+                s.assembleIfElse(c, thenBlock, elseBlock);
+                break;
+            }
+            case WHILE: {
+                Statement block = s.newInstance();
+                Statement.Condition c = s.disassembleWhile(block);
+                collectCalls(block, calls);
+                s.assembleWhile(c, block);
+                break;
+            }
+            case CALL: {
+                String name = s.disassembleCall();
+                calls.add(name);
+                s.assembleCall(name);
+                break;
+            }
+            default: {
+                // this will never happen...
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the negation of condition {@code c}, or {@code null} if BL has
+     * no condition meaning "not {@code c}" ({@code random} and {@code true}).
+     *
+     * @param c
+     *            the condition
+     * @return the negation of {@code c}, or null
+     */
+    public static Statement.Condition negation(Statement.Condition c) {
+        assert c != null : "Violation of: c is not null";
+
+        Statement.Condition negation;
+        switch (c) {
+            case NEXT_IS_EMPTY:
+                negation = Statement.Condition.NEXT_IS_NOT_EMPTY;
+                break;
+            case NEXT_IS_NOT_EMPTY:
+                negation = Statement.Condition.NEXT_IS_EMPTY;
+                break;
+            case NEXT_IS_WALL:
+                negation = Statement.Condition.NEXT_IS_NOT_WALL;
+                break;
+            case NEXT_IS_NOT_WALL:
+                negation = Statement.Condition.NEXT_IS_WALL;
+                break;
+            case NEXT_IS_FRIEND:
+                negation = Statement.Condition.NEXT_IS_NOT_FRIEND;
+                break;
+            case NEXT_IS_NOT_FRIEND:
+                negation = Statement.Condition.NEXT_IS_FRIEND;
+                break;
+            case NEXT_IS_ENEMY:
+                negation = Statement.Condition.NEXT_IS_NOT_ENEMY;
+                break;
+            case NEXT_IS_NOT_ENEMY:
+                negation = Statement.Condition.NEXT_IS_ENEMY;
+                break;
+            default:
+                negation = null;
+                break;
+        }
+        return negation;
+    }
+
+}
@@ -0,0 +1,411 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Tokenizer for UTF-8 encoded BL source that scans eight bytes at a time. The
+ * bytes are read as one {@code long} and classified with bitwise arithmetic
+ * (SIMD within a register), so a run of indentation is skipped, and the end
+ * of a token found, in a few operations per eight bytes rather than a test
+ * per character. Produces the same tokens as {@code Tokenizer.tokens} and
+ * {@code SourceTokenizer.tokens}: the maximal runs of non-whitespace
+ * characters, in {@code Character.isWhitespace} terms, followed by
+ * {@code Tokenizer.END_OF_INPUT}.
+ *
+ * <p>
+ * Every ASCII whitespace character is at most {@code ' '}, so a word with no
+ * such byte holds no whitespace at all, and a word of spaces holds nothing
+ * else. The last few bytes, and the bytes the word tests single out, are
+ * classified one at a time. Source with any non-ASCII byte, which may encode
+ * Unicode whitespace, is decoded and tokenized one character at a time by
+ * {@code SourceTokenizer}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class SwarTokenizer {
+
+    /**
+     * Reads eight bytes of an array as a little-endian {@code long}, so the
+     * first byte is the lowest.
+     */
+    private static final VarHandle WORD = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Number of bytes in a word.
+     */
+    private static final int WORD_BYTES = Long.BYTES;
+
+    /**
+     * 0x01 in every byte.
+     */
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * 0x7F in every byte.
+     */
+    private static final long LOWS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * 0x80 in every byte.
+     */
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * A space in every byte.
+     */
+    private static final long SPACES = ' ' * ONES;
+
+    /**
+     * One more than the largest ASCII whitespace character, in every byte.
+     */
+    private static final long CONTROLS = (' ' + 1) * ONES;
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private SwarTokenizer() {
+    }
+
+    /**
+     * Returns a word with the high bit set in exactly the bytes of
+     * {@code word} that are zero.
+     *
+     * @param word
+     *            the word
+     * @return the zero bytes
+     */
+    private static long zeros(long word) {
+        return ~(((word & LOWS) + LOWS) | word | LOWS);
+    }
+
+    /**
+     * Returns a word whose lowest high bit set, if any, is in the first byte
+     * of {@code word} that is at most {@code ' '}. Every byte of
+     * {@code word} must be ASCII.
+     *
+     * @param word
+     *            the word
+     * @return a word locating the first byte at most {@code ' '}
+     */
+    private static long controls(long word) {
+        //Bytes above a borrowing one may be set too, but never below it.
+        return (word - CONTROLS) & ~word & HIGHS;
+    }
+
+    /**
+     * Returns the index of the byte located by the lowest high bit set in
+     * {@code mask}.
+     *
+     * @param mask
+     *            the mask, not 0
+     * @return the index of the byte
+     */
+    private static int firstByte(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /**
+     * Reports whether {@code b} is an ASCII whitespace character.
+     *
+     * @param b
+     *            the byte
+     * @return true iff {@code b} is whitespace
+     */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && Character.isWhitespace(b);
+    }
+
+    /**
+     * Reports whether {@code source[from, to)} is all ASCII.
+     *
+     * @param source
+     *            the bytes
+     * @param from
+     *            the start
+     * @param to
+     *            the end
+     * @return true iff no byte has its high bit set
+     */
+    static boolean isAscii(byte[] source, int from, int to) {
+        int i = from;
+        long high = 0;
+        while (i + WORD_BYTES <= to) {
+            high |= (long) WORD.get(source, i);
+            i += WORD_BYTES;
+        }
+        while (i < to) {
+            high |= source[i];
+            i++;
+        }
+        return (high & HIGHS) == 0;
+    }
+
+    /**
+     * Returns the index of the first byte of {@code source[from, to)} that is
+     * not whitespace, or {@code to}. Every byte must be ASCII.
+     *
+     * @param source
+     *            the bytes
+     * @param from
+     *            the start
+     * @param to
+     *            the end
+     * @return the index of the first non-whitespace byte
+     */
+    static int skipWhitespace(byte[] source, int from, int to) {
+        int i = from;
+        while (i < to && isWhitespace(source[i])) {
+            if (source[i] == ' ' && i + WORD_BYTES <= to) {
+                //Skip indentation a word at a time.
+                long others = ~zeros((long) WORD.get(source, i) ^ SPACES)
+                        & HIGHS;
+                if (others == 0) {
+                    i += WORD_BYTES;
+                } else {
+                    i += firstByte(others);
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the first whitespace byte of
+     * {@code source[from, to)}, or {@code to}. Every byte must be ASCII.
+     *
+     * @param source
+     *            the bytes
+     * @param from
+     *            the start
+     * @param to
+     *            the end
+     * @return the index of the first whitespace byte
+     */
+    static int skipToken(byte[] source, int from, int to) {
+        int i = from;
+        while (i + WORD_BYTES <= to) {
+            long candidates = controls((long) WORD.get(source, i));
+            if (candidates == 0) {
+                i += WORD_BYTES;
+            } else {
+                i += firstByte(candidates);
+                if (isWhitespace(source[i])) {
+                    return i;
+                }
+                //A control character that is not whitespace is in the token.
+                i++;
+            }
+        }
+        while (i < to && !isWhitespace(source[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source {@code source}.
+     *
+     * @param source
+     *            the encoded source
+     * @return the tokens of {@code source}
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(byte[] source) {
+        assert source != null : "Violation of: source is not null";
+
+        return tokens(source, 0, source.length);
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source
+     * {@code source[from, to)}.
+     *
+     * @param source
+     *            the encoded source
+     * @param from
+     *            the start of the source
+     * @param to
+     *            the end of the source
+     * @return the tokens of {@code source[from, to)}
+     * @requires 0 <= from <= to <= |source|
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(byte[] source, int from, int to) {
+        assert source != null : "Violation of: source is not null";
+        assert 0 <= from && from <= to && to <= source.length : ""
+                + "Violation of: 0 <= from <= to <= |source|";
+
+        return tokens(source, from, to, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source
+     * {@code source[from, to)}, giving up as soon as more than
+     * {@code maxTokens} tokens are found.
+     *
+     * @param source
+     *            the encoded source
+     * @param from
+     *            the start of the source
+     * @param to
+     *            the end of the source
+     * @param maxTokens
+     *            the largest number of tokens accepted, END_OF_INPUT excluded
+     * @return the tokens of {@code source[from, to)}
+     * @throws ParseLimitExceededException
+     *             if the source has more than {@code maxTokens} tokens
+     * @requires 0 <= from <= to <= |source|  and  maxTokens >= 0
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(byte[] source, int from, int to,
+            int maxTokens) {
+        assert source != null : "Violation of: source is not null";
+        assert 0 <= from && from <= to && to <= source.length : ""
+                + "Violation of: 0 <= from <= to <= |source|";
+        assert maxTokens >= 0 : "Violation of: maxTokens >= 0";
+
+        if (!isAscii(source, from, to)) {
+            return SourceTokenizer.tokens(new String(source, from, to - from,
+                    StandardCharsets.UTF_8), null, maxTokens);
+        }
+        Queue<String> tokens = new Queue1L<>();
+        int count = 0;
+        int i = skipWhitespace(source, from, to);
+        while (i < to) {
+            count++;
+            if (count > maxTokens) {
+                throw new ParseLimitExceededException(
+                        ParseLimitExceededException.Limit.TOKENS, maxTokens);
+            }
+            int end = skipToken(source, i, to);
+            tokens.enqueue(new String(source, i, end - i,
+                    StandardCharsets.ISO_8859_1));
+            i = skipWhitespace(source, end, to);
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        return tokens;
+    }
+
+    /**
+     * Returns the tokens of the UTF-8 encoded BL source between the position
+     * and the limit of {@code source}. The position of {@code source} is not
+     * changed.
+     *
+     * @param source
+     *            the encoded source
+     * @return the tokens of {@code source}
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the decoded source] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(ByteBuffer source) {
+        assert source != null : "Violation of: source is not null";
+
+        Queue<String> tokens;
+        if (source.hasArray()) {
+            int offset = source.arrayOffset();
+            tokens = tokens(source.array(), offset + source.position(),
+                    offset + source.limit());
+        } else {
+            byte[] copy = new byte[source.remaining()];
+            source.duplicate().get(copy);
+            tokens = tokens(copy);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the tokens of the BL source file {@code file}.
+     *
+     * @param file
+     *            the file
+     * @return the tokens of the file
+     * @throws IOException
+     *             if the file cannot be read
+     * @ensures <pre>
+     * tokens = [the non-whitespace tokens in the file] *
+     *          <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        return tokens(Files.readAllBytes(file));
+    }
+
+    /*
+     * Main benchmark method --------------------------------------------------
+     */
+
+    /**
+     * Compares tokenizing a BL program file one character at a time and a
+     * word at a time. Usage: {@code java SwarTokenizer [file]}; without a
+     * file, a large generated program is used.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        final int rounds = 5;
+        final long nanosPerMicro = 1_000L;
+        final int instructions = 2_000;
+        final int blockSize = 6;
+        final int depth = 5;
+
+        byte[] source;
+        if (args.length > 0) {
+            source = Files.readAllBytes(Path.of(args[0]));
+        } else {
+            source = new BLProgramGenerator(48, instructions, blockSize,
+                    depth, 0).next().source().getBytes(StandardCharsets.UTF_8);
+        }
+
+        SimpleWriter out = new SimpleWriter1L();
+        out.println(source.length + " bytes");
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            Queue<String> scalar = SourceTokenizer
+                    .tokens(new String(source, StandardCharsets.UTF_8));
+            long middle = System.nanoTime();
+            Queue<String> swar = tokens(source);
+            long end = System.nanoTime();
+            String line = "round " + round + ": scalar "
+                    + (middle - start) / nanosPerMicro + " us, swar "
+                    + (end - middle) / nanosPerMicro + " us";
+            if (!swar.equals(scalar)) {
+                line += " (TOKENS DIFFER)";
+            }
+            out.println(line);
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,275 @@
+import components.statement.Statement;
+
+/**
+ * Classifies BL tokens in one scan of their characters, without allocating:
+ * a lookup table checks every character against the identifier alphabet
+ * while the scan computes the token's hash, and the hash finds the token in
+ * a small open-addressed table of the reserved words (keywords, primitive
+ * instructions and conditions).
+ *
+ * <p>
+ * An identifier, as for {@code Tokenizer.isIdentifier}, is a letter followed
+ * by letters, digits and hyphens that is neither a keyword nor a condition;
+ * primitive instruction names are identifiers too, and are classified as
+ * {@link Kind#PRIMITIVE} so that the parser can tell them apart without
+ * further string comparisons.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class TokenClassifier {
+
+    /**
+     * Classes of tokens.
+     */
+    public enum Kind {
+        /**
+         * An identifier that is not a primitive instruction.
+         */
+        IDENTIFIER,
+
+        /**
+         * A keyword, such as "IF" or "END".
+         */
+        KEYWORD,
+
+        /**
+         * A primitive instruction, such as "move".
+         */
+        PRIMITIVE,
+
+        /**
+         * A condition, such as "next-is-wall".
+         */
+        CONDITION,
+
+        /**
+         * Anything else.
+         */
+        INVALID
+    }
+
+    /**
+     * Character class of a letter.
+     */
+    private static final byte LETTER = 1;
+
+    /**
+     * Character class of a character allowed after the first one.
+     */
+    private static final byte FOLLOWING = 2;
+
+    /**
+     * Classes of the ASCII characters.
+     */
+    private static final byte[] CHARACTER_CLASS = new byte[128];
+
+    /**
+     * Size of the reserved word table; a power of two well above the number
+     * of reserved words.
+     */
+    private static final int TABLE_SIZE = 64;
+
+    /**
+     * Multiplier of the hash, as for {@code String.hashCode}.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The keywords of BL.
+     */
+    private static final String[] KEYWORDS = { "PROGRAM", "IS", "BEGIN",
+            "INSTRUCTION", "END", "IF", "THEN", "ELSE", "WHILE", "DO" };
+
+    /**
+     * The primitive instructions of BL.
+     */
+    private static final String[] PRIMITIVES = { "move", "turnleft",
+            "turnright", "infect", "skip" };
+
+    /**
+     * The reserved words, by hash.
+     */
+    private static final String[] WORDS = new String[TABLE_SIZE];
+
+    /**
+     * The kind of each reserved word in {@code WORDS}.
+     */
+    private static final Kind[] WORD_KINDS = new Kind[TABLE_SIZE];
+
+    /**
+     * The condition each condition in {@code WORDS} stands for.
+     */
+    private static final Statement.Condition[] WORD_CONDITIONS =
+            new Statement.Condition[TABLE_SIZE];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHARACTER_CLASS[c] = LETTER | FOLLOWING;
+            CHARACTER_CLASS[Character.toUpperCase(c)] = LETTER | FOLLOWING;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CHARACTER_CLASS[c] = FOLLOWING;
+        }
+        CHARACTER_CLASS['-'] = FOLLOWING;
+
+        for (String keyword : KEYWORDS) {
+            add(keyword, Kind.KEYWORD, null);
+        }
+        for (String primitive : PRIMITIVES) {
+            add(primitive, Kind.PRIMITIVE, null);
+        }
+        for (Statement.Condition c : Statement.Condition.values()) {
+            add(c.name().toLowerCase().replace('_', '-'), Kind.CONDITION, c);
+        }
+    }
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private TokenClassifier() {
+    }
+
+    /**
+     * Returns the slot of the reserved word table for hash {@code h}.
+     *
+     * @param h
+     *            the hash
+     * @return the slot
+     */
+    private static int slot(int h) {
+        return (h ^ (h >>> (Integer.SIZE / 2))) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Adds a reserved word to the table.
+     *
+     * @param word
+     *            the word
+     * @param kind
+     *            its kind
+     * @param condition
+     *            the condition it stands for, or null
+     */
+    private static void add(String word, Kind kind,
+            Statement.Condition condition) {
+        int i = slot(word.hashCode());
+        while (WORDS[i] != null) {
+            i = (i + 1) & (TABLE_SIZE - 1);
+        }
+        WORDS[i] = word;
+        WORD_KINDS[i] = kind;
+        WORD_CONDITIONS[i] = condition;
+    }
+
+    /**
+     * Returns the slot of the reserved word table holding {@code token}, or
+     * -1 if {@code token} is not a reserved word.
+     *
+     * @param token
+     *            a token made of identifier characters
+     * @param h
+     *            the hash of {@code token}
+     * @return the slot, or -1
+     */
+    private static int find(String token, int h) {
+        int i = slot(h);
+        while (WORDS[i] != null && !WORDS[i].equals(token)) {
+            i = (i + 1) & (TABLE_SIZE - 1);
+        }
+        int found = -1;
+        if (WORDS[i] != null) {
+            found = i;
+        }
+        return found;
+    }
+
+    /**
+     * Checks the characters of {@code token} and computes its hash in one
+     * scan, then looks it up among the reserved words.
+     *
+     * @param token
+     *            the token
+     * @return the slot of {@code token} in the reserved word table, -1 if it
+     *         is an identifier but not a reserved word, or -2 if it is
+     *         neither
+     */
+    private static int scan(String token) {
+        int length = token.length();
+        if (length == 0) {
+            return -2;
+        }
+        char c = token.charAt(0);
+        if (c >= CHARACTER_CLASS.length
+                || (CHARACTER_CLASS[c] & LETTER) == 0) {
+            return -2;
+        }
+        int h = c;
+        for (int i = 1; i < length; i++) {
+            c = token.charAt(i);
+            if (c >= CHARACTER_CLASS.length
+                    || (CHARACTER_CLASS[c] & FOLLOWING) == 0) {
+                return -2;
+            }
+            h = HASH_MULTIPLIER * h + c;
+        }
+        return find(token, h);
+    }
+
+    /**
+     * Classifies {@code token}.
+     *
+     * @param token
+     *            the token
+     * @return the kind of {@code token}
+     */
+    public static Kind classify(String token) {
+        assert token != null : "Violation of: token is not null";
+
+        int slot = scan(token);
+        Kind kind;
+        if (slot >= 0) {
+            kind = WORD_KINDS[slot];
+        } else if (slot == -1) {
+            kind = Kind.IDENTIFIER;
+        } else {
+            kind = Kind.INVALID;
+        }
+        return kind;
+    }
+
+    /**
+     * Reports whether {@code token} can name an instruction in a call: an
+     * identifier or a primitive instruction.
+     *
+     * @param token
+     *            the token
+     * @return true iff {@code token} is an identifier
+     * @ensures isIdentifier = Tokenizer.isIdentifier(token)
+     */
+    public static boolean isIdentifier(String token) {
+        Kind kind = classify(token);
+        return kind == Kind.IDENTIFIER || kind == Kind.PRIMITIVE;
+    }
+
+    /**
+     * Returns the condition {@code token} stands for, or null if it is not a
+     * condition.
+     *
+     * @param token
+     *            the token
+     * @return the condition, or null
+     */
+    public static Statement.Condition condition(String token) {
+        assert token != null : "Violation of: token is not null";
+
+        int slot = scan(token);
+        Statement.Condition c = null;
+        if (slot >= 0) {
+            c = WORD_CONDITIONS[slot];
+        }
+        return c;
+    }
+
+}
@@ -0,0 +1,295 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring of tokens between exactly one producer thread and
+ * exactly one consumer thread. Each side keeps its position in a plain field
+ * and publishes it to the other side only once per batch of tokens, so the
+ * cost of the memory fences is spread over the batch; a side also publishes
+ * before it waits, so neither can wait for tokens or room the other has not
+ * made visible.
+ *
+ * <p>
+ * When the ring is empty (for the consumer) or full (for the producer), a
+ * side waits according to the {@link Wait} strategy: spinning keeps the
+ * thread on its core for the lowest latency, blocking parks it.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class TokenRing {
+
+    /**
+     * How a side waits for the other.
+     */
+    public enum Wait {
+        /**
+         * Park the thread until the other side publishes.
+         */
+        BLOCKING,
+        /**
+         * Busy-wait with {@code Thread.onSpinWait}; only worth it when each
+         * side has a core of its own.
+         */
+        SPINNING
+    }
+
+    /**
+     * Longest time a blocked side parks before checking again, in case a
+     * wake-up was missed; in nanoseconds.
+     */
+    private static final long PARK_NANOS = 100_000L;
+
+    /**
+     * The slots, a power of two of them.
+     */
+    private final String[] slots;
+
+    /**
+     * {@code slots.length - 1}.
+     */
+    private final int mask;
+
+    /**
+     * Number of tokens per publication.
+     */
+    private final int batch;
+
+    /**
+     * The wait strategy.
+     */
+    private final Wait wait;
+
+    /**
+     * Number of tokens taken, as published by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Number of tokens put, as published by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Whether either side has closed the ring.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The consumer, while it is parked waiting for tokens.
+     */
+    private volatile Thread waitingConsumer = null;
+
+    /**
+     * The producer, while it is parked waiting for room.
+     */
+    private volatile Thread waitingProducer = null;
+
+    /**
+     * Number of tokens put; producer only.
+     */
+    private long putCount = 0;
+
+    /**
+     * Number of tokens put when the producer last published.
+     */
+    private long published = 0;
+
+    /**
+     * The producer's last view of {@code head}.
+     */
+    private long headSeen = 0;
+
+    /**
+     * Number of tokens taken; consumer only.
+     */
+    private long takeCount = 0;
+
+    /**
+     * Number of tokens taken when the consumer last published.
+     */
+    private long released = 0;
+
+    /**
+     * The consumer's last view of {@code tail}.
+     */
+    private long tailSeen = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the number of slots, rounded up to a power of two
+     * @param batch
+     *            the number of tokens per publication
+     * @param wait
+     *            the wait strategy
+     * @requires 1 <= batch <= capacity <= 2^30
+     */
+    public TokenRing(int capacity, int batch, Wait wait) {
+        assert 1 <= batch && batch <= capacity : ""
+                + "Violation of: 1 <= batch <= capacity";
+        assert capacity <= 1 << 30 : "Violation of: capacity <= 2^30";
+        assert wait != null : "Violation of: wait is not null";
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size *= 2;
+        }
+        this.slots = new String[size];
+        this.mask = size - 1;
+        this.batch = batch;
+        this.wait = wait;
+    }
+
+    /**
+     * Parks the current thread briefly, or spins once, as the strategy says.
+     */
+    private void pause() {
+        if (this.wait == Wait.SPINNING) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+    }
+
+    /**
+     * Adds {@code token} at the end of the ring, waiting for room if it is
+     * full. Producer only.
+     *
+     * @param token
+     *            the token
+     * @return false iff the ring has been closed, in which case nothing is
+     *         added
+     */
+    public boolean put(String token) {
+        assert token != null : "Violation of: token is not null";
+
+        if (this.putCount - this.headSeen == this.slots.length) {
+            this.headSeen = this.head.get();
+            if (this.putCount - this.headSeen == this.slots.length) {
+                //Let the consumer see everything before waiting for it.
+                this.flush();
+                while (this.putCount - this.headSeen == this.slots.length) {
+                    if (this.closed) {
+                        return false;
+                    }
+                    if (this.wait == Wait.BLOCKING) {
+                        this.waitingProducer = Thread.currentThread();
+                    }
+                    this.headSeen = this.head.get();
+                    if (this.putCount - this.headSeen == this.slots.length) {
+                        this.pause();
+                    }
+                    this.waitingProducer = null;
+                    this.headSeen = this.head.get();
+                }
+            }
+        }
+        if (this.closed) {
+            return false;
+        }
+        this.slots[(int) this.putCount & this.mask] = token;
+        this.putCount++;
+        if (this.putCount - this.published >= this.batch) {
+            this.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Publishes every token put so far to the consumer. Producer only.
+     */
+    public void flush() {
+        this.published = this.putCount;
+        this.tail.set(this.putCount);
+        Thread consumer = this.waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Publishes the number of tokens taken to the producer. Consumer only.
+     */
+    private void release() {
+        this.released = this.takeCount;
+        this.head.set(this.takeCount);
+        Thread producer = this.waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Removes the token at the front of the ring, waiting for one if it is
+     * empty. Consumer only.
+     *
+     * @return the token, or null if the ring is closed and every token
+     *         published before has been taken
+     */
+    public String take() {
+        if (this.takeCount == this.tailSeen) {
+            this.tailSeen = this.tail.get();
+            if (this.takeCount == this.tailSeen) {
+                //Let the producer see the room made before waiting for it.
+                this.release();
+                while (this.takeCount == this.tailSeen) {
+                    if (this.closed) {
+                        this.tailSeen = this.tail.get();
+                        if (this.takeCount == this.tailSeen) {
+                            return null;
+                        }
+                    } else {
+                        if (this.wait == Wait.BLOCKING) {
+                            this.waitingConsumer = Thread.currentThread();
+                        }
+                        this.tailSeen = this.tail.get();
+                        if (this.takeCount == this.tailSeen) {
+                            this.pause();
+                        }
+                        this.waitingConsumer = null;
+                        this.tailSeen = this.tail.get();
+                    }
+                }
+            }
+        }
+        int index = (int) this.takeCount & this.mask;
+        String token = this.slots[index];
+        this.slots[index] = null;
+        this.takeCount++;
+        if (this.takeCount - this.released >= this.batch) {
+            this.release();
+        }
+        return token;
+    }
+
+    /**
+     * Closes the ring: the producer can put no more tokens, and the consumer
+     * gets null once it has taken the tokens already published, so a
+     * producer that is done flushes before it closes. Either side may close
+     * the ring, once or more.
+     */
+    public void close() {
+        this.closed = true;
+        Thread consumer = this.waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        Thread producer = this.waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.slots.length;
+    }
+
+}
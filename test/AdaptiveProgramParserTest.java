@@ -0,0 +1,239 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+
+/**
+ * JUnit test fixture for {@code AdaptiveProgramParser}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class AdaptiveProgramParserTest {
+
+    /**
+     * A small program.
+     */
+    private static final String SMALL = "PROGRAM P IS INSTRUCTION a IS "
+            + "IF random THEN move ELSE WHILE true DO skip END WHILE END IF "
+            + "END a BEGIN a IF next-is-wall THEN a END IF END P";
+
+    /**
+     * Returns a program whose body nests {@code depth} IF statements.
+     *
+     * @param depth
+     *            the nesting depth
+     * @return the source
+     */
+    private static String deep(int depth) {
+        return "PROGRAM Deep IS BEGIN " + "IF random THEN ".repeat(depth)
+                + "move " + "END IF ".repeat(depth) + "END Deep";
+    }
+
+    /**
+     * Returns a valid generated program with 200 instructions.
+     *
+     * @return the source
+     */
+    private static String wide() {
+        return new BLProgramGenerator(49, 200, 6, 4, 0).next().source();
+    }
+
+    /**
+     * Parses {@code source} with {@code Program1}.
+     *
+     * @param source
+     *            the source
+     * @return the program
+     */
+    private static Program reference(String source) {
+        Program p = new Program1();
+        p.parse(SourceTokenizer.tokens(source));
+        return p;
+    }
+
+    /**
+     * Test of Profile.of.
+     */
+    @Test
+    public final void testProfile() {
+        Queue<String> tokens = SourceTokenizer.tokens(SMALL);
+        AdaptiveProgramParser.Profile profile = AdaptiveProgramParser.Profile
+                .of(tokens);
+        assertEquals(tokens.length() - 1, profile.tokens());
+        assertEquals(1, profile.instructions());
+        assertEquals(3, profile.compounds());
+        assertEquals(2, profile.depth());
+        assertEquals(600, AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(deep(600))).depth());
+    }
+
+    /**
+     * Test of choose.
+     */
+    @Test
+    public final void testChoose() {
+        AdaptiveProgramParser parallel = new AdaptiveProgramParser(2);
+        AdaptiveProgramParser single = new AdaptiveProgramParser(1);
+        AdaptiveProgramParser.Profile small = AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(SMALL));
+        AdaptiveProgramParser.Profile deep = AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(deep(600)));
+        AdaptiveProgramParser.Profile wide = AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(wide()));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE,
+                parallel.choose(small));
+        assertEquals(AdaptiveProgramParser.Engine.STACK, parallel.choose(deep));
+        assertEquals(AdaptiveProgramParser.Engine.PARALLEL,
+                parallel.choose(wide));
+        assertEquals(AdaptiveProgramParser.Engine.STACK, single.choose(deep));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE,
+                single.choose(wide));
+        parallel.close();
+        single.close();
+    }
+
+    /**
+     * Test of choose with options some engines do not honour.
+     */
+    @Test
+    public final void testChooseOptions() {
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(2);
+        AdaptiveProgramParser.Profile deep = AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(deep(600)));
+        AdaptiveProgramParser.Profile wide = AdaptiveProgramParser.Profile
+                .of(SourceTokenizer.tokens(wide()));
+        assertEquals(AdaptiveProgramParser.Engine.STACK,
+                parser.choose(deep, new ParseOptions().setMaxDepth(700)));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE,
+                parser.choose(deep, new ParseOptions().setFold(true)));
+        assertEquals(AdaptiveProgramParser.Engine.PARALLEL,
+                parser.choose(wide, new ParseOptions().setFold(true)));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE,
+                parser.choose(wide, new ParseOptions().setTrusted(true)));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE, parser.choose(
+                wide, new ParseOptions().setTable(new StatementTable())));
+        assertEquals(AdaptiveProgramParser.Engine.RECURSIVE, parser.choose(
+                wide, new ParseOptions().setPositions(new SourcePositions())));
+        parser.close();
+    }
+
+    /**
+     * Test of parse with options only the recursive engine honours, which
+     * builds what the recursive parser builds whatever the input.
+     */
+    @Test
+    public final void testParseTrusted() {
+        /*
+         * Setup
+         */
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(2);
+        String source = wide();
+        ParseOptions options = new ParseOptions().setTrusted(true);
+        /*
+         * The call
+         */
+        Program p = parser.parse(SourceTokenizer.tokens(source), options);
+        parser.close();
+        /*
+         * Evaluation
+         */
+        assertEquals(reference(source), p);
+        assertTrue(options.skippedChecks());
+        assertEquals(1, parser.parses(AdaptiveProgramParser.Engine.RECURSIVE));
+        assertTrue(parser.reason(AdaptiveProgramParser.Engine.RECURSIVE)
+                .endsWith(", options not honoured by PARALLEL"));
+    }
+
+    /**
+     * Test of parse with each engine, and of the metrics.
+     */
+    @Test
+    public final void testParse() {
+        /*
+         * Setup
+         */
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(2);
+        String[] sources = { SMALL, deep(600), wide() };
+        /*
+         * The call
+         */
+        Program[] programs = new Program[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            programs[i] = parser.parse(SourceTokenizer.tokens(sources[i]));
+        }
+        parser.close();
+        /*
+         * Evaluation
+         */
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(reference(sources[i]), programs[i]);
+        }
+        for (AdaptiveProgramParser.Engine engine : AdaptiveProgramParser.Engine
+                .values()) {
+            assertEquals(1, parser.parses(engine));
+            assertTrue(parser.nanos(engine) > 0);
+        }
+        assertEquals("depth 600 > 500",
+                parser.reason(AdaptiveProgramParser.Engine.STACK));
+        assertTrue(parser.metrics().contains("recursive: 1 parses, mean "));
+    }
+
+    /**
+     * Test of parse reporting errors whatever the engine.
+     */
+    @Test
+    public final void testErrors() {
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(2);
+        String[] sources = { SMALL.replace("END IF END a", "END a"),
+                deep(600).replace("move", "IF"),
+                wide().replaceFirst("END IF", "END WHILE") };
+        for (String source : sources) {
+            boolean rejected = false;
+            try {
+                parser.parse(SourceTokenizer.tokens(source));
+            } catch (RuntimeException e) {
+                rejected = true;
+            }
+            assertTrue(rejected);
+        }
+        for (AdaptiveProgramParser.Engine engine : AdaptiveProgramParser.Engine
+                .values()) {
+            assertEquals(1, parser.parses(engine));
+        }
+        parser.close();
+    }
+
+    /**
+     * Test of parse enforcing the caller's limits whatever the engine.
+     */
+    @Test
+    public final void testLimits() {
+        AdaptiveProgramParser parser = new AdaptiveProgramParser(2);
+        String[] sources = { SMALL, deep(600), wide() };
+        ParseLimitExceededException.Limit[] limits =
+                new ParseLimitExceededException.Limit[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            try {
+                parser.parse(SourceTokenizer.tokens(sources[i]),
+                        new ParseOptions().setMaxDepth(2));
+            } catch (ParseLimitExceededException e) {
+                limits[i] = e.limit();
+            }
+        }
+        for (AdaptiveProgramParser.Engine engine : AdaptiveProgramParser.Engine
+                .values()) {
+            assertEquals(1, parser.parses(engine));
+        }
+        for (ParseLimitExceededException.Limit limit : limits) {
+            assertEquals(ParseLimitExceededException.Limit.DEPTH, limit);
+        }
+        parser.close();
+    }
+
+}
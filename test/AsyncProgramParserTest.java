@@ -0,0 +1,198 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code AsyncProgramParser}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class AsyncProgramParserTest {
+
+    /**
+     * Test of parseAsync on a valid file.
+     *
+     * @throws Exception
+     *             if the parse fails
+     */
+    @Test
+    public final void testParseAsyncPath() throws Exception {
+        /*
+         * Setup
+         */
+        Program pExpected = ProgramFiles.parse("data/programValid1.bl");
+        AsyncProgramParser parser = new AsyncProgramParser(2, 4,
+                AsyncProgramParser.Overflow.WAIT);
+        /*
+         * The call
+         */
+        Program pTest = parser.parseAsync(Paths.get("data/programValid1.bl"))
+                .get();
+        parser.close();
+        /*
+         * Evaluation
+         */
+        assertEquals(pExpected, pTest);
+    }
+
+    /**
+     * Test of parseAsync on a valid encoded buffer.
+     *
+     * @throws Exception
+     *             if the parse fails
+     */
+    @Test
+    public final void testParseAsyncBuffer() throws Exception {
+        /*
+         * Setup
+         */
+        Program pExpected = ProgramFiles.parse("test/program1.bl");
+        ByteBuffer source = ByteBuffer
+                .wrap(Files.readAllBytes(Paths.get("test/program1.bl")));
+        AsyncProgramParser parser = new AsyncProgramParser(Runnable::run, 1,
+                AsyncProgramParser.Overflow.REJECT);
+        /*
+         * The call
+         */
+        Program pTest = parser.parseAsync(source).get();
+        /*
+         * Evaluation
+         */
+        assertEquals(pExpected, pTest);
+        assertEquals(0, source.position());
+    }
+
+    /**
+     * Test of parseAsync on an invalid file.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public final void testParseAsyncInvalid() throws InterruptedException {
+        /*
+         * Setup
+         */
+        AsyncProgramParser parser = new AsyncProgramParser(1, 1,
+                AsyncProgramParser.Overflow.WAIT);
+        /*
+         * The call
+         */
+        CompletableFuture<Program> result = parser
+                .parseAsync(Paths.get("data/programInvalid1.bl"));
+        /*
+         * Evaluation
+         */
+        try {
+            result.get();
+            assertTrue("invalid program was accepted", false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RuntimeException);
+        }
+        parser.close();
+    }
+
+    /**
+     * Test of the REJECT policy when the submission queue is full.
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     */
+    @Test
+    public final void testParseAsyncReject() throws IOException {
+        /*
+         * Setup--an executor that only queues its tasks keeps the first parse
+         * pending until the queue is run
+         */
+        Path path = Paths.get("test/program1.bl");
+        List<Runnable> queue = new ArrayList<>();
+        AsyncProgramParser parser = new AsyncProgramParser(queue::add, 1,
+                AsyncProgramParser.Overflow.REJECT);
+        CompletableFuture<Program> first = parser.parseAsync(path);
+        /*
+         * The call
+         */
+        CompletableFuture<Program> second = parser.parseAsync(path);
+        /*
+         * Evaluation
+         */
+        assertTrue(!first.isDone());
+        assertTrue(second.isCompletedExceptionally());
+        try {
+            second.join();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        /*
+         * Cancelling the pending parse frees its slot only once it is dequeued
+         */
+        first.cancel(true);
+        assertTrue(parser.parseAsync(path).isCompletedExceptionally());
+        queue.remove(0).run();
+        assertTrue(!parser.parseAsync(path).isCompletedExceptionally());
+    }
+
+    /**
+     * Test of parseAsync on a program nested so deeply that the parser
+     * overflows its stack: the future fails and its slot is released.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public final void testParseAsyncStackOverflow()
+            throws InterruptedException {
+        /*
+         * Setup
+         */
+        final int depth = 200_000;
+        String source = "PROGRAM Deep IS BEGIN "
+                + "WHILE true DO ".repeat(depth) + "move "
+                + "END WHILE ".repeat(depth) + "END Deep";
+        AsyncProgramParser parser = new AsyncProgramParser(1, 1,
+                AsyncProgramParser.Overflow.REJECT);
+        /*
+         * The call
+         */
+        CompletableFuture<Program> deep = parser.parseAsync(
+                ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+        /*
+         * Evaluation
+         */
+        try {
+            deep.get();
+            assertTrue("stack overflow was not reported", false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StackOverflowError);
+        }
+        //The slot is released just after the future completes.
+        byte[] valid = "PROGRAM P IS BEGIN move END P"
+                .getBytes(StandardCharsets.UTF_8);
+        CompletableFuture<Program> next = parser
+                .parseAsync(ByteBuffer.wrap(valid));
+        for (int i = 0; i < 100 && next.isCompletedExceptionally(); i++) {
+            Thread.sleep(10);
+            next = parser.parseAsync(ByteBuffer.wrap(valid));
+        }
+        assertEquals("P", next.join().name());
+        parser.close();
+    }
+
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code ProgramCompiler} and
+ * {@code BLVirtualMachine}, checked against {@code ProgramTreeInterpreter}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class BLVirtualMachineTest {
+
+    /**
+     * Step budget for each run.
+     */
+    private static final long STEPS = 100_000;
+
+    /**
+     * Checks that the compiled {@code p} drives a robot exactly as the tree
+     * interpreter does.
+     *
+     * @param p
+     *            the program
+     * @param seed
+     *            the robot seed
+     * @return the number of steps taken
+     */
+    private static long checkSameAsTree(Program p, long seed) {
+        int[] code = ProgramCompiler.compile(p);
+        SimulatedRobot treeRobot = new SimulatedRobot(seed);
+        long treeSteps = ProgramTreeInterpreter.run(p, treeRobot, STEPS);
+        SimulatedRobot vmRobot = new SimulatedRobot(seed);
+        long vmSteps = BLVirtualMachine.run(code, vmRobot, STEPS);
+        assertEquals(treeSteps, vmSteps);
+        assertEquals(treeRobot.actions(), vmRobot.actions());
+        assertEquals(treeRobot.trace(), vmRobot.trace());
+        return vmSteps;
+    }
+
+    /**
+     * Test of compile and run on the example programs.
+     */
+    @Test
+    public final void testSameAsTreeExamples() {
+        checkSameAsTree(ProgramFiles.parse("test/program1.bl"), 1);
+        for (int i = 1; i <= 6; i++) {
+            checkSameAsTree(
+                    ProgramFiles.parse("data/programValid" + i + ".bl"), i);
+        }
+    }
+
+    /**
+     * Test of compile and run on generated programs.
+     */
+    @Test
+    public final void testSameAsTreeGenerated() {
+        BLProgramGenerator generator = new BLProgramGenerator(3, 4, 5, 4, 0);
+        for (int i = 0; i < 100; i++) {
+            Program p = new Program1Parse1();
+            p.parse(SourceTokenizer.tokens(generator.next().source()));
+            checkSameAsTree(p, i);
+        }
+    }
+
+    /**
+     * Test of run on a program that halts before the budget runs out.
+     */
+    @Test
+    public final void testHalts() {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION two IS "
+                + "move move END two BEGIN two IF true THEN infect END IF "
+                + "END P"));
+        long steps = checkSameAsTree(p, 0);
+        assertEquals(4, steps);
+        assertTrue(steps < STEPS);
+    }
+
+    /**
+     * Test of compile on a recursive program.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testCompileRecursive() {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION a IS "
+                + "b END a INSTRUCTION b IS a END b BEGIN a END P"));
+        ProgramCompiler.compile(p);
+    }
+
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code CorpusRunner}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class CorpusRunnerTest {
+
+    /**
+     * Returns the signature of program {@code source}.
+     *
+     * @param source
+     *            the source
+     * @return the signature
+     */
+    private static String program(String source) {
+        return CorpusRunner.signature(false,
+                source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test of signature on valid and invalid programs and blocks.
+     */
+    @Test
+    public final void testSignature() {
+        assertEquals("OK", program("PROGRAM P IS BEGIN move END P"));
+        assertEquals("ERROR 7 <\"Identifer\"> at the end of program must be "
+                + "the same as the identifier at the beginning of the program.",
+                program("PROGRAM P IS BEGIN move END Q"));
+        assertEquals("ERROR 1 <\"PROGRAM\"> is proper prefix of tokens",
+                program("PROGRAMME P IS BEGIN move END P"));
+        assertEquals("OK", CorpusRunner.signature(true,
+                "move IF random THEN skip END IF".getBytes(
+                        StandardCharsets.UTF_8)));
+        assertTrue(CorpusRunner
+                .signature(true,
+                        "move END skip".getBytes(StandardCharsets.UTF_8))
+                .startsWith("ERROR 2 "));
+    }
+
+    /**
+     * Test of run on the example files.
+     *
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    @Test
+    public final void testRun() throws IOException {
+        /*
+         * The call
+         */
+        SortedMap<String, String> index = CorpusRunner.run(Paths.get("data"),
+                3);
+        /*
+         * Evaluation
+         */
+        assertTrue(index.size() > 0);
+        for (java.util.Map.Entry<String, String> entry : index.entrySet()) {
+            if (entry.getKey().contains("Invalid")) {
+                assertTrue(entry.getKey(),
+                        entry.getValue().startsWith("ERROR "));
+            } else {
+                assertEquals(entry.getKey(), "OK", entry.getValue());
+            }
+        }
+        assertEquals(index, CorpusRunner.run(Paths.get("data"), 1));
+    }
+
+    /**
+     * Test of run on a corpus with a file nested too deeply for the parser,
+     * which fails only that file.
+     *
+     * @throws IOException
+     *             if a file cannot be written or read
+     */
+    @Test
+    public final void testRunDeep() throws IOException {
+        /*
+         * Setup
+         */
+        final int depth = 200_000;
+        Path directory = Files.createTempDirectory("corpus");
+        Path deep = directory.resolve("deep.bl");
+        Path valid = directory.resolve("valid.bl");
+        Files.write(deep, ("PROGRAM P IS BEGIN "
+                + "WHILE true DO ".repeat(depth) + "END WHILE ".repeat(depth)
+                + "END P").getBytes(StandardCharsets.UTF_8));
+        Files.write(valid, "PROGRAM P IS BEGIN move END P"
+                .getBytes(StandardCharsets.UTF_8));
+        /*
+         * The call
+         */
+        SortedMap<String, String> index = CorpusRunner.run(directory, 2);
+        Files.delete(deep);
+        Files.delete(valid);
+        Files.delete(directory);
+        /*
+         * Evaluation
+         */
+        assertEquals(2, index.size());
+        assertTrue(index.get("deep.bl").startsWith("ERROR "));
+        assertTrue(index.get("deep.bl").endsWith(" StackOverflowError"));
+        assertEquals("OK", index.get("valid.bl"));
+    }
+
+    /**
+     * Test of save, load and diff.
+     *
+     * @throws IOException
+     *             if the index cannot be written or read
+     */
+    @Test
+    public final void testBaseline() throws IOException {
+        /*
+         * Setup
+         */
+        SortedMap<String, String> baseline = new TreeMap<>();
+        baseline.put("a.bl", "OK");
+        baseline.put("b.bl", "ERROR 3 a message");
+        baseline.put("c.bl", "ERROR 5 another message");
+        SortedMap<String, String> current = new TreeMap<>(baseline);
+        current.remove("a.bl");
+        current.put("b.bl", "ERROR 4 a message");
+        current.put("d/e.bl", "OK");
+        Path file = Files.createTempFile("corpus", ".tsv");
+        /*
+         * The call
+         */
+        CorpusRunner.save(baseline, file);
+        SortedMap<String, String> loaded = CorpusRunner.load(file);
+        Files.delete(file);
+        /*
+         * Evaluation
+         */
+        assertEquals(baseline, loaded);
+        assertTrue(CorpusRunner.diff(loaded, baseline).isEmpty());
+        assertEquals(Arrays.asList("- a.bl OK",
+                "~ b.bl ERROR 3 a message -> ERROR 4 a message", "+ d/e.bl OK"),
+                CorpusRunner.diff(loaded, current));
+    }
+
+}
@@ -0,0 +1,287 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code LazyProgram}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class LazyProgramTest {
+
+    /**
+     * Program with two instructions, used by several tests.
+     */
+    private static final String SOURCE = "PROGRAM P IS "
+            + "INSTRUCTION one IS IF next-is-wall THEN turnleft ELSE "
+            + "WHILE next-is-empty DO move END WHILE END IF END one "
+            + "INSTRUCTION two IS one one END two "
+            + "BEGIN two IF random THEN one END IF END P";
+
+    /**
+     * Test of parse listing the instructions without parsing any body.
+     */
+    @Test
+    public final void testSkim() {
+        /*
+         * Setup
+         */
+        Queue<String> tokens = SourceTokenizer.tokens(SOURCE);
+        /*
+         * The call
+         */
+        LazyProgram lp = LazyProgram.parse(tokens);
+        /*
+         * Evaluation
+         */
+        assertEquals("P", lp.name());
+        assertEquals(Arrays.asList("one", "two"), lp.instructionNames());
+        assertTrue(lp.hasInstruction("two"));
+        assertTrue(!lp.hasInstruction("move"));
+        assertEquals(0, lp.parsedBodies());
+        assertEquals(0, tokens.length());
+    }
+
+    /**
+     * Test of instruction and body parsing on first use only.
+     */
+    @Test
+    public final void testParseOnUse() {
+        /*
+         * Setup
+         */
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens(SOURCE));
+        Map<String, Statement> context = pRef.newContext();
+        Statement body = pRef.newBody();
+        pRef.swapContext(context);
+        pRef.swapBody(body);
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(SOURCE));
+        /*
+         * The call
+         */
+        Statement two = lp.instruction("two");
+        /*
+         * Evaluation
+         */
+        assertEquals(context.value("two"), two);
+        assertEquals(1, lp.parsedBodies());
+        assertTrue(two == lp.instruction("two"));
+        assertEquals(1, lp.parsedBodies());
+        assertEquals(body, lp.body());
+        assertEquals(2, lp.parsedBodies());
+    }
+
+    /**
+     * Test of toProgram on the example programs and generated programs.
+     */
+    @Test
+    public final void testToProgram() {
+        for (int i = 1; i <= 6; i++) {
+            String fileName = "data/programValid" + i + ".bl";
+            Program pRef = new Program1();
+            SimpleReader file = new SimpleReader1L(fileName);
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            Queue<String> lazyTokens = tokens.newInstance();
+            for (String token : tokens) {
+                lazyTokens.enqueue(token);
+            }
+            pRef.parse(tokens);
+            assertEquals(pRef, LazyProgram.parse(lazyTokens).toProgram());
+        }
+        BLProgramGenerator generator = new BLProgramGenerator(5, 8, 5, 4, 0);
+        for (int i = 0; i < 50; i++) {
+            String source = generator.next().source();
+            Program pRef = new Program1();
+            pRef.parse(SourceTokenizer.tokens(source));
+            assertEquals(pRef, LazyProgram
+                    .parse(SourceTokenizer.tokens(source)).toProgram());
+        }
+    }
+
+    /**
+     * Test of parseAll on generated programs.
+     */
+    @Test
+    public final void testParseAll() {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        BLProgramGenerator generator = new BLProgramGenerator(49, 8, 5, 4, 0);
+        for (int i = 0; i < 20; i++) {
+            String source = generator.next().source();
+            Program pRef = new Program1();
+            pRef.parse(SourceTokenizer.tokens(source));
+            LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(source));
+            lp.instruction(lp.instructionNames().get(0));
+            lp.parseAll(pool);
+            assertEquals(lp.instructionNames().size() + 1, lp.parsedBodies());
+            assertEquals(pRef, lp.toProgram());
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Test of parseAll with options: every pool thread parses under them,
+     * and what they report is collected.
+     */
+    @Test
+    public final void testParseAllOptions() {
+        /*
+         * Setup
+         */
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        String source = "PROGRAM P IS INSTRUCTION one IS IF true THEN move "
+                + "END IF END one BEGIN one IF random THEN WHILE random DO "
+                + "move END WHILE END IF END P";
+        ParseOptions options = new ParseOptions().setFold(true);
+        ParseOptions shallow = new ParseOptions().setMaxDepth(2);
+        /*
+         * The call
+         */
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(source),
+                options);
+        lp.parseAll(pool);
+        LazyProgram lpShallow = LazyProgram
+                .parse(SourceTokenizer.tokens(source), shallow);
+        ParseLimitExceededException.Limit limit = null;
+        try {
+            lpShallow.parseAll(pool);
+        } catch (ParseLimitExceededException e) {
+            limit = e.limit();
+        } finally {
+            pool.shutdown();
+        }
+        /*
+         * Evaluation
+         */
+        assertEquals(1, options.folded());
+        assertEquals(ParseLimitExceededException.Limit.DEPTH, limit);
+    }
+
+    /**
+     * Test of toProgram handing the parsed bodies over rather than copying
+     * them.
+     */
+    @Test
+    public final void testToProgramHandsOver() {
+        /*
+         * Setup
+         */
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens(SOURCE));
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(SOURCE));
+        Statement one = lp.instruction("one");
+        /*
+         * The call
+         */
+        Program pTest = lp.toProgram();
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+        assertEquals(0, lp.parsedBodies());
+        Map<String, Statement> context = pTest.newContext();
+        pTest.swapContext(context);
+        assertTrue(context.value("one") == one);
+        pTest.swapContext(context);
+        assertEquals(pRef, lp.toProgram());
+    }
+
+    /**
+     * Test of parseAll on a program with an error in a body.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testParseAllError() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(
+                "PROGRAM P IS INSTRUCTION bad IS IF next-is-maybe THEN move "
+                        + "END IF END bad BEGIN move END P"));
+        try {
+            lp.parseAll(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test of an error in an instruction body, found only when the body is
+     * parsed.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testBodyErrorDeferred() {
+        /*
+         * Setup
+         */
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer.tokens(
+                "PROGRAM P IS INSTRUCTION bad IS IF next-is-maybe THEN move "
+                        + "END IF END bad BEGIN move END P"));
+        assertEquals(Arrays.asList("bad"), lp.instructionNames());
+        assertEquals(1, lp.body().lengthOfBlock());
+        /*
+         * The call--should result in a syntax error being found
+         */
+        lp.instruction("bad");
+    }
+
+    /**
+     * Test of an ELSE at the top of a body, which the skim passes over.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testStrayElse() {
+        /*
+         * Setup
+         */
+        LazyProgram lp = LazyProgram.parse(SourceTokenizer
+                .tokens("PROGRAM P IS BEGIN move ELSE skip END P"));
+        /*
+         * The call--should result in a syntax error being found
+         */
+        lp.body();
+    }
+
+    /**
+     * Test of an error in an instruction header, found by the skim.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testHeaderError() {
+        LazyProgram.parse(SourceTokenizer.tokens("PROGRAM P IS "
+                + "INSTRUCTION move IS skip END move BEGIN move END P"));
+    }
+
+    /**
+     * Test of an instruction end name that does not match, found by the
+     * skim.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testEndNameError() {
+        LazyProgram.parse(SourceTokenizer.tokens("PROGRAM P IS "
+                + "INSTRUCTION a IS IF random THEN skip END IF END b "
+                + "BEGIN a END P"));
+    }
+
+    /**
+     * Test of a missing END, found by the skim.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testMissingEnd() {
+        LazyProgram.parse(SourceTokenizer.tokens("PROGRAM P IS BEGIN "
+                + "WHILE true DO move END WHILE"));
+    }
+
+}
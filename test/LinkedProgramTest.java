@@ -0,0 +1,152 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code LinkedProgram}, checked against
+ * {@code ProgramTreeInterpreter}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class LinkedProgramTest {
+
+    /**
+     * Step budget for each run.
+     */
+    private static final long STEPS = 100_000;
+
+    /**
+     * Checks that the linked {@code p} drives a robot exactly as the tree
+     * interpreter does.
+     *
+     * @param p
+     *            the program
+     * @param seed
+     *            the robot seed
+     * @return the number of steps taken
+     */
+    private static long checkSameAsTree(Program1Parse1 p, long seed) {
+        LinkedProgram linked = p.link();
+        SimulatedRobot treeRobot = new SimulatedRobot(seed);
+        long treeSteps = ProgramTreeInterpreter.run(p, treeRobot, STEPS);
+        SimulatedRobot linkedRobot = new SimulatedRobot(seed);
+        long linkedSteps = linked.run(linkedRobot, STEPS);
+        assertEquals(treeSteps, linkedSteps);
+        assertEquals(treeRobot.actions(), linkedRobot.actions());
+        assertEquals(treeRobot.trace(), linkedRobot.trace());
+        return linkedSteps;
+    }
+
+    /**
+     * Test of the slots and call codes.
+     */
+    @Test
+    public final void testSlots() {
+        /*
+         * Setup
+         */
+        Program1Parse1 p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION two IS "
+                + "one one END two INSTRUCTION one IS move turnright END one "
+                + "BEGIN two IF random THEN infect one ELSE skip END IF "
+                + "turnleft END P"));
+        Program pExpected = new Program1Parse1();
+        pExpected.parse(SourceTokenizer.tokens(
+                "PROGRAM P IS INSTRUCTION two IS "
+                + "one one END two INSTRUCTION one IS move turnright END one "
+                + "BEGIN two IF random THEN infect one ELSE skip END IF "
+                + "turnleft END P"));
+        /*
+         * The call
+         */
+        LinkedProgram linked = p.link();
+        /*
+         * Evaluation
+         */
+        assertEquals(pExpected, p);
+        assertEquals("P", linked.name());
+        assertEquals(2, linked.instructions());
+        assertEquals("one", linked.instructionName(0));
+        assertEquals("two", linked.instructionName(1));
+        assertEquals(1, linked.slot("two"));
+        assertEquals(-1, linked.slot("move"));
+        assertEquals(BLVirtualMachine.TURNRIGHT, linked.code("turnright"));
+        assertEquals(LinkedProgram.USER + 1, linked.code("two"));
+        assertEquals(-1, linked.code("three"));
+        final int one = LinkedProgram.USER;
+        assertArrayEquals(
+                new int[] { BLVirtualMachine.MOVE, BLVirtualMachine.TURNRIGHT },
+                linked.callCodes(0));
+        assertArrayEquals(new int[] { one, one }, linked.callCodes(1));
+        assertArrayEquals(new int[] { one + 1, BLVirtualMachine.INFECT, one,
+            BLVirtualMachine.SKIP, BLVirtualMachine.TURNLEFT },
+                linked.callCodes(-1));
+        assertEquals(3 + 3 + 9, linked.nodes());
+    }
+
+    /**
+     * Test of run on the example programs.
+     */
+    @Test
+    public final void testSameAsTreeExamples() {
+        checkSameAsTree(ProgramFiles.parse("test/program1.bl"), 1);
+        for (int i = 1; i <= 6; i++) {
+            checkSameAsTree(
+                    ProgramFiles.parse("data/programValid" + i + ".bl"), i);
+        }
+    }
+
+    /**
+     * Test of run on generated programs.
+     */
+    @Test
+    public final void testSameAsTreeGenerated() {
+        BLProgramGenerator generator = new BLProgramGenerator(3, 4, 5, 4, 0);
+        for (int i = 0; i < 100; i++) {
+            Program1Parse1 p = new Program1Parse1();
+            p.parse(SourceTokenizer.tokens(generator.next().source()));
+            checkSameAsTree(p, i);
+        }
+    }
+
+    /**
+     * Test of run on a recursive program that halts.
+     */
+    @Test
+    public final void testRecursive() {
+        /*
+         * Setup
+         */
+        Program1Parse1 p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION walk IS "
+                + "IF next-is-empty THEN move walk END IF END walk "
+                + "BEGIN walk turnleft END P"));
+        /*
+         * The call
+         */
+        long steps = checkSameAsTree(p, 3);
+        /*
+         * Evaluation
+         */
+        assertTrue(steps < STEPS);
+        assertEquals(0, steps % 2);
+    }
+
+    /**
+     * Test of link on a program that calls an undefined instruction.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testUndefined() {
+        Program1Parse1 p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens(
+                "PROGRAM P IS INSTRUCTION a IS b END a BEGIN move END P"));
+        p.link();
+    }
+
+}
@@ -0,0 +1,124 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code OffHeapProgram}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class OffHeapProgramTest {
+
+    /**
+     * Program with two instructions, used by several tests.
+     */
+    private static final String SOURCE = "PROGRAM P IS "
+            + "INSTRUCTION one IS IF next-is-wall THEN turnleft ELSE "
+            + "WHILE next-is-not-enemy DO move END WHILE END IF END one "
+            + "INSTRUCTION two IS one one END two "
+            + "BEGIN two IF random THEN one END IF END P";
+
+    /**
+     * Test of the view of the stored statements.
+     */
+    @Test
+    public final void testView() {
+        /*
+         * Setup
+         */
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens(SOURCE));
+        Program pExpected = new Program1Parse1();
+        pExpected.parse(SourceTokenizer.tokens(SOURCE));
+        /*
+         * The call
+         */
+        OffHeapProgram stored = OffHeapProgram.store(p);
+        /*
+         * Evaluation
+         */
+        assertEquals(pExpected, p);
+        assertEquals("P", stored.name());
+        assertEquals(2, stored.instructions());
+        int one = 0;
+        if (stored.instructionName(0).equals("two")) {
+            one = 1;
+        }
+        assertEquals("one", stored.instructionName(one));
+        assertEquals("two", stored.instructionName(1 - one));
+        OffHeapProgram.Node ifElse = stored.instruction(one).child(0);
+        assertEquals(Statement.Kind.IF_ELSE, ifElse.kind());
+        assertEquals(Statement.Condition.NEXT_IS_WALL, ifElse.condition());
+        assertEquals(2, ifElse.numberOfChildren());
+        OffHeapProgram.Node loop = ifElse.child(1).child(0);
+        assertEquals(Statement.Kind.WHILE, loop.kind());
+        assertEquals(Statement.Condition.NEXT_IS_NOT_ENEMY, loop.condition());
+        assertEquals("move", loop.child(0).child(0).name());
+        assertEquals(0, loop.child(0).child(0).numberOfChildren());
+        OffHeapProgram.Node body = stored.body();
+        assertEquals(2, body.numberOfChildren());
+        assertEquals("two", body.child(0).name());
+        assertEquals(Statement.Condition.RANDOM, body.child(1).condition());
+    }
+
+    /**
+     * Test of toProgram on the example programs and generated programs.
+     */
+    @Test
+    public final void testToProgram() {
+        for (int i = 1; i <= 6; i++) {
+            String fileName = "data/programValid" + i + ".bl";
+            Program pRef = new Program1();
+            SimpleReader file = new SimpleReader1L(fileName);
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            pRef.parse(tokens);
+            assertEquals(pRef, OffHeapProgram.store(pRef).toProgram());
+        }
+        BLProgramGenerator generator = new BLProgramGenerator(9, 8, 5, 4, 0);
+        for (int i = 0; i < 50; i++) {
+            String source = generator.next().source();
+            Program pRef = new Program1();
+            pRef.parse(SourceTokenizer.tokens(source));
+            OffHeapProgram stored = OffHeapProgram
+                    .parse(SourceTokenizer.tokens(source));
+            assertEquals(pRef, stored.toProgram());
+        }
+    }
+
+    /**
+     * Test of close.
+     */
+    @Test
+    public final void testClose() {
+        /*
+         * Setup
+         */
+        OffHeapProgram stored = OffHeapProgram
+                .parse(SourceTokenizer.tokens(SOURCE));
+        assertTrue(stored.isOpen());
+        assertTrue(stored.bytes() > 0);
+        /*
+         * The call
+         */
+        stored.close();
+        stored.close();
+        /*
+         * Evaluation
+         */
+        assertTrue(!stored.isOpen());
+        assertEquals("P", stored.name());
+    }
+
+}
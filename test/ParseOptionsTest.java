@@ -0,0 +1,562 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.statement.Statement;
+import components.statement.Statement1;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for parsing with {@code ParseOptions}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ParseOptionsTest {
+
+    /**
+     * Parses the block {@code source} with the reference implementation.
+     *
+     * @param source
+     *            the block source
+     * @return the parsed block
+     */
+    private static Statement reference(String source) {
+        Statement s = new Statement1();
+        s.parseBlock(SourceTokenizer.tokens(source));
+        return s;
+    }
+
+    /**
+     * Parses the block {@code source} with folding on.
+     *
+     * @param source
+     *            the block source
+     * @param options
+     *            the options to parse with
+     * @return the parsed block
+     */
+    private static Statement folded(String source, ParseOptions options) {
+        Statement s = new Statement1Parse1();
+        options.setFold(true).parseBlock(s, SourceTokenizer.tokens(source));
+        return s;
+    }
+
+    /**
+     * Test of folding IF true and IF_ELSE true.
+     */
+    @Test
+    public final void testFoldIfTrue() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        Statement sRef = reference("move turnleft infect");
+        /*
+         * The call
+         */
+        Statement sTest = folded("move IF true THEN turnleft END IF "
+                + "IF true THEN infect ELSE skip END IF", options);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(2, options.folded());
+    }
+
+    /**
+     * Test of folding empty blocks.
+     */
+    @Test
+    public final void testFoldEmptyBlocks() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        Statement sRef = reference("IF next-is-wall THEN move END IF "
+                + "IF next-is-not-enemy THEN infect END IF "
+                + "IF random THEN ELSE skip END IF");
+        /*
+         * The call
+         */
+        Statement sTest = folded("IF next-is-empty THEN END IF "
+                + "IF next-is-friend THEN ELSE END IF "
+                + "IF next-is-wall THEN move ELSE END IF "
+                + "IF next-is-enemy THEN ELSE infect END IF "
+                + "IF random THEN ELSE skip END IF", options);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(5, options.folded());
+    }
+
+    /**
+     * Test of folding nested blocks, inside out.
+     */
+    @Test
+    public final void testFoldNested() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        Statement sRef = reference("WHILE next-is-empty DO move END WHILE");
+        /*
+         * The call
+         */
+        Statement sTest = folded("WHILE next-is-empty DO IF true THEN "
+                + "IF next-is-wall THEN END IF move END IF END WHILE",
+                options);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(2, options.folded());
+    }
+
+    /**
+     * Test of the warning for a WHILE true loop that never acts.
+     */
+    @Test
+    public final void testWhileTrueWarning() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        Statement sRef = reference("WHILE true DO END WHILE "
+                + "WHILE true DO skip END WHILE");
+        /*
+         * The call
+         */
+        Statement sTest = folded("WHILE true DO IF next-is-wall THEN END IF "
+                + "END WHILE WHILE true DO skip END WHILE", options);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(1, options.warnings().size());
+    }
+
+    /**
+     * Test of the warnings and folding count being reset by each parse.
+     */
+    @Test
+    public final void testReportsReset() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        folded("WHILE true DO END WHILE IF true THEN move END IF", options);
+        /*
+         * The call
+         */
+        Statement sTest = folded("move", options);
+        /*
+         * Evaluation
+         */
+        assertEquals(reference("move"), sTest);
+        assertEquals(0, options.warnings().size());
+        assertEquals(0, options.folded());
+    }
+
+    /**
+     * Test of the depth being restored after a syntax error, so options can
+     * be reused.
+     */
+    @Test
+    public final void testMaxDepthAfterError() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions().setMaxDepth(2);
+        Statement s = new Statement1Parse1();
+        try {
+            options.parseBlock(s, SourceTokenizer.tokens(
+                    "IF random THEN move END WHILE"));
+            fail("Syntax error not reported");
+        } catch (ParseLimitExceededException e) {
+            fail("Limit reported for a syntax error");
+        } catch (RuntimeException e) {
+            //Expected.
+        }
+        /*
+         * The call
+         */
+        ParseLimitExceededException.Limit limit = exceeded(options,
+                "PROGRAM P IS BEGIN IF random THEN move END IF END P");
+        /*
+         * Evaluation
+         */
+        assertEquals(null, limit);
+    }
+
+    /**
+     * Test of a parse under cancelled options giving up with a
+     * {@code CancellationException}, leaving plain parses alone.
+     */
+    @Test
+    public final void testCancel() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions();
+        options.cancel();
+        Program p = new Program1Parse1();
+        /*
+         * The call
+         */
+        try {
+            options.parse(p, SourceTokenizer.tokens(
+                    "PROGRAM P IS BEGIN move END P"));
+            fail("Cancelled parse completed");
+        } catch (CancellationException e) {
+            //Expected.
+        }
+        Thread.currentThread().interrupt();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS BEGIN move END P"));
+        boolean interrupted = Thread.interrupted();
+        /*
+         * Evaluation
+         */
+        assertTrue(interrupted);
+        assertEquals("P", p.name());
+    }
+
+    /**
+     * Test of parse with folding on a program, and of the options being
+     * restored afterwards.
+     */
+    @Test
+    public final void testProgram() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions().setFold(true);
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION a IS "
+                + "move END a BEGIN a END P"));
+        Program pTest = new Program1Parse1();
+        /*
+         * The call
+         */
+        options.parse(pTest, SourceTokenizer.tokens("PROGRAM P IS "
+                + "INSTRUCTION a IS IF true THEN move END IF END a "
+                + "BEGIN a IF next-is-wall THEN ELSE END IF END P"));
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+        assertEquals(3, options.folded());
+        assertNotSame(options, ParseOptions.current());
+        assertTrue(!ParseOptions.current().fold());
+    }
+
+    /**
+     * Test of the default options, which cannot be changed, so a plain parse
+     * after an attempt still folds nothing.
+     */
+    @Test
+    public final void testDefaultUnchangeable() {
+        /*
+         * Setup
+         */
+        String source = "IF true THEN move END IF";
+        Statement sRef = reference(source);
+        Statement sTest = new Statement1Parse1();
+        /*
+         * The call
+         */
+        try {
+            ParseOptions.current().setFold(true);
+            fail("Default options changed");
+        } catch (UnsupportedOperationException e) {
+            //Expected.
+        }
+        sTest.parseBlock(SourceTokenizer.tokens(source));
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertTrue(!ParseOptions.current().fold());
+    }
+
+    /**
+     * Test of parse with folding off, which keeps every statement.
+     */
+    @Test
+    public final void testNoFold() {
+        /*
+         * Setup
+         */
+        String source = "IF true THEN move END IF IF next-is-wall THEN "
+                + "END IF IF next-is-enemy THEN ELSE infect END IF";
+        Statement sRef = reference(source);
+        Statement sTest = new Statement1Parse1();
+        /*
+         * The call
+         */
+        sTest.parseBlock(SourceTokenizer.tokens(source));
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(0, ParseOptions.current().folded());
+    }
+
+    /**
+     * Parses {@code source} as a program with {@code options} and returns the
+     * limit exceeded, or null if the parse succeeded.
+     *
+     * @param options
+     *            the options
+     * @param source
+     *            the program source
+     * @return the limit exceeded, or null
+     */
+    private static ParseLimitExceededException.Limit exceeded(
+            ParseOptions options, String source) {
+        ParseLimitExceededException.Limit limit = null;
+        try {
+            options.parse(new Program1Parse1(), SourceTokenizer.tokens(source));
+        } catch (ParseLimitExceededException e) {
+            limit = e.limit();
+        }
+        return limit;
+    }
+
+    /**
+     * Test of the limit on the number of tokens.
+     */
+    @Test
+    public final void testMaxTokens() {
+        String source = "PROGRAM P IS BEGIN move move END P";
+        assertEquals(null, exceeded(new ParseOptions().setMaxTokens(8),
+                source));
+        assertEquals(ParseLimitExceededException.Limit.TOKENS,
+                exceeded(new ParseOptions().setMaxTokens(7), source));
+    }
+
+    /**
+     * Test of the limit on the number of tokens applied while tokenizing.
+     */
+    @Test
+    public final void testTokensLimit() {
+        /*
+         * Setup
+         */
+        ParseOptions options = new ParseOptions().setMaxTokens(3);
+        Queue<String> qRef = SourceTokenizer.tokens("IF random THEN");
+        /*
+         * The call
+         */
+        Queue<String> qTest = options.tokens("IF random THEN");
+        Queue<String> bTest = options
+                .tokens("IF random THEN".getBytes(StandardCharsets.UTF_8));
+        /*
+         * Evaluation
+         */
+        assertEquals(qRef, qTest);
+        assertEquals(qRef, bTest);
+        try {
+            options.tokens("IF random THEN move");
+            fail("Token limit not reported");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.TOKENS, e.limit());
+        }
+        try {
+            options.tokens("IF random THEN \u00e9"
+                    .getBytes(StandardCharsets.UTF_8));
+            fail("Token limit not reported");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(ParseLimitExceededException.Limit.TOKENS, e.limit());
+        }
+    }
+
+    /**
+     * Test of the limit on the nesting depth.
+     */
+    @Test
+    public final void testMaxDepth() {
+        String source = "PROGRAM P IS INSTRUCTION a IS IF random THEN "
+                + "WHILE next-is-empty DO move END WHILE END IF END a "
+                + "BEGIN a END P";
+        assertEquals(null, exceeded(new ParseOptions().setMaxDepth(3),
+                source));
+        assertEquals(ParseLimitExceededException.Limit.DEPTH,
+                exceeded(new ParseOptions().setMaxDepth(2), source));
+    }
+
+    /**
+     * Test of the limit on the nesting depth with deep input, which would
+     * otherwise overflow the stack.
+     */
+    @Test
+    public final void testMaxDepthDeep() {
+        final int depth = 1_000_000;
+        StringBuilder source = new StringBuilder("PROGRAM P IS BEGIN ");
+        for (int i = 0; i < depth; i++) {
+            source.append("IF random THEN ");
+        }
+        assertEquals(ParseLimitExceededException.Limit.DEPTH, exceeded(
+                new ParseOptions().setMaxDepth(100), source.toString()));
+    }
+
+    /**
+     * Test of the limit on the number of instructions.
+     */
+    @Test
+    public final void testMaxInstructions() {
+        String source = "PROGRAM P IS INSTRUCTION a IS move END a "
+                + "INSTRUCTION b IS skip END b BEGIN a b END P";
+        assertEquals(null, exceeded(new ParseOptions().setMaxInstructions(2),
+                source));
+        assertEquals(ParseLimitExceededException.Limit.INSTRUCTIONS,
+                exceeded(new ParseOptions().setMaxInstructions(1), source));
+    }
+
+    /**
+     * Test of the limit on identifier length, for instruction names and
+     * calls.
+     */
+    @Test
+    public final void testMaxIdentifierLength() {
+        String definition = "PROGRAM P IS INSTRUCTION abcd IS move END abcd "
+                + "BEGIN abcd END P";
+        String call = "PROGRAM P IS BEGIN move abcdefgh END P";
+        assertEquals(null, exceeded(
+                new ParseOptions().setMaxIdentifierLength(4), definition));
+        assertEquals(ParseLimitExceededException.Limit.IDENTIFIER_LENGTH,
+                exceeded(new ParseOptions().setMaxIdentifierLength(3),
+                        definition));
+        assertEquals(ParseLimitExceededException.Limit.IDENTIFIER_LENGTH,
+                exceeded(new ParseOptions().setMaxIdentifierLength(7),
+                        call));
+    }
+
+    /**
+     * Test of the time limit.
+     */
+    @Test
+    public final void testTimeLimit() {
+        /*
+         * Setup
+         */
+        final int statements = 100_000;
+        ParseOptions options = new ParseOptions()
+                .setTimeLimit(Duration.ofNanos(1));
+        StringBuilder source = new StringBuilder("PROGRAM P IS BEGIN ");
+        for (int i = 0; i < statements; i++) {
+            source.append("move ");
+        }
+        source.append("END P");
+        Program p = new Program1Parse1();
+        /*
+         * The call
+         */
+        try {
+            options.parse(p, SourceTokenizer.tokens(source));
+            fail("time limit not enforced");
+        } catch (ParseLimitExceededException e) {
+            /*
+             * Evaluation
+             */
+            assertEquals(ParseLimitExceededException.Limit.TIME, e.limit());
+        }
+        assertEquals(null, exceeded(
+                options.setTimeLimit(Duration.ofMinutes(1)),
+                "PROGRAM P IS BEGIN move END P"));
+    }
+
+    /**
+     * Reports whether {@code source} is rejected by parsing it with
+     * {@code options}.
+     *
+     * @param options
+     *            the options to parse with
+     * @param source
+     *            the program source
+     * @return true iff a syntax error is reported
+     */
+    private static boolean rejected(ParseOptions options, String source) {
+        boolean rejected = false;
+        try {
+            options.parse(new Program1Parse1(), SourceTokenizer.tokens(source));
+        } catch (RuntimeException e) {
+            rejected = true;
+        }
+        return rejected;
+    }
+
+    /**
+     * Test of trusted mode on valid programs, which skip the checks.
+     */
+    @Test
+    public final void testTrusted() {
+        ParseOptions options = new ParseOptions().setTrusted(true);
+        for (int i = 1; i <= 6; i++) {
+            SimpleReader file = new SimpleReader1L(
+                    "data/programValid" + i + ".bl");
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            Queue<String> trustedTokens = tokens.newInstance();
+            for (String token : tokens) {
+                trustedTokens.enqueue(token);
+            }
+            Program pRef = new Program1();
+            pRef.parse(tokens);
+            Program p = new Program1Parse1();
+            options.parse(p, trustedTokens);
+            assertEquals(pRef, p);
+            assertTrue(options.skippedChecks());
+        }
+    }
+
+    /**
+     * Test of trusted mode on invalid programs, which are still rejected.
+     */
+    @Test
+    public final void testTrustedRejects() {
+        ParseOptions options = new ParseOptions().setTrusted(true);
+        assertTrue(rejected(options, "PROGRAM P IS BEGIN "
+                + "IF random THEN move END WHILE END P"));
+        assertTrue(!options.skippedChecks());
+        assertTrue(rejected(options, "PROGRAM P IS INSTRUCTION a IS "
+                + "move END b BEGIN a END P"));
+        assertTrue(rejected(options, "PROGRAM P IS BEGIN "
+                + "WHILE true THEN move END WHILE END P"));
+        assertTrue(rejected(options, "PROGRAM P IS BEGIN move ELSE skip END P"));
+        assertTrue(rejected(options, "PROGRAM P IS BEGIN IF random THEN "
+                + "move ELSE skip ELSE infect END IF END P"));
+        for (int i = 1; i <= 13; i++) {
+            SimpleReader file = new SimpleReader1L(
+                    "data/programInvalid" + i + ".bl");
+            StringBuilder source = new StringBuilder();
+            while (!file.atEOS()) {
+                source.append(file.nextLine()).append('\n');
+            }
+            file.close();
+            assertTrue(rejected(options, source.toString()));
+        }
+        BLProgramGenerator generator = new BLProgramGenerator(11, 4, 5, 4,
+                0.5);
+        for (int i = 0; i < 200; i++) {
+            BLProgramGenerator.Sample sample = generator.next();
+            assertEquals(sample.source(), !sample.isValid(),
+                    rejected(options, sample.source()));
+        }
+    }
+
+}
@@ -0,0 +1,312 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code ParseServer} and {@code ParseClient}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ParseServerTest {
+
+    /**
+     * A small program.
+     */
+    private static final String SOURCE = "PROGRAM P IS INSTRUCTION a IS "
+            + "move END a BEGIN a WHILE true DO turnleft END WHILE END P";
+
+    /**
+     * Returns generated programs, valid and not.
+     *
+     * @param count
+     *            the number of programs
+     * @return the sources
+     */
+    private static List<String> sources(int count) {
+        BLProgramGenerator generator = new BLProgramGenerator(46, 3, 4, 3,
+                0.3);
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sources.add(generator.next().source());
+        }
+        return sources;
+    }
+
+    /**
+     * Test of a loopback client on a valid and an invalid program.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public final void testLoopback() throws IOException {
+        /*
+         * Setup
+         */
+        ParseServer server = new ParseServer(1, ParseServer.DEFAULT_BATCH);
+        ParseClient client = ParseClient.loopback(server);
+        /*
+         * The call
+         */
+        String valid = client.parse(SOURCE).join();
+        String invalid = client.parse("PROGRAM P IS BEGIN END Q").join();
+        client.close();
+        server.close();
+        /*
+         * Evaluation
+         */
+        assertEquals("OK\n" + ParserCli.program(SOURCE), valid);
+        assertTrue(invalid.startsWith("ERROR\nerror: "));
+        assertEquals(2, server.answered());
+    }
+
+    /**
+     * Test of deep and oversized sources being answered with errors while
+     * the worker keeps running.
+     *
+     * @throws IOException
+     *             never
+     */
+    @Test
+    public final void testUntrusted() throws IOException {
+        /*
+         * Setup
+         */
+        final int depth = 200_000;
+        final int tokens = 1 << 22;
+        ParseServer server = new ParseServer(1, ParseServer.DEFAULT_BATCH);
+        ParseClient client = ParseClient.loopback(server);
+        /*
+         * The call
+         */
+        String deep = client.parse("PROGRAM P IS BEGIN "
+                + "IF random THEN ".repeat(depth) + "END IF ".repeat(depth)
+                + "END P").join();
+        String large = client.parse("PROGRAM P IS BEGIN "
+                + "move ".repeat(tokens) + "END P").join();
+        String valid = client.parse(SOURCE).join();
+        client.close();
+        server.close();
+        /*
+         * Evaluation
+         */
+        assertTrue(deep.startsWith("ERROR\nerror: "));
+        assertTrue(deep.contains("DEPTH"));
+        assertTrue(large.startsWith("ERROR\nerror: "));
+        assertTrue(large.contains("TOKENS"));
+        assertEquals("OK\n" + ParserCli.program(SOURCE), valid);
+    }
+
+    /**
+     * Test of batching many submissions onto few workers, and of the
+     * statistics.
+     */
+    @Test
+    public final void testBatching() {
+        /*
+         * Setup
+         */
+        List<String> sources = sources(200);
+        ParseServer server = new ParseServer(2, 8);
+        /*
+         * The call
+         */
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (String source : sources) {
+            answers.add(server.submit(source));
+        }
+        /*
+         * Evaluation
+         */
+        for (int i = 0; i < sources.size(); i++) {
+            assertEquals(ParserCli.respond("program\n" + sources.get(i))
+                    .startsWith("OK\n"),
+                    answers.get(i).join().startsWith("OK\n"));
+        }
+        assertEquals(200, server.answered());
+        assertEquals(0, server.queueDepth());
+        assertTrue(server.meanBatch() >= 1 && server.meanBatch() <= 8);
+        assertTrue(0 < server.latency(50));
+        assertTrue(server.latency(50) <= server.latency(99));
+        assertTrue(server.stats().startsWith("answered 200, queue depth 0"));
+        server.close();
+    }
+
+    /**
+     * Test of submitting after close.
+     */
+    @Test
+    public final void testClosed() {
+        ParseServer server = new ParseServer(1, 1);
+        server.close();
+        try {
+            server.submit(SOURCE).join();
+            assertTrue(false);
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Test of a socket client with many requests in flight.
+     *
+     * @throws Exception
+     *             if the server fails
+     */
+    @Test
+    public final void testSocket() throws Exception {
+        /*
+         * Setup
+         */
+        List<String> sources = sources(50);
+        Path directory = Files.createTempDirectory("parseserver");
+        Path socket = directory.resolve("bl.sock");
+        ParseServer server = new ParseServer(2, 4);
+        Exception[] failure = new Exception[1];
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve(socket);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        ParseClient client = null;
+        while (client == null && serving.isAlive()) {
+            try {
+                client = ParseClient.connect(socket);
+            } catch (IOException e) {
+                Thread.sleep(1);
+            }
+        }
+        /*
+         * The call
+         */
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (String source : sources) {
+            answers.add(client.parse(source));
+        }
+        client.close();
+        server.close();
+        serving.join();
+        /*
+         * Evaluation
+         */
+        assertEquals(null, failure[0]);
+        for (int i = 0; i < sources.size(); i++) {
+            String expected = ParserCli.respond("program\n" + sources.get(i));
+            String answer = answers.get(i).join();
+            assertEquals(expected.startsWith("OK\n"), answer.startsWith("OK\n"));
+            if (answer.startsWith("OK\n")) {
+                assertEquals(expected, answer);
+            }
+        }
+        assertTrue(!Files.exists(socket));
+        Files.delete(directory);
+    }
+
+    /**
+     * Test of Frame.read on a body several times the initial buffer size.
+     *
+     * @throws IOException
+     *             if the socket fails
+     */
+    @Test
+    public final void testLargeFrame() throws IOException {
+        /*
+         * Setup
+         */
+        final int length = 300_000;
+        String text = "move ".repeat(length / "move ".length());
+        Path directory = Files.createTempDirectory("parseserver");
+        Path socket = directory.resolve("bl.sock");
+        try (ServerSocketChannel listening = ServerSocketChannel
+                .open(StandardProtocolFamily.UNIX)) {
+            listening.bind(UnixDomainSocketAddress.of(socket));
+            try (SocketChannel out = SocketChannel
+                    .open(UnixDomainSocketAddress.of(socket));
+                    SocketChannel in = listening.accept()) {
+                Thread sending = new Thread(() -> {
+                    try {
+                        new ParseServer.Frame(7, text).write(out);
+                    } catch (IOException e) {
+                        //The read below fails.
+                    }
+                });
+                sending.start();
+                /*
+                 * The call
+                 */
+                ParseServer.Frame frame = ParseServer.Frame.read(in);
+                /*
+                 * Evaluation
+                 */
+                assertEquals(7, frame.id());
+                assertEquals(text, frame.text());
+            }
+        }
+        Files.delete(socket);
+        Files.delete(directory);
+    }
+
+    /**
+     * Test of a socket client whose connection the server refuses: the
+     * pending request and every later one fail instead of waiting forever.
+     *
+     * @throws Exception
+     *             if the socket fails
+     */
+    @Test
+    public final void testClientRefused() throws Exception {
+        /*
+         * Setup
+         */
+        Path directory = Files.createTempDirectory("parseserver");
+        Path socket = directory.resolve("bl.sock");
+        try (ServerSocketChannel listening = ServerSocketChannel
+                .open(StandardProtocolFamily.UNIX)) {
+            listening.bind(UnixDomainSocketAddress.of(socket));
+            ParseClient client = ParseClient.connect(socket);
+            CompletableFuture<String> first = client.parse(SOURCE);
+            /*
+             * The call
+             */
+            try (SocketChannel accepted = listening.accept()) {
+                new ParseServer.Frame(ParseServer.CONNECTION_ID,
+                        "ERROR\nerror: server busy\n").write(accepted);
+            }
+            String message = null;
+            try {
+                first.join();
+            } catch (CompletionException e) {
+                message = e.getCause().getMessage();
+            }
+            CompletableFuture<String> later = client.parse(SOURCE);
+            client.close();
+            /*
+             * Evaluation
+             */
+            assertEquals("ERROR\nerror: server busy", message);
+            assertTrue(later.isCompletedExceptionally());
+        }
+        Files.delete(socket);
+        Files.delete(directory);
+    }
+
+}
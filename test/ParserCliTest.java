@@ -0,0 +1,207 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+
+/**
+ * JUnit test fixture for {@code ParserCli}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ParserCliTest {
+
+    /**
+     * A small program.
+     */
+    private static final String SOURCE = "PROGRAM P IS INSTRUCTION a IS "
+            + "move END a BEGIN a WHILE true DO turnleft END WHILE END P";
+
+    /**
+     * Sends {@code request} to the daemon on {@code socket} and returns the
+     * reply.
+     *
+     * @param socket
+     *            the socket file
+     * @param request
+     *            the request
+     * @return the reply
+     * @throws IOException
+     *             if the connection fails
+     */
+    private static String send(Path socket, String request)
+            throws IOException {
+        try (SocketChannel channel = SocketChannel
+                .open(UnixDomainSocketAddress.of(socket))) {
+            ByteBuffer out = ByteBuffer
+                    .wrap(request.getBytes(StandardCharsets.UTF_8));
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.shutdownOutput();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            ByteBuffer in = ByteBuffer.allocate(1024);
+            while (channel.read(in) >= 0) {
+                in.flip();
+                reply.write(in.array(), 0, in.limit());
+                in.clear();
+            }
+            return new String(reply.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Test of respond on programs and blocks.
+     */
+    @Test
+    public final void testRespond() {
+        /*
+         * Setup
+         */
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens(SOURCE));
+        /*
+         * The call
+         */
+        String program = ParserCli.respond("program\n" + SOURCE);
+        String block = ParserCli.respond("statement\nmove IF random THEN "
+                + "skip END IF");
+        /*
+         * Evaluation
+         */
+        assertEquals("OK\n" + new ProgramPrettyPrinter().toString(pRef),
+                program);
+        assertTrue(block.startsWith("OK\n"));
+        assertTrue(block.contains("IF random THEN"));
+    }
+
+    /**
+     * Test of respond on invalid input.
+     */
+    @Test
+    public final void testRespondErrors() {
+        assertTrue(ParserCli.respond("program\nPROGRAM P IS BEGIN END Q")
+                .startsWith("ERROR "));
+        assertTrue(ParserCli.respond("statement\nmove END skip")
+                .startsWith("ERROR "));
+        assertEquals("ERROR unknown request lex\n",
+                ParserCli.respond("lex\nmove"));
+    }
+
+    /**
+     * Test of respond on input deep enough to overflow the stack, and of the
+     * request options rejecting it first.
+     */
+    @Test
+    public final void testRespondDeep() {
+        /*
+         * Setup
+         */
+        final int depth = 200_000;
+        String request = "statement\n" + "IF random THEN ".repeat(depth)
+                + "END IF ".repeat(depth);
+        /*
+         * The call
+         */
+        String unlimited = ParserCli.respond(request);
+        String limited = ParserCli.respond(request,
+                ParseServer.requestOptions());
+        /*
+         * Evaluation
+         */
+        assertEquals("ERROR StackOverflowError\n", unlimited);
+        assertTrue(limited.startsWith("ERROR "));
+        assertTrue(limited.contains("DEPTH"));
+    }
+
+    /**
+     * Test of train.
+     *
+     * @throws IOException
+     *             if an example file cannot be read
+     */
+    @Test
+    public final void testTrain() throws IOException {
+        assertTrue(ParserCli.train() > 200);
+    }
+
+    /**
+     * Test of the daemon answering requests until shut down, while a client
+     * that never finishes its request stays connected.
+     *
+     * @throws Exception
+     *             if the daemon fails
+     */
+    @Test
+    public final void testDaemon() throws Exception {
+        /*
+         * Setup
+         */
+        Path directory = Files.createTempDirectory("parsercli");
+        Path socket = directory.resolve("bl.sock");
+        Exception[] failure = new Exception[1];
+        Thread daemon = new Thread(() -> {
+            try {
+                ParserCli.serve(socket);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        daemon.setDaemon(true);
+        daemon.start();
+        //The socket file appears just before the daemon starts listening.
+        boolean listening = false;
+        while (!listening && daemon.isAlive()) {
+            try {
+                listening = send(socket, "statement\nskip").startsWith("OK");
+            } catch (IOException e) {
+                Thread.sleep(1);
+            }
+        }
+        SocketChannel stalled = SocketChannel
+                .open(UnixDomainSocketAddress.of(socket));
+        stalled.write(ByteBuffer
+                .wrap("program\n".getBytes(StandardCharsets.UTF_8)));
+        /*
+         * The call
+         */
+        long start = System.nanoTime();
+        String first = send(socket, "program\n" + SOURCE);
+        String second = send(socket, "program\nPROGRAM P IS BEGIN END Q");
+        final int depth = 100_000;
+        String deep = send(socket, "statement\n"
+                + "WHILE true DO ".repeat(depth)
+                + "END WHILE ".repeat(depth));
+        String third = send(socket, "statement\nskip");
+        long elapsed = System.nanoTime() - start;
+        String stop = send(socket, "shutdown\n");
+        stalled.close();
+        daemon.join();
+        /*
+         * Evaluation
+         */
+        assertEquals(null, failure[0]);
+        assertEquals(ParserCli.respond("program\n" + SOURCE), first);
+        assertTrue(second.startsWith("ERROR "));
+        assertTrue(deep.startsWith("ERROR "));
+        assertEquals(ParserCli.respond("statement\nskip"), third);
+        assertTrue(elapsed < ParserCli.IO_TIMEOUT_MILLIS * 1_000_000L);
+        assertEquals("OK\n", stop);
+        assertTrue(!Files.exists(socket));
+        Files.delete(directory);
+    }
+
+}
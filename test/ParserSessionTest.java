@@ -0,0 +1,171 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.statement.Statement;
+
+/**
+ * JUnit test fixture for {@code ParserSession}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ParserSessionTest {
+
+    /**
+     * Returns the contents of the file {@code fileName}.
+     *
+     * @param fileName
+     *            the file
+     * @return the contents
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static String read(String fileName) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(fileName)),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test of parse on the example programs, one after another in one
+     * session.
+     *
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    @Test
+    public final void testParse() throws IOException {
+        ParserSession session = new ParserSession();
+        for (int i = 1; i <= 6; i++) {
+            String source = read("data/programValid" + i + ".bl");
+            Program pRef = new Program1();
+            pRef.parse(SourceTokenizer.tokens(source));
+            Program pTest = session.parse(source);
+            assertEquals(pRef, pTest);
+        }
+    }
+
+    /**
+     * Test of parseBlock on the example blocks.
+     *
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    @Test
+    public final void testParseBlock() throws IOException {
+        ParserSession session = new ParserSession();
+        for (int i = 1; i <= 2; i++) {
+            String source = read("data/statementValid" + i + ".bl");
+            Statement sRef = new Statement1Parse1();
+            sRef.parseBlock(SourceTokenizer.tokens(source));
+            Statement sTest = session.parseBlock(source);
+            assertEquals(sRef, sTest);
+        }
+    }
+
+    /**
+     * Test of parse reusing the program and the token strings.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testReuse() throws IOException {
+        /*
+         * Setup
+         */
+        ParserSession session = new ParserSession();
+        String source = read("test/program1.bl");
+        Program first = session.parse(source);
+        int interned = session.interned();
+        /*
+         * The call
+         */
+        Program second = session.parse(source);
+        /*
+         * Evaluation
+         */
+        assertSame(first, second);
+        assertEquals(interned, session.interned());
+        assertTrue(interned < SourceTokenizer.tokens(source).length());
+        assertSame(ParserSession.forThread(), ParserSession.forThread());
+    }
+
+    /**
+     * Test of parse after a syntax error.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testAfterError() throws IOException {
+        /*
+         * Setup
+         */
+        ParserSession session = new ParserSession();
+        String source = read("test/program1.bl");
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens(source));
+        boolean rejected = false;
+        /*
+         * The call
+         */
+        try {
+            session.parse("PROGRAM P IS BEGIN move END Q");
+        } catch (RuntimeException e) {
+            rejected = true;
+        }
+        Program pTest = session.parse(source);
+        /*
+         * Evaluation
+         */
+        assertTrue(rejected);
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of parse with options, whose token limit applies before the
+     * source is tokenized in full, and of parse after the limit is exceeded.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    @Test
+    public final void testParseOptions() throws IOException {
+        /*
+         * Setup
+         */
+        ParserSession session = new ParserSession();
+        String source = read("test/program1.bl");
+        Program pRef = new Program1();
+        pRef.parse(SourceTokenizer.tokens(source));
+        ParseLimitExceededException.Limit limit = null;
+        /*
+         * The call
+         */
+        try {
+            session.parse(source, new ParseOptions().setMaxTokens(3));
+        } catch (ParseLimitExceededException e) {
+            limit = e.limit();
+        }
+        ParseOptions options = new ParseOptions().setTrusted(true);
+        Program pTest = session.parse(source, options);
+        /*
+         * Evaluation
+         */
+        assertEquals(ParseLimitExceededException.Limit.TOKENS, limit);
+        assertEquals(pRef, pTest);
+        assertTrue(options.skippedChecks());
+    }
+
+}
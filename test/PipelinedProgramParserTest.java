@@ -0,0 +1,57 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * JUnit test fixture for {@code PipelinedProgramParser}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class PipelinedProgramParserTest {
+
+    /**
+     * Test of parse on the example programs, with both wait strategies and a
+     * ring small enough to fill up.
+     */
+    @Test
+    public final void testExamples() {
+        for (TokenRing.Wait wait : TokenRing.Wait.values()) {
+            for (int i = 1; i <= 6; i++) {
+                String fileName = "data/programValid" + i + ".bl";
+                Program pRef = new Program1();
+                SimpleReader file = new SimpleReader1L(fileName);
+                pRef.parse(file);
+                file.close();
+                file = new SimpleReader1L(fileName);
+                Program p = PipelinedProgramParser.parse(file, wait, 4, 2);
+                file.close();
+                assertEquals(pRef, p);
+                file = new SimpleReader1L(fileName);
+                p = PipelinedProgramParser.parse(file, wait);
+                file.close();
+                assertEquals(pRef, p);
+            }
+        }
+    }
+
+    /**
+     * Test of parse on an invalid program.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testInvalid() {
+        SimpleReader file = new SimpleReader1L("data/programInvalid8.bl");
+        try {
+            PipelinedProgramParser.parse(file, TokenRing.Wait.BLOCKING, 4, 1);
+        } finally {
+            file.close();
+        }
+    }
+
+}
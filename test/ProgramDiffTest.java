@@ -0,0 +1,163 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+
+/**
+ * JUnit test fixture for {@code ProgramDiff}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramDiffTest {
+
+    /**
+     * Parses {@code source} with the reference implementation.
+     *
+     * @param source
+     *            the program source
+     * @return the parsed program
+     */
+    private static Program parse(String source) {
+        Program p = new Program1();
+        p.parse(SourceTokenizer.tokens(source));
+        return p;
+    }
+
+    /**
+     * Test of compare on equal programs.
+     */
+    @Test
+    public final void testEqual() {
+        /*
+         * Setup
+         */
+        String source = "PROGRAM P IS INSTRUCTION a IS move END a "
+                + "BEGIN a IF next-is-wall THEN turnleft ELSE a END IF END P";
+        Program p1 = parse(source);
+        Program p2 = parse(source);
+        Program p1Ref = parse(source);
+        /*
+         * The call
+         */
+        ProgramDiff diff = ProgramDiff.compare(p1, p2);
+        /*
+         * Evaluation
+         */
+        assertTrue(diff.isEqual());
+        assertNull(diff.firstDifference());
+        assertEquals(p1Ref, p1);
+        assertEquals(p1Ref, p2);
+    }
+
+    /**
+     * Test of compare on bodies differing inside an IF_ELSE.
+     */
+    @Test
+    public final void testBodyDifference() {
+        /*
+         * Setup
+         */
+        Program p1 = parse("PROGRAM P IS BEGIN move IF next-is-wall THEN "
+                + "turnleft ELSE WHILE random DO move END WHILE END IF END P");
+        Program p2 = parse("PROGRAM P IS BEGIN move IF next-is-wall THEN "
+                + "turnleft ELSE WHILE random DO infect END WHILE END IF "
+                + "END P");
+        /*
+         * The call
+         */
+        ProgramDiff diff = ProgramDiff.compare(p1, p2);
+        /*
+         * Evaluation
+         */
+        assertTrue(!diff.isEqual());
+        assertEquals("BEGIN[1].else[0][0]: move vs infect",
+                diff.firstDifference());
+        assertEquals(diff.firstDifference(), diff.bodyDifference());
+    }
+
+    /**
+     * Test of compare on blocks of different lengths and on conditions.
+     */
+    @Test
+    public final void testAddedAndCondition() {
+        /*
+         * Setup
+         */
+        Program p1 = parse("PROGRAM P IS BEGIN move turnleft END P");
+        Program p2 = parse("PROGRAM P IS BEGIN move turnleft skip END P");
+        Program p3 = parse("PROGRAM P IS BEGIN move WHILE next-is-empty DO "
+                + "move END WHILE END P");
+        Program p4 = parse("PROGRAM P IS BEGIN move WHILE next-is-enemy DO "
+                + "move END WHILE END P");
+        /*
+         * The call
+         */
+        ProgramDiff diff12 = ProgramDiff.compare(p1, p2);
+        ProgramDiff diff21 = ProgramDiff.compare(p2, p1);
+        ProgramDiff diff34 = ProgramDiff.compare(p3, p4);
+        /*
+         * Evaluation
+         */
+        assertEquals("BEGIN[2]: added skip", diff12.firstDifference());
+        assertEquals("BEGIN[2]: removed skip", diff21.firstDifference());
+        assertEquals("BEGIN[1]: WHILE next-is-empty vs WHILE next-is-enemy",
+                diff34.firstDifference());
+    }
+
+    /**
+     * Test of compare on programs with different instructions.
+     */
+    @Test
+    public final void testInstructions() {
+        /*
+         * Setup
+         */
+        Program p1 = parse("PROGRAM P IS INSTRUCTION a IS move END a "
+                + "INSTRUCTION b IS skip END b INSTRUCTION c IS infect END c "
+                + "BEGIN a b c END P");
+        Program p2 = parse("PROGRAM Q IS INSTRUCTION a IS move END a "
+                + "INSTRUCTION c IS infect infect END c "
+                + "INSTRUCTION d IS turnleft END d BEGIN a d c END Q");
+        /*
+         * The call
+         */
+        ProgramDiff diff = ProgramDiff.compare(p1, p2);
+        /*
+         * Evaluation
+         */
+        assertTrue(diff.nameChanged());
+        assertEquals("PROGRAM: P vs Q", diff.firstDifference());
+        assertEquals(Arrays.asList("d"), diff.addedInstructions());
+        assertEquals(Arrays.asList("b"), diff.removedInstructions());
+        assertEquals(Arrays.asList("c"), diff.changedInstructions());
+        assertEquals("INSTRUCTION c[1]: added infect",
+                diff.instructionDifference("c"));
+        assertEquals("BEGIN[1]: b vs d", diff.bodyDifference());
+    }
+
+    /**
+     * Test of compare agreeing with equals on generated programs.
+     */
+    @Test
+    public final void testAgreesWithEquals() {
+        BLProgramGenerator generator = new BLProgramGenerator(11, 5, 4, 3, 0);
+        Program previous = parse(generator.next().source());
+        for (int i = 0; i < 50; i++) {
+            String source = generator.next().source();
+            Program p = parse(source);
+            assertEquals(previous.equals(p),
+                    ProgramDiff.compare(previous, p).isEqual());
+            assertTrue(ProgramDiff.compare(p, parse(source)).isEqual());
+            previous = p;
+        }
+    }
+
+}
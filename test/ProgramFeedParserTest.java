@@ -0,0 +1,134 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code ProgramFeedParser}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramFeedParserTest {
+
+    /**
+     * Feeds the file {@code fileName} to a new {@code ProgramFeedParser} in
+     * fragments of {@code chunkSize} characters.
+     *
+     * @param fileName
+     *            the file to parse
+     * @param chunkSize
+     *            the fragment size
+     * @return the parsed program
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static Program parseFed(String fileName, int chunkSize)
+            throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(fileName)),
+                StandardCharsets.UTF_8);
+        ProgramFeedParser parser = new ProgramFeedParser();
+        for (int i = 0; i < source.length(); i += chunkSize) {
+            parser.feed(CharBuffer.wrap(source, i,
+                    Math.min(source.length(), i + chunkSize)));
+        }
+        return parser.end();
+    }
+
+    /**
+     * Test of feed and end on a valid program, one character at a time.
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     */
+    @Test
+    public final void testFeedSingleCharacters() throws IOException {
+        Program pRef = ProgramFiles.parse("test/program1.bl");
+        Program pTest = parseFed("test/program1.bl", 1);
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of feed and end on a valid program split mid-token.
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     */
+    @Test
+    public final void testFeedOddChunks() throws IOException {
+        Program pRef = ProgramFiles.parse("data/programValid1.bl");
+        Program pTest = parseFed("data/programValid1.bl", 7);
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test of feed and end on valid programs in a single chunk.
+     *
+     * @throws IOException
+     *             if a test file cannot be read
+     */
+    @Test
+    public final void testFeedWhole() throws IOException {
+        for (int i = 1; i <= 6; i++) {
+            String fileName = "data/programValid" + i + ".bl";
+            assertEquals(ProgramFiles.parse(fileName),
+                    parseFed(fileName, 1 << 20));
+        }
+    }
+
+    /**
+     * Test of feed and end on a program missing its header keyword.
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testFeedInvalidHeader() throws IOException {
+        parseFed("data/programInvalid1.bl", 16);
+    }
+
+    /**
+     * Test of feed and end on a program missing its final END.
+     *
+     * @throws IOException
+     *             if the test file cannot be read
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testFeedInvalidFooter() throws IOException {
+        parseFed("data/programInvalid12.bl", 16);
+    }
+
+    /**
+     * Test of the limits of the options: the number of tokens, and the
+     * nesting depth once the tokens are allowed.
+     */
+    @Test
+    public final void testFeedLimits() {
+        String source = "PROGRAM P IS BEGIN WHILE true DO move END WHILE "
+                + "END P ";
+        ParseLimitExceededException.Limit[] limits =
+                new ParseLimitExceededException.Limit[2];
+        ParseOptions[] options = { new ParseOptions().setMaxTokens(9),
+                new ParseOptions().setMaxTokens(10).setMaxDepth(1) };
+        for (int i = 0; i < options.length; i++) {
+            ProgramFeedParser parser = new ProgramFeedParser(options[i]);
+            try {
+                parser.feed(CharBuffer.wrap(source));
+                parser.end();
+            } catch (ParseLimitExceededException e) {
+                limits[i] = e.limit();
+            }
+        }
+        assertEquals(ParseLimitExceededException.Limit.TOKENS, limits[0]);
+        assertEquals(ParseLimitExceededException.Limit.DEPTH, limits[1]);
+    }
+
+}
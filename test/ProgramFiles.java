@@ -0,0 +1,34 @@
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+
+/**
+ * Shared test fixture: parses BL program files with {@code Program1Parse1}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public final class ProgramFiles {
+
+    /**
+     * No-argument constructor--private to prevent instantiation.
+     */
+    private ProgramFiles() {
+    }
+
+    /**
+     * Parses the file {@code fileName} with {@code Program1Parse1}.
+     *
+     * @param fileName
+     *            the file to parse
+     * @return the parsed program
+     */
+    public static Program1Parse1 parse(String fileName) {
+        Program1Parse1 p = new Program1Parse1();
+        SimpleReader file = new SimpleReader1L(fileName);
+        p.parse(file);
+        file.close();
+        return p;
+    }
+
+}
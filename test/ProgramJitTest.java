@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code ProgramJit}, checked against
+ * {@code ProgramTreeInterpreter}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramJitTest {
+
+    /**
+     * Step budget for each run.
+     */
+    private static final long STEPS = 100_000;
+
+    /**
+     * Checks that the JIT-compiled {@code p} drives a robot exactly as the
+     * tree interpreter does.
+     *
+     * @param p
+     *            the program
+     * @param seed
+     *            the robot seed
+     * @return the number of steps taken
+     */
+    private static long checkSameAsTree(Program p, long seed) {
+        ProgramJit.Compiled compiled = ProgramJit.compile(p);
+        SimulatedRobot treeRobot = new SimulatedRobot(seed);
+        long treeSteps = ProgramTreeInterpreter.run(p, treeRobot, STEPS);
+        SimulatedRobot jitRobot = new SimulatedRobot(seed);
+        long jitSteps = ProgramJit.run(compiled, jitRobot, STEPS);
+        assertEquals(treeSteps, jitSteps);
+        assertEquals(treeRobot.actions(), jitRobot.actions());
+        assertEquals(treeRobot.trace(), jitRobot.trace());
+        return jitSteps;
+    }
+
+    /**
+     * Test of compile and run on the example programs.
+     */
+    @Test
+    public final void testSameAsTreeExamples() {
+        checkSameAsTree(ProgramFiles.parse("test/program1.bl"), 1);
+        for (int i = 1; i <= 6; i++) {
+            checkSameAsTree(
+                    ProgramFiles.parse("data/programValid" + i + ".bl"), i);
+        }
+    }
+
+    /**
+     * Test of compile and run on generated programs.
+     */
+    @Test
+    public final void testSameAsTreeGenerated() {
+        BLProgramGenerator generator = new BLProgramGenerator(4, 5, 5, 4, 0);
+        for (int i = 0; i < 50; i++) {
+            Program p = new Program1Parse1();
+            p.parse(SourceTokenizer.tokens(generator.next().source()));
+            checkSameAsTree(p, i);
+        }
+    }
+
+    /**
+     * Test of run on a program that halts before the budget runs out.
+     */
+    @Test
+    public final void testHalts() {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION two IS "
+                + "move move END two BEGIN two IF true THEN infect END IF "
+                + "END P"));
+        assertEquals(4, checkSameAsTree(p, 0));
+    }
+
+    /**
+     * Test of compile on a recursive program.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testCompileRecursive() {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION a IS "
+                + "b END a INSTRUCTION b IS a END b BEGIN a END P"));
+        ProgramJit.compile(p);
+    }
+
+    /**
+     * Test of compile on an instruction too large for a JVM method.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testCompileTooLarge() {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens("PROGRAM P IS INSTRUCTION a IS "
+                + "move ".repeat(40_000) + "END a BEGIN a END P"));
+        ProgramJit.compile(p);
+    }
+
+    /**
+     * Test of compile on a program with more instructions than a JVM constant
+     * pool can refer to.
+     */
+    @Test(expected = RuntimeException.class)
+    public final void testCompileTooManyConstants() {
+        final int instructions = 30_000;
+        StringBuilder source = new StringBuilder("PROGRAM P IS ");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < instructions; i++) {
+            source.append("INSTRUCTION i").append(i).append(" IS move END i")
+                    .append(i).append(' ');
+            body.append('i').append(i).append(' ');
+        }
+        source.append("BEGIN ").append(body).append("END P");
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens(source));
+        ProgramJit.compile(p);
+    }
+
+}
@@ -0,0 +1,215 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+
+/**
+ * JUnit test fixture for {@code ProgramOptimizer}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramOptimizerTest {
+
+    /**
+     * Step budget for each run.
+     */
+    private static final long STEPS = 20_000;
+
+    /**
+     * Number of actions compared between the original and optimized runs.
+     */
+    private static final int HISTORY = 1_000;
+
+    /**
+     * Parses {@code source} with {@code Program1Parse1}.
+     *
+     * @param source
+     *            the program source
+     * @return the parsed program
+     */
+    private static Program parse(String source) {
+        Program p = new Program1Parse1();
+        p.parse(SourceTokenizer.tokens(source));
+        return p;
+    }
+
+    /**
+     * Checks that {@code after} drives a robot as {@code before} does, in no
+     * more steps per action.
+     *
+     * @param before
+     *            the original program
+     * @param after
+     *            the optimized program
+     * @param seed
+     *            the robot seed
+     */
+    private static void checkSameActions(Program before, Program after,
+            long seed) {
+        SimulatedRobot beforeRobot = new SimulatedRobot(seed, HISTORY);
+        long beforeSteps = ProgramTreeInterpreter.run(before, beforeRobot,
+                STEPS);
+        SimulatedRobot afterRobot = new SimulatedRobot(seed, HISTORY);
+        long afterSteps = ProgramTreeInterpreter.run(after, afterRobot,
+                STEPS);
+        String beforeHistory = beforeRobot.history();
+        String afterHistory = afterRobot.history();
+        int common = Math.min(beforeHistory.length(), afterHistory.length());
+        assertEquals(beforeHistory.substring(0, common),
+                afterHistory.substring(0, common));
+        assertTrue(afterRobot.actions() >= beforeRobot.actions());
+        if (beforeSteps < STEPS) {
+            //the original halted, so the optimized program did the same
+            assertEquals(beforeRobot.actions(), afterRobot.actions());
+            assertEquals(beforeRobot.trace(), afterRobot.trace());
+            assertTrue(afterSteps <= beforeSteps);
+        }
+    }
+
+    /**
+     * Test of optimize inlining and folding a small program.
+     */
+    @Test
+    public final void testInlineAndFold() {
+        /*
+         * Setup
+         */
+        Program p = parse("PROGRAM P IS INSTRUCTION two IS move move END two "
+                + "BEGIN two IF true THEN infect END IF "
+                + "IF next-is-wall THEN END IF END P");
+        Program expected = parse(
+                "PROGRAM P IS BEGIN move move infect END P");
+        /*
+         * The call
+         */
+        ProgramOptimizer.Report report = ProgramOptimizer.optimize(p);
+        /*
+         * Evaluation
+         */
+        assertEquals(expected, p);
+        assertEquals(1, report.inlined());
+        assertEquals(2, report.folded());
+        assertEquals(1, report.instructionsBefore());
+        assertEquals(0, report.instructionsAfter());
+        assertTrue(report.sizeAfter() < report.sizeBefore());
+    }
+
+    /**
+     * Test of optimize on conditions known after a WHILE loop exits.
+     */
+    @Test
+    public final void testAfterWhile() {
+        /*
+         * Setup
+         */
+        Program p = parse("PROGRAM P IS BEGIN "
+                + "WHILE next-is-empty DO move END WHILE "
+                + "WHILE next-is-empty DO turnleft END WHILE "
+                + "IF next-is-empty THEN infect ELSE skip END IF "
+                + "WHILE true DO turnright END WHILE move END P");
+        Program expected = parse("PROGRAM P IS BEGIN "
+                + "WHILE next-is-empty DO move END WHILE skip "
+                + "WHILE true DO turnright END WHILE END P");
+        /*
+         * The call
+         */
+        ProgramOptimizer.Report report = ProgramOptimizer.optimize(p);
+        /*
+         * Evaluation
+         */
+        assertEquals(expected, p);
+        assertEquals(2, report.folded());
+        assertEquals(1, report.unreachable());
+    }
+
+    /**
+     * Test of optimize on an IF_ELSE with an empty THEN block.
+     */
+    @Test
+    public final void testEmptyThen() {
+        /*
+         * Setup
+         */
+        Program p = parse("PROGRAM P IS BEGIN "
+                + "IF next-is-enemy THEN ELSE move END IF "
+                + "IF random THEN ELSE turnleft END IF END P");
+        Program expected = parse("PROGRAM P IS BEGIN "
+                + "IF next-is-not-enemy THEN move END IF "
+                + "IF random THEN ELSE turnleft END IF END P");
+        /*
+         * The call
+         */
+        ProgramOptimizer.optimize(p);
+        /*
+         * Evaluation
+         */
+        assertEquals(expected, p);
+    }
+
+    /**
+     * Test of optimize on a recursive program, which is left alone.
+     */
+    @Test
+    public final void testRecursive() {
+        /*
+         * Setup
+         */
+        Program p = parse("PROGRAM P IS INSTRUCTION a IS move b END a "
+                + "INSTRUCTION b IS IF next-is-wall THEN a END IF END b "
+                + "BEGIN a END P");
+        Program expected = parse("PROGRAM P IS INSTRUCTION a IS move b END a "
+                + "INSTRUCTION b IS IF next-is-wall THEN a END IF END b "
+                + "BEGIN a END P");
+        /*
+         * The call
+         */
+        ProgramOptimizer.Report report = ProgramOptimizer.optimize(p);
+        /*
+         * Evaluation
+         */
+        assertEquals(expected, p);
+        assertEquals(0, report.inlined());
+    }
+
+    /**
+     * Test of optimize on the example programs.
+     */
+    @Test
+    public final void testExamples() {
+        for (int i = 1; i <= 6; i++) {
+            String fileName = "data/programValid" + i + ".bl";
+            Program before = ProgramFiles.parse(fileName);
+            Program after = ProgramFiles.parse(fileName);
+            ProgramOptimizer.optimize(after);
+            for (long seed = 0; seed < 5; seed++) {
+                checkSameActions(before, after, seed);
+            }
+        }
+    }
+
+    /**
+     * Test of optimize on generated programs.
+     */
+    @Test
+    public final void testGenerated() {
+        BLProgramGenerator generator = new BLProgramGenerator(7, 6, 5, 4, 0);
+        for (int i = 0; i < 100; i++) {
+            /*
+             * Dropping an empty IF random skips a draw from the simulated
+             * random sequence, which shifts every later draw, so the actions
+             * are only compared on programs without random
+             */
+            String source = generator.next().source().replace(" random ",
+                    " next-is-wall ");
+            Program before = parse(source);
+            Program after = parse(source);
+            ProgramOptimizer.optimize(after, i % 20);
+            checkSameActions(before, after, i);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code ProgramPrettyPrinter}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramPrettyPrinterTest {
+
+    /**
+     * Returns the text {@code p.prettyPrint} writes.
+     *
+     * @param p
+     *            the program to print
+     * @return the pretty print of {@code p}
+     * @throws IOException
+     *             if the temporary file fails
+     */
+    private static String prettyPrint(Program p) throws IOException {
+        File temp = File.createTempFile("pretty", ".bl");
+        SimpleWriter out = new SimpleWriter1L(temp.getPath());
+        p.prettyPrint(out);
+        out.close();
+        String text = new String(Files.readAllBytes(temp.toPath()),
+                StandardCharsets.UTF_8);
+        temp.delete();
+        return text;
+    }
+
+    /**
+     * Test of print to a Writer on every valid example program, with a chunk
+     * size small enough to force several flushes.
+     *
+     * @throws IOException
+     *             if a test file cannot be read
+     */
+    @Test
+    public final void testPrintWriter() throws IOException {
+        ProgramPrettyPrinter printer = new ProgramPrettyPrinter(32);
+        for (int i = 1; i <= 6; i++) {
+            Program p = ProgramFiles.parse("data/programValid" + i + ".bl");
+            String expected = prettyPrint(p);
+            StringWriter out = new StringWriter();
+            printer.print(p, out);
+            assertEquals(expected, out.toString());
+        }
+    }
+
+    /**
+     * Test of print to a FileChannel.
+     *
+     * @throws IOException
+     *             if the temporary file fails
+     */
+    @Test
+    public final void testPrintChannel() throws IOException {
+        Program p = ProgramFiles.parse("test/program1.bl");
+        String expected = prettyPrint(p);
+        File temp = File.createTempFile("pretty", ".bl");
+        FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.WRITE);
+        new ProgramPrettyPrinter(16).print(p, out);
+        out.close();
+        String text = new String(Files.readAllBytes(temp.toPath()),
+                StandardCharsets.UTF_8);
+        temp.delete();
+        assertEquals(expected, text);
+    }
+
+    /**
+     * Test of toString on a statement, which must leave it unchanged.
+     *
+     * @throws IOException
+     *             if the temporary file fails
+     */
+    @Test
+    public final void testToStringStatement() throws IOException {
+        Statement s = new Statement1Parse1();
+        SimpleReader file = new SimpleReader1L("test/statement1.bl");
+        Queue<String> tokens = Tokenizer.tokens(file);
+        file.close();
+        s.parseBlock(tokens);
+        Statement sCopy = new Statement1Parse1();
+        file = new SimpleReader1L("test/statement1.bl");
+        sCopy.parseBlock(Tokenizer.tokens(file));
+        file.close();
+
+        File temp = File.createTempFile("pretty", ".bl");
+        SimpleWriter out = new SimpleWriter1L(temp.getPath());
+        s.prettyPrint(out, 2);
+        out.close();
+        String expected = new String(Files.readAllBytes(temp.toPath()),
+                StandardCharsets.UTF_8);
+        temp.delete();
+
+        assertEquals(expected, new ProgramPrettyPrinter().toString(s, 2));
+        assertEquals(sCopy, s);
+    }
+
+}
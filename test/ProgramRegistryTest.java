@@ -0,0 +1,122 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code ProgramRegistry}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class ProgramRegistryTest {
+
+    /**
+     * A helper instruction defined by both test programs, under two names.
+     */
+    private static final String HELPER = " IS WHILE next-is-empty DO move "
+            + "END WHILE turnright END ";
+
+    /**
+     * First test program.
+     */
+    private static final String FIRST = "PROGRAM P IS INSTRUCTION walk"
+            + HELPER + "walk INSTRUCTION spin IS turnleft turnleft END spin "
+            + "BEGIN walk spin END P";
+
+    /**
+     * Second test program.
+     */
+    private static final String SECOND = "PROGRAM Q IS INSTRUCTION go"
+            + HELPER + "go BEGIN go infect END Q";
+
+    /**
+     * Test of register sharing an instruction body between programs.
+     */
+    @Test
+    public final void testShared() {
+        /*
+         * Setup
+         */
+        ProgramRegistry registry = new ProgramRegistry();
+        /*
+         * The call
+         */
+        registry.register("first", SourceTokenizer.tokens(FIRST));
+        registry.register("second", SourceTokenizer.tokens(SECOND));
+        /*
+         * Evaluation
+         */
+        assertEquals(2, registry.programs());
+        assertEquals(3, registry.instructions());
+        assertEquals(2, registry.uniqueBodies());
+        StatementNode walk = registry.instruction("first", "walk");
+        assertSame(walk, registry.instruction("second", "go"));
+        assertEquals(2, registry.references(walk));
+        assertEquals(1,
+                registry.references(registry.instruction("first", "spin")));
+    }
+
+    /**
+     * Test of unregister dropping bodies only when no program refers to
+     * them.
+     */
+    @Test
+    public final void testUnregister() {
+        /*
+         * Setup
+         */
+        ProgramRegistry registry = new ProgramRegistry();
+        registry.register("first", SourceTokenizer.tokens(FIRST));
+        registry.register("second", SourceTokenizer.tokens(SECOND));
+        StatementNode walk = registry.instruction("first", "walk");
+        /*
+         * The call
+         */
+        registry.unregister("first");
+        /*
+         * Evaluation
+         */
+        assertTrue(!registry.hasProgram("first"));
+        assertEquals(1, registry.uniqueBodies());
+        assertEquals(1, registry.references(walk));
+        registry.unregister("second");
+        assertEquals(0, registry.uniqueBodies());
+        assertEquals(0, registry.instructions());
+        assertEquals(0, registry.references(walk));
+    }
+
+    /**
+     * Test of program on the example programs, each registered twice.
+     */
+    @Test
+    public final void testProgram() {
+        ProgramRegistry registry = new ProgramRegistry();
+        for (int i = 1; i <= 6; i++) {
+            String fileName = "data/programValid" + i + ".bl";
+            Program pRef = new Program1();
+            SimpleReader file = new SimpleReader1L(fileName);
+            Queue<String> tokens = Tokenizer.tokens(file);
+            file.close();
+            pRef.parse(tokens);
+            registry.register(fileName, pRef);
+            registry.register(fileName + " again", pRef.newInstance());
+            registry.unregister(fileName + " again");
+            registry.register(fileName + " again", pRef);
+            assertEquals(pRef, registry.program(fileName));
+            assertEquals(pRef, registry.program(fileName + " again"));
+        }
+        assertEquals(12, registry.programs());
+        assertTrue(registry.uniqueBodies() <= registry.instructions() / 2);
+    }
+
+}
@@ -0,0 +1,54 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code RoundTripHarness} and
+ * {@code BLProgramGenerator}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class RoundTripHarnessTest {
+
+    /**
+     * Test that generators with the same seed produce the same programs.
+     */
+    @Test
+    public final void testGeneratorReproducible() {
+        BLProgramGenerator g1 = new BLProgramGenerator(7, 3, 4, 3, 0.5);
+        BLProgramGenerator g2 = new BLProgramGenerator(7, 3, 4, 3, 0.5);
+        for (int i = 0; i < 20; i++) {
+            BLProgramGenerator.Sample s1 = g1.next();
+            BLProgramGenerator.Sample s2 = g2.next();
+            assertEquals(s1.source(), s2.source());
+            assertEquals(s1.isValid(), s2.isValid());
+        }
+    }
+
+    /**
+     * Test of run on valid programs only.
+     */
+    @Test
+    public final void testRunValid() {
+        RoundTripHarness.Result result = RoundTripHarness
+                .run(new BLProgramGenerator(1, 4, 5, 4, 0), 200);
+        assertEquals(200, result.programs());
+        assertEquals(null, result.firstFailure());
+        assertTrue(result.tokensPerSecond() > 0);
+    }
+
+    /**
+     * Test of run with injected errors.
+     */
+    @Test
+    public final void testRunWithErrors() {
+        RoundTripHarness.Result result = RoundTripHarness
+                .run(new BLProgramGenerator(2, 3, 5, 3, 0.5), 200);
+        assertEquals(null, result.firstFailure());
+        assertEquals(0, result.failures());
+    }
+
+}
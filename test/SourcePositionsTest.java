@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.program.Program;
+import components.statement.Statement;
+
+/**
+ * JUnit test fixture for {@code SourcePositions}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class SourcePositionsTest {
+
+    /**
+     * Program used by the tests, one statement per line.
+     */
+    private static final String SOURCE = "PROGRAM P IS\n"
+            + "  INSTRUCTION a IS\n" + "    move\n"
+            + "    IF next-is-wall THEN\n" + "      turnleft\n"
+            + "    END IF\n" + "  END a\n" + "BEGIN\n" + "  a\n"
+            + "  WHILE true DO\n" + "  END WHILE\n" + "END P\n";
+
+    /**
+     * Parses {@code SOURCE}, recording positions in {@code positions}.
+     *
+     * @param positions
+     *            the table to record positions in
+     * @return the parsed program
+     */
+    private static Program parse(SourcePositions positions) {
+        Program p = new Program1Parse1();
+        new ParseOptions().setPositions(positions).parse(p,
+                SourceTokenizer.tokens(SOURCE, positions));
+        return p;
+    }
+
+    /**
+     * Test of the node numbering and tree navigation.
+     */
+    @Test
+    public final void testNodes() {
+        /*
+         * Setup
+         */
+        SourcePositions positions = new SourcePositions();
+        /*
+         * The call
+         */
+        Program p = parse(positions);
+        /*
+         * Evaluation
+         */
+        Map<String, Statement> context = p.newContext();
+        Statement body = p.newBody();
+        p.swapContext(context);
+        p.swapBody(body);
+        assertEquals(
+                Statements.size(context.value("a")) + Statements.size(body),
+                positions.nodes());
+        assertEquals(0, positions.root("a"));
+        assertEquals(Statements.size(context.value("a")),
+                positions.size(positions.root("a")));
+        assertEquals(1, positions.child(0, 0));
+        assertEquals(2, positions.child(0, 1));
+        assertEquals(4, positions.child(positions.child(2, 0), 0));
+        assertEquals(5, positions.bodyRoot());
+        assertEquals(7, positions.child(5, 1));
+        assertEquals(Statements.size(body),
+                positions.size(positions.bodyRoot()));
+    }
+
+    /**
+     * Test of the spans of nodes.
+     */
+    @Test
+    public final void testSpans() {
+        /*
+         * Setup
+         */
+        SourcePositions positions = new SourcePositions();
+        /*
+         * The call
+         */
+        parse(positions);
+        /*
+         * Evaluation
+         */
+        assertEquals("3:5-3:9", positions.span(1));
+        assertEquals("4:5-6:11", positions.span(2));
+        assertEquals("5:7-5:15", positions.span(4));
+        assertEquals("3:5-6:11", positions.span(positions.root("a")));
+        assertEquals("9:3-9:4", positions.span(positions.child(5, 0)));
+        assertEquals("10:3-11:12", positions.span(positions.child(5, 1)));
+        int emptyBlock = positions.child(positions.child(5, 1), 0);
+        assertEquals(positions.startToken(emptyBlock),
+                positions.endToken(emptyBlock));
+        assertEquals("move",
+                SOURCE.substring(positions.start(1), positions.end(1)));
+    }
+
+    /**
+     * Test of parsing without positions, which records nothing.
+     */
+    @Test
+    public final void testOff() {
+        /*
+         * Setup
+         */
+        SourcePositions positions = new SourcePositions();
+        Program p = new Program1Parse1();
+        /*
+         * The call
+         */
+        new ParseOptions().parse(p, SourceTokenizer.tokens(SOURCE, positions));
+        /*
+         * Evaluation
+         */
+        assertEquals(0, positions.nodes());
+    }
+
+}
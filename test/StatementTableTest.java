@@ -0,0 +1,203 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.program.Program;
+import components.statement.Statement;
+import components.statement.Statement1;
+
+/**
+ * JUnit test fixture for {@code StatementTable} and {@code StatementNode}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class StatementTableTest {
+
+    /**
+     * Parses the block {@code source} with the reference implementation.
+     *
+     * @param source
+     *            the block source
+     * @return the parsed block
+     */
+    private static Statement parseBlock(String source) {
+        Statement s = new Statement1();
+        s.parseBlock(SourceTokenizer.tokens(source));
+        return s;
+    }
+
+    /**
+     * Test of intern sharing repeated subtrees.
+     */
+    @Test
+    public final void testInternShares() {
+        /*
+         * Setup
+         */
+        StatementTable table = new StatementTable();
+        String loop = "WHILE next-is-empty DO move END WHILE ";
+        Statement s = parseBlock(loop + "IF next-is-wall THEN " + loop
+                + "ELSE " + loop + "END IF " + loop);
+        Statement sRef = parseBlock(loop + "IF next-is-wall THEN " + loop
+                + "ELSE " + loop + "END IF " + loop);
+        /*
+         * The call
+         */
+        StatementNode node = table.intern(s);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, s);
+        assertEquals(Statements.size(s), node.size());
+        assertSame(node.child(0), node.child(2));
+        assertSame(node.child(0), node.child(1).child(0).child(0));
+        assertSame(node.child(1).child(0), node.child(1).child(1));
+        /*
+         * CALL move, its BLOCK, the WHILE, the BLOCK around it, the IF_ELSE
+         * and the outer BLOCK
+         */
+        assertEquals(6, table.size());
+        assertEquals(node.size(), table.interned());
+    }
+
+    /**
+     * Test of intern giving equal statements the same node.
+     */
+    @Test
+    public final void testInternEqual() {
+        /*
+         * Setup
+         */
+        StatementTable table = new StatementTable();
+        Statement s1 = parseBlock("IF random THEN move ELSE skip END IF");
+        Statement s2 = parseBlock("IF random THEN move ELSE skip END IF");
+        Statement s3 = parseBlock("IF random THEN skip ELSE move END IF");
+        /*
+         * The call
+         */
+        StatementNode n1 = table.intern(s1);
+        StatementNode n2 = table.intern(s2);
+        StatementNode n3 = table.intern(s3);
+        /*
+         * Evaluation
+         */
+        assertSame(n1, n2);
+        assertNotSame(n1, n3);
+        assertTrue(!n1.equals(n3));
+    }
+
+    /**
+     * Test of equals between nodes of different tables.
+     */
+    @Test
+    public final void testEqualsAcrossTables() {
+        /*
+         * Setup
+         */
+        String source = "WHILE true DO IF next-is-enemy THEN infect END IF "
+                + "turnleft END WHILE";
+        /*
+         * The call
+         */
+        StatementNode n1 = new StatementTable().intern(parseBlock(source));
+        StatementNode n2 = new StatementTable().intern(parseBlock(source));
+        /*
+         * Evaluation
+         */
+        assertNotSame(n1, n2);
+        assertEquals(n1, n2);
+        assertEquals(n1.hashCode(), n2.hashCode());
+    }
+
+    /**
+     * Test of build restoring the interned statement.
+     */
+    @Test
+    public final void testBuild() {
+        /*
+         * Setup
+         */
+        Statement sRef = parseBlock("move IF next-is-not-wall THEN "
+                + "WHILE random DO turnright END WHILE ELSE skip END IF "
+                + "IF next-is-friend THEN infect END IF");
+        StatementNode node = new StatementTable().intern(sRef);
+        Statement sTest = new Statement1Parse1();
+        sTest.assembleCall("move");
+        /*
+         * The call
+         */
+        node.build(sTest);
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+    }
+
+    /**
+     * Test of parse interning the bodies of two programs in one table.
+     */
+    @Test
+    public final void testParseProgram() {
+        /*
+         * Setup
+         */
+        StatementTable table = new StatementTable();
+        ParseOptions options = new ParseOptions().setTable(table);
+        String source = "PROGRAM P IS INSTRUCTION go IS WHILE next-is-empty "
+                + "DO move END WHILE END go BEGIN go turnleft "
+                + "WHILE next-is-empty DO move END WHILE END P";
+        Program p1 = new Program1Parse1();
+        Program p2 = new Program1Parse1();
+        /*
+         * The call
+         */
+        options.parse(p1, SourceTokenizer.tokens(source));
+        StatementNode body1 = options.body();
+        StatementNode go1 = options.instructions().get("go");
+        options.parse(p2, SourceTokenizer.tokens(source));
+        /*
+         * Evaluation
+         */
+        assertEquals(p1, p2);
+        assertSame(body1, options.body());
+        assertSame(go1, options.instructions().get("go"));
+        assertSame(go1.child(0), body1.child(2));
+        assertTrue(table.size() < table.interned());
+    }
+
+    /**
+     * Test of parse interning as it builds: the nodes equal the parsed
+     * statements, with folding on too.
+     */
+    @Test
+    public final void testParseFolded() {
+        /*
+         * Setup
+         */
+        StatementTable table = new StatementTable();
+        ParseOptions options = new ParseOptions().setTable(table)
+                .setFold(true);
+        Statement sTest = new Statement1Parse1();
+        /*
+         * The call
+         */
+        options.parseBlock(sTest, SourceTokenizer.tokens("IF true THEN move "
+                + "turnleft END IF IF next-is-wall THEN ELSE skip END IF "
+                + "IF random THEN move ELSE END IF "
+                + "WHILE next-is-empty DO IF next-is-wall THEN END IF "
+                + "infect END WHILE"));
+        StatementNode node = options.body();
+        /*
+         * Evaluation
+         */
+        assertEquals(new StatementTable().intern(sTest), node);
+        assertSame(node, table.intern(sTest));
+        assertEquals(Statements.size(sTest), node.size());
+    }
+
+}
@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.queue.Queue;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code SwarTokenizer}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class SwarTokenizerTest {
+
+    /**
+     * Checks that {@code SwarTokenizer} and {@code SourceTokenizer} agree on
+     * {@code text}.
+     *
+     * @param text
+     *            the source text
+     */
+    private static void check(String text) {
+        Queue<String> expected = SourceTokenizer.tokens(text);
+        Queue<String> actual = SwarTokenizer
+                .tokens(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Test of tokens on every example file.
+     *
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    @Test
+    public final void testDataFiles() throws IOException {
+        int files = 0;
+        try (DirectoryStream<Path> data = Files
+                .newDirectoryStream(Paths.get("data"), "*.bl")) {
+            for (Path file : data) {
+                String text = new String(Files.readAllBytes(file),
+                        StandardCharsets.UTF_8);
+                assertEquals(SourceTokenizer.tokens(text),
+                        SwarTokenizer.tokens(file));
+                files++;
+            }
+        }
+        assertTrue(files > 0);
+    }
+
+    /**
+     * Test of tokens on empty and blank input.
+     */
+    @Test
+    public final void testBlank() {
+        check("");
+        check(" ");
+        check("                                ");
+        check("\n\t\r \u000B\f\u001C");
+        Queue<String> tokens = SwarTokenizer.tokens(new byte[0]);
+        assertEquals(1, tokens.length());
+        assertEquals(Tokenizer.END_OF_INPUT, tokens.front());
+    }
+
+    /**
+     * Test of tokens with runs of whitespace and tokens of every length
+     * around a word, and control characters that are not whitespace.
+     */
+    @Test
+    public final void testWordBoundaries() {
+        for (int spaces = 0; spaces <= 17; spaces++) {
+            for (int length = 1; length <= 17; length++) {
+                String pad = " ".repeat(spaces);
+                String token = "x".repeat(length);
+                check(pad + token + pad + "\n" + pad + token + "\u0001" + token
+                        + "\t" + token + pad);
+            }
+        }
+        check("move\u0000turnleft \u001Finfect\u001Eskip\u0007\u0008");
+    }
+
+    /**
+     * Test of tokens on random ASCII text.
+     */
+    @Test
+    public final void testRandom() {
+        final String alphabet = "    \t\n\r\u000B\f\u001C\u0001ab-IFEND";
+        Random random = new Random(48);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(100);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            check(text.toString());
+        }
+    }
+
+    /**
+     * Test of tokens on non-ASCII text, with Unicode whitespace.
+     */
+    @Test
+    public final void testNonAscii() {
+        check("PROGRAM caf\u00E9 IS\u2028BEGIN\u3000move\u00A0x "
+                + "END caf\u00E9");
+    }
+
+    /**
+     * Test of tokens on part of a buffer.
+     */
+    @Test
+    public final void testBuffer() {
+        byte[] bytes = "skip   move turnleft     infect"
+                .getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 5, 15).slice();
+        assertEquals(SourceTokenizer.tokens("  move turnleft"),
+                SwarTokenizer.tokens(buffer));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(SourceTokenizer.tokens(new String(bytes,
+                StandardCharsets.US_ASCII)), SwarTokenizer.tokens(direct));
+        assertEquals(0, direct.position());
+    }
+
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.statement.Statement;
+import components.utilities.Tokenizer;
+
+/**
+ * JUnit test fixture for {@code TokenClassifier}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class TokenClassifierTest {
+
+    /**
+     * The primitive instructions of BL.
+     */
+    private static final List<String> PRIMITIVES = Arrays.asList("move",
+            "turnleft", "turnright", "infect", "skip");
+
+    /**
+     * Test of classify on each kind of token.
+     */
+    @Test
+    public final void testClassify() {
+        assertEquals(TokenClassifier.Kind.IDENTIFIER,
+                TokenClassifier.classify("findOb-findenemy23"));
+        assertEquals(TokenClassifier.Kind.IDENTIFIER,
+                TokenClassifier.classify("x"));
+        assertEquals(TokenClassifier.Kind.IDENTIFIER,
+                TokenClassifier.classify("Move"));
+        assertEquals(TokenClassifier.Kind.KEYWORD,
+                TokenClassifier.classify("INSTRUCTION"));
+        assertEquals(TokenClassifier.Kind.KEYWORD,
+                TokenClassifier.classify("DO"));
+        assertEquals(TokenClassifier.Kind.PRIMITIVE,
+                TokenClassifier.classify("turnright"));
+        assertEquals(TokenClassifier.Kind.CONDITION,
+                TokenClassifier.classify("next-is-not-enemy"));
+        assertEquals(TokenClassifier.Kind.CONDITION,
+                TokenClassifier.classify("true"));
+        assertEquals(TokenClassifier.Kind.INVALID,
+                TokenClassifier.classify(""));
+        assertEquals(TokenClassifier.Kind.INVALID,
+                TokenClassifier.classify("2move"));
+        assertEquals(TokenClassifier.Kind.INVALID,
+                TokenClassifier.classify("-a"));
+        assertEquals(TokenClassifier.Kind.INVALID,
+                TokenClassifier.classify("move;"));
+        assertEquals(TokenClassifier.Kind.INVALID,
+                TokenClassifier.classify("a_b"));
+    }
+
+    /**
+     * Test of condition on every condition and on other tokens.
+     */
+    @Test
+    public final void testCondition() {
+        for (Statement.Condition c : Statement.Condition.values()) {
+            String token = c.name().toLowerCase().replace('_', '-');
+            assertEquals(c, TokenClassifier.condition(token));
+        }
+        assertNull(TokenClassifier.condition("next-is-maybe"));
+        assertNull(TokenClassifier.condition("IF"));
+        assertNull(TokenClassifier.condition("move"));
+    }
+
+    /**
+     * Test of isIdentifier and classify agreeing with {@code Tokenizer} on
+     * random tokens over the BL alphabet and a few other characters.
+     */
+    @Test
+    public final void testAgreesWithTokenizer() {
+        final String alphabet = "abeinstmovDIFENTHLSWRG-09_.";
+        final String[] words = { "PROGRAM", "IS", "BEGIN", "INSTRUCTION",
+            "END", "IF", "THEN", "ELSE", "WHILE", "DO", "move", "turnleft",
+            "turnright", "infect", "skip", "random", "true", "next-is-empty",
+            "next-is-not-wall", "next-is-friend", "next-is-not-enemy" };
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            String token;
+            if (i % 4 == 0) {
+                token = words[random.nextInt(words.length)];
+            } else {
+                int length = random.nextInt(6);
+                StringBuilder b = new StringBuilder(length);
+                for (int j = 0; j < length; j++) {
+                    b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                token = b.toString();
+            }
+            TokenClassifier.Kind kind = TokenClassifier.classify(token);
+            assertEquals(token, Tokenizer.isIdentifier(token),
+                    TokenClassifier.isIdentifier(token));
+            assertEquals(token, Tokenizer.isKeyword(token),
+                    kind == TokenClassifier.Kind.KEYWORD);
+            assertEquals(token, Tokenizer.isCondition(token),
+                    kind == TokenClassifier.Kind.CONDITION);
+            assertEquals(token, PRIMITIVES.contains(token),
+                    kind == TokenClassifier.Kind.PRIMITIVE);
+        }
+    }
+
+}
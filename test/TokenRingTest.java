@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TokenRing}.
+ *
+ * @author Zheyuan Gao
+ * @author Cedric Fausey
+ *
+ */
+public class TokenRingTest {
+
+    /**
+     * Passes {@code count} numbered tokens from a producer thread to the
+     * calling thread and checks they arrive in order.
+     *
+     * @param ring
+     *            the ring
+     * @param count
+     *            the number of tokens
+     * @throws InterruptedException
+     *             if interrupted while joining the producer
+     */
+    private static void checkInOrder(TokenRing ring, int count)
+            throws InterruptedException {
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                ring.put(Integer.toString(i));
+            }
+            ring.flush();
+            ring.close();
+        });
+        producer.start();
+        for (int i = 0; i < count; i++) {
+            assertEquals(Integer.toString(i), ring.take());
+        }
+        assertNull(ring.take());
+        producer.join();
+    }
+
+    /**
+     * Test of passing tokens with blocking waits through a small ring.
+     *
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    @Test
+    public final void testBlocking() throws InterruptedException {
+        checkInOrder(new TokenRing(8, 3, TokenRing.Wait.BLOCKING), 100_000);
+    }
+
+    /**
+     * Test of passing tokens with spinning waits.
+     *
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    @Test
+    public final void testSpinning() throws InterruptedException {
+        checkInOrder(new TokenRing(64, 16, TokenRing.Wait.SPINNING), 100_000);
+    }
+
+    /**
+     * Test of the capacity rounded up and of tokens put but not published.
+     */
+    @Test
+    public final void testCapacityAndBatch() {
+        /*
+         * Setup
+         */
+        TokenRing ring = new TokenRing(5, 4, TokenRing.Wait.SPINNING);
+        /*
+         * The call
+         */
+        for (int i = 0; i < 6; i++) {
+            assertTrue(ring.put("t" + i));
+        }
+        ring.close();
+        /*
+         * Evaluation
+         */
+        assertEquals(8, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("t" + i, ring.take());
+        }
+        assertNull(ring.take());
+    }
+
+    /**
+     * Test of close by the consumer releasing a producer waiting for room.
+     *
+     * @throws InterruptedException
+     *             if interrupted
+     */
+    @Test
+    public final void testCloseReleasesProducer() throws InterruptedException {
+        /*
+         * Setup
+         */
+        TokenRing ring = new TokenRing(4, 1, TokenRing.Wait.BLOCKING);
+        boolean[] accepted = new boolean[1];
+        Thread producer = new Thread(() -> {
+            boolean open = true;
+            while (open) {
+                open = ring.put("t");
+            }
+            accepted[0] = open;
+        });
+        producer.start();
+        /*
+         * The call
+         */
+        ring.take();
+        ring.close();
+        producer.join();
+        /*
+         * Evaluation
+         */
+        assertTrue(!accepted[0]);
+    }
+
+}